@@ -0,0 +1,248 @@
+package stock.exchange;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import stock.exchange.book.OrderBookOverloadedException;
+import stock.exchange.common.CommonException;
+import stock.exchange.domain.OrderRecord;
+import stock.exchange.domain.Prices;
+import stock.exchange.domain.TradeRecord;
+import stock.exchange.engine.OrderBookEngine;
+import stock.exchange.instrument.MarketDataWorld;
+import stock.exchange.integration.FanOutDownstream;
+import stock.exchange.integration.FanOutRejectedDownstream;
+import stock.exchange.trader.TraderManagerImpl;
+import util.metrics.LatencyHistogram;
+
+/**
+ * Drives the stock exchange through the {@link StockExchangeFacade} by the
+ * concurrent producers placing and cancelling random orders, and reports the
+ * sustained orders and trades per second and the order-to-trade latency.
+ *
+ * Every producer picks the security by the Zipf distribution, so a few
+ * securities take most of the orders. The limit prices walk randomly around
+ * the market price of the security, a few ticks through it, so some of the
+ * orders cross. The order sizes are mostly small with a tail of large ones.
+ * The latency is measured by the monotonic clock from the acceptance of the
+ * younger order of the trade by the book to the trade generation.
+ *
+ * The load is set by the <code>stock.exchange.load.*</code> system
+ * properties: <code>traders</code>, <code>securities</code>,
+ * <code>producers</code>, <code>seconds</code>, <code>rate</code> (orders and
+ * cancels per second of all the producers, 0 for no limit),
+ * <code>cancelRatio</code>,
+ * <code>marketRatio</code> and <code>zipf</code> (the exponent of the
+ * distribution, 0 for the uniform one). The matcher, the engine, the idle
+ * strategies and the ticker intervals are chosen by the same properties as of
+ * the app, see {@link StockExchangeFactory}.
+ */
+public class LoadGenerator {
+
+  private static final long INITIAL_PRICE = 10_000L;
+  private static final int PRICE_SPREAD = 10;
+  private static final int PRICE_CROSS = 2;
+  private static final int RECENT_ORDERS = 1024;
+
+  private final int traders = Integer.getInteger("stock.exchange.load.traders", 100);
+  private final int securities = Integer.getInteger("stock.exchange.load.securities", 20);
+  private final int producers = Integer.getInteger("stock.exchange.load.producers", 4);
+  private final int seconds = Integer.getInteger("stock.exchange.load.seconds", 30);
+  private final long rate = Long.getLong("stock.exchange.load.rate", 0L);
+  private final double cancelRatio = Double.parseDouble(System.getProperty("stock.exchange.load.cancelRatio", "0.2"));
+  private final double marketRatio = Double.parseDouble(System.getProperty("stock.exchange.load.marketRatio", "0.05"));
+  private final double zipf = Double.parseDouble(System.getProperty("stock.exchange.load.zipf", "1.0"));
+
+  private final LongAdder orders = new LongAdder();
+  private final LongAdder cancels = new LongAdder();
+  private final LongAdder rejections = new LongAdder();
+  private final LongAdder overloads = new LongAdder();
+  private final LongAdder trades = new LongAdder();
+  private final LatencyHistogram orderToTrade = new LatencyHistogram();
+  private final AtomicBoolean running = new AtomicBoolean(true);
+
+  private String[] symbols;
+  private double[] zipfCdf;
+  private AtomicLongArray fairPrices;
+
+  public static void main(String[] args) throws InterruptedException {
+    new LoadGenerator().run();
+  }
+
+  private void run() throws InterruptedException {
+    MarketDataWorld world = StockExchangeFactory.marketDataWorld();
+    ExecutorService pool = Executors.newFixedThreadPool(producers);
+
+    try (OrderBookEngine engine = StockExchangeFactory.engine()) {
+
+      StockExchangeFacade facade = StockExchangeFactory.facade(
+          world,
+          world,
+          new TraderManagerImpl(),
+          engine,
+          StockExchangeFactory.orderBookManager(
+              new FanOutDownstream<>(this::onTrade, world),
+              new FanOutRejectedDownstream<>(),
+              new FanOutRejectedDownstream<>(),
+              new FanOutDownstream<>(),
+              new FanOutRejectedDownstream<>()));
+
+      for (int i = 1; i <= traders; i++) {
+        facade.createTrader(i, "trader" + i);
+      }
+      symbols = new String[securities];
+      fairPrices = new AtomicLongArray(securities);
+      for (int i = 0; i < securities; i++) {
+        symbols[i] = "LOAD" + i;
+        facade.createSecurity(i + 1, symbols[i], 2, INITIAL_PRICE);
+        fairPrices.set(i, INITIAL_PRICE);
+      }
+      zipfCdf = zipfCdf(securities, zipf);
+
+      System.out.printf("load: %d traders, %d securities, %d producers, %s orders/s, %d s%n",
+          traders, securities, producers, rate > 0 ? String.valueOf(rate) : "unlimited", seconds);
+
+      for (int i = 0; i < producers; i++) {
+        pool.execute(() -> produce(facade));
+      }
+      report();
+    } finally {
+      running.set(false);
+      pool.shutdownNow();
+      pool.awaitTermination(10, TimeUnit.SECONDS);
+    }
+  }
+
+  /**
+   * Prints the rates every second and the summary at the end
+   */
+  private void report() throws InterruptedException {
+    long start = System.nanoTime();
+    long lastOrders = 0, lastTrades = 0;
+    for (int s = 1; s <= seconds; s++) {
+      TimeUnit.NANOSECONDS.sleep(start + TimeUnit.SECONDS.toNanos(s) - System.nanoTime());
+      long o = orders.sum(), t = trades.sum();
+      System.out.printf("%4d s: %,10d orders/s %,10d trades/s%n", s, o - lastOrders, t - lastTrades);
+      lastOrders = o;
+      lastTrades = t;
+    }
+    running.set(false);
+    double elapsed = (System.nanoTime() - start) / 1e9;
+
+    LatencyHistogram.Snapshot latency = orderToTrade.snapshot();
+    System.out.printf("orders: %,d (%,.0f/s), cancels: %,d, rejected: %,d, overloaded: %,d%n",
+        orders.sum(), orders.sum() / elapsed, cancels.sum(), rejections.sum(), overloads.sum());
+    System.out.printf("trades: %,d (%,.0f/s)%n", trades.sum(), trades.sum() / elapsed);
+    System.out.printf("order-to-trade latency, us: p50 %.1f, p90 %.1f, p99 %.1f, p99.9 %.1f, max %.1f%n",
+        latency.percentile(50) / 1e3, latency.percentile(90) / 1e3, latency.percentile(99) / 1e3,
+        latency.percentile(99.9) / 1e3, latency.max() / 1e3);
+  }
+
+  private void onTrade(TradeRecord trade) {
+    trades.increment();
+    long accepted = Math.max(trade.buyingOrder().acceptedNanos(), trade.sellingOrder().acceptedNanos());
+    orderToTrade.record(System.nanoTime() - accepted);
+  }
+
+  private void produce(StockExchangeFacade facade) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int[] recentSecurities = new int[RECENT_ORDERS];
+    long[] recentOrders = new long[RECENT_ORDERS];
+    int recent = 0;
+    long interval = rate > 0 ? TimeUnit.SECONDS.toNanos(producers) / rate : 0L;
+    long next = System.nanoTime();
+
+    while (running.get() && !Thread.currentThread().isInterrupted()) {
+      if (interval > 0) {
+        next += interval;
+        LockSupport.parkNanos(next - System.nanoTime());
+      }
+      try {
+        if (recent > 0 && random.nextDouble() < cancelRatio) {
+          int k = random.nextInt(Math.min(recent, RECENT_ORDERS));
+          facade.cancelOrder(symbols[recentSecurities[k]], recentOrders[k]);
+          cancels.increment();
+          continue;
+        }
+        int security = security(random);
+        OrderRecord order = place(facade, random, security);
+        orders.increment();
+        if (order.price() != Prices.NO_PRICE) {
+          recentSecurities[recent % RECENT_ORDERS] = security;
+          recentOrders[recent % RECENT_ORDERS] = order.id();
+          recent++;
+        }
+      } catch (OrderBookOverloadedException e) {
+        overloads.increment();
+        Thread.onSpinWait();
+      } catch (CommonException e) {
+        // the order is filled or cancelled already
+        rejections.increment();
+      }
+    }
+  }
+
+  private OrderRecord place(StockExchangeFacade facade, ThreadLocalRandom random, int security) {
+    int traderId = 1 + random.nextInt(traders);
+    String symbol = symbols[security];
+    int quantity = quantity(random);
+    boolean buying = random.nextBoolean();
+    if (random.nextDouble() < marketRatio) {
+      return buying
+          ? facade.buy(traderId, symbol, quantity)
+          : facade.sell(traderId, symbol, quantity);
+    }
+    // the fair price walks a tick at a time, never below the spread
+    long fair = fairPrices.addAndGet(security, random.nextBoolean() ? 1 : -1);
+    if (fair <= PRICE_SPREAD) {
+      fair = fairPrices.addAndGet(security, PRICE_SPREAD);
+    }
+    long offset = random.nextInt(PRICE_SPREAD + PRICE_CROSS + 1) - PRICE_CROSS;
+    return buying
+        ? facade.bid(traderId, symbol, quantity, fair - offset)
+        : facade.ask(traderId, symbol, quantity, fair + offset);
+  }
+
+  /**
+   * 60% of the orders are from 1 to 10 lots, 30% up to 100 and 10% up to 1000
+   */
+  private static int quantity(ThreadLocalRandom random) {
+    double p = random.nextDouble();
+    if (p < 0.6) {
+      return 1 + random.nextInt(10);
+    }
+    if (p < 0.9) {
+      return 10 + random.nextInt(91);
+    }
+    return 100 + random.nextInt(901);
+  }
+
+  private int security(ThreadLocalRandom random) {
+    int i = Arrays.binarySearch(zipfCdf, random.nextDouble());
+    return Math.min(i < 0 ? -i - 1 : i, zipfCdf.length - 1);
+  }
+
+  /**
+   * @return the cumulative probabilities of the ranks from 1 to n, the rank k
+   *         is picked with the probability proportional to 1/k^s
+   */
+  private static double[] zipfCdf(int n, double s) {
+    double[] cdf = new double[n];
+    double sum = 0d;
+    for (int k = 1; k <= n; k++) {
+      sum += 1d / Math.pow(k, s);
+      cdf[k - 1] = sum;
+    }
+    for (int k = 0; k < n; k++) {
+      cdf[k] /= sum;
+    }
+    return cdf;
+  }
+}
@@ -4,34 +4,38 @@ import static java.util.concurrent.CompletableFuture.runAsync;
 
 import java.io.IOException;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import stock.exchange.book.OrderBookManager;
-import stock.exchange.book.OrderBookManagerImpl;
 import stock.exchange.cmd.ShellCommandExecutor;
 import stock.exchange.cmd.ShellCommandExecutorImpl;
 import stock.exchange.domain.OrderRecord;
+import stock.exchange.domain.Prices;
 import stock.exchange.domain.TradeRecord;
-import stock.exchange.engine.OrderBookRunner;
-import stock.exchange.engine.StockMarketEngine;
+import stock.exchange.engine.OrderBookEngine;
 import stock.exchange.instrument.InstrumentManager;
+import stock.exchange.instrument.MarketDataReads;
 import stock.exchange.instrument.MarketDataWorld;
 import stock.exchange.instrument.MarketDataWrites;
 import stock.exchange.integration.AppendToFileDownstream;
 import stock.exchange.integration.Downstream;
 import stock.exchange.integration.FanOutDownstream;
+import stock.exchange.metrics.MetricsHttpServer;
+import stock.exchange.metrics.PrometheusMetrics;
+import stock.exchange.publisher.ConflatingPublisher;
 import stock.exchange.shell.ShellTerminal;
 import stock.exchange.shell.ShellTerminalConsole;
 import stock.exchange.shell.ShellTerminalTcpSocket;
 import stock.exchange.shell.StockExchangeShellTerminalRunner;
 import stock.exchange.shell.TcpSocketTerminalService;
-import stock.exchange.trade.TradeGeneratorImpl;
 import stock.exchange.trader.TraderManager;
 import stock.exchange.trader.TraderManagerImpl;
 
@@ -41,13 +45,15 @@ public class StockExchangeApp {
     Logger logger = LoggerFactory.getLogger(StockExchangeApp.class);
 
     ExecutorService pool = Executors.newFixedThreadPool(2);
+    MetricsHttpServer metricsServer = null;
+    ConflatingPublisher marketDataPublisher = null;
 
-    try (StockMarketEngine stockMarketEngine = new StockMarketEngine()) {
+    try (OrderBookEngine stockMarketEngine = StockExchangeFactory.engine()) {
 
-      MarketDataWorld marketDataWorld = new MarketDataWorld();
+      MarketDataWorld marketDataWorld = StockExchangeFactory.marketDataWorld();
       InstrumentManager instrumentManager = marketDataWorld;
+      MarketDataReads marketDataReads = marketDataWorld;
       MarketDataWrites marketDataWrites = marketDataWorld;
-      OrderBookRunner orderBookRunner = stockMarketEngine;
 
       Downstream<TradeRecord> tradesPostingToFileDownstream = new AppendToFileDownstream<>(
           Paths.get("trades.txt"),
@@ -64,7 +70,7 @@ public class StockExchangeApp {
             sb.append(",quantity:");
             sb.append(t.quantity());
             sb.append(",price:");
-            sb.append(t.price());
+            sb.append(Prices.toString(t.price(), t.security().scale()));
             return sb.toString();
           });
 
@@ -83,20 +89,29 @@ public class StockExchangeApp {
             sb.append(",quantity:");
             sb.append(t.quantity());
             sb.append(",price:");
-            sb.append(t.price());
+            sb.append(Prices.toString(t.price(), t.security().scale()));
             return sb.toString();
           });
 
-      OrderBookManager orderBookManager = new OrderBookManagerImpl(
+      // the books are looked up lazily as the publisher is the downstream of
+      // their own trades
+      AtomicReference<OrderBookManager> quotedBooks = new AtomicReference<>();
+      ConflatingPublisher publisher = new ConflatingPublisher(
+          instrumentManager,
+          s -> quotedBooks.get().findBookByInstrument(s).getMarketDepth(),
+          Duration.ofMillis(Long.getLong("stock.exchange.publisher.interval", 100)),
+          StockExchangeFactory.virtualThreads());
+      marketDataPublisher = publisher;
 
-          new TradeGeneratorImpl(
+      OrderBookManager orderBookManager = StockExchangeFactory.orderBookManager(
 
-              new FanOutDownstream<>(
-                  t -> logger.info("Trade executed {}", t),
-                  marketDataWrites,
-                  tradesPostingToFileDownstream),
+          new FanOutDownstream<>(
+              t -> logger.info("Trade executed {}", t),
+              marketDataWrites,
+              publisher,
+              tradesPostingToFileDownstream),
 
-              (t, e) -> logger.error("Trade event rejected by downstream {}", t, e)),
+          (t, e) -> logger.error("Trade event rejected by downstream {}", t, e),
 
           (t, e) -> logger.error("Order match event rejected by downstream {}", t, e),
 
@@ -104,35 +119,55 @@ public class StockExchangeApp {
               t -> logger.info("Order fulfilled {}", t),
               ordersPostingToFileDownstream),
 
-          (t, e) -> logger.error("Order fulfilled event rejected by downstream {}", t, e)
+          (t, e) -> logger.error("Order fulfilled event rejected by downstream or order rejected by the matcher {}", t, e)
 
       );
 
+      quotedBooks.set(orderBookManager);
+      publisher.start();
+
       TraderManager traderManager = new TraderManagerImpl();
 
-      StockExchangeFacade stockExchangeFacade = new StockExchangeFacadeImpl(
+      StockExchangeFacade stockExchangeFacade = StockExchangeFactory.facade(
           instrumentManager,
+          marketDataReads,
           traderManager,
-          orderBookRunner,
+          stockMarketEngine,
           orderBookManager);
 
       ShellCommandExecutor shellCommandExecutor = new ShellCommandExecutorImpl(stockExchangeFacade);
 
-      runAsync(
-          new TcpSocketTerminalService(
-              socket -> {
-                ShellTerminal terminal = new ShellTerminalTcpSocket(socket);
-                return new StockExchangeShellTerminalRunner(shellCommandExecutor, terminal);
-              },
-              7070),
-          pool);
+      TcpSocketTerminalService terminalService = new TcpSocketTerminalService(
+          socket -> {
+            ShellTerminal terminal = new ShellTerminalTcpSocket(socket);
+            return new StockExchangeShellTerminalRunner(shellCommandExecutor, terminal, publisher);
+          },
+          7070,
+          StockExchangeFactory.virtualThreads());
+
+      runAsync(terminalService, pool);
+
+      // the metrics are served to the Prometheus scraper only if the port is set
+      int metricsPort = Integer.getInteger("stock.exchange.metrics.port", -1);
+      metricsServer = metricsPort < 0 ? null
+          : new MetricsHttpServer(
+              new PrometheusMetrics(stockExchangeFacade, terminalService,
+                  Integer.getInteger("stock.exchange.metrics.depthLevels", 5)),
+              metricsPort);
 
       runAsync(
-          new StockExchangeShellTerminalRunner(shellCommandExecutor, new ShellTerminalConsole(System.console())),
+          new StockExchangeShellTerminalRunner(shellCommandExecutor, new ShellTerminalConsole(System.console()),
+              publisher),
           pool)
               .join();
 
     } finally {
+      if (metricsServer != null) {
+        metricsServer.close();
+      }
+      if (marketDataPublisher != null) {
+        marketDataPublisher.close();
+      }
       pool.shutdownNow();
       try {
         pool.awaitTermination(60 * 1000, TimeUnit.MILLISECONDS);
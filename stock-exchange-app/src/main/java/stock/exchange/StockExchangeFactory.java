@@ -0,0 +1,124 @@
+package stock.exchange;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.function.Function;
+
+import stock.exchange.bars.TradeBars;
+import stock.exchange.book.OrderBookImpl;
+import stock.exchange.book.OrderBookManager;
+import stock.exchange.book.OrderBookManagerImpl;
+import stock.exchange.domain.OrderMatchRecord;
+import stock.exchange.domain.OrderRecord;
+import stock.exchange.domain.SecurityRecord;
+import stock.exchange.domain.TradeRecord;
+import stock.exchange.engine.BackoffIdleStrategy;
+import stock.exchange.engine.BlockingIdleStrategy;
+import stock.exchange.engine.BusySpinIdleStrategy;
+import stock.exchange.engine.IdleStrategy;
+import stock.exchange.engine.OrderBookEngine;
+import stock.exchange.engine.ShardedStockMarketEngine;
+import stock.exchange.engine.SpinYieldIdleStrategy;
+import stock.exchange.engine.StockMarketEngine;
+import stock.exchange.engine.TickerInterval;
+import stock.exchange.instrument.InstrumentManager;
+import stock.exchange.instrument.MarketDataReads;
+import stock.exchange.instrument.MarketDataWorld;
+import stock.exchange.integration.Downstream;
+import stock.exchange.integration.RejectedDownstream;
+import stock.exchange.matcher.ArrayStockMatcher;
+import stock.exchange.matcher.PriceLadderStockMatcher;
+import stock.exchange.matcher.StockMatcher;
+import stock.exchange.matcher.StockMatcherImpl;
+import stock.exchange.trade.TradeGeneratorImpl;
+import stock.exchange.trader.TraderManager;
+
+/**
+ * Builds the parts of the exchange chosen by the
+ * <code>stock.exchange.*</code> system properties, so the app and the load
+ * generator run the same exchange. The downstreams are given by the caller
+ */
+final class StockExchangeFactory {
+
+  private StockExchangeFactory() {
+  }
+
+  static boolean virtualThreads() {
+    return Boolean.getBoolean("stock.exchange.virtualThreads");
+  }
+
+  /**
+   * The thread-per-book engine with the idle strategy per security symbol, or
+   * the sharded one
+   */
+  static OrderBookEngine engine() {
+    if ("sharded".equals(System.getProperty("stock.exchange.engine"))) {
+      return new ShardedStockMarketEngine(
+          Integer.getInteger("stock.exchange.engine.workers", Runtime.getRuntime().availableProcessors()));
+    }
+    Function<SecurityRecord, IdleStrategy> idleStrategyFactory = //
+        s -> switch (System.getProperty("stock.exchange.idle." + s.symbol(),
+            System.getProperty("stock.exchange.idle", "blocking"))) {
+          case "spin" -> new BusySpinIdleStrategy();
+          case "yield" -> new SpinYieldIdleStrategy();
+          case "backoff" -> new BackoffIdleStrategy();
+          default -> new BlockingIdleStrategy();
+        };
+    return new StockMarketEngine(idleStrategyFactory, virtualThreads());
+  }
+
+  static MarketDataWorld marketDataWorld() {
+    String barIntervals = System.getProperty("stock.exchange.bars.intervals");
+    return new MarketDataWorld(
+        barIntervals == null
+            ? TradeBars.DEFAULT_INTERVALS
+            : Arrays.stream(barIntervals.split(",")).map(String::trim).map(TradeBars::parseInterval).toList(),
+        Integer.getInteger("stock.exchange.bars.capacity", TradeBars.DEFAULT_CAPACITY));
+  }
+
+  static Function<SecurityRecord, StockMatcher> stockMatcherFactory() {
+    return switch (System.getProperty("stock.exchange.matcher", "ladder")) {
+      case "heap" -> s -> new StockMatcherImpl();
+      case "array" -> s -> new ArrayStockMatcher(
+          Integer.getInteger("stock.exchange.matcher.capacity", 1024));
+      default -> s -> new PriceLadderStockMatcher();
+    };
+  }
+
+  static OrderBookManager orderBookManager(
+      Downstream<TradeRecord> tradeDownstream,
+      RejectedDownstream<TradeRecord> tradeDownstreamRejected,
+      RejectedDownstream<OrderMatchRecord> orderMatchDownstreamRejected,
+      Downstream<OrderRecord> filledOrderDownstream,
+      RejectedDownstream<OrderRecord> filledOrderDownstreamRejected) {
+    return new OrderBookManagerImpl(
+        stockMatcherFactory(),
+        Integer.getInteger("stock.exchange.book.ingressCapacity", OrderBookImpl.DEFAULT_INGRESS_CAPACITY),
+        new TradeGeneratorImpl(tradeDownstream, tradeDownstreamRejected),
+        orderMatchDownstreamRejected,
+        filledOrderDownstream,
+        filledOrderDownstreamRejected);
+  }
+
+  /**
+   * The facade ticking every book by the ticker interval of its security symbol
+   */
+  static StockExchangeFacade facade(
+      InstrumentManager instrumentManager,
+      MarketDataReads marketDataReads,
+      TraderManager traderManager,
+      OrderBookEngine engine,
+      OrderBookManager orderBookManager) {
+    return new StockExchangeFacadeImpl(
+        instrumentManager,
+        marketDataReads,
+        traderManager,
+        engine,
+        orderBookManager,
+        s -> TickerInterval.adaptive(
+            Duration.ofMillis(Long.getLong("stock.exchange.tickInterval." + s.symbol(),
+                Long.getLong("stock.exchange.tickInterval", 1000))),
+            Duration.ofMillis(Long.getLong("stock.exchange.tickInterval.max." + s.symbol(),
+                Long.getLong("stock.exchange.tickInterval.max", 60000)))));
+  }
+}
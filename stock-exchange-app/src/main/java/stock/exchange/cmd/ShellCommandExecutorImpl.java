@@ -1,16 +1,33 @@
 package stock.exchange.cmd;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+
 import stock.exchange.StockExchangeFacade;
+import stock.exchange.bars.Bar;
+import stock.exchange.bars.TradeBars;
+import stock.exchange.book.AuctionIndication;
+import stock.exchange.book.MarketDepth;
 import stock.exchange.common.CommonException;
+import stock.exchange.domain.Prices;
+import stock.exchange.domain.SecurityRecord;
+import stock.exchange.engine.OrderBookMetrics;
+import stock.exchange.instrument.NoSuchSecurityException;
+import stock.exchange.latency.LatencyTrace;
 
 public class ShellCommandExecutorImpl implements ShellCommandExecutor {
 
   private static final String ADD = "ADD";
   private static final String ERR = "ERR";
   private static final String ASK = "ASK";
+  private static final String AUCTION = "AUCTION";
+  private static final String BARS = "BARS";
   private static final String BID = "BID";
   private static final String BUY = "BUY";
   private static final String CANCEL = "CANCEL";
+  private static final String DEPTH = "DEPTH";
+  private static final String DIVISOR = "DIVISOR";
   private static final String SELL = "SELL";
   private static final String COMPOSITE = "COMPOSITE";
   private static final String SECURITY = "SECURITY";
@@ -23,9 +40,19 @@ public class ShellCommandExecutorImpl implements ShellCommandExecutor {
   private static final String ORDERS = "ORDERS";
   private static final String LIST = "LIST";
   private static final String SHOW = "SHOW";
+  private static final String STATS = "STATS";
+  private static final String LATENCY = "LATENCY";
+  private static final String ON = "ON";
+  private static final String OFF = "OFF";
+  private static final String START = "START";
+  private static final String UNCROSS = "UNCROSS";
   private static final String BYE = "BYE";
   private static final String QUIT = "QUIT";
 
+  private static final int DEFAULT_SCALE = 4;
+  private static final int DEFAULT_DEPTH_LEVELS = 5;
+  private static final int DEFAULT_BARS = 10;
+
   private final StockExchangeFacade stockExchangeFacade;
 
   public ShellCommandExecutorImpl(StockExchangeFacade stockExchangeFacade) {
@@ -60,15 +87,17 @@ public class ShellCommandExecutorImpl implements ShellCommandExecutor {
               case SECURITY: {
                 int securityId;
                 String symbol;
-                double initialPrice;
+                int scale;
+                long initialPrice;
                 try {
                   securityId = Integer.parseInt(tokens[2]);
                   symbol = tokens[3].toUpperCase();
-                  initialPrice = Double.parseDouble(tokens[4]);
-                } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
-                  throw new InvalidInput(CREATE + " " + SECURITY + " <id> <symbol> <initialPrice>");
+                  scale = tokens.length > 5 ? Integer.parseInt(tokens[5]) : DEFAULT_SCALE;
+                  initialPrice = Prices.parse(tokens[4], scale);
+                } catch (ArrayIndexOutOfBoundsException | NumberFormatException | ArithmeticException e) {
+                  throw new InvalidInput(CREATE + " " + SECURITY + " <id> <symbol> <initialPrice> [<scale>]");
                 }
-                var security = stockExchangeFacade.createSecurity(securityId, symbol, initialPrice);
+                var security = stockExchangeFacade.createSecurity(securityId, symbol, scale, initialPrice);
                 return CREATE + ": " + security;
               }
 
@@ -76,19 +105,43 @@ public class ShellCommandExecutorImpl implements ShellCommandExecutor {
                 int instrumentId;
                 String symbol;
                 String[] compositeSymbols;
+                long[] weights;
+                double divisor = Double.NaN;
+                boolean weighted = false;
                 try {
                   instrumentId = Integer.parseInt(tokens[2]);
                   symbol = tokens[3].toUpperCase();
-                  compositeSymbols = new String[tokens.length - 4];
-                  for (int i = 4; i < tokens.length; i++) {
-                    compositeSymbols[i - 4] = tokens[i].toUpperCase();
+                  int end = tokens.length;
+                  if (end > 5 && DIVISOR.equalsIgnoreCase(tokens[end - 2])) {
+                    divisor = Double.parseDouble(tokens[end - 1]);
+                    weighted = true;
+                    end -= 2;
+                  }
+                  compositeSymbols = new String[end - 4];
+                  weights = new long[end - 4];
+                  for (int i = 4; i < end; i++) {
+                    String component = tokens[i];
+                    int colon = component.indexOf(':');
+                    if (colon < 0) {
+                      weights[i - 4] = 1L;
+                    } else {
+                      weights[i - 4] = Long.parseLong(component.substring(colon + 1));
+                      component = component.substring(0, colon);
+                      weighted = true;
+                    }
+                    compositeSymbols[i - 4] = component.toUpperCase();
                   }
 
                 } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
                   throw new InvalidInput(
-                      CREATE + " " + COMPOSITE + " <id> <symbol> <securitySymbol1...> <securitySymbolN>");
+                      CREATE + " " + COMPOSITE
+                          + " <id> <symbol> <securitySymbol1>[:<weight1>...] <securitySymbolN>[:<weightN>] ["
+                          + DIVISOR + " <divisor>]");
                 }
-                var instrument = stockExchangeFacade.createComposite(instrumentId, symbol, compositeSymbols);
+                var instrument = weighted
+                    ? stockExchangeFacade.createComposite(instrumentId, symbol, compositeSymbols, weights,
+                        Double.isNaN(divisor) ? compositeSymbols.length : divisor)
+                    : stockExchangeFacade.createComposite(instrumentId, symbol, compositeSymbols);
                 return CREATE + ": " + instrument;
               }
 
@@ -178,6 +231,145 @@ public class ShellCommandExecutorImpl implements ShellCommandExecutor {
           return LIST + " " + ORDERS + "|" + INSTRUMENTS;
         }
 
+        case AUCTION: {
+          try {
+            String symbol;
+            try {
+              symbol = tokens[2].toUpperCase();
+            } catch (ArrayIndexOutOfBoundsException e) {
+              throw new InvalidInput(AUCTION + " " + START + "|" + SHOW + "|" + UNCROSS + " <securitySymbol>");
+            }
+            switch (tokens[1].toUpperCase()) {
+              case START: {
+                stockExchangeFacade.startAuction(symbol);
+                return AUCTION + ": " + symbol + " started";
+              }
+
+              case SHOW: {
+                var indication = stockExchangeFacade.getAuctionIndication(symbol);
+                if (indication == null) {
+                  return AUCTION + ": " + symbol + " " + EMPTY;
+                }
+                return AUCTION + ": " + symbol + " " + format(symbol, indication);
+              }
+
+              case UNCROSS: {
+                var indication = stockExchangeFacade.uncross(symbol);
+                return AUCTION + ": " + symbol + " uncrossed " + format(symbol, indication);
+              }
+            }
+          } catch (ArrayIndexOutOfBoundsException e) {
+          }
+          return AUCTION + " " + START + "|" + SHOW + "|" + UNCROSS;
+        }
+
+        case BARS: {
+          String symbol;
+          Duration interval;
+          int count;
+          try {
+            symbol = tokens[1].toUpperCase();
+            interval = TradeBars.parseInterval(tokens[2]);
+            count = tokens.length > 3 ? Integer.parseInt(tokens[3]) : DEFAULT_BARS;
+          } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new InvalidInput(BARS + " <securitySymbol> <interval> [<count>]");
+          }
+          if (count <= 0) {
+            throw new InvalidInput(BARS + " <securitySymbol> <interval> [<count>]");
+          }
+          var bars = stockExchangeFacade.getBars(symbol, interval, count);
+          int scale = ((SecurityRecord) stockExchangeFacade.getInstrument(symbol)).scale();
+          StringBuilder sb = new StringBuilder();
+          sb.append(BARS + ": " + symbol + " " + TradeBars.toString(interval));
+          if (bars.isEmpty()) {
+            sb.append(" " + EMPTY);
+          }
+          for (var bar : bars) {
+            appendBar(sb, bar, scale);
+          }
+          return sb.toString();
+        }
+
+        case DEPTH: {
+          String symbol;
+          int levels;
+          try {
+            symbol = tokens[1].toUpperCase();
+            levels = tokens.length > 2 ? Integer.parseInt(tokens[2]) : DEFAULT_DEPTH_LEVELS;
+          } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            throw new InvalidInput(DEPTH + " <securitySymbol> [<levels>]");
+          }
+          if (levels <= 0) {
+            throw new InvalidInput(DEPTH + " <securitySymbol> [<levels>]");
+          }
+          var depth = stockExchangeFacade.getMarketDepth(symbol, levels);
+          int scale = ((SecurityRecord) stockExchangeFacade.getInstrument(symbol)).scale();
+          StringBuilder sb = new StringBuilder();
+          sb.append(DEPTH + ": " + symbol);
+          if (depth.isEmpty()) {
+            sb.append(" " + EMPTY);
+          }
+          // the asks go from the worst price down to the best, followed by the bids
+          for (int i = depth.asks().size() - 1; i >= 0; i--) {
+            appendLevel(sb, ASK, depth.asks().get(i), scale);
+          }
+          for (var level : depth.bids()) {
+            appendLevel(sb, BID, level, scale);
+          }
+          return sb.toString();
+        }
+
+        case STATS: {
+          if (tokens.length == 1) {
+            var all = stockExchangeFacade.getEngineMetrics();
+            StringBuilder sb = new StringBuilder();
+            sb.append(STATS + ":");
+            if (all.isEmpty()) {
+              sb.append(" " + EMPTY);
+            }
+            for (var metrics : all) {
+              appendMetrics(sb, metrics);
+            }
+            return sb.toString();
+          }
+          if (!LATENCY.equals(tokens[1].toUpperCase())) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(STATS + ":");
+            appendMetrics(sb, stockExchangeFacade.getEngineMetrics(tokens[1].toUpperCase()));
+            return sb.toString();
+          }
+          String symbol;
+          try {
+            symbol = tokens[2].toUpperCase();
+          } catch (ArrayIndexOutOfBoundsException e) {
+            throw new InvalidInput(STATS + " " + LATENCY + " <securitySymbol> [" + ON + "|" + OFF + "]");
+          }
+          if (tokens.length > 3) {
+            switch (tokens[3].toUpperCase()) {
+              case ON: {
+                stockExchangeFacade.setLatencyTracing(symbol, true);
+                return STATS + ": " + LATENCY + " " + symbol + " " + ON;
+              }
+
+              case OFF: {
+                stockExchangeFacade.setLatencyTracing(symbol, false);
+                return STATS + ": " + LATENCY + " " + symbol + " " + OFF;
+              }
+            }
+            throw new InvalidInput(STATS + " " + LATENCY + " <securitySymbol> [" + ON + "|" + OFF + "]");
+          }
+          var stages = stockExchangeFacade.getLatencyStats(symbol);
+          StringBuilder sb = new StringBuilder();
+          sb.append(STATS + ": " + LATENCY + " " + symbol);
+          if (stages.isEmpty()) {
+            sb.append(" " + EMPTY);
+          }
+          for (var stage : stages) {
+            appendStage(sb, stage);
+          }
+          return sb.toString();
+        }
+
         case SELL: {
           int traderId;
           String symbol;
@@ -225,15 +417,16 @@ public class ShellCommandExecutorImpl implements ShellCommandExecutor {
           int traderId;
           String symbol;
           int quantity;
-          double price;
+          String priceText;
           try {
             traderId = Integer.parseInt(tokens[1]);
             symbol = tokens[2].toUpperCase();
             quantity = Integer.parseInt(tokens[3]);
-            price = Double.parseDouble(tokens[4]);
+            priceText = tokens[4];
           } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
             throw new InvalidInput(BID + " <traderId> <symbol> <quantity> <price>");
           }
+          long price = parsePrice(symbol, priceText, BID + " <traderId> <symbol> <quantity> <price>");
           var order = stockExchangeFacade.bid(traderId, symbol, quantity, price);
           return BID + ": " + order;
         }
@@ -242,15 +435,16 @@ public class ShellCommandExecutorImpl implements ShellCommandExecutor {
           int traderId;
           String symbol;
           int quantity;
-          double price;
+          String priceText;
           try {
             traderId = Integer.parseInt(tokens[1]);
             symbol = tokens[2].toUpperCase();
             quantity = Integer.parseInt(tokens[3]);
-            price = Double.parseDouble(tokens[4]);
+            priceText = tokens[4];
           } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
             throw new InvalidInput(ASK + " <traderId> <symbol> <quantity> <price>");
           }
+          long price = parsePrice(symbol, priceText, ASK + " <traderId> <symbol> <quantity> <price>");
           var order = stockExchangeFacade.ask(traderId, symbol, quantity, price);
           return ASK + ": " + order;
         }
@@ -271,6 +465,81 @@ public class ShellCommandExecutorImpl implements ShellCommandExecutor {
     return "Unrecoginized input";
   }
 
+  private String format(String symbol, AuctionIndication indication) {
+    int scale = ((SecurityRecord) stockExchangeFacade.getInstrument(symbol)).scale();
+    return "price=" + Prices.toString(indication.price(), scale)
+        + ", volume=" + indication.volume()
+        + ", imbalance=" + indication.imbalance();
+  }
+
+  /**
+   * The VWAP is printed with two more decimal places than the prices, or as
+   * <code>NaN</code> if the turnover of the bar overflowed
+   */
+  private static void appendBar(StringBuilder sb, Bar bar, int scale) {
+    sb.append(System.lineSeparator());
+    sb.append(bar.start()
+        + " O " + Prices.toString(bar.open(), scale)
+        + " H " + Prices.toString(bar.high(), scale)
+        + " L " + Prices.toString(bar.low(), scale)
+        + " C " + Prices.toString(bar.close(), scale)
+        + " V " + bar.volume()
+        + " VWAP " + (bar.turnover() == Bar.NO_TURNOVER
+            ? String.valueOf(Double.NaN)
+            : BigDecimal.valueOf(bar.turnover(), scale)
+                .divide(BigDecimal.valueOf(bar.volume()), scale + 2, RoundingMode.HALF_EVEN)
+                .toPlainString()));
+  }
+
+  private static void appendLevel(StringBuilder sb, String side, MarketDepth.Level level, int scale) {
+    sb.append(System.lineSeparator());
+    sb.append(side + " " + Prices.toString(level.price(), scale)
+        + " " + level.volume()
+        + " (" + level.ordersCount() + ")");
+  }
+
+  /**
+   * The tick durations are printed in microseconds
+   */
+  private static void appendMetrics(StringBuilder sb, OrderBookMetrics metrics) {
+    var duration = metrics.tickDuration();
+    var book = metrics.book();
+    sb.append(System.lineSeparator());
+    sb.append(String.format("%s ticks %,d (%,d/s) tick p50 %.1f p99 %.1f max %.1f"
+        + " queued %,d resting %,d matches %,d (%.1f/tick) fills %,d (%.1f/tick)"
+        + " rejections %,d exceptions %,d",
+        metrics.symbol(), metrics.ticks(), metrics.ticksPerSecond(),
+        duration.percentile(50) / 1e3, duration.percentile(99) / 1e3, duration.max() / 1e3,
+        book.queuedOrders(), book.restingOrders(),
+        book.matches(), metrics.matchesPerTick(), book.filledOrders(), metrics.fillsPerTick(),
+        book.rejections(), metrics.exceptions()));
+  }
+
+  /**
+   * The latencies are printed in microseconds
+   */
+  private static void appendStage(StringBuilder sb, LatencyTrace.StageLatency stage) {
+    var latency = stage.latency();
+    sb.append(System.lineSeparator());
+    sb.append(String.format("%-14s %,10d p50 %.1f p90 %.1f p99 %.1f p99.9 %.1f max %.1f",
+        stage.stage(), latency.count(),
+        latency.percentile(50) / 1e3, latency.percentile(90) / 1e3, latency.percentile(99) / 1e3,
+        latency.percentile(99.9) / 1e3, latency.max() / 1e3));
+  }
+
+  private long parsePrice(String symbol, String price, String usage) {
+    if (stockExchangeFacade.getInstrument(symbol) instanceof SecurityRecord security) {
+      try {
+        return Prices.parse(price, security.scale());
+      } catch (NumberFormatException e) {
+        throw new InvalidInput(usage);
+      } catch (ArithmeticException e) {
+        throw new InvalidInput("Price " + price + " doesn't fit the scale " + security.scale() + " of " + symbol);
+      }
+    }
+    throw new NoSuchSecurityException(symbol);
+  }
+
   @SuppressWarnings("serial")
   private static class InvalidInput extends CommonException {
 
@@ -0,0 +1,101 @@
+package stock.exchange.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * The embedded HTTP server serving the metrics to the Prometheus scraper at
+ * <code>/metrics</code>.
+ *
+ * The requests are served one at a time by a single thread, so the scraping
+ * never competes with the matching threads for more than one core.
+ */
+public class MetricsHttpServer implements AutoCloseable {
+
+  private static final String PATH = "/metrics";
+  private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final PrometheusMetrics metrics;
+
+  /**
+   * Starts serving the metrics
+   *
+   * @param port the port to listen at, 0 for any free one
+   */
+  public MetricsHttpServer(PrometheusMetrics metrics, int port) throws IOException {
+    this.metrics = metrics;
+    this.server = HttpServer.create(new InetSocketAddress(port), 0);
+    this.executor = Executors.newSingleThreadExecutor(r -> {
+      Thread t = new Thread(r, "metrics-http");
+      t.setDaemon(true);
+      return t;
+    });
+    server.createContext(PATH, this::handle);
+    server.setExecutor(executor);
+    server.start();
+    logger.info("Serving metrics at http://{}:{}{}", server.getAddress().getHostString(), port(), PATH);
+  }
+
+  /**
+   * @return the port the server listens at
+   */
+  public int port() {
+    return server.getAddress().getPort();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      if (!PATH.equals(exchange.getRequestURI().getPath())) {
+        exchange.sendResponseHeaders(404, -1);
+        return;
+      }
+      if (!"GET".equals(exchange.getRequestMethod())) {
+        exchange.getResponseHeaders().set("Allow", "GET");
+        exchange.sendResponseHeaders(405, -1);
+        return;
+      }
+      byte[] body;
+      try {
+        StringBuilder sb = new StringBuilder(16 * 1024);
+        metrics.render(sb);
+        body = sb.toString().getBytes(StandardCharsets.UTF_8);
+      } catch (RuntimeException e) {
+        logger.error("Unable to render the metrics", e);
+        exchange.sendResponseHeaders(500, -1);
+        return;
+      }
+      exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    } finally {
+      exchange.close();
+    }
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.shutdownNow();
+    try {
+      executor.awaitTermination(5, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,229 @@
+package stock.exchange.metrics;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import stock.exchange.StockExchangeFacade;
+import stock.exchange.book.MarketDepth;
+import stock.exchange.common.CommonException;
+import stock.exchange.domain.Prices;
+import stock.exchange.domain.SecurityRecord;
+import stock.exchange.engine.OrderBookMetrics;
+import stock.exchange.shell.TcpSocketTerminalService;
+import util.metrics.LatencyHistogram;
+
+/**
+ * Renders the metrics of the exchange and the JVM in the Prometheus text
+ * exposition format.
+ *
+ * The metrics of the order books are read from the counters and the snapshots
+ * the books and the engine publish, the same way as by the
+ * <code>STATS</code> and <code>DEPTH</code> commands, so the rendering never
+ * takes the locks held by the matching threads and the scraping adds no
+ * latency to the trading.
+ *
+ * The allocated bytes are summed up over the live threads since the previous
+ * rendering, so the bytes a thread allocated since then are lost if the thread
+ * terminates.
+ *
+ * The implementation is not thread-safe, the metrics are rendered by a single
+ * thread at a time.
+ */
+public class PrometheusMetrics {
+
+  private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+  private final StockExchangeFacade stockExchangeFacade;
+  private final TcpSocketTerminalService terminalService;
+  private final int depthLevels;
+
+  private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+  private final List<GarbageCollectorMXBean> garbageCollectors = ManagementFactory.getGarbageCollectorMXBeans();
+  private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+  private final Map<Long, Long> allocatedByThread = new HashMap<>();
+  private long allocatedBytes;
+
+  /**
+   * @param terminalService the service of the terminal sessions or
+   *                        <code>null</code> if there is none
+   * @param depthLevels     the number of the best price levels per side the
+   *                        depth volume is summed up over
+   */
+  public PrometheusMetrics(StockExchangeFacade stockExchangeFacade, TcpSocketTerminalService terminalService,
+      int depthLevels) {
+    this.stockExchangeFacade = stockExchangeFacade;
+    this.terminalService = terminalService;
+    this.depthLevels = depthLevels;
+  }
+
+  public void render(StringBuilder sb) {
+    renderBooks(sb);
+    renderSessions(sb);
+    renderJvm(sb);
+  }
+
+  private void renderBooks(StringBuilder sb) {
+    List<OrderBookMetrics> books = stockExchangeFacade.getEngineMetrics();
+
+    header(sb, "stock_exchange_orders_total", "counter", "Orders taken by the order book");
+    for (var m : books) {
+      sample(sb, "stock_exchange_orders_total", m.symbol(), m.book().orders());
+    }
+    header(sb, "stock_exchange_trades_total", "counter", "Matches executed by the order book");
+    for (var m : books) {
+      sample(sb, "stock_exchange_trades_total", m.symbol(), m.book().matches());
+    }
+    header(sb, "stock_exchange_filled_orders_total", "counter", "Orders fully filled");
+    for (var m : books) {
+      sample(sb, "stock_exchange_filled_orders_total", m.symbol(), m.book().filledOrders());
+    }
+    header(sb, "stock_exchange_downstream_errors_total", "counter",
+        "Matches and filled orders rejected by the downstreams");
+    for (var m : books) {
+      sample(sb, "stock_exchange_downstream_errors_total", m.symbol(), m.book().rejections());
+    }
+    header(sb, "stock_exchange_queued_orders", "gauge", "Orders placed but not taken by the tick yet");
+    for (var m : books) {
+      sample(sb, "stock_exchange_queued_orders", m.symbol(), m.book().queuedOrders());
+    }
+    header(sb, "stock_exchange_resting_orders", "gauge", "Orders resting in the order book");
+    for (var m : books) {
+      sample(sb, "stock_exchange_resting_orders", m.symbol(), m.book().restingOrders());
+    }
+    header(sb, "stock_exchange_ticks_total", "counter", "Ticks of the order book");
+    for (var m : books) {
+      sample(sb, "stock_exchange_ticks_total", m.symbol(), m.ticks());
+    }
+    header(sb, "stock_exchange_tick_exceptions_total", "counter", "Ticks failed by an exception");
+    for (var m : books) {
+      sample(sb, "stock_exchange_tick_exceptions_total", m.symbol(), m.exceptions());
+    }
+
+    header(sb, "stock_exchange_tick_duration_seconds", "summary", "Duration of the ticks of the order book");
+    for (var m : books) {
+      LatencyHistogram.Snapshot duration = m.tickDuration();
+      for (double q : QUANTILES) {
+        sb.append("stock_exchange_tick_duration_seconds{symbol=\"").append(escape(m.symbol()))
+            .append("\",quantile=\"").append(q).append("\"} ")
+            .append(duration.percentile(q * 100) / 1e9).append('\n');
+      }
+      sample(sb, "stock_exchange_tick_duration_seconds_sum", m.symbol(), duration.mean() * duration.count() / 1e9);
+      sample(sb, "stock_exchange_tick_duration_seconds_count", m.symbol(), duration.count());
+    }
+
+    StringBuilder volumes = new StringBuilder();
+    StringBuilder prices = new StringBuilder();
+    for (var m : books) {
+      MarketDepth.Snapshot depth;
+      int scale;
+      try {
+        depth = stockExchangeFacade.getMarketDepth(m.symbol(), depthLevels);
+        scale = ((SecurityRecord) stockExchangeFacade.getInstrument(m.symbol())).scale();
+      } catch (CommonException e) {
+        continue; // the book is not registered yet
+      }
+      depth(volumes, prices, m.symbol(), "bid", depth.bids(), scale);
+      depth(volumes, prices, m.symbol(), "ask", depth.asks(), scale);
+    }
+    header(sb, "stock_exchange_depth_volume", "gauge", "Volume resting at the best price levels of the side");
+    sb.append(volumes);
+    header(sb, "stock_exchange_best_price", "gauge", "Best price of the side, absent if the side is empty");
+    sb.append(prices);
+  }
+
+  private static void depth(StringBuilder volumes, StringBuilder prices, String symbol, String side,
+      List<MarketDepth.Level> levels, int scale) {
+    long volume = 0L;
+    for (var level : levels) {
+      volume += level.volume();
+    }
+    volumes.append("stock_exchange_depth_volume{symbol=\"").append(escape(symbol))
+        .append("\",side=\"").append(side).append("\"} ").append(volume).append('\n');
+    if (!levels.isEmpty()) {
+      prices.append("stock_exchange_best_price{symbol=\"").append(escape(symbol))
+          .append("\",side=\"").append(side).append("\"} ")
+          .append(Prices.toDouble(levels.get(0).price(), scale)).append('\n');
+    }
+  }
+
+  private void renderSessions(StringBuilder sb) {
+    if (terminalService == null) {
+      return;
+    }
+    header(sb, "stock_exchange_sessions", "gauge", "Terminal sessions being served");
+    sb.append("stock_exchange_sessions ").append(terminalService.activeSessions()).append('\n');
+    header(sb, "stock_exchange_sessions_total", "counter", "Terminal sessions accepted");
+    sb.append("stock_exchange_sessions_total ").append(terminalService.sessionsCount()).append('\n');
+  }
+
+  private void renderJvm(StringBuilder sb) {
+    header(sb, "jvm_memory_used_bytes", "gauge", "Memory used by the JVM");
+    sb.append("jvm_memory_used_bytes{area=\"heap\"} ").append(memory.getHeapMemoryUsage().getUsed()).append('\n');
+    sb.append("jvm_memory_used_bytes{area=\"nonheap\"} ").append(memory.getNonHeapMemoryUsage().getUsed())
+        .append('\n');
+
+    header(sb, "jvm_gc_collections_total", "counter", "Collections by the garbage collector");
+    for (var gc : garbageCollectors) {
+      sb.append("jvm_gc_collections_total{gc=\"").append(escape(gc.getName())).append("\"} ")
+          .append(Math.max(0L, gc.getCollectionCount())).append('\n');
+    }
+    header(sb, "jvm_gc_collection_seconds_total", "counter", "Time spent by the garbage collector");
+    for (var gc : garbageCollectors) {
+      sb.append("jvm_gc_collection_seconds_total{gc=\"").append(escape(gc.getName())).append("\"} ")
+          .append(Math.max(0L, gc.getCollectionTime()) / 1e3).append('\n');
+    }
+
+    if (threads instanceof com.sun.management.ThreadMXBean allocation
+        && allocation.isThreadAllocatedMemorySupported()
+        && allocation.isThreadAllocatedMemoryEnabled()) {
+      header(sb, "jvm_allocated_bytes_total", "counter", "Bytes allocated by the threads in the heap");
+      sb.append("jvm_allocated_bytes_total ").append(allocatedBytes(allocation)).append('\n');
+    }
+  }
+
+  private long allocatedBytes(com.sun.management.ThreadMXBean allocation) {
+    long[] ids = allocation.getAllThreadIds();
+    long[] bytes = allocation.getThreadAllocatedBytes(ids);
+    Map<Long, Long> live = new HashMap<>(ids.length * 2);
+    for (int i = 0; i < ids.length; i++) {
+      if (bytes[i] < 0) {
+        continue; // the thread has terminated meanwhile
+      }
+      Long previous = allocatedByThread.get(ids[i]);
+      allocatedBytes += bytes[i] - (previous == null ? 0L : previous);
+      live.put(ids[i], bytes[i]);
+    }
+    // the threads terminated since the previous rendering are forgotten
+    allocatedByThread.clear();
+    allocatedByThread.putAll(live);
+    return allocatedBytes;
+  }
+
+  private static void header(StringBuilder sb, String name, String type, String help) {
+    sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+  }
+
+  private static void sample(StringBuilder sb, String name, String symbol, long value) {
+    sb.append(name).append("{symbol=\"").append(escape(symbol)).append("\"} ").append(value).append('\n');
+  }
+
+  private static void sample(StringBuilder sb, String name, String symbol, double value) {
+    sb.append(name).append("{symbol=\"").append(escape(symbol)).append("\"} ").append(value).append('\n');
+  }
+
+  /**
+   * Escapes the label value
+   */
+  static String escape(String value) {
+    if (value.indexOf('\\') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+      return value;
+    }
+    return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+}
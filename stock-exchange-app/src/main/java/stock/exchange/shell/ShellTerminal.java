@@ -6,6 +6,10 @@ public interface ShellTerminal {
 
   String readLine() throws IOException;
 
+  /**
+   * Writes the line as a whole, may be called by the number of threads, e.g.
+   * the market data pushed along with the command results
+   */
   void writeLine(String line) throws IOException;
 
   void onFinish() throws IOException;
@@ -2,10 +2,13 @@ package stock.exchange.shell;
 
 import java.io.Console;
 import java.io.IOException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class ShellTerminalConsole implements ShellTerminal {
 
   private final Console console;
+  private final Lock lock = new ReentrantLock(); // does not pin the virtual thread blocked on IO
 
   public ShellTerminalConsole(Console console) {
     this.console = console;
@@ -18,7 +21,12 @@ public class ShellTerminalConsole implements ShellTerminal {
 
   @Override
   public void writeLine(String line) throws IOException {
-    console.writer().println(line);
+    lock.lock();
+    try {
+      console.writer().println(line);
+    } finally {
+      lock.unlock();
+    }
   }
 
   @Override
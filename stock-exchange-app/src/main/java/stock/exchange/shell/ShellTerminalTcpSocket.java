@@ -7,12 +7,15 @@ import java.io.InputStreamReader;
 import java.io.InterruptedIOException;
 import java.io.OutputStreamWriter;
 import java.net.Socket;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class ShellTerminalTcpSocket implements ShellTerminal {
 
   private final BufferedReader br;
   private final BufferedWriter pw;
   private final Socket socket;
+  private final Lock lock = new ReentrantLock(); // does not pin the virtual thread blocked on IO
 
   public ShellTerminalTcpSocket(Socket socket) throws IOException {
     this.br = new BufferedReader(new InputStreamReader(socket.getInputStream()));
@@ -32,9 +35,14 @@ public class ShellTerminalTcpSocket implements ShellTerminal {
 
   @Override
   public void writeLine(String line) throws IOException {
-    pw.write(line);
-    pw.write(System.lineSeparator());
-    pw.flush();
+    lock.lock();
+    try {
+      pw.write(line);
+      pw.write(System.lineSeparator());
+      pw.flush();
+    } finally {
+      lock.unlock();
+    }
   }
 
   @Override
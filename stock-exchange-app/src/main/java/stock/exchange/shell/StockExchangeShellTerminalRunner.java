@@ -1,23 +1,52 @@
 package stock.exchange.shell;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import stock.exchange.book.MarketDepth;
 import stock.exchange.cmd.ShellCommandExecutor;
+import stock.exchange.common.CommonException;
+import stock.exchange.domain.Prices;
+import stock.exchange.publisher.ConflatingPublisher;
+import stock.exchange.publisher.MarketDataUpdate;
 
 public class StockExchangeShellTerminalRunner implements Runnable {
 
+  private static final String SUBSCRIBE = "SUBSCRIBE";
+  private static final String UNSUBSCRIBE = "UNSUBSCRIBE";
+  private static final String ERR = "ERR";
+  private static final String MD = "MD";
+
   private final Logger logger = LoggerFactory.getLogger(getClass());
   private final ShellCommandExecutor shellCommandExecutor;
   private final ShellTerminal shellTerminal;
+  private final ConflatingPublisher publisher;
 
   private volatile boolean stopped = false;
+  // the market data subscription of the session, if any
+  private ConflatingPublisher.Subscription subscription;
 
   public StockExchangeShellTerminalRunner(ShellCommandExecutor shellCommandExecutor, ShellTerminal shellTerminal) {
+    this(shellCommandExecutor, shellTerminal, null);
+  }
+
+  /**
+   * @param publisher the publisher of the market data the session subscribes
+   *                  to by the <code>SUBSCRIBE</code> command, or
+   *                  <code>null</code> if the subscriptions are not supported
+   */
+  public StockExchangeShellTerminalRunner(
+      ShellCommandExecutor shellCommandExecutor,
+      ShellTerminal shellTerminal,
+      ConflatingPublisher publisher) {
     this.shellCommandExecutor = shellCommandExecutor;
     this.shellTerminal = shellTerminal;
+    this.publisher = publisher;
   }
 
   @Override
@@ -28,7 +57,10 @@ public class StockExchangeShellTerminalRunner implements Runnable {
         if (line == null) {
           continue;
         }
-        String message = shellCommandExecutor.execute(line);
+        String message = publisher == null ? null : executeSubscription(line);
+        if (message == null) {
+          message = shellCommandExecutor.execute(line);
+        }
         if (ShellCommandExecutor.BYE_STRING.equals(message)) {
           shellTerminal.writeLine("See ya!");
           stopped = true;
@@ -39,6 +71,9 @@ public class StockExchangeShellTerminalRunner implements Runnable {
     } catch (IOException e1) {
       logger.debug(e1.getMessage());
     } finally {
+      if (subscription != null) {
+        subscription.close();
+      }
       try {
         shellTerminal.onFinish();
       } catch (IOException e) {
@@ -47,4 +82,70 @@ public class StockExchangeShellTerminalRunner implements Runnable {
     }
   }
 
+  /**
+   * The subscription commands are executed by the session itself as the
+   * updates are pushed to its terminal
+   *
+   * @return the result or <code>null</code> if the line is not a subscription
+   *         command
+   */
+  private String executeSubscription(String line) {
+    String[] tokens = line.trim().split("\\s+");
+    String command = tokens[0].toUpperCase();
+    if (!SUBSCRIBE.equals(command) && !UNSUBSCRIBE.equals(command)) {
+      return null;
+    }
+    List<String> symbols = Arrays.stream(tokens, 1, tokens.length).map(String::toUpperCase).toList();
+    try {
+      if (SUBSCRIBE.equals(command)) {
+        if (symbols.isEmpty()) {
+          return ERR + ": InvalidInput " + SUBSCRIBE + " <securitySymbol1...> <securitySymbolN>";
+        }
+        // the subscription closed by the failure of the push is replaced
+        if (subscription == null || subscription.isClosed()) {
+          subscription = publisher.subscribe(symbols, this::push);
+        } else {
+          subscription.add(symbols);
+        }
+        return SUBSCRIBE + ": " + String.join(" ", symbols);
+      }
+      if (subscription != null) {
+        if (symbols.isEmpty()) {
+          subscription.close();
+          subscription = null;
+        } else {
+          subscription.remove(symbols);
+        }
+      }
+      return UNSUBSCRIBE + ": " + (symbols.isEmpty() ? "ALL" : String.join(" ", symbols));
+    } catch (CommonException e) {
+      return ERR + ": " + e.getClass().getSimpleName() + (e.getMessage() != null ? " " + e.getMessage() : "");
+    }
+  }
+
+  /**
+   * Called by a delivery thread of the publisher
+   */
+  private void push(MarketDataUpdate update) {
+    int scale = update.security().scale();
+    StringBuilder sb = new StringBuilder();
+    sb.append(MD + ": " + update.security().symbol()
+        + " " + Prices.toString(update.lastPrice(), scale) + " x " + update.lastQuantity()
+        + " volume " + update.volume()
+        + " trades " + update.trades());
+    appendQuote(sb, "bid", update.bestBid(), scale);
+    appendQuote(sb, "ask", update.bestAsk(), scale);
+    try {
+      shellTerminal.writeLine(sb.toString());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static void appendQuote(StringBuilder sb, String side, MarketDepth.Level level, int scale) {
+    if (level != null) {
+      sb.append(" " + side + " " + Prices.toString(level.price(), scale) + " x " + level.volume());
+    }
+  }
+
 }
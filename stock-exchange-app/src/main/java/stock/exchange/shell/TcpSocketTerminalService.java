@@ -5,14 +5,17 @@ import java.io.UncheckedIOException;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.net.ServerSocketFactory;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import util.concurrent.VirtualThreads;
+
 public class TcpSocketTerminalService implements Runnable {
 
   private final Logger logger = LoggerFactory.getLogger(getClass());
@@ -25,15 +28,42 @@ public class TcpSocketTerminalService implements Runnable {
   private final SocketRunnerFactory taskFactory;
   private final ExecutorService pool;
   private final int port;
+  private final AtomicInteger activeSessions = new AtomicInteger();
+  private final AtomicLong sessionsCount = new AtomicLong();
 
   public TcpSocketTerminalService(
       SocketRunnerFactory taskFactory,
       int port) {
-    this.pool = Executors.newCachedThreadPool();
+    this(taskFactory, port, false);
+  }
+
+  /**
+   * @param virtualThreads serves every session in its own virtual thread,
+   *                       requires JDK 21+
+   */
+  public TcpSocketTerminalService(
+      SocketRunnerFactory taskFactory,
+      int port,
+      boolean virtualThreads) {
+    this.pool = VirtualThreads.newThreadPerTaskExecutor(virtualThreads);
     this.taskFactory = taskFactory;
     this.port = port;
   }
 
+  /**
+   * @return the number of the sessions being served at the moment
+   */
+  public int activeSessions() {
+    return activeSessions.get();
+  }
+
+  /**
+   * @return the total number of the sessions accepted
+   */
+  public long sessionsCount() {
+    return sessionsCount.get();
+  }
+
   @Override
   public void run() {
     ServerSocketFactory ssf = ServerSocketFactory.getDefault();
@@ -46,7 +76,16 @@ public class TcpSocketTerminalService implements Runnable {
         } catch (java.net.SocketTimeoutException e) {
           continue;
         }
-        pool.submit(taskFactory.createRunner(socket));
+        Runnable runner = taskFactory.createRunner(socket);
+        sessionsCount.incrementAndGet();
+        activeSessions.incrementAndGet();
+        pool.submit(() -> {
+          try {
+            runner.run();
+          } finally {
+            activeSessions.decrementAndGet();
+          }
+        });
       }
     } catch (IOException e) {
       throw new UncheckedIOException(e);
@@ -0,0 +1,63 @@
+package stock.exchange.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import stock.exchange.integration.AppendToFileDownstream;
+
+/**
+ * The throughput of the records appended to the file, written by one thread
+ * and by several threads sharing the downstream as the order books do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AppendToFileDownstreamBenchmark {
+
+  private static final String RECORD = "id:6796790021360864211,type:BID,instrument:USDEUR,quantity:100,price:1.2";
+
+  private Path file;
+  private AppendToFileDownstream<String> subject;
+
+  @Setup
+  public void setUp() throws IOException {
+    file = Files.createTempFile("stock-exchange-bench", ".log");
+    subject = new AppendToFileDownstream<>(file);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    subject.close();
+    Files.deleteIfExists(file);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void accept() {
+    subject.accept(RECORD);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void acceptContended() {
+    subject.accept(RECORD);
+  }
+}
@@ -0,0 +1,138 @@
+package stock.exchange.bench;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares the benchmark results against the baseline ones, both in the CSV
+ * format of JMH. The primary scores and the normalized allocation rate of the
+ * GC profiler are compared, the result is worse than the baseline one if the
+ * difference is above the threshold relative to the baseline score and above
+ * the score errors of both.
+ */
+final class BaselineComparison {
+
+  private static final String ALLOCATION = "gc.alloc.rate.norm";
+
+  record Key(String benchmark, String mode, String threads, String params) {
+  }
+
+  record Score(double score, double error, String unit) {
+  }
+
+  private BaselineComparison() {
+  }
+
+  /**
+   * Prints the difference of every result from the baseline one
+   *
+   * @param threshold the relative difference considered a change, 0.1 is 10%
+   * @return the number of the results worse than the baseline ones
+   */
+  static int compare(Path baseline, Path current, double threshold, PrintStream out) throws IOException {
+    Map<Key, Score> before = read(baseline);
+    Map<Key, Score> after = read(current);
+    int regressions = 0;
+    for (Map.Entry<Key, Score> e : after.entrySet()) {
+      Key key = e.getKey();
+      Score now = e.getValue();
+      Score was = before.get(key);
+      String name = key.benchmark() + (key.params().isEmpty() ? "" : " " + key.params());
+      if (was == null) {
+        out.printf("%-10s %s: %.3f %s%n", "NEW", name, now.score(), now.unit());
+        continue;
+      }
+      boolean lowerIsBetter = key.benchmark().endsWith(ALLOCATION) || !"thrpt".equals(key.mode());
+      double worse = lowerIsBetter ? now.score() - was.score() : was.score() - now.score();
+      double noise = Math.max(errorOf(was) + errorOf(now), "B/op".equals(now.unit()) ? 1d : 0d);
+      String status;
+      if (Math.abs(worse) <= Math.abs(was.score()) * threshold || Math.abs(worse) <= noise) {
+        status = "SAME";
+      } else if (worse > 0) {
+        status = "REGRESSION";
+        regressions++;
+      } else {
+        status = "IMPROVED";
+      }
+      out.printf("%-10s %s: %.3f -> %.3f %s (%+.1f%%)%n", status, name, was.score(), now.score(), now.unit(),
+          was.score() == 0d ? 0d : (now.score() - was.score()) * 100d / was.score());
+    }
+    out.printf("%d of %d results worse than the baseline %s%n", regressions, after.size(), baseline);
+    return regressions;
+  }
+
+  private static double errorOf(Score score) {
+    return Double.isNaN(score.error()) ? 0d : score.error();
+  }
+
+  /**
+   * Reads the primary results and the normalized allocation rates
+   */
+  static Map<Key, Score> read(Path csv) throws IOException {
+    Map<Key, Score> result = new LinkedHashMap<>();
+    List<String> lines = Files.readAllLines(csv);
+    if (lines.isEmpty()) {
+      return result;
+    }
+    List<String> header = split(lines.get(0));
+    int benchmark = header.indexOf("Benchmark");
+    int mode = header.indexOf("Mode");
+    int threads = header.indexOf("Threads");
+    int score = header.indexOf("Score");
+    int error = header.indexOf("Score Error (99.9%)");
+    int unit = header.indexOf("Unit");
+    for (int i = 1; i < lines.size(); i++) {
+      if (lines.get(i).isBlank()) {
+        continue;
+      }
+      List<String> row = split(lines.get(i));
+      String name = row.get(benchmark);
+      if (name.indexOf(':') >= 0 && !name.endsWith(ALLOCATION)) {
+        continue;
+      }
+      StringBuilder params = new StringBuilder();
+      for (int c = 0; c < header.size(); c++) {
+        if (header.get(c).startsWith("Param: ") && c < row.size() && !row.get(c).isEmpty()) {
+          params.append(params.isEmpty() ? "" : ",")
+              .append(header.get(c).substring("Param: ".length()))
+              .append('=')
+              .append(row.get(c));
+        }
+      }
+      result.put(
+          new Key(name, row.get(mode), row.get(threads), params.toString()),
+          new Score(Double.parseDouble(row.get(score)), Double.parseDouble(row.get(error)), row.get(unit)));
+    }
+    return result;
+  }
+
+  private static List<String> split(String line) {
+    List<String> cells = new ArrayList<>();
+    StringBuilder cell = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (c == '"') {
+        if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+          cell.append('"');
+          i++;
+        } else {
+          quoted = !quoted;
+        }
+      } else if (c == ',' && !quoted) {
+        cells.add(cell.toString());
+        cell.setLength(0);
+      } else {
+        cell.append(c);
+      }
+    }
+    cells.add(cell.toString());
+    return cells;
+  }
+}
@@ -0,0 +1,70 @@
+package stock.exchange.bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the JMH command line options and compares the
+ * results against the baseline ones.
+ *
+ * Unless the options say otherwise, the GC profiler is on, so the allocation
+ * per operation is reported along with the score, and the results are written
+ * in the CSV format to <code>stock-exchange-bench/target/jmh-result.csv</code>.
+ * The baseline is read from the file set by the
+ * <code>stock.exchange.bench.baseline</code> system property,
+ * <code>stock-exchange-bench/baseline.csv</code> by default, and the results
+ * worse than the baseline by more than the
+ * <code>stock.exchange.bench.threshold</code> (0.1 by default) make the exit
+ * status 1. Writing the results to the baseline file records the new baseline.
+ */
+public class BenchmarkMain {
+
+  private static final String DEFAULT_RESULT = "stock-exchange-bench/target/jmh-result.csv";
+  private static final String DEFAULT_BASELINE = "stock-exchange-bench/baseline.csv";
+
+  public static void main(String[] args) throws Exception {
+    Locale.setDefault(Locale.ROOT); // the decimal point in the results
+
+    CommandLineOptions cmd = new CommandLineOptions(args);
+    if (cmd.shouldHelp()
+        || cmd.shouldList()
+        || cmd.shouldListWithParams()
+        || cmd.shouldListProfilers()
+        || cmd.shouldListResultFormats()) {
+      org.openjdk.jmh.Main.main(args);
+      return;
+    }
+
+    ChainedOptionsBuilder options = new OptionsBuilder().parent(cmd);
+    if (cmd.getProfilers().isEmpty()) {
+      options.addProfiler(GCProfiler.class);
+    }
+    ResultFormatType format = cmd.getResultFormat().orElse(ResultFormatType.CSV);
+    Path result = Path.of(cmd.getResult().orElse(DEFAULT_RESULT));
+    Files.createDirectories(result.toAbsolutePath().getParent());
+    options.resultFormat(format).result(result.toString());
+
+    new Runner(options.build()).run();
+
+    Path baseline = Path.of(System.getProperty("stock.exchange.bench.baseline", DEFAULT_BASELINE));
+    if (format != ResultFormatType.CSV || !Files.exists(baseline)) {
+      return;
+    }
+    if (Files.isSameFile(baseline, result)) {
+      System.out.println("The baseline recorded to " + baseline);
+      return;
+    }
+    double threshold = Double.parseDouble(System.getProperty("stock.exchange.bench.threshold", "0.1"));
+    if (BaselineComparison.compare(baseline, result, threshold, System.out) > 0) {
+      System.exit(1);
+    }
+  }
+}
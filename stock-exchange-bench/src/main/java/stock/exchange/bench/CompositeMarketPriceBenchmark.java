@@ -0,0 +1,67 @@
+package stock.exchange.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import stock.exchange.domain.DoubleReference;
+import stock.exchange.instrument.MarketDataWorld;
+
+/**
+ * The market price of the composite instrument averaging the given number of
+ * the securities, read while their prices keep changing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompositeMarketPriceBenchmark {
+
+  @Param({ "10", "100", "1000", "10000" })
+  public int components;
+
+  private MarketDataWorld world;
+  private DoubleReference subject;
+  private int nextComponent;
+
+  @Setup
+  public void setUp() {
+    world = new MarketDataWorld();
+    String[] componentSymbols = new String[components];
+    for (int i = 0; i < components; i++) {
+      componentSymbols[i] = "SEC" + i;
+      world.createSecurity(i, componentSymbols[i], 2, 1000L + i);
+    }
+    world.createComposite(components, "COMP", componentSymbols);
+    subject = world.getMarketPriceRef(components);
+  }
+
+  @Benchmark
+  public double getAsDouble() {
+    return subject.getAsDouble();
+  }
+
+  /**
+   * The read after the price of one of the components changed, as the
+   * composite is read by the trades of its components
+   */
+  @Benchmark
+  public double getAsDoubleAfterTrade() {
+    int id = nextComponent;
+    nextComponent = id + 1 == components ? 0 : id + 1;
+    world.acceptLastTradePrice(id, 1000L + (id & 0xff), 10);
+    return subject.getAsDouble();
+  }
+}
@@ -0,0 +1,83 @@
+package stock.exchange.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import stock.exchange.instrument.MarketDataWorld;
+
+/**
+ * The market price lookup by the instrument id and the last trade price update
+ * of {@link MarketDataWorld}, alone and with the readers and the writer
+ * contending for the same instruments.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MarketDataBenchmark {
+
+  private static final int SECURITIES = 1000;
+
+  private MarketDataWorld subject;
+
+  @Setup
+  public void setUp() {
+    subject = new MarketDataWorld();
+    for (int i = 0; i < SECURITIES; i++) {
+      subject.createSecurity(i, "SEC" + i, 2, 1000L + i);
+    }
+  }
+
+  /**
+   * Every thread of the benchmark has its own walk over the instruments
+   */
+  @State(Scope.Thread)
+  public static class Cursor {
+
+    private int next;
+
+    int nextSecurityId() {
+      int id = next;
+      next = id + 1 == SECURITIES ? 0 : id + 1;
+      return id;
+    }
+  }
+
+  @Benchmark
+  public double getMarketPrice(Cursor cursor) {
+    return subject.getMarketPriceRef(cursor.nextSecurityId()).getAsDouble();
+  }
+
+  @Benchmark
+  public void acceptLastTradePrice(Cursor cursor) {
+    subject.acceptLastTradePrice(cursor.nextSecurityId(), 1000L, 10);
+  }
+
+  @Benchmark
+  @Group("contended")
+  @GroupThreads(3)
+  public double contendedGetMarketPrice(Cursor cursor) {
+    return subject.getMarketPriceRef(cursor.nextSecurityId()).getAsDouble();
+  }
+
+  @Benchmark
+  @Group("contended")
+  @GroupThreads(1)
+  public void contendedAcceptLastTradePrice(Cursor cursor) {
+    subject.acceptLastTradePrice(cursor.nextSecurityId(), 1000L, 10);
+  }
+}
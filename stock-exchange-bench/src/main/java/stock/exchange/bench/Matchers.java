@@ -0,0 +1,28 @@
+package stock.exchange.bench;
+
+import stock.exchange.matcher.ArrayStockMatcher;
+import stock.exchange.matcher.PriceLadderStockMatcher;
+import stock.exchange.matcher.StockMatcher;
+import stock.exchange.matcher.StockMatcherImpl;
+
+/**
+ * The matchers benchmarked, by the same names as the
+ * <code>stock.exchange.matcher</code> property of the app
+ */
+final class Matchers {
+
+  private Matchers() {
+  }
+
+  /**
+   * @param orders the number of the resting orders expected
+   */
+  static StockMatcher create(String name, int orders) {
+    return switch (name) {
+      case "heap" -> new StockMatcherImpl();
+      case "array" -> new ArrayStockMatcher(Math.max(orders, 1024));
+      case "ladder" -> new PriceLadderStockMatcher();
+      default -> throw new IllegalArgumentException(name);
+    };
+  }
+}
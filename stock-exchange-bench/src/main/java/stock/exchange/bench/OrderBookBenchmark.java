@@ -0,0 +1,81 @@
+package stock.exchange.bench;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import stock.exchange.book.OrderBookImpl;
+import stock.exchange.domain.SecurityRecord;
+import stock.exchange.domain.TraderRecord;
+import stock.exchange.instrument.MarketDataWorld;
+import stock.exchange.trader.TraderManagerImpl;
+
+/**
+ * The order book end to end: the crossing pair of orders submitted and matched
+ * by the tick, the trades passed to the downstream doing nothing, against the
+ * book with the given number of the resting orders per side not crossing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderBookBenchmark {
+
+  private static final long MID_PRICE = StockMatcherBenchmark.MID_PRICE;
+
+  @Param({ "heap", "array", "ladder" })
+  public String matcher;
+
+  @Param({ "0", "10000" })
+  public int depth;
+
+  private OrderBookImpl subject;
+  private TraderRecord trader;
+
+  @Setup(Level.Iteration)
+  public void setUp() {
+    SecurityRecord security = new MarketDataWorld().createSecurity(1, "BENCH", 2, MID_PRICE);
+    trader = new TraderManagerImpl().createTrader(1, "bench");
+    subject = new OrderBookImpl(
+        Matchers.create(matcher, depth * 2),
+        security,
+        m -> {
+        },
+        (m, e) -> {
+        },
+        o -> {
+        },
+        (o, e) -> {
+        });
+    SplittableRandom random = new SplittableRandom(42);
+    for (int i = 0; i < depth; i++) {
+      subject.addBid(trader, 10, MID_PRICE - StockMatcherBenchmark.offset("uniform", random));
+      subject.addAsk(trader, 10, MID_PRICE + StockMatcherBenchmark.offset("uniform", random));
+      if (i % 256 == 255) {
+        subject.tick(); // the ingress holds the default capacity only
+      }
+    }
+    subject.tick();
+  }
+
+  @Benchmark
+  public boolean submitAndTick() {
+    subject.addBid(trader, 10, MID_PRICE);
+    subject.addAsk(trader, 10, MID_PRICE);
+    return subject.tick();
+  }
+}
@@ -0,0 +1,131 @@
+package stock.exchange.bench;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import stock.exchange.domain.LongReference;
+import stock.exchange.matcher.MatchBuffer;
+import stock.exchange.matcher.StockMatcher;
+
+/**
+ * The cost of the single order operations of the matchers against the book of
+ * the given depth, the resting orders priced by the given distribution around
+ * the middle price.
+ *
+ * Every operation leaves the number of the resting orders unchanged, so the
+ * depth holds for the whole measurement.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StockMatcherBenchmark {
+
+  static final long MID_PRICE = 100_000L;
+
+  /**
+   * The prices of the resting orders range from the middle price up to this
+   * number of ticks away from it
+   */
+  static final int PRICE_RANGE = 500;
+
+  private static final int PRICES = 1 << 16;
+
+  @Param({ "heap", "array", "ladder" })
+  public String matcher;
+
+  @Param({ "100", "10000", "100000" })
+  public int depth;
+
+  @Param({ "uniform", "gaussian", "narrow" })
+  public String distribution;
+
+  private final LongReference marketPrice = () -> MID_PRICE;
+  private final MatchBuffer buffer = new MatchBuffer(64);
+  private final long[] offsets = new long[PRICES];
+  private StockMatcher subject;
+  private long restingId;
+  private long nextId;
+  private int nextPrice;
+
+  @Setup(Level.Iteration)
+  public void setUp() {
+    SplittableRandom random = new SplittableRandom(42);
+    for (int i = 0; i < PRICES; i++) {
+      offsets[i] = offset(distribution, random);
+    }
+    subject = Matchers.create(matcher, depth * 2);
+    nextId = 1;
+    for (int i = 0; i < depth; i++) {
+      subject.addOrderBid(nextId++, MID_PRICE - offset(), 10);
+      subject.addOrderAsk(nextId++, MID_PRICE + offset(), 10);
+    }
+    restingId = nextId++;
+    subject.addOrderBid(restingId, MID_PRICE - offset(), 10);
+  }
+
+  /**
+   * The passive order placed and cancelled right away
+   */
+  @Benchmark
+  public boolean addCancel() {
+    long id = nextId++;
+    subject.addOrderBid(id, MID_PRICE - offset(), 10);
+    return subject.removeOrder(id);
+  }
+
+  /**
+   * The resting order cancelled and replaced by another one at the new price,
+   * the order is kept deep in the book unlike the one of {@link #addCancel}
+   */
+  @Benchmark
+  public boolean cancelReplace() {
+    boolean removed = subject.removeOrder(restingId);
+    restingId = nextId++;
+    subject.addOrderBid(restingId, MID_PRICE - offset(), 10);
+    return removed;
+  }
+
+  /**
+   * The passive bid placed and then the best bid taken by the aggressive ask
+   * of the same quantity
+   */
+  @Benchmark
+  public int addMatch() {
+    subject.addOrderBid(nextId++, MID_PRICE - offset(), 10);
+    subject.addOrderAsk(nextId++, MID_PRICE - PRICE_RANGE, 10);
+    return subject.matchAll(marketPrice, buffer);
+  }
+
+  private long offset() {
+    return offsets[nextPrice++ & (PRICES - 1)];
+  }
+
+  /**
+   * @return the distance in ticks from the middle price, never 0 so the bids
+   *         and the asks do not cross
+   */
+  static long offset(String distribution, SplittableRandom random) {
+    return switch (distribution) {
+      case "uniform" -> 1 + random.nextInt(PRICE_RANGE);
+      case "gaussian" -> 1 + Math.min(PRICE_RANGE - 1, Math.abs(Math.round(random.nextGaussian() * PRICE_RANGE / 4)));
+      case "narrow" -> 1 + random.nextInt(4);
+      default -> throw new IllegalArgumentException(distribution);
+    };
+  }
+}
@@ -0,0 +1,117 @@
+package stock.exchange.bench;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import stock.exchange.book.OrderBookImpl;
+import stock.exchange.book.OrderBookOverloadedException;
+import stock.exchange.domain.SecurityRecord;
+import stock.exchange.domain.TraderRecord;
+import stock.exchange.engine.BlockingIdleStrategy;
+import stock.exchange.engine.StockMarketEngine;
+import stock.exchange.engine.TickerInterval;
+import stock.exchange.instrument.MarketDataWorld;
+import stock.exchange.integration.FanOutDownstream;
+import stock.exchange.integration.FanOutRejectedDownstream;
+import stock.exchange.matcher.PriceLadderStockMatcher;
+import stock.exchange.trade.TradeGeneratorImpl;
+import stock.exchange.trader.TraderManagerImpl;
+import util.concurrent.VirtualThreads;
+
+/**
+ * Compares the thread-per-book engine run in platform threads against the one
+ * run in virtual threads: the time to start the books, the heap retained by the
+ * idle books and the throughput of crossing orders placed to random books.
+ *
+ * The number of books and order pairs is set by the
+ * <code>stock.exchange.benchmark.books</code> and
+ * <code>stock.exchange.benchmark.pairs</code> system properties. It is not a
+ * JMH benchmark, it runs from the benchmarks jar by its own main method.
+ */
+public class ThreadModeBenchmark {
+
+  public static void main(String[] args) throws InterruptedException {
+    int books = Integer.getInteger("stock.exchange.benchmark.books", 10_000);
+    int pairs = Integer.getInteger("stock.exchange.benchmark.pairs", 100_000);
+
+    run(false, books, pairs);
+    if (VirtualThreads.isSupported()) {
+      run(true, books, pairs);
+    } else {
+      System.out.println("virtual: not supported by JDK " + Runtime.version());
+    }
+  }
+
+  private static void run(boolean virtualThreads, int booksCount, int pairs) throws InterruptedException {
+    String mode = virtualThreads ? "virtual" : "platform";
+    long heapBefore = usedHeap();
+
+    MarketDataWorld world = new MarketDataWorld();
+    TraderRecord trader = new TraderManagerImpl().createTrader(1, "trader");
+    CountDownLatch filled = new CountDownLatch(pairs * 2);
+    OrderBookImpl[] books = new OrderBookImpl[booksCount];
+
+    try (StockMarketEngine engine = new StockMarketEngine(s -> new BlockingIdleStrategy(), virtualThreads)) {
+      long start = System.nanoTime();
+      for (int i = 0; i < booksCount; i++) {
+        SecurityRecord security = world.createSecurity(i, "SEC" + i, 2, 1000L);
+        books[i] = new OrderBookImpl(
+            new PriceLadderStockMatcher(),
+            security,
+            new TradeGeneratorImpl(new FanOutDownstream<>(world), new FanOutRejectedDownstream<>()),
+            new FanOutRejectedDownstream<>(),
+            o -> filled.countDown(),
+            new FanOutRejectedDownstream<>());
+        engine.runOrderBook(books[i], TickerInterval.adaptive(Duration.ofSeconds(1), Duration.ofSeconds(60)));
+      }
+      long startNanos = System.nanoTime() - start;
+
+      Thread.sleep(1000); // let the runners settle in the idle state
+      long idleHeap = usedHeap() - heapBefore;
+      int platformThreads = ManagementFactory.getThreadMXBean().getThreadCount();
+
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+      start = System.nanoTime();
+      for (int i = 0; i < pairs; i++) {
+        OrderBookImpl book = books[random.nextInt(booksCount)];
+        place(() -> book.addBid(trader, 1, 1000L));
+        place(() -> book.addAsk(trader, 1, 1000L));
+      }
+      boolean completed = filled.await(5, TimeUnit.MINUTES);
+      long matchNanos = System.nanoTime() - start;
+
+      System.out.printf("%s: %d books started in %d ms, idle heap %d KB (%d B per book), %d platform threads%n",
+          mode, booksCount, TimeUnit.NANOSECONDS.toMillis(startNanos), idleHeap / 1024,
+          idleHeap / booksCount, platformThreads);
+      System.out.printf("%s: %d crossing pairs %s in %d ms, %.0f pairs/s%n",
+          mode, pairs, completed ? "matched" : "NOT matched", TimeUnit.NANOSECONDS.toMillis(matchNanos),
+          pairs * 1e9 / matchNanos);
+    }
+  }
+
+  /**
+   * Retries the order while the ingress of the book is full
+   */
+  private static void place(Runnable order) {
+    for (;;) {
+      try {
+        order.run();
+        return;
+      } catch (OrderBookOverloadedException e) {
+        Thread.onSpinWait();
+      }
+    }
+  }
+
+  private static long usedHeap() throws InterruptedException {
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+      Thread.sleep(100);
+    }
+    Runtime rt = Runtime.getRuntime();
+    return rt.totalMemory() - rt.freeMemory();
+  }
+}
@@ -1,20 +1,45 @@
 package stock.exchange;
 
+import java.time.Duration;
+import java.util.List;
+
+import stock.exchange.bars.Bar;
+import stock.exchange.bars.NoSuchBarIntervalException;
+import stock.exchange.book.AuctionIndication;
+import stock.exchange.book.MarketDepth;
+import stock.exchange.book.NoSuchBookException;
 import stock.exchange.domain.CompositeRecord;
 import stock.exchange.domain.InstrumentRecord;
 import stock.exchange.domain.OrderRecord;
 import stock.exchange.domain.SecurityRecord;
 import stock.exchange.domain.TraderRecord;
+import stock.exchange.engine.OrderBookMetrics;
+import stock.exchange.instrument.NoSuchSecurityException;
+import stock.exchange.latency.LatencyTrace;
 
 /**
  * Facade for accessing core functions in this trading system
+ * 
+ * All the prices of securities are in ticks of the security (see
+ * {@link SecurityRecord#scale()})
  */
 public interface StockExchangeFacade {
 
-  SecurityRecord createSecurity(int instrumentId, String symbol, double initialPrice);
+  SecurityRecord createSecurity(int instrumentId, String symbol, int scale, long initialPrice);
 
   CompositeRecord createComposite(int instrumentId, String symbol, String[] componentSymbols);
 
+  /**
+   * Creates the weighted composite, see
+   * {@link stock.exchange.instrument.InstrumentManager#createComposite(int, String, String[], long[], double)}
+   */
+  CompositeRecord createComposite(
+      int instrumentId,
+      String symbol,
+      String[] componentSymbols,
+      long[] weights,
+      double divisor);
+
   InstrumentRecord getInstrument(String symbol);
 
   TraderRecord getTrader(int traderId);
@@ -25,13 +50,74 @@ public interface StockExchangeFacade {
 
   OrderRecord buy(int traderId, String symbol, int quantity);
 
-  OrderRecord bid(int traderId, String symbol, int quantity, double price);
+  OrderRecord bid(int traderId, String symbol, int quantity, long price);
 
-  OrderRecord ask(int traderId, String symbol, int quantity, double price);
+  OrderRecord ask(int traderId, String symbol, int quantity, long price);
 
   Iterable<? extends OrderRecord> listOrders(String symbol);
 
+  /**
+   * The best price levels of the order book, read without locking the book
+   * 
+   * @param levels the number of the levels per side
+   */
+  MarketDepth.Snapshot getMarketDepth(String symbol, int levels);
+
+  /**
+   * The latest bars of the trades of the security, read without locking
+   * 
+   * @param interval the interval the bars are aggregated at
+   * @param count    the number of the bars
+   * @return the bars, the oldest one first
+   * @throws NoSuchSecurityException    if the instrument is not a security
+   * @throws NoSuchBarIntervalException if the bars are not aggregated at the
+   *                                    interval
+   */
+  List<Bar> getBars(String symbol, Duration interval, int count);
+
   OrderRecord cancelOrder(String symbol, long orderId);
 
+  /**
+   * Switches the order book of the security to the call auction
+   */
+  void startAuction(String symbol);
+
+  /**
+   * The indicative equilibrium of the call auction, <code>null</code> if the
+   * auction is not open
+   */
+  AuctionIndication getAuctionIndication(String symbol);
+
+  /**
+   * Executes the call auction of the security at the equilibrium price and
+   * switches the order book back to the continuous matching
+   */
+  AuctionIndication uncross(String symbol);
+
+  /**
+   * Enables or disables the tracing of the order lifecycle latencies of the
+   * order book of the security, the enabled tracing starts from scratch
+   */
+  void setLatencyTracing(String symbol, boolean enabled);
+
+  /**
+   * The order lifecycle latencies of the order book of the security traced
+   * since the tracing was enabled, empty if it is disabled
+   */
+  List<LatencyTrace.StageLatency> getLatencyStats(String symbol);
+
+  /**
+   * The metrics of the engine running the order book of the security
+   *
+   * @throws NoSuchBookException if the book is not run by an engine
+   */
+  OrderBookMetrics getEngineMetrics(String symbol);
+
+  /**
+   * The metrics of the engine running all the order books, sorted by the
+   * symbol, empty if the books are not run by an engine
+   */
+  List<OrderBookMetrics> getEngineMetrics();
+
   Iterable<? extends InstrumentRecord> listInstruments();
 }
\ No newline at end of file
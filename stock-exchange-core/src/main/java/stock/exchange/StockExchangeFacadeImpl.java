@@ -1,7 +1,16 @@
 package stock.exchange;
 
 import java.time.Duration;
-
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+
+import stock.exchange.bars.Bar;
+import stock.exchange.book.AuctionIndication;
+import stock.exchange.book.MarketDepth;
+import stock.exchange.book.NoSuchBookException;
 import stock.exchange.book.OrderBook;
 import stock.exchange.book.OrderBookManager;
 import stock.exchange.domain.CompositeRecord;
@@ -9,26 +18,72 @@ import stock.exchange.domain.InstrumentRecord;
 import stock.exchange.domain.OrderRecord;
 import stock.exchange.domain.SecurityRecord;
 import stock.exchange.domain.TraderRecord;
+import stock.exchange.engine.OrderBookEngine;
+import stock.exchange.engine.OrderBookMetrics;
 import stock.exchange.engine.OrderBookRunner;
+import stock.exchange.engine.TickerInterval;
 import stock.exchange.instrument.InstrumentManager;
+import stock.exchange.instrument.MarketDataReads;
+import stock.exchange.instrument.NoSuchSecurityException;
+import stock.exchange.latency.LatencyTrace;
 import stock.exchange.trader.TraderManager;
 
 public class StockExchangeFacadeImpl implements StockExchangeFacade {
 
+  private static final TickerInterval DEFAULT_TICKER_INTERVAL = TickerInterval.adaptive(
+      Duration.ofMillis(1000),
+      Duration.ofSeconds(60));
+
   private final InstrumentManager instrumentManager;
+  private final MarketDataReads marketDataReads;
   private final TraderManager traderManager;
   private final OrderBookRunner orderBookRunner;
   private final OrderBookManager orderBookManager;
+  private final Function<SecurityRecord, TickerInterval> tickerIntervals;
 
   public StockExchangeFacadeImpl(
       InstrumentManager instrumentManager,
+      MarketDataReads marketDataReads,
       TraderManager traderManager,
       OrderBookRunner orderBookRunner,
       OrderBookManager orderBookManager) {
+    this(instrumentManager, marketDataReads, traderManager, orderBookRunner, orderBookManager,
+        s -> DEFAULT_TICKER_INTERVAL);
+  }
+
+  /**
+   * @param tickerInterval the fallback interval the order books are ticked with
+   *                       when no new orders arrive
+   */
+  public StockExchangeFacadeImpl(
+      InstrumentManager instrumentManager,
+      MarketDataReads marketDataReads,
+      TraderManager traderManager,
+      OrderBookRunner orderBookRunner,
+      OrderBookManager orderBookManager,
+      Duration tickerInterval) {
+    this(instrumentManager, marketDataReads, traderManager, orderBookRunner, orderBookManager,
+        s -> TickerInterval.fixed(tickerInterval));
+  }
+
+  /**
+   * @param tickerIntervals provides the bounds of the fallback interval the
+   *                        order book of the security is ticked with when no
+   *                        new orders arrive
+   */
+  public StockExchangeFacadeImpl(
+      InstrumentManager instrumentManager,
+      MarketDataReads marketDataReads,
+      TraderManager traderManager,
+      OrderBookRunner orderBookRunner,
+      OrderBookManager orderBookManager,
+      Function<SecurityRecord, TickerInterval> tickerIntervals) {
     this.instrumentManager = instrumentManager;
+    this.marketDataReads = marketDataReads;
     this.traderManager = traderManager;
     this.orderBookRunner = orderBookRunner;
     this.orderBookManager = orderBookManager;
+    this.tickerIntervals = tickerIntervals;
   }
 
   @Override
@@ -37,10 +92,20 @@ public class StockExchangeFacadeImpl implements StockExchangeFacade {
   }
 
   @Override
-  public SecurityRecord createSecurity(int instrumentId, String symbol, double initialPrice) {
-    var instrument = instrumentManager.createSecurity(instrumentId, symbol, initialPrice);
+  public CompositeRecord createComposite(
+      int instrumentId,
+      String symbol,
+      String[] componentSymbols,
+      long[] weights,
+      double divisor) {
+    return instrumentManager.createComposite(instrumentId, symbol, componentSymbols, weights, divisor);
+  }
+
+  @Override
+  public SecurityRecord createSecurity(int instrumentId, String symbol, int scale, long initialPrice) {
+    var instrument = instrumentManager.createSecurity(instrumentId, symbol, scale, initialPrice);
     OrderBook book = orderBookManager.createOrderBook(instrument);
-    orderBookRunner.runOrderBook(book, Duration.ofMillis(1000));
+    orderBookRunner.runOrderBook(book, tickerIntervals.apply(instrument));
     return instrument;
   }
 
@@ -71,6 +136,21 @@ public class StockExchangeFacadeImpl implements StockExchangeFacade {
     return book.getActiveOrders();
   }
 
+  @Override
+  public MarketDepth.Snapshot getMarketDepth(String symbol, int levels) {
+    var instrument = instrumentManager.findInstrumentBySymbol(symbol);
+    var book = orderBookManager.findBookByInstrument(instrument);
+    return book.getMarketDepth().snapshot(levels);
+  }
+
+  @Override
+  public List<Bar> getBars(String symbol, Duration interval, int count) {
+    if (instrumentManager.findInstrumentBySymbol(symbol) instanceof SecurityRecord security) {
+      return marketDataReads.getBars(security.id(), interval, count);
+    }
+    throw new NoSuchSecurityException(symbol);
+  }
+
   @Override
   public OrderRecord cancelOrder(String symbol, long orderId) {
     var instrument = instrumentManager.findInstrumentBySymbol(symbol);
@@ -78,6 +158,64 @@ public class StockExchangeFacadeImpl implements StockExchangeFacade {
     return book.removeOrder(orderId);
   }
 
+  @Override
+  public void startAuction(String symbol) {
+    var instrument = instrumentManager.findInstrumentBySymbol(symbol);
+    var book = orderBookManager.findBookByInstrument(instrument);
+    book.startAuction();
+  }
+
+  @Override
+  public AuctionIndication getAuctionIndication(String symbol) {
+    var instrument = instrumentManager.findInstrumentBySymbol(symbol);
+    var book = orderBookManager.findBookByInstrument(instrument);
+    return book.getAuctionIndication();
+  }
+
+  @Override
+  public AuctionIndication uncross(String symbol) {
+    var instrument = instrumentManager.findInstrumentBySymbol(symbol);
+    var book = orderBookManager.findBookByInstrument(instrument);
+    return book.uncross();
+  }
+
+  @Override
+  public void setLatencyTracing(String symbol, boolean enabled) {
+    var instrument = instrumentManager.findInstrumentBySymbol(symbol);
+    var book = orderBookManager.findBookByInstrument(instrument);
+    book.setLatencyTracing(enabled);
+  }
+
+  @Override
+  public List<LatencyTrace.StageLatency> getLatencyStats(String symbol) {
+    var instrument = instrumentManager.findInstrumentBySymbol(symbol);
+    var book = orderBookManager.findBookByInstrument(instrument);
+    LatencyTrace trace = book.getLatencyTrace();
+    return trace == null ? Collections.emptyList() : trace.stages();
+  }
+
+  @Override
+  public OrderBookMetrics getEngineMetrics(String symbol) {
+    var instrument = instrumentManager.findInstrumentBySymbol(symbol);
+    OrderBookMetrics metrics = orderBookRunner instanceof OrderBookEngine engine
+        ? engine.getMetrics(instrument.id())
+        : null;
+    if (metrics == null) {
+      throw new NoSuchBookException();
+    }
+    return metrics;
+  }
+
+  @Override
+  public List<OrderBookMetrics> getEngineMetrics() {
+    if (orderBookRunner instanceof OrderBookEngine engine) {
+      List<OrderBookMetrics> metrics = new ArrayList<>(engine.getMetrics());
+      metrics.sort(Comparator.comparing(OrderBookMetrics::symbol));
+      return metrics;
+    }
+    return Collections.emptyList();
+  }
+
   @Override
   public OrderRecord sell(int traderId, String symbol, int quantity) {
     var trader = traderManager.findTraderById(traderId);
@@ -95,7 +233,7 @@ public class StockExchangeFacadeImpl implements StockExchangeFacade {
   }
 
   @Override
-  public OrderRecord bid(int traderId, String symbol, int quantity, double price) {
+  public OrderRecord bid(int traderId, String symbol, int quantity, long price) {
     var trader = traderManager.findTraderById(traderId);
     var instrument = instrumentManager.findInstrumentBySymbol(symbol);
     var book = orderBookManager.findBookByInstrument(instrument);
@@ -103,7 +241,7 @@ public class StockExchangeFacadeImpl implements StockExchangeFacade {
   }
 
   @Override
-  public OrderRecord ask(int traderId, String symbol, int quantity, double price) {
+  public OrderRecord ask(int traderId, String symbol, int quantity, long price) {
     var trader = traderManager.findTraderById(traderId);
     var instrument = instrumentManager.findInstrumentBySymbol(symbol);
     var book = orderBookManager.findBookByInstrument(instrument);
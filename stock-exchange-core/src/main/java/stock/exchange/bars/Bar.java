@@ -0,0 +1,39 @@
+package stock.exchange.bars;
+
+import java.time.Instant;
+
+/**
+ * The open, high, low, close prices and the volume of the trades of the
+ * security within the interval, the prices in ticks of the security
+ *
+ * @param start    the start of the interval
+ * @param volume   the total quantity traded
+ * @param turnover the sum of the trade prices in ticks multiplied by the
+ *                 quantities, or {@link #NO_TURNOVER} if the sum doesn't fit
+ *                 into long
+ */
+public record Bar(
+    Instant start,
+    long open,
+    long high,
+    long low,
+    long close,
+    long volume,
+    long turnover) {
+
+  /**
+   * The turnover of the bar overflowed
+   */
+  public static final long NO_TURNOVER = Long.MIN_VALUE;
+
+  /**
+   * The volume-weighted average price in ticks, or {@link Double#NaN} if the
+   * turnover overflowed
+   */
+  public double vwap() {
+    if (turnover == NO_TURNOVER) {
+      return Double.NaN;
+    }
+    return (double) turnover / volume;
+  }
+}
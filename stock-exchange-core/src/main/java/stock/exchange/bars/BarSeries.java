@@ -0,0 +1,118 @@
+package stock.exchange.bars;
+
+/**
+ * The bars of one interval kept in the ring of parallel primitive arrays
+ * allocated upfront, the oldest bar overwritten by the newest one when the
+ * ring is full.
+ *
+ * A bar is started by the first trade within its interval, so there are no
+ * bars for the intervals without trades. A trade older than the latest bar,
+ * which happens when the clock goes back, is accounted to the latest bar. The
+ * turnover is summed exactly, once it overflows the bar keeps
+ * {@link Bar#NO_TURNOVER} rather than the wrong sum.
+ *
+ * The implementation is not thread-safe.
+ */
+final class BarSeries {
+
+  private final long interval;
+  private final long[] starts;
+  private final long[] opens;
+  private final long[] highs;
+  private final long[] lows;
+  private final long[] closes;
+  private final long[] volumes;
+  private final long[] turnovers;
+  // the index of the latest bar
+  private int last = -1;
+  private int size;
+
+  /**
+   * @param interval the length of the bar in milliseconds
+   * @param capacity the number of the latest bars kept
+   */
+  BarSeries(long interval, int capacity) {
+    this.interval = interval;
+    this.starts = new long[capacity];
+    this.opens = new long[capacity];
+    this.highs = new long[capacity];
+    this.lows = new long[capacity];
+    this.closes = new long[capacity];
+    this.volumes = new long[capacity];
+    this.turnovers = new long[capacity];
+  }
+
+  long interval() {
+    return interval;
+  }
+
+  int capacity() {
+    return starts.length;
+  }
+
+  int size() {
+    return size;
+  }
+
+  /**
+   * Accounts the trade to the bar of its interval, starting the new bar if the
+   * trade is past the latest one
+   *
+   * @param time the time of the trade in milliseconds since the epoch
+   */
+  void accept(long time, long price, int quantity) {
+    long start = time - Math.floorMod(time, interval);
+    if (size == 0 || start > starts[last]) {
+      last = last + 1 == starts.length ? 0 : last + 1;
+      if (size < starts.length) {
+        size++;
+      }
+      starts[last] = start;
+      opens[last] = price;
+      highs[last] = price;
+      lows[last] = price;
+      volumes[last] = 0L;
+      turnovers[last] = 0L;
+    } else if (price > highs[last]) {
+      highs[last] = price;
+    } else if (price < lows[last]) {
+      lows[last] = price;
+    }
+    closes[last] = price;
+    volumes[last] += quantity;
+    if (turnovers[last] != Bar.NO_TURNOVER) {
+      try {
+        turnovers[last] = Math.addExact(turnovers[last], Math.multiplyExact(price, (long) quantity));
+      } catch (ArithmeticException e) {
+        turnovers[last] = Bar.NO_TURNOVER;
+      }
+    }
+  }
+
+  /**
+   * Copies the latest bars, the oldest one first, the columns of a bar in the
+   * order of the components of {@link Bar} starting at <code>i * 7</code>
+   *
+   * @param count the number of the bars requested
+   * @return the number of the bars copied
+   */
+  int copyTo(int count, long[] bars) {
+    int n = Math.min(count, size);
+    int j = last - n + 1;
+    if (j < 0) {
+      j += starts.length;
+    }
+    for (int i = 0; i < n; i++) {
+      int k = i * 7;
+      bars[k] = starts[j];
+      bars[k + 1] = opens[j];
+      bars[k + 2] = highs[j];
+      bars[k + 3] = lows[j];
+      bars[k + 4] = closes[j];
+      bars[k + 5] = volumes[j];
+      bars[k + 6] = turnovers[j];
+      j = j + 1 == starts.length ? 0 : j + 1;
+    }
+    return n;
+  }
+}
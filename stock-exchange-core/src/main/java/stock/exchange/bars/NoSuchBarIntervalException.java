@@ -0,0 +1,16 @@
+package stock.exchange.bars;
+
+import java.time.Duration;
+
+import stock.exchange.common.CommonException;
+
+/**
+ * The bars are not aggregated at the interval requested
+ */
+@SuppressWarnings("serial")
+public class NoSuchBarIntervalException extends CommonException {
+
+  public NoSuchBarIntervalException(Duration interval) {
+    super("No bars of " + TradeBars.toString(interval));
+  }
+}
@@ -0,0 +1,171 @@
+package stock.exchange.bars;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * The bars of the trades of the security aggregated at the number of the
+ * intervals at once, the latest bars of every interval kept in the ring
+ * buffer of the fixed capacity.
+ *
+ * The bars are updated by the thread executing the trades of the security, in
+ * O(1) per interval and without allocation, and are read by any number of
+ * threads. Readers never take a lock and never block the trades: a read copies
+ * the bars optimistically and repeats if a trade updated them meanwhile.
+ */
+public final class TradeBars {
+
+  public static final List<Duration> DEFAULT_INTERVALS = List.of(
+      Duration.ofSeconds(1),
+      Duration.ofMinutes(1),
+      Duration.ofMinutes(5));
+
+  public static final int DEFAULT_CAPACITY = 120;
+
+  private static final int COLUMNS = 7;
+
+  private final StampedLock lock = new StampedLock();
+
+  // the state below is written under the write lock
+  private final BarSeries[] series;
+
+  /**
+   * @param intervals the lengths of the bars, whole seconds
+   * @param capacity  the number of the latest bars kept per interval
+   */
+  public TradeBars(List<Duration> intervals, int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity");
+    }
+    this.series = new BarSeries[intervals.size()];
+    for (int i = 0; i < series.length; i++) {
+      Duration interval = intervals.get(i);
+      if (interval.getSeconds() <= 0 || interval.getNano() != 0) {
+        throw new IllegalArgumentException("interval " + interval);
+      }
+      series[i] = new BarSeries(interval.toMillis(), capacity);
+    }
+  }
+
+  public List<Duration> intervals() {
+    List<Duration> intervals = new ArrayList<>(series.length);
+    for (BarSeries s : series) {
+      intervals.add(Duration.ofMillis(s.interval()));
+    }
+    return Collections.unmodifiableList(intervals);
+  }
+
+  /**
+   * Accounts the trade to the bars of every interval
+   *
+   * @param time     the time of the trade in milliseconds since the epoch
+   * @param price    the trade price in ticks
+   * @param quantity the trade quantity
+   */
+  public void accept(long time, long price, int quantity) {
+    long stamp = lock.writeLock();
+    try {
+      for (BarSeries s : series) {
+        s.accept(time, price, quantity);
+      }
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+  }
+
+  /**
+   * Takes the consistent copy of the latest bars of the interval
+   *
+   * @param count the number of the bars requested, the result has no more than
+   *              the capacity of them
+   * @return the bars, the oldest one first
+   * @throws NoSuchBarIntervalException if the bars are not aggregated at the
+   *                                    interval
+   */
+  public List<Bar> last(Duration interval, int count) {
+    if (count < 0) {
+      throw new IllegalArgumentException("count");
+    }
+    BarSeries s = find(interval);
+    int requested = Math.min(count, s.capacity());
+    long[] bars = new long[requested * COLUMNS];
+    int n;
+    for (;;) {
+      long stamp = lock.tryOptimisticRead();
+      n = s.copyTo(requested, bars);
+      if (lock.validate(stamp)) {
+        break;
+      }
+      Thread.onSpinWait();
+    }
+    if (n == 0) {
+      return Collections.emptyList();
+    }
+    List<Bar> result = new ArrayList<>(n);
+    for (int i = 0; i < n; i++) {
+      int k = i * COLUMNS;
+      result.add(new Bar(
+          Instant.ofEpochMilli(bars[k]),
+          bars[k + 1],
+          bars[k + 2],
+          bars[k + 3],
+          bars[k + 4],
+          bars[k + 5],
+          bars[k + 6]));
+    }
+    return Collections.unmodifiableList(result);
+  }
+
+  private BarSeries find(Duration interval) {
+    for (BarSeries s : series) {
+      if (s.interval() == interval.toMillis()) {
+        return s;
+      }
+    }
+    throw new NoSuchBarIntervalException(interval);
+  }
+
+  /**
+   * Parses the interval given by the number and the unit: <code>s</code>,
+   * <code>m</code> or <code>h</code>, e.g. <code>5m</code>
+   *
+   * @throws IllegalArgumentException if the interval is not valid
+   */
+  public static Duration parseInterval(String interval) {
+    int last = interval.length() - 1;
+    long n;
+    try {
+      n = last > 0 ? Long.parseLong(interval.substring(0, last)) : -1L;
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("interval " + interval, e);
+    }
+    if (n <= 0) {
+      throw new IllegalArgumentException("interval " + interval);
+    }
+    return switch (Character.toLowerCase(interval.charAt(last))) {
+      case 's' -> Duration.ofSeconds(n);
+      case 'm' -> Duration.ofMinutes(n);
+      case 'h' -> Duration.ofHours(n);
+      default -> throw new IllegalArgumentException("interval " + interval);
+    };
+  }
+
+  /**
+   * Formats the interval of whole seconds the way {@link #parseInterval}
+   * parses it, in the largest unit dividing it
+   */
+  public static String toString(Duration interval) {
+    long s = interval.getSeconds();
+    if (s % 3600 == 0) {
+      return s / 3600 + "h";
+    }
+    if (s % 60 == 0) {
+      return s / 60 + "m";
+    }
+    return s + "s";
+  }
+}
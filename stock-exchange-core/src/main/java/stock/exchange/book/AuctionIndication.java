@@ -0,0 +1,16 @@
+package stock.exchange.book;
+
+import stock.exchange.domain.Prices;
+
+/**
+ * The call auction equilibrium of the order book: the indicative one while the
+ * auction is open, or the one the orders were executed at by the uncross
+ *
+ * @param price     the equilibrium price in ticks or {@link Prices#NO_PRICE} if
+ *                  no orders cross
+ * @param volume    the volume executable at the equilibrium price
+ * @param imbalance the demand less the supply at the equilibrium price,
+ *                  positive if the buy side is left unfilled
+ */
+public record AuctionIndication(long price, long volume, long imbalance) {
+}
@@ -0,0 +1,188 @@
+package stock.exchange.book;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+import stock.exchange.matcher.StockMatcher;
+
+/**
+ * The market depth of the order book: the best aggregated price levels of the
+ * resting limit orders on both sides, up to the fixed number of levels per
+ * side.
+ *
+ * The depth is published by the thread ticking the book, which copies the
+ * levels from the matcher after every change of the book, and is read by any
+ * number of threads. Readers never take a lock and never block the ticking
+ * thread: a read copies the levels optimistically and repeats if the depth got
+ * republished meanwhile. Publishing does not allocate.
+ *
+ * The listeners are told of every publication, so the quotes can be pushed
+ * without polling the depth.
+ */
+public final class MarketDepth {
+
+  private static final Runnable[] NO_LISTENERS = {};
+
+  /**
+   * The price level of one side of the book
+   *
+   * @param price       the price of the level in ticks
+   * @param volume      the total volume remaining of the orders at the level
+   * @param ordersCount the number of the orders at the level
+   */
+  public record Level(long price, long volume, int ordersCount) {
+  }
+
+  /**
+   * The levels of both sides of the book taken at the same moment, the best
+   * price first
+   */
+  public record Snapshot(List<Level> bids, List<Level> asks) {
+
+    public boolean isEmpty() {
+      return bids.isEmpty() && asks.isEmpty();
+    }
+  }
+
+  private final StampedLock lock = new StampedLock();
+
+  // the state below is written under the write lock by the ticking thread only
+  private final long[] bidPrices;
+  private final long[] bidVolumes;
+  private final int[] bidOrdersCounts;
+  private final long[] askPrices;
+  private final long[] askVolumes;
+  private final int[] askOrdersCounts;
+  private int bidLevels;
+  private int askLevels;
+  // replaced as a whole under this
+  private volatile Runnable[] listeners = NO_LISTENERS;
+
+  /**
+   * @param maxLevels the number of the best levels per side published
+   */
+  MarketDepth(int maxLevels) {
+    if (maxLevels <= 0) {
+      throw new IllegalArgumentException("maxLevels");
+    }
+    this.bidPrices = new long[maxLevels];
+    this.bidVolumes = new long[maxLevels];
+    this.bidOrdersCounts = new int[maxLevels];
+    this.askPrices = new long[maxLevels];
+    this.askVolumes = new long[maxLevels];
+    this.askOrdersCounts = new int[maxLevels];
+  }
+
+  public int maxLevels() {
+    return bidPrices.length;
+  }
+
+  /**
+   * Adds the listener called by the thread ticking the book after every
+   * publication. The listener must be short and must not block, the book is
+   * locked while it runs
+   */
+  public synchronized void addListener(Runnable listener) {
+    Runnable[] newListeners = Arrays.copyOf(listeners, listeners.length + 1);
+    newListeners[newListeners.length - 1] = listener;
+    listeners = newListeners;
+  }
+
+  /**
+   * Copies the best levels from the matcher. Must be called by the single
+   * thread owning the matcher
+   */
+  void publish(StockMatcher stockMatcher) {
+    long stamp = lock.writeLock();
+    try {
+      bidLevels = stockMatcher.copyBidLevels(bidPrices, bidVolumes, bidOrdersCounts);
+      askLevels = stockMatcher.copyAskLevels(askPrices, askVolumes, askOrdersCounts);
+    } finally {
+      lock.unlockWrite(stamp);
+    }
+    for (Runnable listener : listeners) {
+      listener.run();
+    }
+  }
+
+  /**
+   * @return the best bid level or <code>null</code> if there are no bids
+   */
+  public Level bestBid() {
+    return best(bidPrices, bidVolumes, bidOrdersCounts, true);
+  }
+
+  /**
+   * @return the best ask level or <code>null</code> if there are no asks
+   */
+  public Level bestAsk() {
+    return best(askPrices, askVolumes, askOrdersCounts, false);
+  }
+
+  private Level best(long[] prices, long[] volumes, int[] ordersCounts, boolean bid) {
+    long price, volume;
+    int ordersCount;
+    boolean empty;
+    for (;;) {
+      long stamp = lock.tryOptimisticRead();
+      empty = (bid ? bidLevels : askLevels) == 0;
+      price = prices[0];
+      volume = volumes[0];
+      ordersCount = ordersCounts[0];
+      if (lock.validate(stamp)) {
+        break;
+      }
+      Thread.onSpinWait();
+    }
+    return empty ? null : new Level(price, volume, ordersCount);
+  }
+
+  /**
+   * Takes the consistent copy of the best levels of both sides
+   *
+   * @param levels the number of the levels per side requested, the result has
+   *               no more than {@link #maxLevels()} of them
+   */
+  public Snapshot snapshot(int levels) {
+    if (levels < 0) {
+      throw new IllegalArgumentException("levels");
+    }
+    int n = Math.min(levels, maxLevels());
+    long[] prices = new long[n << 1];
+    long[] volumes = new long[n << 1];
+    int[] ordersCounts = new int[n << 1];
+    int bids, asks;
+    for (;;) {
+      long stamp = lock.tryOptimisticRead();
+      bids = Math.min(bidLevels, n);
+      asks = Math.min(askLevels, n);
+      System.arraycopy(bidPrices, 0, prices, 0, bids);
+      System.arraycopy(bidVolumes, 0, volumes, 0, bids);
+      System.arraycopy(bidOrdersCounts, 0, ordersCounts, 0, bids);
+      System.arraycopy(askPrices, 0, prices, n, asks);
+      System.arraycopy(askVolumes, 0, volumes, n, asks);
+      System.arraycopy(askOrdersCounts, 0, ordersCounts, n, asks);
+      if (lock.validate(stamp)) {
+        break;
+      }
+      Thread.onSpinWait();
+    }
+    return new Snapshot(
+        levels(prices, volumes, ordersCounts, 0, bids),
+        levels(prices, volumes, ordersCounts, n, asks));
+  }
+
+  private static List<Level> levels(long[] prices, long[] volumes, int[] ordersCounts, int from, int count) {
+    if (count == 0) {
+      return Collections.emptyList();
+    }
+    List<Level> result = new ArrayList<>(count);
+    for (int i = from; i < from + count; i++) {
+      result.add(new Level(prices[i], volumes[i], ordersCounts[i]));
+    }
+    return Collections.unmodifiableList(result);
+  }
+}
@@ -0,0 +1,13 @@
+package stock.exchange.book;
+
+import stock.exchange.common.CommonException;
+
+/**
+ * The order book is in the continuous matching, not in the call auction
+ */
+@SuppressWarnings("serial")
+public class NoAuctionException extends CommonException {
+
+  public NoAuctionException() {
+  }
+}
@@ -3,6 +3,7 @@ package stock.exchange.book;
 import stock.exchange.domain.OrderRecord;
 import stock.exchange.domain.SecurityRecord;
 import stock.exchange.domain.TraderRecord;
+import stock.exchange.latency.LatencyTrace;
 
 /**
  * Trading book interface for trade management.
@@ -15,8 +16,28 @@ import stock.exchange.domain.TraderRecord;
  */
 public interface OrderBook {
 
+  /**
+   * Listener is notified each time a new order is placed in the order book, so
+   * the runner of the book can initiate the matching without waiting for the
+   * next periodic tick.
+   * 
+   * The listener is invoked in the thread placing the order, so the
+   * implementation should be non-blocking.
+   */
+  @FunctionalInterface
+  interface OrderArrivalListener {
+
+    void onOrderArrival();
+  }
+
   SecurityRecord instrument();
 
+  /**
+   * Sets the listener notified on every new order placed, replacing the
+   * previous one. <code>null</code> disables the notification
+   */
+  void setOrderArrivalListener(OrderArrivalListener listener);
+
   /**
    * Placing a market buy order
    * 
@@ -32,18 +53,18 @@ public interface OrderBook {
   OrderRecord addSell(TraderRecord trader, int quantity);
 
   /**
-   * Placing a buy limit order at a specified price or lower
+   * Placing a buy limit order at a specified price (in ticks) or lower
    * 
    * @throws OrderValidationException
    */
-  OrderRecord addBid(TraderRecord trader, int quantity, double price);
+  OrderRecord addBid(TraderRecord trader, int quantity, long price);
 
   /**
-   * Placing a sell limit order at a specified price or higher
+   * Placing a sell limit order at a specified price (in ticks) or higher
    * 
    * @throws OrderValidationException
    */
-  OrderRecord addAsk(TraderRecord trader, int quantity, double price);
+  OrderRecord addAsk(TraderRecord trader, int quantity, long price);
 
   /**
    * Attempting to cancel an order and remove it from the order book queue.
@@ -64,11 +85,67 @@ public interface OrderBook {
    */
   Iterable<? extends OrderRecord> getActiveOrders();
 
+  /**
+   * The method returns the market depth of the book, the aggregated price
+   * levels kept up to date by the ticks of the book. Reading the depth takes no
+   * lock, so the method is meant for frequent polling, unlike
+   * {@link #getActiveOrders()}
+   */
+  MarketDepth getMarketDepth();
+
+  /**
+   * Switches the book to the call auction (the opening or the closing one). The
+   * orders placed during the auction are collected in the book without
+   * matching, and the indicative equilibrium is updated by the ticks of the
+   * book. Does nothing if the auction is open already
+   */
+  void startAuction();
+
+  /**
+   * Closes the call auction: all the orders crossing at the equilibrium price
+   * are executed at this price in one batch, then the book switches back to
+   * the continuous matching
+   * 
+   * @return the equilibrium the orders were executed at
+   * @throws NoAuctionException if the auction is not open
+   */
+  AuctionIndication uncross();
+
+  /**
+   * @return the indicative equilibrium of the open call auction as of the last
+   *         tick, or <code>null</code> if the book is in the continuous matching
+   */
+  AuctionIndication getAuctionIndication();
+
+  /**
+   * Enables or disables the tracing of the order lifecycle latencies. The
+   * enabled tracing starts from the empty histograms, the disabled one costs
+   * nothing
+   */
+  void setLatencyTracing(boolean enabled);
+
+  /**
+   * @return the latencies traced since the tracing was enabled or
+   *         <code>null</code> if it is disabled
+   */
+  LatencyTrace getLatencyTrace();
+
+  /**
+   * The counters are read without locking the book, so the call never waits
+   * for the running tick
+   *
+   * @return the current counters of the book
+   */
+  OrderBookStats getStats();
+
   /**
    * The invocation of this method initiates a single iteration over the trades
    * currently in the queue
+   * 
+   * @return <code>true</code> if the tick found work: new orders were taken to
+   *         the book or orders were matched
    */
-  void tick();
+  boolean tick();
 
   /**
    * The invocation of this method initiates the flushing of all existing data in
@@ -4,29 +4,32 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.NoSuchElementException;
-import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import it.unimi.dsi.fastutil.PriorityQueue;
 import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
-import it.unimi.dsi.fastutil.objects.ObjectArrayFIFOQueue;
 import stock.exchange.domain.OrderMatchRecord;
 import stock.exchange.domain.OrderRecord;
 import stock.exchange.domain.OrderType;
+import stock.exchange.domain.Prices;
 import stock.exchange.domain.SecurityRecord;
 import stock.exchange.domain.TraderRecord;
 import stock.exchange.integration.Downstream;
 import stock.exchange.integration.RejectedDownstream;
+import stock.exchange.jfr.MatchEvent;
+import stock.exchange.jfr.TickEvent;
+import stock.exchange.latency.LatencyTrace;
+import stock.exchange.matcher.AuctionEquilibrium;
+import stock.exchange.matcher.MatchBuffer;
 import stock.exchange.matcher.StockMatcher;
 import stock.exchange.matcher.StockMatcherImpl;
+import util.metrics.Counter;
+import util.nogc.MpscArrayQueue;
 
 public class OrderBookImpl implements OrderBook {
 
@@ -36,18 +39,28 @@ public class OrderBookImpl implements OrderBook {
 
   private final StockMatcher stockMatcher;
 
-  private final Lock stockMatcherLock = new ReentrantLock();
-  private final Lock orderCollectionsRead;
-  private final Lock orderCollectionsWrite;
+  /**
+   * The orders waiting for the matching thread per book by default. The ring is
+   * allocated upfront, so the capacity is the idle footprint of every book, and
+   * a book out of it rejects the orders by {@link OrderBookOverloadedException}
+   */
+  public static final int DEFAULT_INGRESS_CAPACITY = 1024;
+  private static final int MATCH_BATCH_CAPACITY = 64;
+  private static final int DEPTH_LEVELS = 20;
 
-  {
-    ReadWriteLock rw = new ReentrantReadWriteLock();
-    orderCollectionsRead = rw.readLock();
-    orderCollectionsWrite = rw.writeLock();
-  }
+  private final Lock stockMatcherLock = new ReentrantLock();
 
+  /**
+   * New orders are passed from the order entry threads to the matching thread
+   * through the lock-free queue, all the other order state is owned by the
+   * thread holding the stockMatcherLock
+   */
+  private final MpscArrayQueue<Order> ordersIngress;
   private final Long2ObjectMap<Order> ordersIndex = new Long2ObjectOpenHashMap<>();
-  private final PriorityQueue<Order> ordersStagingQueue = new ObjectArrayFIFOQueue<>();
+
+  private volatile OrderArrivalListener orderArrivalListener;
+
+  private final MarketDepth marketDepth = new MarketDepth(DEPTH_LEVELS);
 
   private final Downstream<? super OrderMatchRecord> orderMatchDownstream;
   private final RejectedDownstream<? super OrderMatchRecord> orderMatchDownstreamRejected;
@@ -70,14 +83,37 @@ public class OrderBookImpl implements OrderBook {
         filledOrderDownstreamRejected);
   }
 
-  private OrderBookImpl(
+  public OrderBookImpl(
+      StockMatcher stockMatcher,
+      SecurityRecord security,
+      Downstream<? super OrderMatchRecord> orderMatchDownstream,
+      RejectedDownstream<? super OrderMatchRecord> orderMatchDownstreamRejected,
+      Downstream<? super OrderRecord> filledOrderDownstream,
+      RejectedDownstream<? super OrderRecord> filledOrderDownstreamRejected) {
+    this(
+        stockMatcher,
+        security,
+        DEFAULT_INGRESS_CAPACITY,
+        orderMatchDownstream,
+        orderMatchDownstreamRejected,
+        filledOrderDownstream,
+        filledOrderDownstreamRejected);
+  }
+
+  /**
+   * @param ingressCapacity the maximal number of the orders waiting for the
+   *                        matching thread, rounded up to the next power of two
+   */
+  public OrderBookImpl(
       StockMatcher stockMatcher,
       SecurityRecord security,
+      int ingressCapacity,
       Downstream<? super OrderMatchRecord> orderMatchDownstream,
       RejectedDownstream<? super OrderMatchRecord> orderMatchDownstreamRejected,
       Downstream<? super OrderRecord> filledOrderDownstream,
       RejectedDownstream<? super OrderRecord> filledOrderDownstreamRejected) {
     this.logger = LoggerFactory.getLogger("ORDER_BOOK_" + security.symbol());
+    this.ordersIngress = new MpscArrayQueue<>(ingressCapacity);
     this.stockMatcher = stockMatcher;
     this.security = security;
     this.orderMatchDownstream = orderMatchDownstream;
@@ -86,16 +122,82 @@ public class OrderBookImpl implements OrderBook {
     this.filledOrderDownstreamRejected = filledOrderDownstreamRejected;
   }
 
-  private record OrderMatch(
-      double marketPrice,
-      SecurityRecord security,
-      OrderRecord buyerOrder,
-      OrderRecord sellerOrder,
-      int quantity) implements OrderMatchRecord {
+  /**
+   * Mutable order match event. A single instance per order book is reused for
+   * every match, so downstreams should not keep the reference after the
+   * <code>accept</code> call returns.
+   */
+  private static final class OrderMatch implements OrderMatchRecord {
+
+    private long marketPrice;
+    private SecurityRecord security;
+    private OrderRecord buyerOrder;
+    private OrderRecord sellerOrder;
+    private int quantity;
+    private long uncrossPrice;
+
+    @Override
+    public long marketPrice() {
+      return marketPrice;
+    }
+
+    @Override
+    public SecurityRecord security() {
+      return security;
+    }
+
+    @Override
+    public OrderRecord buyerOrder() {
+      return buyerOrder;
+    }
+
+    @Override
+    public OrderRecord sellerOrder() {
+      return sellerOrder;
+    }
+
+    @Override
+    public int quantity() {
+      return quantity;
+    }
+
+    @Override
+    public long uncrossPrice() {
+      return uncrossPrice;
+    }
+
+    @Override
+    public String toString() {
+      return "OrderMatch[marketPrice=" + Prices.toString(marketPrice, security.scale())
+          + ", security=" + security
+          + ", buyerOrder=" + buyerOrder
+          + ", sellerOrder=" + sellerOrder
+          + ", quantity=" + quantity
+          + ", uncrossPrice=" + Prices.toString(uncrossPrice, security.scale()) + "]";
+    }
   }
 
+  // the state below is accessed under the stockMatcherLock only
+  private final OrderMatch orderMatch = new OrderMatch();
+  private final MatchBuffer matches = new MatchBuffer(MATCH_BATCH_CAPACITY);
+  private final AuctionEquilibrium equilibrium = new AuctionEquilibrium();
+  private long tickMarketPrice;
+  private boolean auction;
+
+  private volatile AuctionIndication auctionIndication;
+
+  private volatile LatencyTrace latencyTrace;
+
+  // written under the stockMatcherLock only, read by any thread
+  private final Counter restingOrdersCount = new Counter();
+  private final Counter ordersCount = new Counter();
+  private final Counter matchesCount = new Counter();
+  private final Counter filledOrdersCount = new Counter();
+  private final Counter rejectionsCount = new Counter();
+
   @Override
-  public void tick() {
+  public boolean tick() {
+    TickEvent event = TickEvent.beginIfEnabled();
 
     try {
       stockMatcherLock.lockInterruptibly();
@@ -103,23 +205,87 @@ public class OrderBookImpl implements OrderBook {
       throw new OrderBookUnavailableException(e);
     }
 
+    long ordersBefore = ordersCount.get();
+    long matchesBefore = matchesCount.get();
     try {
-      Order o;
+      boolean worked = drainIngress();
+
+      if (auction) {
+        // the orders are collected without matching until the uncross
+        if (worked) {
+          publishBookState();
+        }
+        return worked;
+      }
 
-      while (true) {
+      tickMarketPrice = security.marketPriceTicks().getAsLong();
+
+      // the matcher sweeps all the crossing orders at once, a batch at a time
+      LatencyTrace trace = latencyTrace;
+      int count;
+      do {
+        count = stockMatcher.matchAll(security.marketPriceTicks(), matches);
+        long matchedNanos = trace != null && count > 0 ? System.nanoTime() : 0L;
+        for (int i = 0; i < count; i++) {
+          onOrderMatched(matches.buyerOrderId(i), matches.sellerOrderId(i), matches.quantity(i), Prices.NO_PRICE,
+              trace, matchedNanos);
+          onOrderFilled(matches.buyerOrderId(i), matches.buyerVolumeRemain(i));
+          onOrderFilled(matches.sellerOrderId(i), matches.sellerVolumeRemain(i));
+        }
+        worked |= count > 0;
+      } while (count == matches.capacity());
 
-        orderCollectionsWrite.lock();
-        try {
-          try {
-            o = ordersStagingQueue.dequeue();
-          } catch (NoSuchElementException e) {
-            break;
-          }
-          if (!ordersIndex.containsKey(o.id)) {
-            continue; // it's removed
-          }
-        } finally {
-          orderCollectionsWrite.unlock();
+      if (worked) {
+        publishBookState();
+      }
+      return worked;
+    } finally {
+      if (event != null) {
+        commit(event, ordersBefore, matchesBefore);
+      }
+      stockMatcherLock.unlock();
+    }
+  }
+
+  /**
+   * Must be called under the stockMatcherLock
+   */
+  private void commit(TickEvent event, long ordersBefore, long matchesBefore) {
+    event.end();
+    if (event.shouldCommit()) {
+      event.symbol = security.symbol();
+      event.ordersTaken = (int) (ordersCount.get() - ordersBefore);
+      event.matches = (int) (matchesCount.get() - matchesBefore);
+      event.auction = auction;
+      event.commit();
+    }
+  }
+
+  /**
+   * Moves the orders placed since the last call to the order index and the
+   * matcher. Must be called under the stockMatcherLock
+   * 
+   * @return <code>true</code> if any order was taken from the ingress queue
+   */
+  private boolean drainIngress() {
+    boolean drained = false;
+    LatencyTrace trace = latencyTrace;
+    long queuedNanos = 0L;
+    Order o;
+    while ((o = ordersIngress.poll()) != null) {
+      drained = true;
+
+      if (trace != null && o.acceptedNanos != 0L) {
+        if (queuedNanos == 0L) {
+          queuedNanos = System.nanoTime(); // once per the orders drained together
+        }
+        trace.queued(o.acceptedNanos, queuedNanos);
+      }
+
+      try {
+        if (ordersIndex.containsKey(o.id)) {
+          // unlikely to happen as ids are random 63-bit values
+          throw new DuplicateOrderException();
         }
 
         switch (o.type) {
@@ -136,71 +302,229 @@ public class OrderBookImpl implements OrderBook {
             stockMatcher.addOrderSell(o.id, o.quantity);
             break;
         }
+      } catch (RuntimeException e) {
+        // the order is returned to the caller already, so it is not dropped
+        // silently
+        onOrderRejected(o, e);
+        continue;
       }
+      ordersIndex.put(o.id, o);
+      ordersCount.increment();
+    }
+    return drained;
+  }
+
+  /**
+   * Publishes the market depth, the resting orders count and the indicative
+   * auction equilibrium if the auction is open. Must be called under the
+   * stockMatcherLock
+   */
+  private void publishBookState() {
+    restingOrdersCount.set(ordersIndex.size());
+    marketDepth.publish(stockMatcher);
+    if (auction) {
+      stockMatcher.equilibrium(security.marketPriceTicks().getAsLong(), equilibrium);
+      AuctionIndication last = auctionIndication;
+      if (last == null
+          || last.price() != equilibrium.price()
+          || last.volume() != equilibrium.volume()
+          || last.imbalance() != equilibrium.imbalance()) {
+        auctionIndication = new AuctionIndication(equilibrium.price(), equilibrium.volume(), equilibrium.imbalance());
+      }
+    }
+  }
 
-      final double marketPrice = security.marketPrice().getAsDouble();
-
-      while (stockMatcher.match(
-          security.marketPrice(),
-          (long buyerOrderId, long sellerOrderId, int quantity) -> {
-            Order buyingOrder = ordersIndex.get(buyerOrderId);
-            if (buyingOrder == null) {
-              throw new BookTickerFatalErrorException(new NoSuchOrderException(buyerOrderId));
-            }
-            Order sellingOrder = ordersIndex.get(sellerOrderId);
-            if (sellingOrder == null) {
-              throw new BookTickerFatalErrorException(new NoSuchOrderException(sellerOrderId));
-            }
-
-            OrderMatch orderMatch = new OrderMatch(
-                marketPrice,
-                security,
-                buyingOrder,
-                sellingOrder,
-                quantity);
-
-            try {
-              orderMatchDownstream.accept(orderMatch);
-            } catch (RuntimeException e) {
-              try {
-                orderMatchDownstreamRejected.accept(orderMatch, e);
-              } catch (RuntimeException e1) {
-                logger.error("Rejected downstream exception", e1);
-                logger.error("Downstream exception", e);
-              }
-            }
-          },
-          (orderId, volumeRemain) -> {
-            // update book for partially filled order values if needed
-          },
-          orderId -> {
-            Order order = ordersIndex.remove(orderId);
-            if (order == null) {
-              throw new BookTickerFatalErrorException(new NoSuchOrderException(orderId));
-            }
-            try {
-              filledOrderDownstream.accept(order);
-            } catch (RuntimeException e) {
-              try {
-                filledOrderDownstreamRejected.accept(order, e);
-              } catch (RuntimeException e1) {
-                logger.error("Rejected downstream exception", e1);
-                logger.error("Downstream exception", e);
-              }
-            }
-          })) {
+  @Override
+  public void startAuction() {
+    try {
+      stockMatcherLock.lockInterruptibly();
+    } catch (InterruptedException e) {
+      throw new OrderBookUnavailableException(e);
+    }
+    try {
+      if (auction) {
+        return;
       }
-      ;
+      drainIngress(); // the orders not taken by the tick yet join the auction
+      auction = true;
+      publishBookState();
+      logger.info("Auction started");
     } finally {
       stockMatcherLock.unlock();
     }
   }
 
+  @Override
+  public AuctionIndication uncross() {
+    AuctionIndication result;
+    try {
+      stockMatcherLock.lockInterruptibly();
+    } catch (InterruptedException e) {
+      throw new OrderBookUnavailableException(e);
+    }
+    try {
+      if (!auction) {
+        throw new NoAuctionException();
+      }
+      drainIngress();
+      tickMarketPrice = security.marketPriceTicks().getAsLong();
+      stockMatcher.equilibrium(tickMarketPrice, equilibrium);
+      result = new AuctionIndication(equilibrium.price(), equilibrium.volume(), equilibrium.imbalance());
+
+      if (equilibrium.isCrossing()) {
+        // all the fills are at the equilibrium price, a batch at a time
+        int count;
+        do {
+          count = stockMatcher.uncross(equilibrium.price(), matches);
+          for (int i = 0; i < count; i++) {
+            // the auction orders rest by design, their latency is not traced
+            onOrderMatched(matches.buyerOrderId(i), matches.sellerOrderId(i), matches.quantity(i), matches.price(i),
+                null, 0L);
+            onOrderFilled(matches.buyerOrderId(i), matches.buyerVolumeRemain(i));
+            onOrderFilled(matches.sellerOrderId(i), matches.sellerVolumeRemain(i));
+          }
+        } while (count == matches.capacity());
+      }
+
+      auction = false;
+      auctionIndication = null;
+      publishBookState();
+      logger.info("Auction uncrossed {}", result);
+    } finally {
+      stockMatcherLock.unlock();
+    }
+
+    // the orders left may cross in the continuous matching
+    OrderArrivalListener listener = orderArrivalListener;
+    if (listener != null) {
+      listener.onOrderArrival();
+    }
+    return result;
+  }
+
+  @Override
+  public AuctionIndication getAuctionIndication() {
+    return auctionIndication;
+  }
+
+  /**
+   * @param trace        the latency trace of the match or <code>null</code>
+   * @param matchedNanos the time the match was found at, if traced
+   */
+  private void onOrderMatched(
+      long buyerOrderId,
+      long sellerOrderId,
+      int quantity,
+      long uncrossPrice,
+      LatencyTrace trace,
+      long matchedNanos) {
+    Order buyingOrder = ordersIndex.get(buyerOrderId);
+    if (buyingOrder == null) {
+      throw new BookTickerFatalErrorException(new NoSuchOrderException(buyerOrderId));
+    }
+    Order sellingOrder = ordersIndex.get(sellerOrderId);
+    if (sellingOrder == null) {
+      throw new BookTickerFatalErrorException(new NoSuchOrderException(sellerOrderId));
+    }
+
+    orderMatch.marketPrice = tickMarketPrice;
+    orderMatch.security = security;
+    orderMatch.buyerOrder = buyingOrder;
+    orderMatch.sellerOrder = sellingOrder;
+    orderMatch.quantity = quantity;
+    orderMatch.uncrossPrice = uncrossPrice;
+
+    // the younger order of the two is the one crossing the book
+    long acceptedNanos = Math.max(buyingOrder.acceptedNanos, sellingOrder.acceptedNanos);
+    boolean traced = trace != null && acceptedNanos != 0L;
+    if (traced) {
+      trace.matched(acceptedNanos, matchedNanos);
+      trace.begin(acceptedNanos);
+    }
+
+    matchesCount.increment();
+    MatchEvent event = MatchEvent.beginIfEnabled();
+    try {
+      orderMatchDownstream.accept(orderMatch);
+    } catch (RuntimeException e) {
+      rejectionsCount.increment();
+      try {
+        orderMatchDownstreamRejected.accept(orderMatch, e);
+      } catch (RuntimeException e1) {
+        logger.error("Rejected downstream exception", e1);
+        logger.error("Downstream exception", e);
+      }
+    } finally {
+      if (traced) {
+        trace.end();
+      }
+      if (event != null) {
+        event.symbol = security.symbol();
+        event.buyerOrderId = buyerOrderId;
+        event.sellerOrderId = sellerOrderId;
+        event.quantity = quantity;
+        event.auction = uncrossPrice != Prices.NO_PRICE;
+        event.commit();
+      }
+    }
+  }
+
+  private void onOrderFilled(long orderId, int volumeRemain) {
+    if (volumeRemain == 0) {
+      onOrderFulfilled(orderId);
+    } else {
+      onOrderPartiallyFilled(orderId, volumeRemain);
+    }
+  }
+
+  private void onOrderPartiallyFilled(long orderId, int volumeRemain) {
+    // update book for partially filled order values if needed
+  }
+
+  private void onOrderFulfilled(long orderId) {
+    Order order = ordersIndex.remove(orderId);
+    if (order == null) {
+      throw new BookTickerFatalErrorException(new NoSuchOrderException(orderId));
+    }
+    filledOrdersCount.increment();
+    try {
+      filledOrderDownstream.accept(order);
+    } catch (RuntimeException e) {
+      rejectionsCount.increment();
+      try {
+        filledOrderDownstreamRejected.accept(order, e);
+      } catch (RuntimeException e1) {
+        logger.error("Rejected downstream exception", e1);
+        logger.error("Downstream exception", e);
+      }
+    }
+  }
+
+  /**
+   * The order accepted by the book but refused by the matcher goes to the
+   * filled order rejected downstream. Must be called under the
+   * stockMatcherLock
+   */
+  private void onOrderRejected(Order order, RuntimeException e) {
+    rejectionsCount.increment();
+    try {
+      filledOrderDownstreamRejected.accept(order, e);
+    } catch (RuntimeException e1) {
+      logger.error("Rejected downstream exception", e1);
+      logger.error("The order is rejected by the matcher {}", order, e);
+    }
+  }
+
   @Override
   public SecurityRecord instrument() {
     return security;
   }
 
+  @Override
+  public void setOrderArrivalListener(OrderArrivalListener listener) {
+    this.orderArrivalListener = listener;
+  }
+
   @Override
   public void flush() {
     logger.info("Persisting unfilled orders before shutdown");
@@ -212,50 +536,60 @@ public class OrderBookImpl implements OrderBook {
       OrderType type,
       TraderRecord trader,
       int quantity,
-      double price,
-      Instant timestamp) implements OrderRecord {
+      long price,
+      Instant timestamp,
+      long acceptedNanos) implements OrderRecord {
+
+    @Override
+    public String toString() {
+      return "Order[id=" + id
+          + ", security=" + security
+          + ", type=" + type
+          + ", trader=" + trader
+          + ", quantity=" + quantity
+          + ", price=" + Prices.toString(price, security.scale())
+          + ", timestamp=" + timestamp + "]";
+    }
   }
 
   @Override
   public Order addBuy(TraderRecord trader, int quantity) {
-    return addOrder(trader, OrderType.BUY, quantity, Double.NaN);
+    return addOrder(trader, OrderType.BUY, quantity, Prices.NO_PRICE);
   }
 
   @Override
   public Order addSell(TraderRecord trader, int quantity) {
-    return addOrder(trader, OrderType.SELL, quantity, Double.NaN);
+    return addOrder(trader, OrderType.SELL, quantity, Prices.NO_PRICE);
   }
 
   @Override
-  public Order addBid(TraderRecord trader, int quantity, double price) {
+  public Order addBid(TraderRecord trader, int quantity, long price) {
     return addOrder(trader, OrderType.BID, quantity, price);
   }
 
   @Override
-  public Order addAsk(TraderRecord trader, int quantity, double price) {
+  public Order addAsk(TraderRecord trader, int quantity, long price) {
     return addOrder(trader, OrderType.ASK, quantity, price);
   }
 
-  private Order addOrder(TraderRecord trader, OrderType type, int quantity, double price) {
-    var orderId = Math.abs(UUID.randomUUID().getMostSignificantBits());
+  private Order addOrder(TraderRecord trader, OrderType type, int quantity, long price) {
+    var orderId = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
     if (trader == null) {
       throw new OrderTraderValidationException();
     }
     if (quantity <= 0) {
       throw new OrderQuantityValidationException();
     }
-    if (!Double.isNaN(price) && price <= 0) {
+    if (price != Prices.NO_PRICE && price <= 0) {
       throw new OrderPriceValidationException();
     }
-    var order = new Order(orderId, security, type, trader, quantity, price, Instant.now());
-    orderCollectionsWrite.lock();
-    try {
-      ordersIndex.merge(order.id, order, (o1, o2) -> {
-        throw new DuplicateOrderBookException();// Unlikely to happen as UUID guarantees the distinction
-      });
-      ordersStagingQueue.enqueue(order);
-    } finally {
-      orderCollectionsWrite.unlock();
+    var order = new Order(orderId, security, type, trader, quantity, price, Instant.now(), System.nanoTime());
+    if (!ordersIngress.offer(order)) {
+      throw new OrderBookOverloadedException();
+    }
+    OrderArrivalListener listener = orderArrivalListener;
+    if (listener != null) {
+      listener.onOrderArrival();
     }
     return order;
   }
@@ -268,17 +602,15 @@ public class OrderBookImpl implements OrderBook {
       throw new OrderBookUnavailableException(e);
     }
     try {
-      orderCollectionsWrite.lock();
-      try {
-        if (!ordersIndex.containsKey(orderId)) {
-          throw new NoSuchOrderException(orderId);
-        }
-        stockMatcher.removeOrder(orderId); // this checks constraints
-        return ordersIndex.remove(orderId);
-      } finally {
-        orderCollectionsWrite.unlock();
+      drainIngress(); // the order may still be waiting in the ingress queue
+      if (!ordersIndex.containsKey(orderId)) {
+        throw new NoSuchOrderException(orderId);
       }
+      stockMatcher.removeOrder(orderId); // this checks constraints
+      return ordersIndex.remove(orderId);
     } finally {
+      // the orders drained change the book even if the removal fails
+      publishBookState();
       stockMatcherLock.unlock();
     }
   }
@@ -286,11 +618,14 @@ public class OrderBookImpl implements OrderBook {
   @Override
   public Iterable<Order> getActiveOrders() {
     try {
-      orderCollectionsRead.lockInterruptibly();
+      stockMatcherLock.lockInterruptibly();
     } catch (InterruptedException e) {
       throw new OrderBookUnavailableException(e);
     }
     try {
+      if (drainIngress()) {
+        publishBookState();
+      }
       if (ordersIndex.isEmpty()) {
         return Collections.emptyList();
       }
@@ -298,7 +633,48 @@ public class OrderBookImpl implements OrderBook {
       records.addAll(ordersIndex.values());
       return Collections.unmodifiableList(records);
     } finally {
-      orderCollectionsRead.unlock();
+      stockMatcherLock.unlock();
     }
   }
+
+  @Override
+  public MarketDepth getMarketDepth() {
+    return marketDepth;
+  }
+
+  @Override
+  public void setLatencyTracing(boolean enabled) {
+    try {
+      stockMatcherLock.lockInterruptibly();
+    } catch (InterruptedException e) {
+      throw new OrderBookUnavailableException(e);
+    }
+    try {
+      LatencyTrace trace = latencyTrace;
+      if (enabled && trace == null) {
+        latencyTrace = new LatencyTrace();
+      } else if (!enabled && trace != null) {
+        latencyTrace = null;
+        trace.close();
+      }
+    } finally {
+      stockMatcherLock.unlock();
+    }
+  }
+
+  @Override
+  public LatencyTrace getLatencyTrace() {
+    return latencyTrace;
+  }
+
+  @Override
+  public OrderBookStats getStats() {
+    return new OrderBookStats(
+        ordersIngress.size(),
+        (int) restingOrdersCount.get(),
+        ordersCount.get(),
+        matchesCount.get(),
+        filledOrdersCount.get(),
+        rejectionsCount.get());
+  }
 }
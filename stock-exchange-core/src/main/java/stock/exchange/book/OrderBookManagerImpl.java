@@ -1,7 +1,8 @@
 package stock.exchange.book;
 
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
 
 import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
@@ -11,12 +12,23 @@ import stock.exchange.domain.OrderRecord;
 import stock.exchange.domain.SecurityRecord;
 import stock.exchange.integration.Downstream;
 import stock.exchange.integration.RejectedDownstream;
+import stock.exchange.matcher.StockMatcher;
+import stock.exchange.matcher.StockMatcherImpl;
 
 public class OrderBookManagerImpl implements OrderBookManager {
 
-  private final Lock reader, writer;
+  // serializes the creation of the books only, the lookups take no lock
+  private final Lock writer = new ReentrantLock();
 
-  private final Int2ObjectMap<OrderBook> books = new Int2ObjectOpenHashMap<>();
+  /**
+   * The books are created rarely and looked up on every order, so every
+   * creation copies the map and publishes the copy, which is never modified
+   * afterwards, and the lookups read the current map without any lock
+   */
+  private volatile Int2ObjectMap<OrderBook> books = new Int2ObjectOpenHashMap<>();
+
+  private final Function<SecurityRecord, ? extends StockMatcher> stockMatcherFactory;
+  private final int ingressCapacity;
 
   private final Downstream<OrderMatchRecord> orderMatchDownstream;
   private final RejectedDownstream<OrderMatchRecord> orderMatchDownstreamRejected;
@@ -28,29 +40,71 @@ public class OrderBookManagerImpl implements OrderBookManager {
       RejectedDownstream<OrderMatchRecord> orderMatchDownstreamRejected,
       Downstream<OrderRecord> filledOrderDownstream,
       RejectedDownstream<OrderRecord> filledOrderDownstreamRejected) {
+    this(
+        security -> new StockMatcherImpl(),
+        orderMatchDownstream,
+        orderMatchDownstreamRejected,
+        filledOrderDownstream,
+        filledOrderDownstreamRejected);
+  }
+
+  public OrderBookManagerImpl(
+      Function<SecurityRecord, ? extends StockMatcher> stockMatcherFactory,
+      Downstream<OrderMatchRecord> orderMatchDownstream,
+      RejectedDownstream<OrderMatchRecord> orderMatchDownstreamRejected,
+      Downstream<OrderRecord> filledOrderDownstream,
+      RejectedDownstream<OrderRecord> filledOrderDownstreamRejected) {
+    this(
+        stockMatcherFactory,
+        OrderBookImpl.DEFAULT_INGRESS_CAPACITY,
+        orderMatchDownstream,
+        orderMatchDownstreamRejected,
+        filledOrderDownstream,
+        filledOrderDownstreamRejected);
+  }
+
+  /**
+   * @param ingressCapacity the maximal number of the orders waiting for the
+   *                        matching thread per book, see
+   *                        {@link OrderBookImpl#DEFAULT_INGRESS_CAPACITY}
+   */
+  public OrderBookManagerImpl(
+      Function<SecurityRecord, ? extends StockMatcher> stockMatcherFactory,
+      int ingressCapacity,
+      Downstream<OrderMatchRecord> orderMatchDownstream,
+      RejectedDownstream<OrderMatchRecord> orderMatchDownstreamRejected,
+      Downstream<OrderRecord> filledOrderDownstream,
+      RejectedDownstream<OrderRecord> filledOrderDownstreamRejected) {
+    if (ingressCapacity <= 0) {
+      throw new IllegalArgumentException("ingressCapacity");
+    }
+    this.stockMatcherFactory = stockMatcherFactory;
+    this.ingressCapacity = ingressCapacity;
     this.orderMatchDownstream = orderMatchDownstream;
     this.orderMatchDownstreamRejected = orderMatchDownstreamRejected;
     this.filledOrderDownstream = filledOrderDownstream;
     this.filledOrderDownstreamRejected = filledOrderDownstreamRejected;
-    ReentrantReadWriteLock rw = new ReentrantReadWriteLock();
-    this.reader = rw.readLock();
-    this.writer = rw.writeLock();
   }
 
   @Override
   public OrderBook createOrderBook(SecurityRecord instrument) {
     writer.lock();
     try {
-      if (books.containsKey(instrument.id())) {
+      Int2ObjectMap<OrderBook> current = books;
+      if (current.containsKey(instrument.id())) {
         throw new DuplicateOrderBookException();
       }
       OrderBook book = new OrderBookImpl(
+          stockMatcherFactory.apply(instrument),
           instrument,
+          ingressCapacity,
           orderMatchDownstream,
           orderMatchDownstreamRejected,
           filledOrderDownstream,
           filledOrderDownstreamRejected);
-      books.put(instrument.id(), book);
+      Int2ObjectMap<OrderBook> newBooks = new Int2ObjectOpenHashMap<>(current);
+      newBooks.put(instrument.id(), book);
+      books = newBooks;
       return book;
     } finally {
       writer.unlock();
@@ -59,14 +113,10 @@ public class OrderBookManagerImpl implements OrderBookManager {
 
   @Override
   public OrderBook findBookByInstrument(InstrumentRecord instrument) {
-    reader.lock();
-    try {
-      if (!books.containsKey(instrument.id())) {
-        throw new NoSuchBookException();
-      }
-      return books.get(instrument.id());
-    } finally {
-      reader.unlock();
+    OrderBook book = books.get(instrument.id());
+    if (book == null) {
+      throw new NoSuchBookException();
     }
+    return book;
   }
 }
\ No newline at end of file
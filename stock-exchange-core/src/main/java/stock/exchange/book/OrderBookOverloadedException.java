@@ -0,0 +1,11 @@
+package stock.exchange.book;
+
+/**
+ * The order can not be accepted as the queue of orders waiting for matching is
+ * full
+ */
+@SuppressWarnings("serial")
+public class OrderBookOverloadedException extends OrderBookUnavailableException {
+  public OrderBookOverloadedException() {
+  }
+}
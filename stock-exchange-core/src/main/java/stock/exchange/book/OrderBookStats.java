@@ -0,0 +1,24 @@
+package stock.exchange.book;
+
+/**
+ * The counters of the order book, the totals are since the book creation
+ *
+ * @param queuedOrders  the number of the orders placed but not taken by the
+ *                      tick yet, approximately
+ * @param restingOrders the number of the orders taken by the book and not
+ *                      filled or cancelled yet
+ * @param orders        the total number of the orders taken by the book
+ * @param matches       the total number of the matches
+ * @param filledOrders  the total number of the orders fully filled
+ * @param rejections    the total number of the matches and the filled orders
+ *                      rejected by the downstreams and of the orders
+ *                      rejected by the matcher
+ */
+public record OrderBookStats(
+    int queuedOrders,
+    int restingOrders,
+    long orders,
+    long matches,
+    long filledOrders,
+    long rejections) {
+}
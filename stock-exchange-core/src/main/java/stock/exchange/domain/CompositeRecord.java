@@ -1,7 +1,21 @@
 package stock.exchange.domain;
 
+import java.util.List;
+
 public interface CompositeRecord extends InstrumentRecord {
 
   Iterable<? extends SecurityRecord> componenents();
 
+  /**
+   * The weights of the components in the same order as
+   * {@link #componenents()}
+   */
+  List<Long> weights();
+
+  /**
+   * The market price of the composite is the sum of the market prices of the
+   * components multiplied by their weights and divided by the divisor
+   */
+  double divisor();
+
 }
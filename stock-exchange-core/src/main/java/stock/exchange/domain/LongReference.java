@@ -0,0 +1,6 @@
+package stock.exchange.domain;
+
+public interface LongReference {
+
+  long getAsLong();
+}
@@ -2,7 +2,10 @@ package stock.exchange.domain;
 
 public interface OrderMatchRecord {
 
-  double marketPrice();
+  /**
+   * The market price of the security in ticks at the moment of the match
+   */
+  long marketPrice();
 
   SecurityRecord security();
 
@@ -11,4 +14,11 @@ public interface OrderMatchRecord {
   OrderRecord sellerOrder();
 
   int quantity();
+
+  /**
+   * The price in ticks both orders are executed at by the call auction uncross,
+   * or {@link Prices#NO_PRICE} for the continuous matching, where the trade
+   * price is derived from the prices of the orders
+   */
+  long uncrossPrice();
 }
@@ -13,7 +13,17 @@ public interface OrderRecord {
 
   int quantity();
 
-  double price();
+  /**
+   * The limit price in ticks of the security, or {@link Prices#NO_PRICE} for
+   * market orders
+   */
+  long price();
   
   Instant timestamp();
+
+  /**
+   * The {@link System#nanoTime()} of the order accepted by the book, to measure
+   * the latencies by the monotonic clock
+   */
+  long acceptedNanos();
 }
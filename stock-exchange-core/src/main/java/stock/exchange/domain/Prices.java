@@ -0,0 +1,88 @@
+package stock.exchange.domain;
+
+import java.math.BigDecimal;
+
+/**
+ * Fixed-point price conversions.
+ * 
+ * Prices are kept as <code>long</code> values in instrument-specific ticks
+ * along the matching and trade path. A price in ticks <code>p</code> of the
+ * instrument with the scale <code>s</code> stands for the decimal value of
+ * <code>p * 10^-s</code>.
+ * 
+ * Conversion to and from decimal values is supposed to happen at the edges of
+ * the system only (user input parsing and output formatting)
+ */
+public final class Prices {
+
+  /**
+   * The price of an order without the price limit (market order)
+   */
+  public static final long NO_PRICE = Long.MIN_VALUE;
+
+  public static final int MAX_SCALE = 18;
+
+  private static final long[] POWERS_OF_TEN = new long[MAX_SCALE + 1];
+
+  static {
+    POWERS_OF_TEN[0] = 1L;
+    for (int i = 1; i <= MAX_SCALE; i++) {
+      POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10L;
+    }
+  }
+
+  private Prices() {
+  }
+
+  /**
+   * Parses the decimal price given to ticks
+   * 
+   * @throws NumberFormatException if the price is not a valid decimal number
+   * @throws ArithmeticException   if the price has more decimal places than the
+   *                               scale allows or doesn't fit into ticks range
+   */
+  public static long parse(String price, int scale) {
+    return new BigDecimal(price)
+        .setScale(scale)
+        .unscaledValue()
+        .longValueExact();
+  }
+
+  /**
+   * Converts the given decimal price to ticks by rounding it to the nearest tick
+   */
+  public static long toTicks(double price, int scale) {
+    if (Double.isNaN(price)) {
+      return NO_PRICE;
+    }
+    return Math.round(price * POWERS_OF_TEN[scale]);
+  }
+
+  /**
+   * Converts the price in ticks of the given scale to the ticks of the same or
+   * finer scale, exactly
+   * 
+   * @throws ArithmeticException if the price doesn't fit into ticks range of
+   *                             the new scale
+   */
+  public static long rescale(long ticks, int scale, int newScale) {
+    if (newScale < scale) {
+      throw new IllegalArgumentException("The scale " + newScale + " is coarser than " + scale);
+    }
+    return Math.multiplyExact(ticks, POWERS_OF_TEN[newScale - scale]);
+  }
+
+  public static double toDouble(long ticks, int scale) {
+    if (ticks == NO_PRICE) {
+      return Double.NaN;
+    }
+    return (double) ticks / POWERS_OF_TEN[scale];
+  }
+
+  public static String toString(long ticks, int scale) {
+    if (ticks == NO_PRICE) {
+      return String.valueOf(Double.NaN);
+    }
+    return BigDecimal.valueOf(ticks, scale).toPlainString();
+  }
+}
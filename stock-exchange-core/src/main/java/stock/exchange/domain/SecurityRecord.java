@@ -1,4 +1,16 @@
 package stock.exchange.domain;
 
 public interface SecurityRecord extends InstrumentRecord {
+
+  /**
+   * The number of decimal places in the price of the security. Prices of the
+   * security are kept as <code>long</code> values in ticks of
+   * <code>10^-scale</code>
+   */
+  int scale();
+
+  /**
+   * The market price of the security in ticks
+   */
+  LongReference marketPriceTicks();
 }
@@ -10,7 +10,10 @@ public interface TradeRecord {
 
   OrderRecord sellingOrder();
 
-  double price();
+  /**
+   * The trade price in ticks of the security
+   */
+  long price();
 
   int quantity();
 }
@@ -0,0 +1,40 @@
+package stock.exchange.engine;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Parks the runner thread for the period growing twice from the minimal to the
+ * maximal one between the checks for the work. The thread is not woken up on
+ * the order arrival, so the latency is bound by the maximal period
+ */
+public class BackoffIdleStrategy extends IdleStrategy {
+
+  private final long minParkNanos;
+  private final long maxParkNanos;
+
+  public BackoffIdleStrategy() {
+    this(1_000, 1_000_000);
+  }
+
+  public BackoffIdleStrategy(long minParkNanos, long maxParkNanos) {
+    if (minParkNanos <= 0) {
+      throw new IllegalArgumentException("minParkNanos");
+    }
+    if (maxParkNanos < minParkNanos) {
+      throw new IllegalArgumentException("maxParkNanos");
+    }
+    this.minParkNanos = minParkNanos;
+    this.maxParkNanos = maxParkNanos;
+  }
+
+  @Override
+  protected void await(BooleanSupplier hasWork, long deadlineNanos) {
+    long parkNanos = minParkNanos;
+    long remain;
+    while (!hasWork.getAsBoolean() && (remain = deadlineNanos - System.nanoTime()) > 0 && !interrupted()) {
+      LockSupport.parkNanos(this, Math.min(parkNanos, remain));
+      parkNanos = Math.min(parkNanos << 1, maxParkNanos);
+    }
+  }
+}
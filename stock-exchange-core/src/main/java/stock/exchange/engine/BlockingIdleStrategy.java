@@ -0,0 +1,41 @@
+package stock.exchange.engine;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Blocks the runner thread on the condition signalled by the order arrival. No
+ * CPU is spent while waiting, the latency is the one of the thread wake-up
+ */
+public class BlockingIdleStrategy extends IdleStrategy {
+
+  private final Lock lock = new ReentrantLock();
+  private final Condition workSignalled = lock.newCondition();
+
+  @Override
+  public void wakeUp() {
+    lock.lock();
+    try {
+      workSignalled.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  protected void await(BooleanSupplier hasWork, long deadlineNanos) {
+    lock.lock();
+    try {
+      long remain;
+      while (!hasWork.getAsBoolean() && (remain = deadlineNanos - System.nanoTime()) > 0) {
+        workSignalled.awaitNanos(remain);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      lock.unlock();
+    }
+  }
+}
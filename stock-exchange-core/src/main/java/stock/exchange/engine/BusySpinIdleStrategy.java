@@ -0,0 +1,17 @@
+package stock.exchange.engine;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Keeps the runner thread spinning on the CPU. The lowest latency of the order
+ * arrival at the cost of a fully busy CPU core per book
+ */
+public class BusySpinIdleStrategy extends IdleStrategy {
+
+  @Override
+  protected void await(BooleanSupplier hasWork, long deadlineNanos) {
+    while (!hasWork.getAsBoolean() && System.nanoTime() - deadlineNanos < 0 && !interrupted()) {
+      Thread.onSpinWait();
+    }
+  }
+}
@@ -0,0 +1,70 @@
+package stock.exchange.engine;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * The way the runner thread of the order book waits for the work between the
+ * ticks. It trades the CPU time for the latency of the order arrival, so it can
+ * be chosen per book.
+ *
+ * The strategy accounts the time the runner spent waiting in
+ * {@link #idle(BooleanSupplier, long)} as idle, and the time between the waits
+ * as working.
+ *
+ * The instance of the strategy keeps the state of a single runner, so it must
+ * not be shared between the books.
+ */
+public abstract class IdleStrategy {
+
+  private volatile long idleNanos;
+  private volatile long workNanos;
+  private long lastWakeUpNanos;
+  private boolean started = false;
+
+  /**
+   * Waits until the work is signalled or the deadline passes, must be called by
+   * the runner thread only. Returns earlier when the thread gets interrupted
+   *
+   * @param hasWork       returns <code>true</code> once new orders arrived
+   * @param deadlineNanos the {@link System#nanoTime()} to stop waiting at
+   */
+  public final void idle(BooleanSupplier hasWork, long deadlineNanos) {
+    long now = System.nanoTime();
+    if (started) {
+      workNanos = workNanos + (now - lastWakeUpNanos);
+    }
+    started = true;
+    if (!hasWork.getAsBoolean()) {
+      await(hasWork, deadlineNanos);
+    }
+    lastWakeUpNanos = System.nanoTime();
+    idleNanos = idleNanos + (lastWakeUpNanos - now);
+  }
+
+  /**
+   * Called by the thread that signalled the work, once per signal
+   */
+  public void wakeUp() {
+  }
+
+  protected abstract void await(BooleanSupplier hasWork, long deadlineNanos);
+
+  /**
+   * @return total nanoseconds the runner spent waiting for the work
+   */
+  public long idleNanos() {
+    return idleNanos;
+  }
+
+  /**
+   * @return total nanoseconds the runner spent ticking the book between the
+   *         waits
+   */
+  public long workNanos() {
+    return workNanos;
+  }
+
+  protected static boolean interrupted() {
+    return Thread.currentThread().isInterrupted();
+  }
+}
@@ -0,0 +1,33 @@
+package stock.exchange.engine;
+
+import java.util.List;
+
+/**
+ * The runner of order books owning the threads the books are ticked in
+ */
+public interface OrderBookEngine extends OrderBookRunner, AutoCloseable {
+
+  /**
+   * The metrics are recorded by the threads ticking the books without any
+   * contention and read without stopping them
+   *
+   * @return the metrics of the book running for the instrument, or
+   *         <code>null</code> if there is no such book
+   */
+  OrderBookMetrics getMetrics(int instrumentId);
+
+  /**
+   * @return the metrics of all the books running, in no particular order
+   */
+  List<OrderBookMetrics> getMetrics();
+
+  /**
+   * Stops ticking all the books, flushes them and releases the threads
+   * 
+   * @return <code>true</code> if all the threads terminated in time
+   */
+  boolean shutdown();
+
+  @Override
+  void close();
+}
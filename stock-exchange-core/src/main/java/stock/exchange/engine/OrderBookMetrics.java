@@ -0,0 +1,41 @@
+package stock.exchange.engine;
+
+import stock.exchange.book.OrderBookStats;
+import util.metrics.LatencyHistogram;
+
+/**
+ * The metrics of the order book running in the engine, the totals are since
+ * the book started running
+ *
+ * @param symbol         the symbol of the instrument of the book
+ * @param ticks          the total number of the ticks
+ * @param workingTicks   the number of the ticks which found work
+ * @param ticksPerSecond the ticks of the last second or so
+ * @param tickDuration   the distribution of the tick durations in nanoseconds
+ * @param exceptions     the number of the ticks failed by an exception
+ * @param book           the counters of the book itself
+ */
+public record OrderBookMetrics(
+    String symbol,
+    long ticks,
+    long workingTicks,
+    long ticksPerSecond,
+    LatencyHistogram.Snapshot tickDuration,
+    long exceptions,
+    OrderBookStats book) {
+
+  /**
+   * @return the average number of the matches per tick which found work
+   */
+  public double matchesPerTick() {
+    return workingTicks == 0 ? 0d : (double) book.matches() / workingTicks;
+  }
+
+  /**
+   * @return the average number of the orders fully filled per tick which found
+   *         work
+   */
+  public double fillsPerTick() {
+    return workingTicks == 0 ? 0d : (double) book.filledOrders() / workingTicks;
+  }
+}
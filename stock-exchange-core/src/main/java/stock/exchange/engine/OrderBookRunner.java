@@ -6,5 +6,18 @@ import stock.exchange.book.OrderBook;
 
 public interface OrderBookRunner {
 
-  void runOrderBook(OrderBook book, Duration tickerInterval);
-}
\ No newline at end of file
+  /**
+   * Starts matching the orders of the book. The book is ticked as soon as new
+   * orders arrive or the previous tick found work, and otherwise once per the
+   * ticker interval backing off between its bounds
+   */
+  void runOrderBook(OrderBook book, TickerInterval tickerInterval);
+
+  /**
+   * Starts matching the orders of the book. The book is ticked as soon as new
+   * orders arrive, and at least once per <code>tickerInterval</code> otherwise
+   */
+  default void runOrderBook(OrderBook book, Duration tickerInterval) {
+    runOrderBook(book, TickerInterval.fixed(tickerInterval));
+  }
+}
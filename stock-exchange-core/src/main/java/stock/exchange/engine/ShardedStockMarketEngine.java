@@ -0,0 +1,337 @@
+package stock.exchange.engine;
+
+import static java.util.concurrent.CompletableFuture.allOf;
+import static java.util.concurrent.CompletableFuture.runAsync;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectList;
+import stock.exchange.book.DuplicateOrderBookException;
+import stock.exchange.book.OrderBook;
+import stock.exchange.book.OrderBook.OrderArrivalListener;
+import util.nogc.MpscArrayQueue;
+
+/**
+ * The engine runs a fixed number of worker threads, each of them owns a
+ * disjoint set of order books and ticks them in its own loop. So the number of
+ * threads does not depend on the number of instruments.
+ *
+ * A book is assigned to the worker by the instrument id hash, or explicitly by
+ * {@link #runOrderBook(OrderBook, TickerInterval, int)}. The worker ticks the
+ * book as soon as new orders arrive to it or the previous tick found work, and
+ * otherwise once per ticker interval of the book backing off while the book
+ * stays idle. The worker parks its thread while none of its books has work.
+ */
+public class ShardedStockMarketEngine implements OrderBookEngine {
+
+  private static final int DEFAULT_MAX_BOOKS_PER_WORKER = 1 << 16;
+
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+  private final Object sync = new Object();
+
+  private static class Entry implements OrderArrivalListener {
+
+    private final OrderBook book;
+    private final TickerInterval tickerInterval;
+    private final Worker worker;
+    private final AtomicBoolean signalled = new AtomicBoolean();
+    private final TickMetrics metrics = new TickMetrics();
+    private long intervalNanos;
+    private long nextTickNanos;
+
+    private Entry(OrderBook book, TickerInterval tickerInterval, Worker worker) {
+      this.book = book;
+      this.tickerInterval = tickerInterval;
+      this.intervalNanos = tickerInterval.min().toNanos();
+      this.worker = worker;
+    }
+
+    @Override
+    public void onOrderArrival() {
+      if (!signalled.getAndSet(true)) {
+        worker.signal(this);
+      }
+    }
+  }
+
+  private static class Worker implements Runnable {
+
+    private final Logger logger;
+    private final int maxBooks;
+    private final MpscArrayQueue<Entry> registered;
+    private final MpscArrayQueue<Entry> ready;
+    private final ObjectList<Entry> entries = new ObjectArrayList<>();
+    private volatile Thread thread;
+    private volatile boolean running = true;
+    private boolean hasDeadline = false;
+    private long nextDeadlineNanos;
+    // the books assigned to the worker, counted under the engine sync
+    private int booksCount;
+
+    private Worker(int index, int maxBooks) {
+      this.logger = LoggerFactory.getLogger(Worker.class + "." + index);
+      this.maxBooks = maxBooks;
+      this.registered = new MpscArrayQueue<>(maxBooks);
+      this.ready = new MpscArrayQueue<>(maxBooks);
+    }
+
+    private void signal(Entry entry) {
+      // never fails, every entry is in the queue once at most and the number
+      // of the entries is bounded by the register
+      ready.offer(entry);
+      wakeUp();
+    }
+
+    /**
+     * Must be called under the engine sync
+     */
+    private void register(Entry entry) {
+      if (booksCount == maxBooks || !registered.offer(entry)) {
+        throw new StockMarketException("Too many order books per worker");
+      }
+      booksCount++;
+      wakeUp();
+    }
+
+    /**
+     * The interrupt alone does not stop the worker, as the tick interrupted may
+     * swallow it, e.g. the book taking its lock interruptibly
+     */
+    private void stop() {
+      running = false;
+      wakeUp();
+    }
+
+    private void wakeUp() {
+      Thread t = thread;
+      if (t != null) {
+        LockSupport.unpark(t);
+      }
+    }
+
+    @Override
+    public void run() {
+      thread = Thread.currentThread();
+      try {
+        logger.info("Started");
+        while (running) {
+          Entry e;
+
+          while ((e = registered.poll()) != null) {
+            logger.info("{} - Started", e.book.instrument().symbol());
+            entries.add(e);
+            tick(e);
+          }
+
+          while ((e = ready.poll()) != null) {
+            tick(e);
+          }
+
+          long now = System.nanoTime();
+          if (hasDeadline && now - nextDeadlineNanos >= 0) {
+            // the fallback periodic tick
+            hasDeadline = false;
+            for (int i = 0; i < entries.size(); i++) {
+              e = entries.get(i);
+              if (now - e.nextTickNanos >= 0) {
+                tick(e);
+              } else {
+                updateDeadline(e.nextTickNanos);
+              }
+            }
+          }
+
+          if (ready.isEmpty() && registered.isEmpty() && running) {
+            if (hasDeadline) {
+              LockSupport.parkNanos(this, nextDeadlineNanos - System.nanoTime());
+            } else {
+              LockSupport.park(this);
+            }
+          }
+        }
+      } finally {
+        logger.info("Stopping");
+        for (int i = 0; i < entries.size(); i++) {
+          Entry e = entries.get(i);
+          logger.info("{} - Stopping", e.book.instrument().symbol());
+          e.book.setOrderArrivalListener(null);
+          e.book.flush();
+        }
+      }
+    }
+
+    private void tick(Entry e) {
+      e.signalled.set(false); // orders arrived from now on cause another tick
+      boolean worked = false;
+      long startNanos = System.nanoTime();
+      try {
+        worked = e.book.tick();
+      } catch (RuntimeException ex) {
+        e.metrics.failed();
+        logger.error("{} - Unable to tick", e.book.instrument().symbol(), ex);
+      }
+      long endNanos = System.nanoTime();
+      e.metrics.ticked(startNanos, endNanos, worked);
+      if (worked) {
+        e.intervalNanos = e.tickerInterval.min().toNanos();
+        if (!e.signalled.getAndSet(true)) {
+          ready.offer(e); // tick again after the other ready books
+        }
+      }
+      e.nextTickNanos = endNanos + e.intervalNanos;
+      if (!worked) {
+        e.intervalNanos = e.tickerInterval.backOffNanos(e.intervalNanos);
+      }
+      updateDeadline(e.nextTickNanos);
+    }
+
+    private void updateDeadline(long deadlineNanos) {
+      if (!hasDeadline || deadlineNanos - nextDeadlineNanos < 0) {
+        nextDeadlineNanos = deadlineNanos;
+        hasDeadline = true;
+      }
+    }
+  }
+
+  private final Worker[] workers;
+  private final ExecutorService threadPools;
+  private final ObjectList<CompletableFuture<?>> allProcesses = new ObjectArrayList<>();
+  private final Int2ObjectMap<Entry> entries = new Int2ObjectOpenHashMap<>();
+
+  /**
+   * Creates the engine with the number of workers equal to the number of
+   * available processors
+   */
+  public ShardedStockMarketEngine() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  public ShardedStockMarketEngine(int workersCount) {
+    this(workersCount, DEFAULT_MAX_BOOKS_PER_WORKER);
+  }
+
+  /**
+   * @param maxBooksPerWorker the number of the books a worker runs at most, the
+   *                          book assigned to the worker running as many is
+   *                          rejected by {@link StockMarketException}
+   */
+  public ShardedStockMarketEngine(int workersCount, int maxBooksPerWorker) {
+    if (workersCount <= 0) {
+      throw new IllegalArgumentException("workersCount");
+    }
+    if (maxBooksPerWorker <= 0) {
+      throw new IllegalArgumentException("maxBooksPerWorker");
+    }
+    this.workers = new Worker[workersCount];
+    this.threadPools = Executors.newFixedThreadPool(workersCount);
+    for (int i = 0; i < workersCount; i++) {
+      workers[i] = new Worker(i, maxBooksPerWorker);
+      allProcesses.add(runAsync(workers[i], threadPools));
+    }
+  }
+
+  public int workersCount() {
+    return workers.length;
+  }
+
+  /**
+   * Assigns the book to the worker by the instrument id hash
+   */
+  @Override
+  public void runOrderBook(OrderBook book, TickerInterval tickerInterval) {
+    runOrderBook(book, tickerInterval, Math.floorMod(mix(book.instrument().id()), workers.length));
+  }
+
+  /**
+   * Assigns the book to the given worker explicitly
+   *
+   * @param worker the index of the worker from 0 to
+   *               <code>workersCount() - 1</code>
+   */
+  public void runOrderBook(OrderBook book, TickerInterval tickerInterval, int worker) {
+    if (worker < 0 || worker >= workers.length) {
+      throw new IllegalArgumentException("worker");
+    }
+    synchronized (sync) {
+      if (threadPools.isShutdown()) {
+        throw new StockMarketIsShutdownException();
+      }
+      if (entries.containsKey(book.instrument().id())) {
+        throw new DuplicateOrderBookException();
+      }
+      Entry entry = new Entry(book, tickerInterval, workers[worker]);
+      book.setOrderArrivalListener(entry);
+      try {
+        workers[worker].register(entry);
+      } catch (RuntimeException e) {
+        book.setOrderArrivalListener(null);
+        throw e;
+      }
+      entries.put(book.instrument().id(), entry);
+    }
+  }
+
+  private static int mix(int id) {
+    // spreads sequential ids evenly over the workers
+    int h = id * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  @Override
+  public OrderBookMetrics getMetrics(int instrumentId) {
+    Entry entry;
+    synchronized (sync) {
+      entry = entries.get(instrumentId);
+    }
+    return entry == null ? null : entry.metrics.snapshot(entry.book);
+  }
+
+  @Override
+  public List<OrderBookMetrics> getMetrics() {
+    List<Entry> all;
+    synchronized (sync) {
+      all = new ArrayList<>(entries.values());
+    }
+    List<OrderBookMetrics> result = new ArrayList<>(all.size());
+    for (Entry entry : all) {
+      result.add(entry.metrics.snapshot(entry.book));
+    }
+    return result;
+  }
+
+  @Override
+  public boolean shutdown() {
+    synchronized (sync) {
+      for (Worker worker : workers) {
+        worker.stop();
+      }
+      // interrupts the ticks blocked in the downstreams
+      threadPools.shutdownNow();
+    }
+    allOf(allProcesses.toArray(new CompletableFuture[allProcesses.size()])).join();
+    try {
+      return threadPools.awaitTermination(60 * 1000, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      logger.warn("Unable to await termination of threads, got interrupted", e);
+      return false;
+    }
+  }
+
+  @Override
+  public void close() {
+    shutdown();
+  }
+}
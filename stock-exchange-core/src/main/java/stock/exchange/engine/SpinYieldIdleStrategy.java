@@ -0,0 +1,36 @@
+package stock.exchange.engine;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Spins for a number of iterations, then yields the CPU to other threads
+ * between the checks for the work
+ */
+public class SpinYieldIdleStrategy extends IdleStrategy {
+
+  private final int spins;
+
+  public SpinYieldIdleStrategy() {
+    this(1000);
+  }
+
+  public SpinYieldIdleStrategy(int spins) {
+    if (spins < 0) {
+      throw new IllegalArgumentException("spins");
+    }
+    this.spins = spins;
+  }
+
+  @Override
+  protected void await(BooleanSupplier hasWork, long deadlineNanos) {
+    int i = 0;
+    while (!hasWork.getAsBoolean() && System.nanoTime() - deadlineNanos < 0 && !interrupted()) {
+      if (i < spins) {
+        i++;
+        Thread.onSpinWait();
+      } else {
+        Thread.yield();
+      }
+    }
+  }
+}
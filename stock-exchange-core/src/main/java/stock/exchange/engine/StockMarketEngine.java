@@ -3,11 +3,14 @@ package stock.exchange.engine;
 import static java.util.concurrent.CompletableFuture.allOf;
 import static java.util.concurrent.CompletableFuture.runAsync;
 
-import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,56 +21,134 @@ import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import it.unimi.dsi.fastutil.objects.ObjectList;
 import stock.exchange.book.DuplicateOrderBookException;
 import stock.exchange.book.OrderBook;
+import stock.exchange.book.OrderBook.OrderArrivalListener;
+import stock.exchange.domain.SecurityRecord;
+import util.concurrent.VirtualThreads;
 
-public class StockMarketEngine implements AutoCloseable, OrderBookRunner {
+/**
+ * The engine runs every order book in its own thread
+ */
+public class StockMarketEngine implements OrderBookEngine {
 
   private final Logger logger = LoggerFactory.getLogger(getClass());
   private final Object sync = new Object();
 
-  private static class Runner implements Runnable {
+  /**
+   * The runner ticks the book as soon as a new order arrives or the previous
+   * tick found work, and it waits in the idle strategy of the book while there
+   * is nothing to do. The ticker interval is only the upper bound of the waiting
+   * time, so the book still ticks periodically without new orders (e.g. market
+   * orders waiting for the market price change). The interval backs off while
+   * the book stays idle.
+   */
+  private static class Runner implements Runnable, OrderArrivalListener {
 
     private final Logger logger;
-    private final Duration tickerInterval;
+    private final TickerInterval tickerInterval;
     private final OrderBook book;
+    private final IdleStrategy idleStrategy;
+    private final AtomicBoolean signalled = new AtomicBoolean();
+    private final BooleanSupplier hasWork = signalled::get;
+    private final TickMetrics metrics = new TickMetrics();
     private volatile boolean stopped = false;
 
-    private Runner(OrderBook book, Duration tickerInterval) {
+    private Runner(OrderBook book, TickerInterval tickerInterval, IdleStrategy idleStrategy) {
       this.logger = LoggerFactory.getLogger(Runner.class + "." + book.instrument().symbol());
       this.book = book;
       this.tickerInterval = tickerInterval;
+      this.idleStrategy = idleStrategy;
+    }
+
+    @Override
+    public void onOrderArrival() {
+      if (!signalled.getAndSet(true)) {
+        idleStrategy.wakeUp();
+      }
     }
 
     @Override
     public void run() {
       try {
         logger.info("Started");
+        long minIntervalNanos = tickerInterval.min().toNanos();
+        long intervalNanos = minIntervalNanos;
         while (!stopped) {
+          signalled.set(false); // orders arrived from now on cause another tick
           logger.debug("Tick");
+          boolean worked = false;
+          long startNanos = System.nanoTime();
           try {
-            book.tick();
+            worked = book.tick();
           } catch (RuntimeException e) {
+            metrics.failed();
             logger.error("Unable to tick", e);
           }
-          try {
-            Thread.sleep(tickerInterval.toMillis(), tickerInterval.toNanosPart());
-          } catch (InterruptedException e) {
+          metrics.ticked(startNanos, System.nanoTime(), worked);
+          if (worked) {
+            intervalNanos = minIntervalNanos; // and tick again right away
+          } else {
+            idleStrategy.idle(hasWork, System.nanoTime() + intervalNanos);
+            if (!signalled.get()) {
+              intervalNanos = tickerInterval.backOffNanos(intervalNanos);
+            }
+          }
+          if (Thread.currentThread().isInterrupted()) {
             this.stopped = true;
           }
         }
       } finally {
         logger.info("Stopping");
+        book.setOrderArrivalListener(null);
         book.flush();
       }
     }
   }
 
-  private final ExecutorService threadPools = Executors.newCachedThreadPool();
+  private final ExecutorService threadPools;
 
   private final ObjectList<CompletableFuture<?>> allProcesses = new ObjectArrayList<>();
   private final Int2ObjectMap<Runner> runners = new Int2ObjectArrayMap<>();
+  private final Function<SecurityRecord, IdleStrategy> idleStrategyFactory;
+
+  /**
+   * Creates the engine blocking the idle runners until new orders arrive
+   */
+  public StockMarketEngine() {
+    this(s -> new BlockingIdleStrategy());
+  }
+
+  /**
+   * @param idleStrategyFactory creates a new idle strategy for the runner of
+   *                            the security book
+   */
+  public StockMarketEngine(Function<SecurityRecord, IdleStrategy> idleStrategyFactory) {
+    this(idleStrategyFactory, false);
+  }
+
+  /**
+   * @param idleStrategyFactory creates a new idle strategy for the runner of
+   *                            the security book
+   * @param virtualThreads      runs the books in virtual threads instead of the
+   *                            platform ones, requires JDK 21+. Spinning idle
+   *                            strategies keep the carrier thread busy, so the
+   *                            blocking or backoff ones suit virtual threads
+   * @throws UnsupportedOperationException if the virtual threads are not
+   *                                       supported by the JDK
+   */
+  public StockMarketEngine(Function<SecurityRecord, IdleStrategy> idleStrategyFactory, boolean virtualThreads) {
+    this.idleStrategyFactory = idleStrategyFactory;
+    this.threadPools = VirtualThreads.newThreadPerTaskExecutor(virtualThreads);
+  }
 
   @Override
-  public void runOrderBook(OrderBook book, Duration tickerInterval) {
+  public void runOrderBook(OrderBook book, TickerInterval tickerInterval) {
+    runOrderBook(book, tickerInterval, idleStrategyFactory.apply(book.instrument()));
+  }
+
+  /**
+   * Runs the book with the given idle strategy
+   */
+  public void runOrderBook(OrderBook book, TickerInterval tickerInterval, IdleStrategy idleStrategy) {
     synchronized (sync) {
       if (threadPools.isShutdown()) {
         throw new StockMarketIsShutdownException();
@@ -75,12 +156,47 @@ public class StockMarketEngine implements AutoCloseable, OrderBookRunner {
       if (runners.containsKey(book.instrument().id())) {
         throw new DuplicateOrderBookException();
       }
-      Runner runner = new Runner(book, tickerInterval);
+      Runner runner = new Runner(book, tickerInterval, idleStrategy);
+      book.setOrderArrivalListener(runner);
       allProcesses.add(runAsync(runner, threadPools));
       runners.put(book.instrument().id(), runner);
     }
   }
 
+  /**
+   * @return the idle strategy of the book running for the instrument, or
+   *         <code>null</code> if there is no such book
+   */
+  public IdleStrategy idleStrategy(int instrumentId) {
+    synchronized (sync) {
+      Runner runner = runners.get(instrumentId);
+      return runner == null ? null : runner.idleStrategy;
+    }
+  }
+
+  @Override
+  public OrderBookMetrics getMetrics(int instrumentId) {
+    Runner runner;
+    synchronized (sync) {
+      runner = runners.get(instrumentId);
+    }
+    return runner == null ? null : runner.metrics.snapshot(runner.book);
+  }
+
+  @Override
+  public List<OrderBookMetrics> getMetrics() {
+    List<Runner> all;
+    synchronized (sync) {
+      all = new ArrayList<>(runners.values());
+    }
+    List<OrderBookMetrics> result = new ArrayList<>(all.size());
+    for (Runner runner : all) {
+      result.add(runner.metrics.snapshot(runner.book));
+    }
+    return result;
+  }
+
+  @Override
   public boolean shutdown() {
     synchronized (sync) {
       threadPools.shutdownNow();
@@ -0,0 +1,83 @@
+package stock.exchange.engine;
+
+import java.util.concurrent.TimeUnit;
+
+import stock.exchange.book.OrderBook;
+import util.metrics.Counter;
+import util.metrics.LatencyHistogram;
+
+/**
+ * The metrics of the ticks of a single order book, recorded by the thread
+ * ticking the book and read by any thread. The recording takes no locks and
+ * no atomic read-modify-write operations but the ones of the tick duration
+ * histogram, which are never contended.
+ *
+ * The ticks per second are counted over the windows of about a second, the
+ * rate of the last window completed is reported. The window is completed by
+ * the tick, so the rate is taken from the current window until the first one
+ * is completed, and for the book gone idle once the window is older than two
+ * seconds.
+ */
+final class TickMetrics {
+
+  private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+  private final LatencyHistogram tickDuration = new LatencyHistogram();
+  private final Counter ticks = new Counter();
+  private final Counter workingTicks = new Counter();
+  private final Counter exceptions = new Counter();
+  private final Counter ticksPerSecond = new Counter();
+  private final Counter windowStartNanos = new Counter();
+  private final Counter windowStartTicks = new Counter();
+
+  TickMetrics() {
+    ticksPerSecond.set(-1L); // no window completed yet
+    windowStartNanos.set(System.nanoTime());
+  }
+
+  /**
+   * Must be called by the ticking thread only
+   *
+   * @param startNanos the time the tick started
+   * @param endNanos   the time the tick ended
+   * @param worked     the tick found work
+   */
+  void ticked(long startNanos, long endNanos, boolean worked) {
+    tickDuration.record(endNanos - startNanos);
+    ticks.increment();
+    if (worked) {
+      workingTicks.increment();
+    }
+    long elapsed = endNanos - windowStartNanos.get();
+    if (elapsed >= WINDOW_NANOS) {
+      long count = ticks.get();
+      ticksPerSecond.set((count - windowStartTicks.get()) * WINDOW_NANOS / elapsed);
+      windowStartTicks.set(count);
+      windowStartNanos.set(endNanos);
+    }
+  }
+
+  /**
+   * Must be called by the ticking thread only
+   */
+  void failed() {
+    exceptions.increment();
+  }
+
+  OrderBookMetrics snapshot(OrderBook book) {
+    long count = ticks.get();
+    long rate = ticksPerSecond.get();
+    long elapsed = System.nanoTime() - windowStartNanos.get();
+    if ((rate < 0 || elapsed >= 2 * WINDOW_NANOS) && elapsed > 0) {
+      rate = Math.max(0L, count - windowStartTicks.get()) * WINDOW_NANOS / elapsed;
+    }
+    return new OrderBookMetrics(
+        book.instrument().symbol(),
+        count,
+        workingTicks.get(),
+        Math.max(0L, rate),
+        tickDuration.snapshot(),
+        exceptions.get(),
+        book.getStats());
+  }
+}
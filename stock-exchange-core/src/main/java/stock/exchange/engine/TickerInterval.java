@@ -0,0 +1,63 @@
+package stock.exchange.engine;
+
+import java.time.Duration;
+
+/**
+ * The bounds of the interval an order book is ticked with while no new orders
+ * arrive. The book is ticked with the minimal interval after a tick found work,
+ * and the interval doubles on every idle tick up to the maximal one. So the
+ * liquid books stay responsive while the illiquid ones wake up rarely
+ */
+public final class TickerInterval {
+
+  private final Duration min;
+  private final Duration max;
+
+  private TickerInterval(Duration min, Duration max) {
+    if (min.isNegative() || min.isZero()) {
+      throw new IllegalArgumentException("min");
+    }
+    if (max.compareTo(min) < 0) {
+      throw new IllegalArgumentException("max");
+    }
+    this.min = min;
+    this.max = max;
+  }
+
+  /**
+   * The book is ticked with the same interval regardless of its activity
+   */
+  public static TickerInterval fixed(Duration interval) {
+    return new TickerInterval(interval, interval);
+  }
+
+  /**
+   * The interval backs off from the <code>min</code> to the <code>max</code>
+   * while the book is idle
+   */
+  public static TickerInterval adaptive(Duration min, Duration max) {
+    return new TickerInterval(min, max);
+  }
+
+  public Duration min() {
+    return min;
+  }
+
+  public Duration max() {
+    return max;
+  }
+
+  /**
+   * @return the next interval of the idle book, twice the current one but not
+   *         above the maximal one
+   */
+  long backOffNanos(long intervalNanos) {
+    long maxNanos = max.toNanos();
+    return intervalNanos >= maxNanos >> 1 ? maxNanos : intervalNanos << 1;
+  }
+
+  @Override
+  public String toString() {
+    return min.equals(max) ? min.toString() : min + ".." + max;
+  }
+}
@@ -0,0 +1,9 @@
+package stock.exchange.instrument;
+
+@SuppressWarnings("serial")
+public class CompositeOverflowException extends MarketDataException {
+
+  public CompositeOverflowException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
@@ -13,9 +13,47 @@ public interface InstrumentManager {
 
   InstrumentRecord findInstrumentBySymbol(String symbol);
 
-  SecurityRecord createSecurity(int instrumentId, String symbol, double initialPrice);
+  /**
+   * Creates the security
+   * 
+   * @param scale        the number of decimal places in prices of the security
+   * @param initialPrice the initial market price in ticks of the security
+   * @throws InvalidScaleException
+   * @throws DuplicateInstrumentException
+   */
+  SecurityRecord createSecurity(int instrumentId, String symbol, int scale, long initialPrice);
 
+  /**
+   * Creates the composite of the equal weights, its market price is the
+   * average of the market prices of the distinct components
+   * 
+   * @throws InvalidCompositeException if no components given
+   * @throws DuplicateInstrumentException
+   * @throws NoSuchSecurityException
+   */
   CompositeRecord createComposite(int instrumentId, String symbol, String[] componentSymbols);
 
+  /**
+   * Creates the weighted composite, its market price is the sum of the market
+   * prices of the components multiplied by their weights and divided by the
+   * divisor, as of the price-weighted and the capitalization-weighted indices
+   * 
+   * @param weights the weights (typically the numbers of shares) of the
+   *                components in the same order as the component symbols
+   * @param divisor the divisor of the weighted sum
+   * @throws InvalidCompositeException if no components given, a component is
+   *                                   repeated, the weights do not match the
+   *                                   components, or a weight or the divisor
+   *                                   is not positive
+   * @throws DuplicateInstrumentException
+   * @throws NoSuchSecurityException
+   */
+  CompositeRecord createComposite(
+      int instrumentId,
+      String symbol,
+      String[] componentSymbols,
+      long[] weights,
+      double divisor);
+
   Iterable<? extends InstrumentRecord> getAllInstruments();
 }
\ No newline at end of file
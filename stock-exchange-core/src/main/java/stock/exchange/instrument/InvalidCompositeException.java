@@ -0,0 +1,9 @@
+package stock.exchange.instrument;
+
+@SuppressWarnings("serial")
+public class InvalidCompositeException extends MarketDataException {
+
+  public InvalidCompositeException(String message) {
+    super(message);
+  }
+}
@@ -0,0 +1,9 @@
+package stock.exchange.instrument;
+
+@SuppressWarnings("serial")
+public class InvalidScaleException extends MarketDataException {
+
+  public InvalidScaleException(int scale) {
+    super("Invalid price scale " + String.valueOf(scale));
+  }
+}
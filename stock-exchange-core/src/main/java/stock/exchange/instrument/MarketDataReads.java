@@ -1,5 +1,10 @@
 package stock.exchange.instrument;
 
+import java.time.Duration;
+import java.util.List;
+
+import stock.exchange.bars.Bar;
+import stock.exchange.bars.NoSuchBarIntervalException;
 import stock.exchange.domain.DoubleReference;
 
 /**
@@ -12,4 +17,16 @@ public interface MarketDataReads {
   }
 
   DoubleReference getMarketPriceRef(int instrumentId);
+
+  /**
+   * The latest bars of the trades of the security
+   * 
+   * @param interval the interval the bars are aggregated at
+   * @param count    the number of the bars
+   * @return the bars, the oldest one first
+   * @throws NoSuchSecurityException    if the instrument is not a security
+   * @throws NoSuchBarIntervalException if the bars are not aggregated at the
+   *                                    interval
+   */
+  List<Bar> getBars(int securityId, Duration interval, int count);
 }
\ No newline at end of file
@@ -1,19 +1,25 @@
 package stock.exchange.instrument;
 
-import java.util.ArrayList;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Object2ObjectMap;
 import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import stock.exchange.bars.Bar;
+import stock.exchange.bars.TradeBars;
 import stock.exchange.domain.CompositeRecord;
 import stock.exchange.domain.DoubleReference;
 import stock.exchange.domain.InstrumentRecord;
+import stock.exchange.domain.LongReference;
+import stock.exchange.domain.Prices;
 import stock.exchange.domain.SecurityRecord;
 import util.nogc.MoreArrays;
 
@@ -28,99 +34,125 @@ import util.nogc.MoreArrays;
  */
 public class MarketDataWorld implements MarketDataReads, MarketDataWrites, InstrumentManager {
 
-  private final Lock reader, writer;
-  private final Int2ObjectMap<DoubleReference> marketPrices;
-  private final Int2ObjectMap<InstrumentRecord> instrumentsById;
-  private final Object2ObjectMap<String, InstrumentRecord> instrumentsBySymbol;
+  /**
+   * The immutable snapshot of the instruments registered. The instruments are
+   * created rarely and looked up on every order and trade, so every creation
+   * copies the maps and publishes the new snapshot, and the lookups read the
+   * current snapshot without any lock. The maps are never modified once
+   * published.
+   */
+  private record Instruments(
+      Int2ObjectMap<InstrumentRecord> byId,
+      Object2ObjectMap<String, InstrumentRecord> bySymbol) {
+
+    private static final Instruments EMPTY = new Instruments(
+        new Int2ObjectOpenHashMap<>(),
+        new Object2ObjectOpenHashMap<>());
+
+    private Instruments with(InstrumentRecord rec) {
+      Int2ObjectMap<InstrumentRecord> newById = new Int2ObjectOpenHashMap<>(byId);
+      Object2ObjectMap<String, InstrumentRecord> newBySymbol = new Object2ObjectOpenHashMap<>(bySymbol);
+      newById.put(rec.id(), rec);
+      newBySymbol.put(rec.symbol(), rec);
+      return new Instruments(newById, newBySymbol);
+    }
+  }
+
+  // serializes the creation of the instruments only, the lookups take no lock
+  private final Lock writer = new ReentrantLock();
+  private volatile Instruments instruments = Instruments.EMPTY;
+
+  private final List<Duration> barIntervals;
+  private final int barsCapacity;
 
   public MarketDataWorld() {
-    this.marketPrices = new Int2ObjectOpenHashMap<>();
-    this.instrumentsById = new Int2ObjectOpenHashMap<>();
-    this.instrumentsBySymbol = new Object2ObjectOpenHashMap<>();
-    ReentrantReadWriteLock rw = new ReentrantReadWriteLock();
-    this.reader = rw.readLock();
-    this.writer = rw.writeLock();
+    this(TradeBars.DEFAULT_INTERVALS, TradeBars.DEFAULT_CAPACITY);
+  }
+
+  /**
+   * @param barIntervals the intervals the bars of the trades of every security
+   *                     are aggregated at
+   * @param barsCapacity the number of the latest bars kept per interval
+   */
+  public MarketDataWorld(List<Duration> barIntervals, int barsCapacity) {
+    this.barIntervals = List.copyOf(barIntervals);
+    this.barsCapacity = barsCapacity;
   }
 
   @Override
   public Iterable<? extends InstrumentRecord> getAllInstruments() {
-    reader.lock();
-    try {
-      List<InstrumentRecord> records = new ArrayList<>(instrumentsById.size());
-      records.addAll(instrumentsById.values());
-      return Collections.unmodifiableList(records);
-    } finally {
-      reader.unlock();
-    }
+    return Collections.unmodifiableCollection(instruments.byId().values());
   }
 
   @Override
   public InstrumentRecord findInstrumentById(int instrumentId) {
-    reader.lock();
-    try {
-      InstrumentRecord rec = instrumentsById.get(instrumentId);
-      if (rec == null) {
-        throw new NoSuchInstrumentException(instrumentId);
-      }
-      return rec;
-    } finally {
-      reader.unlock();
+    InstrumentRecord rec = instruments.byId().get(instrumentId);
+    if (rec == null) {
+      throw new NoSuchInstrumentException(instrumentId);
     }
+    return rec;
   }
 
   @Override
   public InstrumentRecord findInstrumentBySymbol(String symbol) {
-    reader.lock();
-    try {
-      InstrumentRecord rec = instrumentsBySymbol.get(symbol);
-      if (rec == null) {
-        throw new NoSuchInstrumentException(symbol);
-      }
-      return rec;
-    } finally {
-      reader.unlock();
+    InstrumentRecord rec = instruments.bySymbol().get(symbol);
+    if (rec == null) {
+      throw new NoSuchInstrumentException(symbol);
     }
+    return rec;
   }
 
   @Override
   public DoubleReference getMarketPriceRef(int instrumentId) {
-    reader.lock();
-    try {
-      DoubleReference ref = marketPrices.get(instrumentId);
-      if (ref == null) {
-        throw new NoSuchInstrumentException(instrumentId);
-      }
-      return ref;
-    } finally {
-      reader.unlock();
+    InstrumentRecord rec = instruments.byId().get(instrumentId);
+    if (rec == null) {
+      throw new NoSuchInstrumentException(instrumentId);
     }
+    return rec.marketPrice();
+  }
+
+  @Override
+  public List<Bar> getBars(int securityId, Duration interval, int count) {
+    if (getMarketPriceRef(securityId) instanceof Mutable mdr) {
+      return mdr.bars.last(interval, count);
+    }
+    throw new NoSuchSecurityException(securityId);
   }
 
   private record Security(
       int id,
       String symbol,
-      DoubleReference marketPrice) implements SecurityRecord {
+      int scale,
+      Mutable marketPrice) implements SecurityRecord {
+
+    @Override
+    public LongReference marketPriceTicks() {
+      return marketPrice;
+    }
   }
 
   @Override
   public SecurityRecord createSecurity(
       int instrumentId,
       String symbol,
-      double initialPrice) {
+      int scale,
+      long initialPrice) {
+    if (scale < 0 || scale > Prices.MAX_SCALE) {
+      throw new InvalidScaleException(scale);
+    }
     writer.lock();
     try {
-      if (instrumentsById.containsKey(instrumentId)) {
+      Instruments current = instruments;
+      if (current.byId().containsKey(instrumentId)) {
         throw new DuplicateInstrumentException();
       }
-      if (instrumentsBySymbol.containsKey(symbol)) {
+      if (current.bySymbol().containsKey(symbol)) {
         throw new DuplicateInstrumentException();
       }
-      Mutable marketPrice = new Mutable(initialPrice);
-      SecurityRecord rec = new Security(instrumentId, symbol, marketPrice);
+      Mutable marketPrice = new Mutable(initialPrice, scale, new TradeBars(barIntervals, barsCapacity));
+      SecurityRecord rec = new Security(instrumentId, symbol, scale, marketPrice);
 
-      marketPrices.put(instrumentId, marketPrice);
-      instrumentsById.put(instrumentId, rec);
-      instrumentsBySymbol.put(symbol, rec);
+      instruments = current.with(rec);
 
       return rec;
     } finally {
@@ -132,43 +164,105 @@ public class MarketDataWorld implements MarketDataReads, MarketDataWrites, Instr
       int id,
       String symbol,
       DoubleReference marketPrice,
-      Iterable<SecurityRecord> componenents) implements CompositeRecord {
+      Iterable<SecurityRecord> componenents,
+      List<Long> weights,
+      double divisor) implements CompositeRecord {
   }
 
   @Override
   public Composite createComposite(int compositeId, String symbol, String[] componentSymbols) {
+    int newsize = MoreArrays.distinct(componentSymbols, String::compareToIgnoreCase);
+    long[] weights = new long[newsize];
+    Arrays.fill(weights, 1L);
+    return createComposite(compositeId, symbol, Arrays.copyOf(componentSymbols, newsize), weights, newsize);
+  }
+
+  @Override
+  public Composite createComposite(
+      int compositeId,
+      String symbol,
+      String[] componentSymbols,
+      long[] weights,
+      double divisor) {
+    if (componentSymbols.length == 0) {
+      throw new InvalidCompositeException("No components");
+    }
+    if (weights.length != componentSymbols.length) {
+      throw new InvalidCompositeException(
+          weights.length + " weights given for " + componentSymbols.length + " components");
+    }
+    for (long weight : weights) {
+      if (weight <= 0) {
+        throw new InvalidCompositeException("Invalid weight " + weight);
+      }
+    }
+    if (!(divisor > 0d) || Double.isInfinite(divisor)) {
+      throw new InvalidCompositeException("Invalid divisor " + divisor);
+    }
     writer.lock();
     try {
-      if (instrumentsById.containsKey(compositeId)) {
+      Instruments current = instruments;
+      if (current.byId().containsKey(compositeId)) {
         throw new DuplicateInstrumentException();
       }
-      if (instrumentsBySymbol.containsKey(symbol)) {
+      if (current.bySymbol().containsKey(symbol)) {
         throw new DuplicateInstrumentException();
       }
 
-      int newsize = MoreArrays.distinct(componentSymbols, String::compareToIgnoreCase);
-
-      SecurityRecord[] securities = new SecurityRecord[newsize];
-      DoubleReference[] securityPrices = new DoubleReference[newsize];
-      for (int i = 0; i < newsize; i++) {
-        if (instrumentsBySymbol.get(componentSymbols[i]) instanceof SecurityRecord sr) {
+      int size = componentSymbols.length;
+      SecurityRecord[] securities = new SecurityRecord[size];
+      int[] securityIds = new int[size];
+      int scale = 0;
+      for (int i = 0; i < size; i++) {
+        if (current.bySymbol().get(componentSymbols[i]) instanceof SecurityRecord sr) {
           securities[i] = sr;
-          securityPrices[i] = sr.marketPrice();
+          securityIds[i] = sr.id();
+          scale = Math.max(scale, sr.scale());
         } else {
           throw new NoSuchSecurityException(componentSymbols[i]);
         }
       }
+      Arrays.sort(securityIds);
+      for (int i = 1; i < size; i++) {
+        if (securityIds[i] == securityIds[i - 1]) {
+          throw new InvalidCompositeException("Duplicate component " + current.byId().get(securityIds[i]).symbol());
+        }
+      }
 
-      DynamicAverage marketPrice = new DynamicAverage(securityPrices);
+      // all the multipliers are checked before the composite joins any of the
+      // components, so the failed composite is never updated
+      long[] multipliers = new long[size];
+      for (int i = 0; i < size; i++) {
+        try {
+          multipliers[i] = Math.multiplyExact(weights[i], Prices.rescale(1L, securities[i].scale(), scale));
+        } catch (ArithmeticException e) {
+          throw new InvalidCompositeException("Weight " + weights[i] + " of " + componentSymbols[i] + " is too large");
+        }
+      }
+
+      IndexLevel marketPrice = new IndexLevel(scale, divisor);
+      int joined = 0;
+      try {
+        for (; joined < size; joined++) {
+          ((Security) securities[joined]).marketPrice().join(marketPrice, multipliers[joined]);
+        }
+      } catch (ArithmeticException e) {
+        // the failed composite is never published, so it leaves the components
+        // joined already and its sum is dropped
+        while (--joined >= 0) {
+          ((Security) securities[joined]).marketPrice().leave(marketPrice);
+        }
+        throw new InvalidCompositeException("The weighted sum of " + symbol + " is too large");
+      }
       Composite rec = new Composite(
           compositeId,
           symbol,
           marketPrice,
-          Collections.unmodifiableList(Arrays.asList(securities)));
+          Collections.unmodifiableList(Arrays.asList(securities)),
+          Arrays.stream(weights).boxed().toList(),
+          divisor);
 
-      marketPrices.put(compositeId, marketPrice);
-      instrumentsById.put(compositeId, rec);
-      instrumentsBySymbol.put(symbol, rec);
+      instruments = current.with(rec);
 
       return rec;
     } finally {
@@ -176,31 +270,67 @@ public class MarketDataWorld implements MarketDataReads, MarketDataWrites, Instr
     }
   }
 
+  /**
+   * @throws CompositeOverflowException if the weighted sum of any composite
+   *                                    containing the security doesn't fit
+   *                                    into ticks range at the new price, the
+   *                                    market price of the security is kept
+   */
   @Override
-  public void acceptLastTradePrice(int securityId, double price, int quantity) {
+  public void acceptLastTradePrice(int securityId, long price, int quantity) {
     DoubleReference ref = getMarketPriceRef(securityId);
     if (ref instanceof Mutable mdr) {
-      mdr.value = price;
+      mdr.set(price);
+      mdr.bars.accept(System.currentTimeMillis(), price, quantity);
     } else {
       throw new NoSuchSecurityException(securityId);
     }
   }
 
-  private static class DynamicAverage implements DoubleReference {
+  /**
+   * The market price of the composite, the sum of the market prices of its
+   * components multiplied by their weights and divided by the divisor. The sum
+   * is kept in ticks of the finest scale of the components and updated by the
+   * difference on every change of any component price, so the sum is exact
+   * and the read costs a single volatile read regardless of the number of the
+   * components.
+   */
+  private static class IndexLevel implements DoubleReference {
+
+    private static final VarHandle SUM;
+
+    static {
+      try {
+        SUM = MethodHandles.lookup().findVarHandle(IndexLevel.class, "sum", long.class);
+      } catch (ReflectiveOperationException e) {
+        throw new ExceptionInInitializerError(e);
+      }
+    }
 
-    private final DoubleReference[] components;
+    private final int scale;
+    private final double divisor;
+    private volatile long sum;
 
-    private DynamicAverage(DoubleReference[] components) {
-      this.components = components;
+    private IndexLevel(int scale, double divisor) {
+      this.scale = scale;
+      this.divisor = divisor;
+    }
+
+    /**
+     * Called by the components of different securities concurrently
+     * 
+     * @throws ArithmeticException if the sum overflows, the sum is kept
+     */
+    private void add(long delta) {
+      long current;
+      do {
+        current = sum;
+      } while (!SUM.weakCompareAndSet(this, current, Math.addExact(current, delta)));
     }
 
     @Override
     public double getAsDouble() {
-      double d = 0d;
-      for (int i = 0; i < components.length; i++) {
-        d += components[i].getAsDouble();
-      }
-      return d / components.length;
+      return Prices.toDouble(sum, scale) / divisor;
     }
 
     @Override
@@ -210,22 +340,100 @@ public class MarketDataWorld implements MarketDataReads, MarketDataWrites, Instr
 
   }
 
-  private static class Mutable implements DoubleReference {
+  /**
+   * The entry of the reverse index from the security to the composites
+   * containing it
+   * 
+   * @param multiplier the weight of the security in the composite, also
+   *                   converting the price of the security to the ticks of the
+   *                   scale of the composite sum
+   */
+  private record Membership(IndexLevel level, long multiplier) {
+  }
+
+  private static class Mutable implements DoubleReference, LongReference {
 
-    private volatile double value;
+    private static final Membership[] NO_MEMBERSHIPS = {};
 
-    private Mutable(double value) {
+    private volatile long value;
+    private final int scale;
+    private final TradeBars bars;
+    // the composites containing the security, guarded by this
+    private Membership[] memberships = NO_MEMBERSHIPS;
+
+    private Mutable(long value, int scale, TradeBars bars) {
       this.value = value;
+      this.scale = scale;
+      this.bars = bars;
+    }
+
+    /**
+     * Updates the price and the sums of all the composites containing the
+     * security by the difference. The updates of the same security are
+     * serialized with each other and with the joining of the composites, so no
+     * difference is lost or counted twice, while the updates of different
+     * securities go in parallel. The arithmetic is exact, if any sum would
+     * overflow the sums changed already are restored and the price is kept.
+     */
+    private synchronized void set(long newValue) {
+      Membership[] ms = memberships;
+      int i = 0;
+      try {
+        long delta = Math.subtractExact(newValue, value);
+        for (; i < ms.length; i++) {
+          ms[i].level().add(Math.multiplyExact(delta, ms[i].multiplier()));
+        }
+      } catch (ArithmeticException e) {
+        // the products restored have been computed exactly above
+        long delta = newValue - value;
+        while (--i >= 0) {
+          ms[i].level().add(-delta * ms[i].multiplier());
+        }
+        throw new CompositeOverflowException("The composite sum overflows at the price " + newValue, e);
+      }
+      value = newValue;
+    }
+
+    /**
+     * Adds the current price by the multiplier to the sum of the new composite
+     * and keeps it up to date from now on
+     * 
+     * @throws ArithmeticException if the sum overflows, the composite is not
+     *                             joined
+     */
+    private synchronized void join(IndexLevel level, long multiplier) {
+      level.add(Math.multiplyExact(value, multiplier));
+      memberships = Arrays.copyOf(memberships, memberships.length + 1);
+      memberships[memberships.length - 1] = new Membership(level, multiplier);
+    }
+
+    /**
+     * Stops updating the sum of the composite
+     */
+    private synchronized void leave(IndexLevel level) {
+      int n = 0;
+      Membership[] remaining = new Membership[memberships.length];
+      for (Membership m : memberships) {
+        if (m.level() != level) {
+          remaining[n++] = m;
+        }
+      }
+      memberships = n == 0 ? NO_MEMBERSHIPS : Arrays.copyOf(remaining, n);
     }
 
     @Override
-    public double getAsDouble() {
+    public long getAsLong() {
       return value;
     }
 
+    @Override
+    public double getAsDouble() {
+      return Prices.toDouble(value, scale);
+    }
+
     @Override
     public String toString() {
-      return String.valueOf(value);
+      return Prices.toString(value, scale);
     }
   }
-}
\ No newline at end of file
+}
@@ -8,7 +8,10 @@ import stock.exchange.integration.Downstream;
  */
 public interface MarketDataWrites extends Downstream<TradeRecord> {
 
-  void acceptLastTradePrice(int securityId, double price, int quantity);
+  /**
+   * @param price the trade price in ticks of the security
+   */
+  void acceptLastTradePrice(int securityId, long price, int quantity);
 
   @Override
   default void accept(TradeRecord t) {
@@ -6,13 +6,15 @@ import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Function;
 
 public class AppendToFileDownstream<T> implements Downstream<T>, AutoCloseable {
 
   private final BufferedWriter bw;
   private final Function<T, String> toStringConverter;
-  private final Object sync = new Object();
+  private final Lock lock = new ReentrantLock(); // does not pin the virtual thread blocked on IO
 
   public AppendToFileDownstream(Path file, Function<T, String> toStringConverter) throws IOException {
     this.bw = Files.newBufferedWriter(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
@@ -27,10 +29,13 @@ public class AppendToFileDownstream<T> implements Downstream<T>, AutoCloseable {
   public void accept(T t) {
     String st = toStringConverter.apply(t);
     try {
-      synchronized (sync) {
+      lock.lock();
+      try {
         bw.write(st);
         bw.newLine();
         bw.flush();
+      } finally {
+        lock.unlock();
       }
     } catch (IOException e) {
       throw new UncheckedIOException(e);
@@ -6,6 +6,8 @@ import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Function;
 
 public class AppendToFileRejectedDownstream<T> implements RejectedDownstream<T>, AutoCloseable {
@@ -13,7 +15,7 @@ public class AppendToFileRejectedDownstream<T> implements RejectedDownstream<T>,
   private final BufferedWriter bw;
   private final Function<T, String> toStringConverter;
   private final Function<Throwable, String> exceptionToStringConverter;
-  private final Object sync = new Object();
+  private final Lock lock = new ReentrantLock();
 
   public AppendToFileRejectedDownstream(Path file, Function<T, String> toStringConverter,
       Function<Throwable, String> exceptionToStringConverter) throws IOException {
@@ -31,12 +33,15 @@ public class AppendToFileRejectedDownstream<T> implements RejectedDownstream<T>,
     String st = toStringConverter.apply(t);
     String scause = exceptionToStringConverter.apply(cause);
     try {
-      synchronized (sync) {
+      lock.lock();
+      try {
         bw.write(st);
         bw.write(' ');
         bw.write(scause);
         bw.newLine();
         bw.flush();
+      } finally {
+        lock.unlock();
       }
     } catch (IOException e) {
       throw new UncheckedIOException(e);
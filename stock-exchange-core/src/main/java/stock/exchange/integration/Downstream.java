@@ -10,7 +10,10 @@ public interface Downstream<T> {
    * This method is invoked by market runners.
    * 
    * The implementation should be non-blocking.
-   **
+   * 
+   * The event object may be reused by the caller once the method returns, so the
+   * implementation should copy the values it needs to keep.
+   * 
    * @param t the event object
    */
   void accept(T t);
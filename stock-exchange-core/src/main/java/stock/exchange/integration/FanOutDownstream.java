@@ -1,9 +1,7 @@
 package stock.exchange.integration;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Iterator;
-import java.util.List;
+import stock.exchange.jfr.DownstreamEvent;
+import stock.exchange.latency.LatencyTrace;
 
 /**
  * Dummy implementation of the fan-out pattern.
@@ -12,32 +10,55 @@ import java.util.List;
  */
 public class FanOutDownstream<T> implements Downstream<T> {
 
-  private final Iterable<Downstream<T>> downstreams;
+  private final Downstream<T>[] downstreams;
 
   @SafeVarargs
   public FanOutDownstream(Downstream<T>... downstreams) {
-    this.downstreams = Arrays.asList(downstreams);
+    this.downstreams = downstreams.clone();
   }
 
   @Override
   public void accept(T t) {
-    List<RuntimeException> exceptions = new ArrayList<>();
-    downstreams.forEach(d -> {
+    LatencyTrace trace = LatencyTrace.current();
+    boolean recorded = DownstreamEvent.enabled();
+    RuntimeException first = null;
+    for (int i = 0; i < downstreams.length; i++) {
+      DownstreamEvent event = null;
+      if (recorded) {
+        event = new DownstreamEvent();
+        event.begin();
+      }
       try {
-        d.accept(t);
+        downstreams[i].accept(t);
+        if (trace != null) {
+          trace.published(i);
+        }
       } catch (RuntimeException e) {
-        exceptions.add(e);
+        if (event != null) {
+          event.failed = true;
+        }
+        if (first == null) {
+          first = new RuntimeException("Downstream exceptions");
+        }
+        first.addSuppressed(e);
+      } finally {
+        if (event != null) {
+          commit(event, downstreams[i], i);
+        }
       }
-    });
-    if (exceptions.isEmpty()) {
-      return;
     }
-    RuntimeException first = new RuntimeException("Downstream exceptions");
-    Iterator<RuntimeException> i = exceptions.iterator();
-    while (i.hasNext()) {
-      first.addSuppressed(i.next());
+    if (first != null) {
+      throw first;
+    }
+  }
+
+  private static void commit(DownstreamEvent event, Downstream<?> downstream, int index) {
+    event.end();
+    if (event.shouldCommit()) {
+      event.downstream = downstream.getClass();
+      event.index = index;
+      event.commit();
     }
-    throw first;
   }
 
 }
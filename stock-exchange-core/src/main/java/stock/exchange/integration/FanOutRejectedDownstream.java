@@ -1,10 +1,5 @@
 package stock.exchange.integration;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Iterator;
-import java.util.List;
-
 /**
  * Dummy implementation of the fan-out pattern
  * 
@@ -12,32 +7,29 @@ import java.util.List;
  */
 public class FanOutRejectedDownstream<T> implements RejectedDownstream<T> {
 
-  private final Iterable<RejectedDownstream<T>> downstreams;
+  private final RejectedDownstream<T>[] downstreams;
 
   @SafeVarargs
   public FanOutRejectedDownstream(RejectedDownstream<T>... downstreams) {
-    this.downstreams = Arrays.asList(downstreams);
+    this.downstreams = downstreams.clone();
   }
 
   @Override
   public void accept(T t, Throwable cause) {
-    List<RuntimeException> exceptions = new ArrayList<>();
-    downstreams.forEach(d -> {
+    RuntimeException first = null;
+    for (int i = 0; i < downstreams.length; i++) {
       try {
-        d.accept(t, cause);
+        downstreams[i].accept(t, cause);
       } catch (RuntimeException e) {
-        exceptions.add(e);
+        if (first == null) {
+          first = new RuntimeException("Downstream exceptions");
+        }
+        first.addSuppressed(e);
       }
-    });
-    if (exceptions.isEmpty()) {
-      return;
     }
-    RuntimeException first = new RuntimeException("Downstream exceptions");
-    Iterator<RuntimeException> i = exceptions.iterator();
-    while (i.hasNext()) {
-      first.addSuppressed(i.next());
+    if (first != null) {
+      throw first;
     }
-    throw first;
   }
 
 }
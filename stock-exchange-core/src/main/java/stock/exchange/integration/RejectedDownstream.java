@@ -16,6 +16,9 @@ public interface RejectedDownstream<T> {
    * 1. The implementation should be non-blocking. 2. The implementation should
    * minimize the likelihood of throwing exceptions or errors.
    * 
+   * The event object may be reused by the caller once the method returns, so the
+   * implementation should copy the values it needs to keep.
+   * 
    * @param t the event object
    * @param e the exception that caused the event to be sent to rejection
    */
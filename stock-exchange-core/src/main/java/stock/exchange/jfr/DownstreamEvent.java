@@ -0,0 +1,42 @@
+package stock.exchange.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * The call of a single downstream of the fan-out, recorded only if it takes
+ * longer than the threshold, 1 ms by default
+ */
+@Name("stock.exchange.Downstream")
+@Label("Downstream Call")
+@Category("Stock Exchange")
+@Description("The call of the downstream of the fan-out")
+@Threshold("1 ms")
+@StackTrace(false)
+public final class DownstreamEvent extends Event {
+
+  private static final DownstreamEvent PROBE = new DownstreamEvent();
+
+  @Label("Downstream")
+  @Description("The class of the downstream")
+  public Class<?> downstream;
+
+  @Label("Index")
+  @Description("The index of the downstream in the fan-out")
+  public int index;
+
+  @Label("Failed")
+  public boolean failed;
+
+  /**
+   * @return <code>true</code> if the event is recorded at the moment
+   */
+  public static boolean enabled() {
+    return PROBE.isEnabled();
+  }
+}
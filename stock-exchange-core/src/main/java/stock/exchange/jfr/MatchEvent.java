@@ -0,0 +1,53 @@
+package stock.exchange.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The match of two orders found by the matcher, including the time of the
+ * match passed to the downstream. There is an event per match, so it is
+ * disabled by default
+ */
+@Name("stock.exchange.Match")
+@Label("Order Match")
+@Category("Stock Exchange")
+@Description("The match of the buy and the sell orders passed to the downstream")
+@Enabled(false)
+@StackTrace(false)
+public final class MatchEvent extends Event {
+
+  private static final MatchEvent PROBE = new MatchEvent();
+
+  @Label("Symbol")
+  public String symbol;
+
+  @Label("Buyer Order Id")
+  public long buyerOrderId;
+
+  @Label("Seller Order Id")
+  public long sellerOrderId;
+
+  @Label("Quantity")
+  public int quantity;
+
+  @Label("Auction")
+  @Description("The match is executed by the call auction uncross")
+  public boolean auction;
+
+  /**
+   * @return the event begun or <code>null</code> if the event is disabled
+   */
+  public static MatchEvent beginIfEnabled() {
+    if (!PROBE.isEnabled()) {
+      return null;
+    }
+    MatchEvent event = new MatchEvent();
+    event.begin();
+    return event;
+  }
+}
@@ -0,0 +1,50 @@
+package stock.exchange.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * The tick of the order book, recorded only if it takes longer than the
+ * threshold, 1 ms by default
+ */
+@Name("stock.exchange.Tick")
+@Label("Order Book Tick")
+@Category("Stock Exchange")
+@Description("The tick of the order book taking the new orders and matching them")
+@Threshold("1 ms")
+@StackTrace(false)
+public final class TickEvent extends Event {
+
+  private static final TickEvent PROBE = new TickEvent();
+
+  @Label("Symbol")
+  public String symbol;
+
+  @Label("Orders Taken")
+  @Description("The orders taken from the ingress queue by the tick")
+  public int ordersTaken;
+
+  @Label("Matches")
+  public int matches;
+
+  @Label("Auction")
+  public boolean auction;
+
+  /**
+   * @return the event begun or <code>null</code> if the event is disabled, so
+   *         nothing is allocated unless the event is recorded
+   */
+  public static TickEvent beginIfEnabled() {
+    if (!PROBE.isEnabled()) {
+      return null;
+    }
+    TickEvent event = new TickEvent();
+    event.begin();
+    return event;
+  }
+}
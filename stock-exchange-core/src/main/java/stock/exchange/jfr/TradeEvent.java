@@ -0,0 +1,55 @@
+package stock.exchange.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The trade generated, including the time of the trade passed to the
+ * downstream. There is an event per trade, so it is disabled by default
+ */
+@Name("stock.exchange.Trade")
+@Label("Trade")
+@Category("Stock Exchange")
+@Description("The trade generated and passed to the downstream")
+@Enabled(false)
+@StackTrace(false)
+public final class TradeEvent extends Event {
+
+  private static final TradeEvent PROBE = new TradeEvent();
+
+  @Label("Trade Id")
+  public long tradeId;
+
+  @Label("Symbol")
+  public String symbol;
+
+  @Label("Buyer Order Id")
+  public long buyerOrderId;
+
+  @Label("Seller Order Id")
+  public long sellerOrderId;
+
+  @Label("Quantity")
+  public int quantity;
+
+  @Label("Price")
+  @Description("The trade price in ticks")
+  public long price;
+
+  /**
+   * @return the event begun or <code>null</code> if the event is disabled
+   */
+  public static TradeEvent beginIfEnabled() {
+    if (!PROBE.isEnabled()) {
+      return null;
+    }
+    TradeEvent event = new TradeEvent();
+    event.begin();
+    return event;
+  }
+}
@@ -0,0 +1,149 @@
+package stock.exchange.latency;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import util.metrics.LatencyHistogram;
+
+/**
+ * The latencies of the order lifecycle stages of a single order book, every
+ * stage measured from the moment the order is accepted by the book:
+ * <ul>
+ * <li><code>queued</code> - the order is taken from the ingress queue by the
+ * tick</li>
+ * <li><code>matched</code> - the matcher finds the fill of the order</li>
+ * <li><code>traded</code> - the trade of the fill is generated</li>
+ * <li><code>published #n</code> - the trade is accepted by the n-th downstream
+ * of the {@link stock.exchange.integration.FanOutDownstream}</li>
+ * </ul>
+ * The fill is measured for the younger order of the match, the one crossing
+ * the resting order.
+ *
+ * The trace is created by the order book when the tracing is enabled, so the
+ * disabled tracing costs nothing but the check of the trace reference. The
+ * trade and the downstream stages are recorded by the thread ticking the book
+ * while the trade is passed through the downstreams, which find the trace of
+ * the book by {@link #current()}.
+ */
+public final class LatencyTrace implements AutoCloseable {
+
+  /**
+   * The number of the downstreams of the fan-out traced, the ones beyond it
+   * are not traced
+   */
+  public static final int MAX_DOWNSTREAMS = 4;
+
+  /**
+   * @param stage   the name of the stage
+   * @param latency the latencies in nanoseconds from the order accepted
+   */
+  public record StageLatency(String stage, LatencyHistogram.Snapshot latency) {
+  }
+
+  private static final ThreadLocal<LatencyTrace> CURRENT = new ThreadLocal<>();
+
+  /**
+   * The number of the traces open, no thread local is looked up while it is 0
+   */
+  private static final AtomicInteger OPEN = new AtomicInteger();
+
+  private final LatencyHistogram queued = new LatencyHistogram();
+  private final LatencyHistogram matched = new LatencyHistogram();
+  private final LatencyHistogram traded = new LatencyHistogram();
+  private final LatencyHistogram[] published = new LatencyHistogram[MAX_DOWNSTREAMS];
+
+  // the order accepted time of the match being passed through the downstreams
+  private long acceptedNanos;
+
+  public LatencyTrace() {
+    for (int i = 0; i < MAX_DOWNSTREAMS; i++) {
+      published[i] = new LatencyHistogram();
+    }
+    OPEN.incrementAndGet();
+  }
+
+  /**
+   * @return the trace of the match the current thread passes through the
+   *         downstreams or <code>null</code>
+   */
+  public static LatencyTrace current() {
+    return OPEN.get() == 0 ? null : CURRENT.get();
+  }
+
+  public void queued(long acceptedNanos, long queuedNanos) {
+    queued.record(queuedNanos - acceptedNanos);
+  }
+
+  public void matched(long acceptedNanos, long matchedNanos) {
+    matched.record(matchedNanos - acceptedNanos);
+  }
+
+  /**
+   * Makes the trace current for the thread passing the match of the order
+   * accepted at the given time through the downstreams
+   */
+  public void begin(long acceptedNanos) {
+    this.acceptedNanos = acceptedNanos;
+    CURRENT.set(this);
+  }
+
+  public void end() {
+    CURRENT.set(null);
+  }
+
+  /**
+   * Records the trade of the current match generated
+   */
+  public void traded() {
+    traded.record(System.nanoTime() - acceptedNanos);
+  }
+
+  /**
+   * Records the trade of the current match accepted by the downstream
+   *
+   * @param downstream the index of the downstream in the fan-out
+   */
+  public void published(int downstream) {
+    if (downstream < MAX_DOWNSTREAMS) {
+      published[downstream].record(System.nanoTime() - acceptedNanos);
+    }
+  }
+
+  /**
+   * @return the latencies of the stages in the lifecycle order, the downstreams
+   *         nothing has been published to are skipped
+   */
+  public List<StageLatency> stages() {
+    List<StageLatency> result = new ArrayList<>(3 + MAX_DOWNSTREAMS);
+    result.add(new StageLatency("queued", queued.snapshot()));
+    result.add(new StageLatency("matched", matched.snapshot()));
+    result.add(new StageLatency("traded", traded.snapshot()));
+    for (int i = 0; i < MAX_DOWNSTREAMS; i++) {
+      LatencyHistogram.Snapshot snapshot = published[i].snapshot();
+      if (snapshot.count() > 0) {
+        result.add(new StageLatency("published #" + (i + 1), snapshot));
+      }
+    }
+    return Collections.unmodifiableList(result);
+  }
+
+  public void reset() {
+    queued.reset();
+    matched.reset();
+    traded.reset();
+    for (LatencyHistogram h : published) {
+      h.reset();
+    }
+  }
+
+  /**
+   * Stops looking up the current trace once no trace is open. Must be called
+   * once when the tracing is disabled
+   */
+  @Override
+  public void close() {
+    OPEN.decrementAndGet();
+  }
+}
@@ -0,0 +1,499 @@
+package stock.exchange.matcher;
+
+import java.util.Arrays;
+
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import stock.exchange.book.DuplicateOrderException;
+import stock.exchange.book.OrderPartiallyFilledException;
+import stock.exchange.domain.LongReference;
+import stock.exchange.domain.Prices;
+
+/**
+ * This trade matching algorithm implementation provides the same matching rules
+ * as {@link StockMatcherImpl} (FIFO for market orders, price-time priority for
+ * limit orders), but keeps the order state in parallel primitive arrays instead
+ * of an object per order.
+ *
+ * Every resting order is addressed by an int slot. The order id, price,
+ * quantities, sequence and the queue links of the order are stored at the slot
+ * index of the corresponding arrays. Released slots are chained into a
+ * free-list and handed out again for new orders. The heaps of limit orders and
+ * the FIFO lists of market orders hold slots, not objects.
+ *
+ * So the footprint per resting order is fixed and the heap graph does not grow
+ * with the book depth, the arrays only grow (doubling) when the number of
+ * resting orders exceeds the current capacity.
+ *
+ * The implementation is not thread-safe, so access to this object should be
+ * synchronized externally.
+ */
+public class ArrayStockMatcher implements StockMatcher {
+
+  private static final int DEFAULT_INITIAL_CAPACITY = 1024;
+
+  private static final int NIL = -1;
+
+  private static final byte BUY = 0;
+  private static final byte SELL = 1;
+  private static final byte BID = 2;
+  private static final byte ASK = 3;
+
+  // order state, indexed by slot
+  private long[] orderIds;
+  private long[] prices;
+  private int[] quantities;
+  private int[] volumesRemain;
+  private long[] sequences;
+  private byte[] queues;
+  private int[] prev; // FIFO link, or the heap position for limit orders
+  private int[] next; // FIFO link, or the free-list link for released slots
+
+  private int capacity;
+  private int freeSlot = NIL;
+  private int allocated;
+
+  private final Long2IntMap index;
+  private final Fifo buyQueue = new Fifo();
+  private final Fifo sellQueue = new Fifo();
+  private final Heap bidQueue = new Heap(true);
+  private final Heap askQueue = new Heap(false);
+  private long sequence;
+
+  public ArrayStockMatcher() {
+    this(DEFAULT_INITIAL_CAPACITY);
+  }
+
+  /**
+   * @param initialCapacity the number of resting orders the storage is
+   *                        allocated for upfront
+   */
+  public ArrayStockMatcher(int initialCapacity) {
+    if (initialCapacity <= 0) {
+      throw new IllegalArgumentException("initialCapacity");
+    }
+    this.capacity = initialCapacity;
+    this.orderIds = new long[initialCapacity];
+    this.prices = new long[initialCapacity];
+    this.quantities = new int[initialCapacity];
+    this.volumesRemain = new int[initialCapacity];
+    this.sequences = new long[initialCapacity];
+    this.queues = new byte[initialCapacity];
+    this.prev = new int[initialCapacity];
+    this.next = new int[initialCapacity];
+    this.index = new Long2IntOpenHashMap(initialCapacity);
+    this.index.defaultReturnValue(NIL);
+  }
+
+  private class Fifo {
+
+    private int head = NIL;
+    private int tail = NIL;
+    private long volume;
+
+    private void enqueue(int slot) {
+      prev[slot] = tail;
+      next[slot] = NIL;
+      if (tail == NIL) {
+        head = slot;
+      } else {
+        next[tail] = slot;
+      }
+      tail = slot;
+      volume += volumesRemain[slot];
+    }
+
+    private void remove(int slot) {
+      if (prev[slot] == NIL) {
+        head = next[slot];
+      } else {
+        next[prev[slot]] = next[slot];
+      }
+      if (next[slot] == NIL) {
+        tail = prev[slot];
+      } else {
+        prev[next[slot]] = prev[slot];
+      }
+      volume -= volumesRemain[slot];
+    }
+  }
+
+  /**
+   * Binary heap of slots ordered by price and then by the order of adding. The
+   * heap position of a slot is kept in the <code>prev</code> array, so an
+   * arbitrary slot is removed in O(log n) without searching. The heap also
+   * maintains the aggregated price levels of its slots.
+   */
+  private class Heap {
+
+    private final boolean descending;
+    private final PriceLevels levels;
+    private int[] heap = new int[16];
+    private int size;
+
+    private Heap(boolean descending) {
+      this.descending = descending;
+      this.levels = new PriceLevels(descending);
+    }
+
+    private int first() {
+      return size == 0 ? NIL : heap[0];
+    }
+
+    private void enqueue(int slot) {
+      if (size == heap.length) {
+        heap = Arrays.copyOf(heap, size << 1);
+      }
+      place(slot, size++);
+      siftUp(prev[slot]);
+      levels.add(prices[slot], volumesRemain[slot]);
+    }
+
+    private void remove(int slot) {
+      int i = prev[slot];
+      int last = heap[--size];
+      if (last != slot) {
+        place(last, i);
+        siftDown(i);
+        siftUp(prev[last]);
+      }
+      levels.remove(prices[slot], volumesRemain[slot]);
+    }
+
+    private boolean before(int a, int b) {
+      if (prices[a] != prices[b]) {
+        return descending ? prices[a] > prices[b] : prices[a] < prices[b];
+      }
+      return sequences[a] < sequences[b];
+    }
+
+    private void place(int slot, int i) {
+      heap[i] = slot;
+      prev[slot] = i;
+    }
+
+    private void siftUp(int i) {
+      int slot = heap[i];
+      while (i > 0) {
+        int parent = (i - 1) >>> 1;
+        if (!before(slot, heap[parent])) {
+          break;
+        }
+        place(heap[parent], i);
+        i = parent;
+      }
+      place(slot, i);
+    }
+
+    private void siftDown(int i) {
+      int slot = heap[i];
+      for (;;) {
+        int child = (i << 1) + 1;
+        if (child >= size) {
+          break;
+        }
+        if (child + 1 < size && before(heap[child + 1], heap[child])) {
+          child++;
+        }
+        if (!before(heap[child], slot)) {
+          break;
+        }
+        place(heap[child], i);
+        i = child;
+      }
+      place(slot, i);
+    }
+  }
+
+  @Override
+  public void addOrderBuy(long orderId, int quantity) {
+    buyQueue.enqueue(newSlot(orderId, Prices.NO_PRICE, quantity, BUY));
+  }
+
+  @Override
+  public void addOrderSell(long orderId, int quantity) {
+    sellQueue.enqueue(newSlot(orderId, Prices.NO_PRICE, quantity, SELL));
+  }
+
+  @Override
+  public void addOrderBid(long orderId, long price, int quantity) {
+    bidQueue.enqueue(newSlot(orderId, price, quantity, BID));
+  }
+
+  @Override
+  public void addOrderAsk(long orderId, long price, int quantity) {
+    askQueue.enqueue(newSlot(orderId, price, quantity, ASK));
+  }
+
+  private int newSlot(long orderId, long price, int quantity, byte queue) {
+    if (index.containsKey(orderId)) {
+      throw new DuplicateOrderException();
+    }
+    int slot;
+    if (freeSlot != NIL) {
+      slot = freeSlot;
+      freeSlot = next[slot];
+    } else {
+      if (allocated == capacity) {
+        grow();
+      }
+      slot = allocated++;
+    }
+    orderIds[slot] = orderId;
+    prices[slot] = price;
+    quantities[slot] = quantity;
+    volumesRemain[slot] = quantity;
+    sequences[slot] = sequence++;
+    queues[slot] = queue;
+    index.put(orderId, slot);
+    return slot;
+  }
+
+  private void grow() {
+    capacity = capacity << 1;
+    orderIds = Arrays.copyOf(orderIds, capacity);
+    prices = Arrays.copyOf(prices, capacity);
+    quantities = Arrays.copyOf(quantities, capacity);
+    volumesRemain = Arrays.copyOf(volumesRemain, capacity);
+    sequences = Arrays.copyOf(sequences, capacity);
+    queues = Arrays.copyOf(queues, capacity);
+    prev = Arrays.copyOf(prev, capacity);
+    next = Arrays.copyOf(next, capacity);
+  }
+
+  /**
+   * Reduces the volume remaining of the order by the quantity filled
+   */
+  private void fillSlot(int slot, int quantity) {
+    volumesRemain[slot] -= quantity;
+    switch (queues[slot]) {
+      case BUY:
+        buyQueue.volume -= quantity;
+        break;
+      case SELL:
+        sellQueue.volume -= quantity;
+        break;
+      case BID:
+        bidQueue.levels.fill(prices[slot], quantity);
+        break;
+      case ASK:
+        askQueue.levels.fill(prices[slot], quantity);
+        break;
+    }
+  }
+
+  private void releaseSlot(int slot) {
+    switch (queues[slot]) {
+      case BUY:
+        buyQueue.remove(slot);
+        break;
+      case SELL:
+        sellQueue.remove(slot);
+        break;
+      case BID:
+        bidQueue.remove(slot);
+        break;
+      case ASK:
+        askQueue.remove(slot);
+        break;
+    }
+    index.remove(orderIds[slot]);
+    prev[slot] = NIL;
+    next[slot] = freeSlot;
+    freeSlot = slot;
+  }
+
+  @Override
+  public boolean removeOrder(long orderId) {
+    int slot = index.get(orderId);
+    if (slot == NIL) {
+      return false;
+    }
+    if (volumesRemain[slot] != quantities[slot]) {
+      throw new OrderPartiallyFilledException();
+    }
+    releaseSlot(slot);
+    return true;
+  }
+
+  @Override
+  public boolean match(
+      LongReference marketPrice,
+      OrderMatchedEventListener orderMatchedEventListener,
+      OrderPartiallyFilledEventListener orderPartiallyFilledEventListener,
+      OrderFulfilledEventListener orderFulfilledEventListener) {
+
+    final int bid = bidQueue.first();
+    final int ask = askQueue.first();
+
+    // match orders bid <-> ask
+    if (bid != NIL && ask != NIL && prices[bid] >= prices[ask]) {
+      fill(bid, ask,
+          orderMatchedEventListener, orderPartiallyFilledEventListener, orderFulfilledEventListener);
+      return true;
+    }
+
+    // match orders bid <-> sell(marketPrice)
+    if (bid != NIL && sellQueue.head != NIL && prices[bid] >= marketPrice.getAsLong()) {
+      fill(bid, sellQueue.head,
+          orderMatchedEventListener, orderPartiallyFilledEventListener, orderFulfilledEventListener);
+      return true;
+    }
+
+    // match orders buy(marketPrice) <-> ask
+    if (buyQueue.head != NIL && ask != NIL && marketPrice.getAsLong() >= prices[ask]) {
+      fill(buyQueue.head, ask,
+          orderMatchedEventListener, orderPartiallyFilledEventListener, orderFulfilledEventListener);
+      return true;
+    }
+
+    // match orders buy(marketPrice) <-> sell(marketPrice)
+    if (buyQueue.head != NIL && sellQueue.head != NIL) {
+      fill(buyQueue.head, sellQueue.head,
+          orderMatchedEventListener, orderPartiallyFilledEventListener, orderFulfilledEventListener);
+      return true;
+    }
+
+    return false;
+  }
+
+  @Override
+  public int matchAll(LongReference marketPrice, MatchBuffer buffer) {
+    buffer.clear();
+    final long marketPriceTicks = marketPrice.getAsLong();
+    int bid, ask;
+
+    // the queue pairs are swept in the priority order of the match method. The
+    // fills of a pair never make the pairs swept before it cross again, as they
+    // only remove the best orders, so a single pass finds all the fills
+
+    // match orders bid <-> ask
+    while ((bid = bidQueue.first()) != NIL && (ask = askQueue.first()) != NIL && prices[bid] >= prices[ask]) {
+      if (buffer.isFull()) {
+        return buffer.size();
+      }
+      fill(bid, ask, Prices.NO_PRICE, buffer);
+    }
+
+    // match orders bid <-> sell(marketPrice)
+    while ((bid = bidQueue.first()) != NIL && sellQueue.head != NIL && prices[bid] >= marketPriceTicks) {
+      if (buffer.isFull()) {
+        return buffer.size();
+      }
+      fill(bid, sellQueue.head, Prices.NO_PRICE, buffer);
+    }
+
+    // match orders buy(marketPrice) <-> ask
+    while (buyQueue.head != NIL && (ask = askQueue.first()) != NIL && marketPriceTicks >= prices[ask]) {
+      if (buffer.isFull()) {
+        return buffer.size();
+      }
+      fill(buyQueue.head, ask, Prices.NO_PRICE, buffer);
+    }
+
+    // match orders buy(marketPrice) <-> sell(marketPrice)
+    while (buyQueue.head != NIL && sellQueue.head != NIL) {
+      if (buffer.isFull()) {
+        return buffer.size();
+      }
+      fill(buyQueue.head, sellQueue.head, Prices.NO_PRICE, buffer);
+    }
+
+    return buffer.size();
+  }
+
+  private void fill(int buyer, int seller, long price, MatchBuffer buffer) {
+    final int quantity = Math.min(volumesRemain[buyer], volumesRemain[seller]);
+    fillSlot(buyer, quantity);
+    fillSlot(seller, quantity);
+    buffer.add(orderIds[buyer], orderIds[seller], quantity, price, volumesRemain[buyer], volumesRemain[seller]);
+
+    if (volumesRemain[buyer] == 0) {
+      releaseSlot(buyer);
+    }
+    if (volumesRemain[seller] == 0) {
+      releaseSlot(seller);
+    }
+  }
+
+  private void fill(
+      int buyer,
+      int seller,
+      OrderMatchedEventListener orderMatchedEventListener,
+      OrderPartiallyFilledEventListener orderPartiallyFilledEventListener,
+      OrderFulfilledEventListener orderFulfilledEventListener) {
+
+    final long buyerOrderId = orderIds[buyer];
+    final long sellerOrderId = orderIds[seller];
+    final int quantity = Math.min(volumesRemain[buyer], volumesRemain[seller]);
+    orderMatchedEventListener.onOrderMatched(buyerOrderId, sellerOrderId, quantity);
+
+    if (volumesRemain[buyer] == quantity) {
+      releaseSlot(buyer);
+      orderFulfilledEventListener.onOrderFulfilled(buyerOrderId);
+    } else {
+      fillSlot(buyer, quantity);
+      orderPartiallyFilledEventListener.onOrderPartialyFilled(buyerOrderId, volumesRemain[buyer]);
+    }
+
+    if (volumesRemain[seller] == quantity) {
+      releaseSlot(seller);
+      orderFulfilledEventListener.onOrderFulfilled(sellerOrderId);
+    } else {
+      fillSlot(seller, quantity);
+      orderPartiallyFilledEventListener.onOrderPartialyFilled(sellerOrderId, volumesRemain[seller]);
+    }
+  }
+
+  @Override
+  public void equilibrium(long referencePrice, AuctionEquilibrium equilibrium) {
+    equilibrium.find(bidQueue.levels, askQueue.levels, buyQueue.volume, sellQueue.volume, referencePrice);
+  }
+
+  @Override
+  public int uncross(long price, MatchBuffer buffer) {
+    buffer.clear();
+    for (;;) {
+      int buyer = auctionBuyer(price);
+      int seller = auctionSeller(price);
+      if (buyer == NIL || seller == NIL || buffer.isFull()) {
+        return buffer.size();
+      }
+      fill(buyer, seller, price, buffer);
+    }
+  }
+
+  /**
+   * The market orders come first, then the bids priced at or above the auction
+   * price
+   */
+  private int auctionBuyer(long price) {
+    if (buyQueue.head != NIL) {
+      return buyQueue.head;
+    }
+    int bid = bidQueue.first();
+    return bid != NIL && prices[bid] >= price ? bid : NIL;
+  }
+
+  /**
+   * The market orders come first, then the asks priced at or below the auction
+   * price
+   */
+  private int auctionSeller(long price) {
+    if (sellQueue.head != NIL) {
+      return sellQueue.head;
+    }
+    int ask = askQueue.first();
+    return ask != NIL && prices[ask] <= price ? ask : NIL;
+  }
+
+  @Override
+  public int copyBidLevels(long[] prices, long[] volumes, int[] ordersCounts) {
+    return bidQueue.levels.copyTo(prices, volumes, ordersCounts);
+  }
+
+  @Override
+  public int copyAskLevels(long[] prices, long[] volumes, int[] ordersCounts) {
+    return askQueue.levels.copyTo(prices, volumes, ordersCounts);
+  }
+}
@@ -0,0 +1,117 @@
+package stock.exchange.matcher;
+
+import stock.exchange.domain.Prices;
+
+/**
+ * Reusable result of the call auction equilibrium search, see
+ * {@link StockMatcher#equilibrium(long, AuctionEquilibrium)}.
+ *
+ * The equilibrium price is the price executing the maximal volume. If several
+ * prices execute the same volume, the one leaving the minimal imbalance between
+ * the demand and the supply wins, and then the one closest to the reference
+ * price.
+ *
+ * The search walks the cumulative volume curves of both sides from the lowest
+ * price up in a single pass: the supply at the price is the volume of the
+ * market sell orders and the asks priced at or below it, the demand is the
+ * volume of the market buy orders and the bids priced at or above it. So the
+ * cost is linear in the number of the price levels, not of the orders.
+ *
+ * The object is not thread-safe.
+ */
+public final class AuctionEquilibrium {
+
+  private long price = Prices.NO_PRICE;
+  private long volume;
+  private long imbalance;
+
+  /**
+   * @return the equilibrium price in ticks or {@link Prices#NO_PRICE} if no
+   *         orders cross
+   */
+  public long price() {
+    return price;
+  }
+
+  /**
+   * @return the volume executed at the equilibrium price
+   */
+  public long volume() {
+    return volume;
+  }
+
+  /**
+   * @return the demand less the supply at the equilibrium price, positive if
+   *         the buy side is left unfilled
+   */
+  public long imbalance() {
+    return imbalance;
+  }
+
+  public boolean isCrossing() {
+    return volume > 0;
+  }
+
+  void clear() {
+    price = Prices.NO_PRICE;
+    volume = 0;
+    imbalance = 0;
+  }
+
+  void find(PriceCurve bids, PriceCurve asks, long marketBuys, long marketSells, long referencePrice) {
+    clear();
+    final long bidsTotal = bids.totalVolume();
+    final int bidsSize = bids.size();
+    final int asksSize = asks.size();
+    long bidsBelow = 0;
+    long supply = marketSells;
+    int i = 0;
+    int j = 0;
+    while (i < bidsSize || j < asksSize) {
+      if (i < bidsSize && bids.volume(i) == 0) {
+        i++;
+        continue;
+      }
+      if (j < asksSize && asks.volume(j) == 0) {
+        j++;
+        continue;
+      }
+      // the next price with orders on either side
+      long p = j == asksSize || (i < bidsSize && bids.price(i) <= asks.price(j)) ? bids.price(i) : asks.price(j);
+      long bidsAt = 0;
+      if (i < bidsSize && bids.price(i) == p) {
+        bidsAt = bids.volume(i++);
+      }
+      if (j < asksSize && asks.price(j) == p) {
+        supply += asks.volume(j++);
+      }
+      consider(p, marketBuys + bidsTotal - bidsBelow, supply, referencePrice);
+      bidsBelow += bidsAt;
+    }
+    if (price == Prices.NO_PRICE) {
+      // market orders only, they are executed at the reference price
+      consider(referencePrice, marketBuys, marketSells, referencePrice);
+    }
+  }
+
+  private void consider(long p, long demand, long supply, long referencePrice) {
+    long executable = Math.min(demand, supply);
+    if (executable == 0) {
+      return;
+    }
+    long diff = demand - supply;
+    if (executable > volume
+        || executable == volume && Math.abs(diff) < Math.abs(imbalance)
+        || executable == volume && Math.abs(diff) == Math.abs(imbalance)
+            && Math.abs(p - referencePrice) < Math.abs(price - referencePrice)) {
+      price = p;
+      volume = executable;
+      imbalance = diff;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "AuctionEquilibrium[price=" + price + ", volume=" + volume + ", imbalance=" + imbalance + "]";
+  }
+}
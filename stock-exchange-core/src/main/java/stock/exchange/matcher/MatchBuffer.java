@@ -0,0 +1,114 @@
+package stock.exchange.matcher;
+
+/**
+ * Reusable fixed-capacity buffer of the fills found by
+ * {@link StockMatcher#matchAll(stock.exchange.domain.LongReference, MatchBuffer)}.
+ *
+ * Every fill is kept in parallel primitive arrays, so filling and reading the
+ * buffer does not allocate. The volume remaining of an order equal to zero means
+ * the order is fulfilled and removed from the matcher.
+ *
+ * The buffer is not thread-safe, it is expected to be owned by the thread
+ * ticking the order book.
+ */
+public final class MatchBuffer {
+
+  private final long[] buyerOrderIds;
+  private final long[] sellerOrderIds;
+  private final int[] quantities;
+  private final long[] prices;
+  private final int[] buyerVolumesRemain;
+  private final int[] sellerVolumesRemain;
+  private int size;
+
+  public MatchBuffer(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity");
+    }
+    this.buyerOrderIds = new long[capacity];
+    this.sellerOrderIds = new long[capacity];
+    this.quantities = new int[capacity];
+    this.prices = new long[capacity];
+    this.buyerVolumesRemain = new int[capacity];
+    this.sellerVolumesRemain = new int[capacity];
+  }
+
+  public int capacity() {
+    return buyerOrderIds.length;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isFull() {
+    return size == buyerOrderIds.length;
+  }
+
+  public void clear() {
+    size = 0;
+  }
+
+  /**
+   * Appends the fill to the buffer
+   *
+   * @param price the auction price of the uncross in ticks, or
+   *              {@link stock.exchange.domain.Prices#NO_PRICE} for the fills of
+   *              the continuous matching, priced by the trade generator
+   * @throws IllegalStateException if the buffer is full
+   */
+  public void add(
+      long buyerOrderId,
+      long sellerOrderId,
+      int quantity,
+      long price,
+      int buyerVolumeRemain,
+      int sellerVolumeRemain) {
+    if (isFull()) {
+      throw new IllegalStateException("Match buffer is full");
+    }
+    int i = size++;
+    buyerOrderIds[i] = buyerOrderId;
+    sellerOrderIds[i] = sellerOrderId;
+    quantities[i] = quantity;
+    prices[i] = price;
+    buyerVolumesRemain[i] = buyerVolumeRemain;
+    sellerVolumesRemain[i] = sellerVolumeRemain;
+  }
+
+  public long buyerOrderId(int i) {
+    return buyerOrderIds[checkIndex(i)];
+  }
+
+  public long sellerOrderId(int i) {
+    return sellerOrderIds[checkIndex(i)];
+  }
+
+  public int quantity(int i) {
+    return quantities[checkIndex(i)];
+  }
+
+  /**
+   * @return the auction price of the uncross in ticks, or
+   *         {@link stock.exchange.domain.Prices#NO_PRICE} for the fills of the
+   *         continuous matching
+   */
+  public long price(int i) {
+    return prices[checkIndex(i)];
+  }
+
+  public int buyerVolumeRemain(int i) {
+    return buyerVolumesRemain[checkIndex(i)];
+  }
+
+  public int sellerVolumeRemain(int i) {
+    return sellerVolumesRemain[checkIndex(i)];
+  }
+
+  private int checkIndex(int i) {
+    if (i < 0 || i >= size) {
+      throw new IndexOutOfBoundsException(i);
+    }
+    return i;
+  }
+}
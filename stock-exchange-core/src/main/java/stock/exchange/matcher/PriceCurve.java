@@ -0,0 +1,19 @@
+package stock.exchange.matcher;
+
+/**
+ * The volume of the resting limit orders of one side of the book by price, in
+ * the ascending order of prices. Positions without orders have zero volume.
+ */
+interface PriceCurve {
+
+  /**
+   * The total volume remaining of all the orders of the side
+   */
+  long totalVolume();
+
+  int size();
+
+  long price(int i);
+
+  long volume(int i);
+}
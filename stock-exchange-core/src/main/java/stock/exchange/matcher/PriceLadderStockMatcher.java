@@ -0,0 +1,646 @@
+package stock.exchange.matcher;
+
+import java.util.Arrays;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import stock.exchange.book.DuplicateOrderException;
+import stock.exchange.book.OrderPartiallyFilledException;
+import stock.exchange.domain.LongReference;
+import stock.exchange.domain.Prices;
+import util.nogc.ReusableObjects;
+import util.nogc.SimpleReusableObjects;
+
+/**
+ * This trade matching algorithm implementation keeps limit orders in a
+ * tick-indexed price ladder: an array of price levels per side, where each
+ * level holds a FIFO of the orders resting at that price.
+ *
+ * The ladder is split into pages of the fixed number of consecutive ticks,
+ * the pages with no orders are not kept, so a side spans any range of prices
+ * at the memory cost of the pages with orders only. Every page keeps the
+ * bitmap of its non-empty levels, so the next best level within the page is
+ * found by a couple of bit scans rather than by walking the empty levels.
+ *
+ * The best bid and the best ask are tracked by a cursor pointing to the best
+ * non-empty level, so the best price lookup is O(1). Adding an order is O(1)
+ * within the pages present, cancelling an order is O(1) as every order is
+ * unlinked from its level directly. Orders at the same price are always
+ * matched in the order of adding, which guarantees strict price-time priority.
+ *
+ * Every level keeps the total volume remaining and the number of its orders,
+ * so the market depth is read off the ladder directly, walking from the best
+ * level.
+ *
+ * Market orders are kept in plain FIFO queues, the same way as in
+ * {@link StockMatcherImpl}.
+ *
+ * The implementation is not thread-safe, so access to this object should be
+ * synchronized externally.
+ */
+public class PriceLadderStockMatcher implements StockMatcher {
+
+  private static final int DEFAULT_PAGE_LEVELS = 1024;
+  private static final int MIN_PAGE_LEVELS = Long.SIZE;
+  // the words of the page bitmap are summarized by a single long
+  private static final int MAX_PAGE_LEVELS = Long.SIZE * Long.SIZE;
+
+  private static class Order {
+
+    private long orderId;
+    private int quantity;
+    private int volumeRemain;
+    private long sequence;
+    private Level level;
+    private Order prev;
+    private Order next;
+  }
+
+  private static class Level {
+
+    private Side side;
+    private Page page;
+    private int offset;
+    private long price;
+    private int ordersCount;
+    private long volume;
+    private Order head;
+    private Order tail;
+
+    private boolean isEmpty() {
+      return head == null;
+    }
+
+    private void append(Order o) {
+      o.level = this;
+      o.prev = tail;
+      o.next = null;
+      if (tail == null) {
+        head = o;
+      } else {
+        tail.next = o;
+      }
+      tail = o;
+      ordersCount++;
+      volume += o.volumeRemain;
+      if (side != null) {
+        side.volume += o.volumeRemain;
+      }
+    }
+
+    private void fill(Order o, int quantity) {
+      o.volumeRemain -= quantity;
+      volume -= quantity;
+      if (side != null) {
+        side.volume -= quantity;
+      }
+    }
+
+    private void unlink(Order o) {
+      if (o.prev == null) {
+        head = o.next;
+      } else {
+        o.prev.next = o.next;
+      }
+      if (o.next == null) {
+        tail = o.prev;
+      } else {
+        o.next.prev = o.prev;
+      }
+      ordersCount--;
+      volume -= o.volumeRemain;
+      if (side != null) {
+        side.volume -= o.volumeRemain;
+      }
+      o.level = null;
+      o.prev = null;
+      o.next = null;
+    }
+  }
+
+  /**
+   * The levels of the consecutive ticks starting at <code>number</code> times
+   * the page size. A bit of <code>occupied</code> is set for every non-empty
+   * level, and a bit of <code>occupiedWords</code> for every non-zero word of
+   * <code>occupied</code>
+   */
+  private static class Page {
+
+    private final Level[] levels;
+    private final long[] occupied;
+    private long occupiedWords;
+    private long number;
+    private int nonEmptyLevels;
+
+    private Page(int size) {
+      this.levels = new Level[size];
+      this.occupied = new long[size / Long.SIZE];
+    }
+
+    private void mark(int offset) {
+      int w = offset >>> 6;
+      occupied[w] |= 1L << offset;
+      occupiedWords |= 1L << w;
+      nonEmptyLevels++;
+    }
+
+    private void clear(int offset) {
+      int w = offset >>> 6;
+      occupied[w] &= ~(1L << offset);
+      if (occupied[w] == 0L) {
+        occupiedWords &= ~(1L << w);
+      }
+      nonEmptyLevels--;
+    }
+
+    /**
+     * @return the offset of the first non-empty level at or above the offset,
+     *         or -1 if none
+     */
+    private int higher(int offset) {
+      int w = offset >>> 6;
+      long bits = occupied[w] & (-1L << offset);
+      if (bits != 0L) {
+        return (w << 6) | Long.numberOfTrailingZeros(bits);
+      }
+      long words = w == Long.SIZE - 1 ? 0L : occupiedWords & (-1L << (w + 1));
+      if (words == 0L) {
+        return -1;
+      }
+      w = Long.numberOfTrailingZeros(words);
+      return (w << 6) | Long.numberOfTrailingZeros(occupied[w]);
+    }
+
+    /**
+     * @return the offset of the last non-empty level at or below the offset, or
+     *         -1 if none
+     */
+    private int lower(int offset) {
+      int w = offset >>> 6;
+      long bits = occupied[w] & (-1L >>> (Long.SIZE - 1 - (offset & 63)));
+      if (bits != 0L) {
+        return (w << 6) | (Long.SIZE - 1 - Long.numberOfLeadingZeros(bits));
+      }
+      long words = occupiedWords & ((1L << w) - 1);
+      if (words == 0L) {
+        return -1;
+      }
+      w = Long.SIZE - 1 - Long.numberOfLeadingZeros(words);
+      return (w << 6) | (Long.SIZE - 1 - Long.numberOfLeadingZeros(occupied[w]));
+    }
+  }
+
+  /**
+   * One side of the price ladder, the pages with orders sorted by the price
+   * ascending. The position <code>i</code> of the curve is the level at the
+   * offset <code>i % pageSize</code> of the page <code>i / pageSize</code>, so
+   * the ladder is the volume curve of the side for the call auction as it is
+   */
+  private static class Side implements PriceCurve {
+
+    private final boolean descending;
+    private final int pageBits;
+    private final int pageSize;
+    private long[] numbers = new long[8];
+    private Page[] pages = new Page[8];
+    private int pagesCount;
+    // the page emptied last, reused by the next page needed
+    private Page spare;
+    // the page looked up last, the orders tend to come to the same prices
+    private Page lastPage;
+    private Level best;
+    private int nonEmptyLevels;
+    private long volume;
+
+    private Side(boolean descending, int pageSize) {
+      this.descending = descending;
+      this.pageBits = Integer.numberOfTrailingZeros(pageSize);
+      this.pageSize = pageSize;
+    }
+
+    @Override
+    public long totalVolume() {
+      return volume;
+    }
+
+    @Override
+    public int size() {
+      return pagesCount << pageBits;
+    }
+
+    @Override
+    public long price(int i) {
+      return (numbers[i >>> pageBits] << pageBits) + (i & (pageSize - 1));
+    }
+
+    @Override
+    public long volume(int i) {
+      Level level = pages[i >>> pageBits].levels[i & (pageSize - 1)];
+      return level == null ? 0 : level.volume;
+    }
+
+    private Level bestLevel() {
+      return best;
+    }
+
+    private Level levelOf(long price) {
+      long number = price >> pageBits;
+      Page page = lastPage;
+      if (page == null || page.number != number) {
+        page = pageOf(number);
+        lastPage = page;
+      }
+      int offset = (int) (price & (pageSize - 1));
+      Level level = page.levels[offset];
+      if (level == null) {
+        level = new Level();
+        level.side = this;
+        level.page = page;
+        level.offset = offset;
+        page.levels[offset] = level;
+      }
+      // the levels of the page reused keep the prices of its previous number
+      level.price = price;
+      return level;
+    }
+
+    /**
+     * @return the page of the number, the new one is inserted if none
+     */
+    private Page pageOf(long number) {
+      int i = find(number);
+      if (i >= 0) {
+        return pages[i];
+      }
+      i = -i - 1;
+      Page page = spare;
+      if (page == null) {
+        page = new Page(pageSize);
+      } else {
+        spare = null;
+      }
+      page.number = number;
+      if (pagesCount == pages.length) {
+        numbers = Arrays.copyOf(numbers, pagesCount << 1);
+        pages = Arrays.copyOf(pages, pagesCount << 1);
+      }
+      System.arraycopy(numbers, i, numbers, i + 1, pagesCount - i);
+      System.arraycopy(pages, i, pages, i + 1, pagesCount - i);
+      numbers[i] = number;
+      pages[i] = page;
+      pagesCount++;
+      return page;
+    }
+
+    private void removePage(Page page) {
+      int i = find(page.number);
+      pagesCount--;
+      System.arraycopy(numbers, i + 1, numbers, i, pagesCount - i);
+      System.arraycopy(pages, i + 1, pages, i, pagesCount - i);
+      pages[pagesCount] = null;
+      if (lastPage == page) {
+        lastPage = null;
+      }
+      spare = page;
+    }
+
+    /**
+     * @return the index of the page or <code>-(insertion point) - 1</code> if
+     *         there is no page with the number
+     */
+    private int find(long number) {
+      return Arrays.binarySearch(numbers, 0, pagesCount, number);
+    }
+
+    private void add(Order o, long price) {
+      Level level = levelOf(price);
+      if (level.isEmpty()) {
+        nonEmptyLevels++;
+        level.page.mark(level.offset);
+      }
+      level.append(o);
+      if (best == null || (descending ? price > best.price : price < best.price)) {
+        best = level;
+      }
+    }
+
+    private void remove(Order o) {
+      Level level = o.level;
+      level.unlink(o);
+      if (level.isEmpty()) {
+        nonEmptyLevels--;
+        Page page = level.page;
+        page.clear(level.offset);
+        if (level == best) {
+          best = next(level);
+        }
+        if (page.nonEmptyLevels == 0) {
+          removePage(page);
+        }
+      }
+    }
+
+    /**
+     * @return the first non-empty level worse than the level, or
+     *         <code>null</code> if none
+     */
+    private Level next(Level level) {
+      Page page = level.page;
+      int offset = descending
+          ? (level.offset == 0 ? -1 : page.lower(level.offset - 1))
+          : (level.offset == pageSize - 1 ? -1 : page.higher(level.offset + 1));
+      if (offset >= 0) {
+        return page.levels[offset];
+      }
+      // the pages with orders only are kept, so the next page has the level
+      int i = find(page.number) + (descending ? -1 : 1);
+      if (i < 0 || i >= pagesCount) {
+        return null;
+      }
+      page = pages[i];
+      return page.levels[descending ? page.lower(pageSize - 1) : page.higher(0)];
+    }
+
+    /**
+     * Walks the ladder from the best level until the arrays are filled or no
+     * more non-empty levels left
+     */
+    private int copyLevels(long[] prices, long[] volumes, int[] ordersCounts) {
+      int n = Math.min(prices.length, nonEmptyLevels);
+      Level level = best;
+      for (int k = 0; k < n; k++) {
+        prices[k] = level.price;
+        volumes[k] = level.volume;
+        ordersCounts[k] = level.ordersCount;
+        level = next(level);
+      }
+      return n;
+    }
+  }
+
+  private final ReusableObjects<Order> orderCache = new SimpleReusableObjects<>(1000, 1000, Order::new);
+  private final Long2ObjectMap<Order> index = new Long2ObjectOpenHashMap<>();
+
+  private final Side bids;
+  private final Side asks;
+  private final Level buys = new Level();
+  private final Level sells = new Level();
+  private long sequence;
+
+  public PriceLadderStockMatcher() {
+    this(DEFAULT_PAGE_LEVELS);
+  }
+
+  /**
+   * @param pageLevels the number of price levels per page, the power of two
+   *                   from 64 to 4096
+   */
+  public PriceLadderStockMatcher(int pageLevels) {
+    if (pageLevels < MIN_PAGE_LEVELS || pageLevels > MAX_PAGE_LEVELS || Integer.bitCount(pageLevels) != 1) {
+      throw new IllegalArgumentException("pageLevels");
+    }
+    this.bids = new Side(true, pageLevels);
+    this.asks = new Side(false, pageLevels);
+  }
+
+  @Override
+  public void addOrderBuy(long orderId, int quantity) {
+    buys.append(newOrder(orderId, quantity));
+  }
+
+  @Override
+  public void addOrderSell(long orderId, int quantity) {
+    sells.append(newOrder(orderId, quantity));
+  }
+
+  @Override
+  public void addOrderBid(long orderId, long price, int quantity) {
+    addOrderToSide(orderId, price, quantity, bids);
+  }
+
+  @Override
+  public void addOrderAsk(long orderId, long price, int quantity) {
+    addOrderToSide(orderId, price, quantity, asks);
+  }
+
+  private void addOrderToSide(long orderId, long price, int quantity, Side side) {
+    side.add(newOrder(orderId, quantity), price);
+  }
+
+  private Order newOrder(long orderId, int quantity) {
+    if (index.containsKey(orderId)) {
+      throw new DuplicateOrderException();
+    }
+    Order o = orderCache.capture();
+    o.orderId = orderId;
+    o.quantity = quantity;
+    o.volumeRemain = quantity;
+    o.sequence = sequence++;
+    index.put(orderId, o);
+    return o;
+  }
+
+  @Override
+  public boolean removeOrder(long orderId) {
+    Order o = index.get(orderId);
+    if (o == null) {
+      return false;
+    }
+    if (o.volumeRemain != o.quantity) {
+      throw new OrderPartiallyFilledException();
+    }
+    unlink(o);
+    return true;
+  }
+
+  private void unlink(Order o) {
+    if (o.level.side == null) {
+      o.level.unlink(o); // market order
+    } else {
+      o.level.side.remove(o);
+    }
+    index.remove(o.orderId);
+    orderCache.release(o);
+  }
+
+  @Override
+  public boolean match(
+      LongReference marketPrice,
+      OrderMatchedEventListener orderMatchedEventListener,
+      OrderPartiallyFilledEventListener orderPartiallyFilledEventListener,
+      OrderFulfilledEventListener orderFulfilledEventListener) {
+
+    Level bid = bids.bestLevel();
+    Level ask = asks.bestLevel();
+
+    // match orders bid <-> ask
+    if (bid != null && ask != null && bid.price >= ask.price) {
+      fill(bid.head, ask.head,
+          orderMatchedEventListener, orderPartiallyFilledEventListener, orderFulfilledEventListener);
+      return true;
+    }
+
+    // match orders bid <-> sell(marketPrice)
+    if (bid != null && !sells.isEmpty() && bid.price >= marketPrice.getAsLong()) {
+      fill(bid.head, sells.head,
+          orderMatchedEventListener, orderPartiallyFilledEventListener, orderFulfilledEventListener);
+      return true;
+    }
+
+    // match orders buy(marketPrice) <-> ask
+    if (!buys.isEmpty() && ask != null && marketPrice.getAsLong() >= ask.price) {
+      fill(buys.head, ask.head,
+          orderMatchedEventListener, orderPartiallyFilledEventListener, orderFulfilledEventListener);
+      return true;
+    }
+
+    // match orders buy(marketPrice) <-> sell(marketPrice)
+    if (!buys.isEmpty() && !sells.isEmpty()) {
+      fill(buys.head, sells.head,
+          orderMatchedEventListener, orderPartiallyFilledEventListener, orderFulfilledEventListener);
+      return true;
+    }
+
+    return false;
+  }
+
+  @Override
+  public int matchAll(LongReference marketPrice, MatchBuffer buffer) {
+    buffer.clear();
+    final long marketPriceTicks = marketPrice.getAsLong();
+    Level bid, ask;
+
+    // the queue pairs are swept in the priority order of the match method. The
+    // fills of a pair never make the pairs swept before it cross again, as they
+    // only remove the best orders, so a single pass finds all the fills
+
+    // match orders bid <-> ask
+    while ((bid = bids.bestLevel()) != null && (ask = asks.bestLevel()) != null && bid.price >= ask.price) {
+      if (buffer.isFull()) {
+        return buffer.size();
+      }
+      fill(bid.head, ask.head, Prices.NO_PRICE, buffer);
+    }
+
+    // match orders bid <-> sell(marketPrice)
+    while ((bid = bids.bestLevel()) != null && !sells.isEmpty() && bid.price >= marketPriceTicks) {
+      if (buffer.isFull()) {
+        return buffer.size();
+      }
+      fill(bid.head, sells.head, Prices.NO_PRICE, buffer);
+    }
+
+    // match orders buy(marketPrice) <-> ask
+    while (!buys.isEmpty() && (ask = asks.bestLevel()) != null && marketPriceTicks >= ask.price) {
+      if (buffer.isFull()) {
+        return buffer.size();
+      }
+      fill(buys.head, ask.head, Prices.NO_PRICE, buffer);
+    }
+
+    // match orders buy(marketPrice) <-> sell(marketPrice)
+    while (!buys.isEmpty() && !sells.isEmpty()) {
+      if (buffer.isFull()) {
+        return buffer.size();
+      }
+      fill(buys.head, sells.head, Prices.NO_PRICE, buffer);
+    }
+
+    return buffer.size();
+  }
+
+  private void fill(Order buyer, Order seller, long price, MatchBuffer buffer) {
+    final int quantity = Math.min(buyer.volumeRemain, seller.volumeRemain);
+    buyer.level.fill(buyer, quantity);
+    seller.level.fill(seller, quantity);
+    buffer.add(buyer.orderId, seller.orderId, quantity, price, buyer.volumeRemain, seller.volumeRemain);
+
+    if (buyer.volumeRemain == 0) {
+      unlink(buyer);
+    }
+    if (seller.volumeRemain == 0) {
+      unlink(seller);
+    }
+  }
+
+  private void fill(
+      Order buyer,
+      Order seller,
+      OrderMatchedEventListener orderMatchedEventListener,
+      OrderPartiallyFilledEventListener orderPartiallyFilledEventListener,
+      OrderFulfilledEventListener orderFulfilledEventListener) {
+
+    final long buyerOrderId = buyer.orderId;
+    final long sellerOrderId = seller.orderId;
+    final int quantity = Math.min(buyer.volumeRemain, seller.volumeRemain);
+    orderMatchedEventListener.onOrderMatched(buyerOrderId, sellerOrderId, quantity);
+
+    if (buyer.volumeRemain == quantity) {
+      unlink(buyer);
+      orderFulfilledEventListener.onOrderFulfilled(buyerOrderId);
+    } else {
+      buyer.level.fill(buyer, quantity);
+      orderPartiallyFilledEventListener.onOrderPartialyFilled(buyerOrderId, buyer.volumeRemain);
+    }
+
+    if (seller.volumeRemain == quantity) {
+      unlink(seller);
+      orderFulfilledEventListener.onOrderFulfilled(sellerOrderId);
+    } else {
+      seller.level.fill(seller, quantity);
+      orderPartiallyFilledEventListener.onOrderPartialyFilled(sellerOrderId, seller.volumeRemain);
+    }
+  }
+
+  @Override
+  public void equilibrium(long referencePrice, AuctionEquilibrium equilibrium) {
+    equilibrium.find(bids, asks, buys.volume, sells.volume, referencePrice);
+  }
+
+  @Override
+  public int uncross(long price, MatchBuffer buffer) {
+    buffer.clear();
+    for (;;) {
+      Order buyer = auctionBuyer(price);
+      Order seller = auctionSeller(price);
+      if (buyer == null || seller == null || buffer.isFull()) {
+        return buffer.size();
+      }
+      fill(buyer, seller, price, buffer);
+    }
+  }
+
+  /**
+   * The market orders come first, then the bids priced at or above the auction
+   * price
+   */
+  private Order auctionBuyer(long price) {
+    if (!buys.isEmpty()) {
+      return buys.head;
+    }
+    Level bid = bids.bestLevel();
+    return bid != null && bid.price >= price ? bid.head : null;
+  }
+
+  /**
+   * The market orders come first, then the asks priced at or below the auction
+   * price
+   */
+  private Order auctionSeller(long price) {
+    if (!sells.isEmpty()) {
+      return sells.head;
+    }
+    Level ask = asks.bestLevel();
+    return ask != null && ask.price <= price ? ask.head : null;
+  }
+
+  @Override
+  public int copyBidLevels(long[] prices, long[] volumes, int[] ordersCounts) {
+    return bids.copyLevels(prices, volumes, ordersCounts);
+  }
+
+  @Override
+  public int copyAskLevels(long[] prices, long[] volumes, int[] ordersCounts) {
+    return asks.copyLevels(prices, volumes, ordersCounts);
+  }
+}
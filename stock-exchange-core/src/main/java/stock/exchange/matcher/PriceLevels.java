@@ -0,0 +1,157 @@
+package stock.exchange.matcher;
+
+import java.util.Arrays;
+
+/**
+ * Aggregated price levels of one side of the book: the total volume remaining
+ * and the number of the resting orders per price.
+ *
+ * The levels are kept in parallel primitive arrays sorted from the worst price
+ * to the best one, so the changes next to the best price, which are the most
+ * frequent ones, shift few elements, and the best levels are copied out
+ * without any lookup. A level is found by the binary search.
+ *
+ * The levels are also the volume curve of the side for the call auction.
+ *
+ * The implementation is not thread-safe.
+ */
+final class PriceLevels implements PriceCurve {
+
+  private final boolean descending;
+  private long[] prices = new long[16];
+  private long[] volumes = new long[16];
+  private int[] ordersCounts = new int[16];
+  private int size;
+  private long totalVolume;
+
+  /**
+   * @param descending <code>true</code> for the bid side, where the highest
+   *                   price is the best one
+   */
+  PriceLevels(boolean descending) {
+    this.descending = descending;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public long totalVolume() {
+    return totalVolume;
+  }
+
+  @Override
+  public long price(int i) {
+    return prices[ascending(i)];
+  }
+
+  @Override
+  public long volume(int i) {
+    return volumes[ascending(i)];
+  }
+
+  /**
+   * The levels are sorted from the worst price, which is the lowest one for the
+   * bids and the highest one for the asks
+   */
+  private int ascending(int i) {
+    return descending ? i : size - 1 - i;
+  }
+
+  /**
+   * Accounts the new order resting at the price
+   */
+  void add(long price, int volume) {
+    int i = find(price);
+    if (i < 0) {
+      i = -i - 1;
+      insert(i, price);
+    }
+    volumes[i] += volume;
+    ordersCounts[i]++;
+    totalVolume += volume;
+  }
+
+  /**
+   * Accounts the partial fill of the order resting at the price
+   */
+  void fill(long price, int quantity) {
+    volumes[find(price)] -= quantity;
+    totalVolume -= quantity;
+  }
+
+  /**
+   * Accounts the order leaving the price level, the level is dropped with its
+   * last order
+   */
+  void remove(long price, int volumeRemain) {
+    int i = find(price);
+    volumes[i] -= volumeRemain;
+    totalVolume -= volumeRemain;
+    if (--ordersCounts[i] == 0) {
+      size--;
+      System.arraycopy(prices, i + 1, prices, i, size - i);
+      System.arraycopy(volumes, i + 1, volumes, i, size - i);
+      System.arraycopy(ordersCounts, i + 1, ordersCounts, i, size - i);
+    }
+  }
+
+  /**
+   * Copies the best levels, the best price first, as many as the arrays fit
+   *
+   * @return the number of the levels copied
+   */
+  int copyTo(long[] prices, long[] volumes, int[] ordersCounts) {
+    int n = Math.min(size, prices.length);
+    for (int k = 0; k < n; k++) {
+      int i = size - 1 - k;
+      prices[k] = this.prices[i];
+      volumes[k] = this.volumes[i];
+      ordersCounts[k] = this.ordersCounts[i];
+    }
+    return n;
+  }
+
+  private boolean worse(long a, long b) {
+    return descending ? a < b : a > b;
+  }
+
+  /**
+   * @return the index of the level or <code>-(insertion point) - 1</code> if
+   *         there is no level with the price
+   */
+  private int find(long price) {
+    int lo = 0;
+    int hi = size - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      long p = prices[mid];
+      if (p == price) {
+        return mid;
+      }
+      if (worse(p, price)) {
+        lo = mid + 1;
+      } else {
+        hi = mid - 1;
+      }
+    }
+    return -lo - 1;
+  }
+
+  private void insert(int i, long price) {
+    if (size == prices.length) {
+      prices = Arrays.copyOf(prices, size << 1);
+      volumes = Arrays.copyOf(volumes, size << 1);
+      ordersCounts = Arrays.copyOf(ordersCounts, size << 1);
+    }
+    System.arraycopy(prices, i, prices, i + 1, size - i);
+    System.arraycopy(volumes, i, volumes, i + 1, size - i);
+    System.arraycopy(ordersCounts, i, ordersCounts, i + 1, size - i);
+    prices[i] = price;
+    volumes[i] = 0;
+    ordersCounts[i] = 0;
+    size++;
+  }
+}
@@ -2,7 +2,7 @@ package stock.exchange.matcher;
 
 import stock.exchange.book.DuplicateOrderException;
 import stock.exchange.book.OrderPartiallyFilledException;
-import stock.exchange.domain.DoubleReference;
+import stock.exchange.domain.LongReference;
 
 /**
  * StockMatcher is an abstraction of the order matching strategy in the trading
@@ -68,23 +68,23 @@ public interface StockMatcher {
    * The method adds 'Buy' Limit Order to the queue
    * 
    * @param orderId  unique order id
-   * @param price    buy price
+   * @param price    buy price in ticks
    * @param quantity buy quantity
    * @throws DuplicateOrderException if order with the given id is in the queue
    *                                 already
    */
-  void addOrderBid(long orderId, double price, int quantity);
+  void addOrderBid(long orderId, long price, int quantity);
 
   /**
    * The method adds 'Sell' Limit Order to the queue
    * 
    * @param orderId  unique order id
-   * @param price    sell price
+   * @param price    sell price in ticks
    * @param quantity sell quantity
    * @throws DuplicateOrderException if order with the given id is in the queue
    *                                 already
    */
-  void addOrderAsk(long orderId, double price, int quantity);
+  void addOrderAsk(long orderId, long price, int quantity);
 
   /**
    * The method adds 'Buy' Market Order to the queue
@@ -132,7 +132,7 @@ public interface StockMatcher {
    * orders.
    * 
    * @param marketPriceRef                    the reference to the current market
-   *                                          price for the instrument
+   *                                          price for the instrument in ticks
    * @param orderMatchedEventListener         the event listener receives event on
    *                                          every trade match event
    * @param orderPartiallyFilledEventListener the event listener receives event on
@@ -143,8 +143,88 @@ public interface StockMatcher {
    *         no matched orders in the queue at the moment
    */
   boolean match(
-      DoubleReference marketPrice,
+      LongReference marketPrice,
       OrderMatchedEventListener orderMatchedEventListener,
       OrderPartiallyFilledEventListener orderPartiallyFilledEventListener,
       OrderFulfilledEventListener orderFulfilledEventListener);
+
+  /**
+   * The method executes the matching algorithm over all the orders crossing at
+   * the moment in a single sweep, and puts every fill into the buffer instead
+   * of calling the event listeners. The fills are found in the same order as by
+   * the repeated calls of the {@link #match} method with the same market price.
+   * 
+   * The fills carry no price, {@link stock.exchange.domain.Prices#NO_PRICE}, as
+   * the trade price of the continuous matching is set by the trade generator.
+   * 
+   * The buffer is cleared first. The sweep stops when no more orders cross or
+   * the buffer is full, so the caller is expected to call the method again while
+   * the buffer comes back full.
+   * 
+   * The method also updates its internal state by removing fully filled orders
+   * from the queue and/or updating the remaining quantity of partially filled
+   * orders.
+   * 
+   * @param marketPrice the reference to the current market price for the
+   *                    instrument in ticks, read once per call
+   * @param buffer      the buffer receives the fills
+   * @return the number of the fills put into the buffer
+   */
+  int matchAll(LongReference marketPrice, MatchBuffer buffer);
+
+  /**
+   * The method copies the aggregated price levels of the resting bid (limit
+   * buy) orders, the best price first, as many levels as the arrays fit.
+   *
+   * The levels are maintained incrementally on adding, filling and removing the
+   * orders, so the call costs O(n) of the levels copied.
+   *
+   * @param prices       receives the price of the level in ticks
+   * @param volumes      receives the total volume remaining at the level
+   * @param ordersCounts receives the number of the orders at the level
+   * @return the number of the levels copied
+   */
+  int copyBidLevels(long[] prices, long[] volumes, int[] ordersCounts);
+
+  /**
+   * The method copies the aggregated price levels of the resting ask (limit
+   * sell) orders, the best price first, the same way as
+   * {@link #copyBidLevels}
+   *
+   * @return the number of the levels copied
+   */
+  int copyAskLevels(long[] prices, long[] volumes, int[] ordersCounts);
+
+  /**
+   * The method finds the call auction equilibrium price of the orders resting
+   * in the matcher, without executing them. The market orders take part in the
+   * auction at any price.
+   * 
+   * The search is a single pass over the price levels of both sides, see
+   * {@link AuctionEquilibrium}.
+   * 
+   * @param referencePrice the price in ticks the equilibrium is closest to
+   *                       among the prices equal otherwise, typically the last
+   *                       market price. Market orders only are executed at
+   *                       this price
+   * @param equilibrium    receives the result
+   */
+  void equilibrium(long referencePrice, AuctionEquilibrium equilibrium);
+
+  /**
+   * The method executes the call auction uncross: all the orders crossing at
+   * the given price are filled at this very price, the market orders first and
+   * then the limit orders in the price-time priority, until one of the sides
+   * has no more orders executable at the price. Every fill is put into the
+   * buffer with the auction price.
+   * 
+   * The buffer is cleared first. The method stops when the buffer is full, so
+   * the caller is expected to call the method again while the buffer comes back
+   * full. Uncrossing at the equilibrium price executes the equilibrium volume.
+   * 
+   * @param price  the auction price in ticks
+   * @param buffer the buffer receives the fills
+   * @return the number of the fills put into the buffer
+   */
+  int uncross(long price, MatchBuffer buffer);
 }
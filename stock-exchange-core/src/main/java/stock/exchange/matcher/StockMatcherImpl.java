@@ -1,19 +1,13 @@
 package stock.exchange.matcher;
 
-import static java.util.Comparator.comparingDouble;
+import java.util.Arrays;
 
-import java.util.Comparator;
-import java.util.NoSuchElementException;
-import java.util.function.ToDoubleFunction;
-
-import it.unimi.dsi.fastutil.PriorityQueue;
 import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
-import it.unimi.dsi.fastutil.objects.ObjectArrayFIFOQueue;
-import it.unimi.dsi.fastutil.objects.ObjectHeapPriorityQueue;
 import stock.exchange.book.DuplicateOrderException;
 import stock.exchange.book.OrderPartiallyFilledException;
-import stock.exchange.domain.DoubleReference;
+import stock.exchange.domain.LongReference;
+import stock.exchange.domain.Prices;
 import util.nogc.ReusableObjects;
 import util.nogc.SimpleReusableObjects;
 
@@ -21,6 +15,12 @@ import util.nogc.SimpleReusableObjects;
  * This trade matching algorithm implementation of the order book queue provides
  * FIFO algorithms for market orders and time-price priority for limit orders.
  * 
+ * Market orders are kept in intrusive FIFO lists, limit orders are kept in
+ * indexed binary heaps where every entry knows its own position. Canceling an
+ * order removes the entry physically from its queue (O(1) for the list, O(log
+ * n) for the heap) before the entry goes back to the cache, so the queues never
+ * hold dead entries and a cached entry is never reachable from a queue.
+ * 
  * The implementation is not thread-safe, so access to this object should be
  * synchronized externally.
  */
@@ -28,51 +28,211 @@ public class StockMatcherImpl implements StockMatcher {
 
   private static class QE {
 
-    private double price;
+    private long price;
     private long orderId;
     private int quantity;
     private int volumeRemain;
+    private long sequence;
+    private Queue queue;
+    private int heapIndex;
+    private QE prev;
+    private QE next;
+  }
+
+  private interface Queue {
+
+    QE first();
+
+    void enqueue(QE e);
+
+    void remove(QE e);
+
+    /**
+     * Reduces the volume remaining of the entry by the quantity filled
+     */
+    void fill(QE e, int quantity);
+  }
+
+  private static class FifoQueue implements Queue {
+
+    private QE head;
+    private QE tail;
+    private long volume;
+
+    @Override
+    public QE first() {
+      return head;
+    }
+
+    @Override
+    public void enqueue(QE e) {
+      e.queue = this;
+      e.prev = tail;
+      e.next = null;
+      if (tail == null) {
+        head = e;
+      } else {
+        tail.next = e;
+      }
+      tail = e;
+      volume += e.volumeRemain;
+    }
+
+    @Override
+    public void remove(QE e) {
+      if (e.prev == null) {
+        head = e.next;
+      } else {
+        e.prev.next = e.next;
+      }
+      if (e.next == null) {
+        tail = e.prev;
+      } else {
+        e.next.prev = e.prev;
+      }
+      e.queue = null;
+      e.prev = null;
+      e.next = null;
+      volume -= e.volumeRemain;
+    }
 
-    private double price() {
-      return price;
+    @Override
+    public void fill(QE e, int quantity) {
+      e.volumeRemain -= quantity;
+      volume -= quantity;
     }
   }
 
-  private final ReusableObjects<QE> qeCache = new SimpleReusableObjects<>(1000, 1000, QE::new);
+  /**
+   * Binary heap ordered by price and then by the order of adding. Each entry
+   * keeps its index in the heap array, so an arbitrary entry is removed in
+   * O(log n) without searching. The heap also maintains the aggregated price
+   * levels of its entries.
+   */
+  private static class HeapQueue implements Queue {
 
-  private static final Comparator<QE> ORDER_BY_PRICE_DESC = //
-      comparingDouble(QE::price).reversed();
+    private final boolean descending;
+    private final PriceLevels levels;
+    private QE[] heap = new QE[16];
+    private int size;
 
-  private static final Comparator<QE> ORDER_BY_PRICE_ASC = //
-      comparingDouble(QE::price);
+    private HeapQueue(boolean descending) {
+      this.descending = descending;
+      this.levels = new PriceLevels(descending);
+    }
+
+    @Override
+    public QE first() {
+      return size == 0 ? null : heap[0];
+    }
+
+    @Override
+    public void enqueue(QE e) {
+      if (size == heap.length) {
+        heap = Arrays.copyOf(heap, size << 1);
+      }
+      e.queue = this;
+      place(e, size++);
+      siftUp(e.heapIndex);
+      levels.add(e.price, e.volumeRemain);
+    }
+
+    @Override
+    public void remove(QE e) {
+      int i = e.heapIndex;
+      QE last = heap[--size];
+      heap[size] = null;
+      if (last != e) {
+        place(last, i);
+        siftDown(i);
+        siftUp(last.heapIndex);
+      }
+      e.queue = null;
+      e.heapIndex = -1;
+      levels.remove(e.price, e.volumeRemain);
+    }
+
+    @Override
+    public void fill(QE e, int quantity) {
+      e.volumeRemain -= quantity;
+      levels.fill(e.price, quantity);
+    }
+
+    private boolean before(QE a, QE b) {
+      if (a.price != b.price) {
+        return descending ? a.price > b.price : a.price < b.price;
+      }
+      return a.sequence < b.sequence;
+    }
+
+    private void place(QE e, int i) {
+      heap[i] = e;
+      e.heapIndex = i;
+    }
+
+    private void siftUp(int i) {
+      QE e = heap[i];
+      while (i > 0) {
+        int parent = (i - 1) >>> 1;
+        if (!before(e, heap[parent])) {
+          break;
+        }
+        place(heap[parent], i);
+        i = parent;
+      }
+      place(e, i);
+    }
+
+    private void siftDown(int i) {
+      QE e = heap[i];
+      for (;;) {
+        int child = (i << 1) + 1;
+        if (child >= size) {
+          break;
+        }
+        if (child + 1 < size && before(heap[child + 1], heap[child])) {
+          child++;
+        }
+        if (!before(heap[child], e)) {
+          break;
+        }
+        place(heap[child], i);
+        i = child;
+      }
+      place(e, i);
+    }
+  }
+
+  private final ReusableObjects<QE> qeCache = new SimpleReusableObjects<>(1000, 1000, QE::new);
 
   private final Long2ObjectMap<QE> index = new Long2ObjectOpenHashMap<>();
-  private final PriorityQueue<QE> buyQueue = new ObjectArrayFIFOQueue<>();
-  private final PriorityQueue<QE> sellQueue = new ObjectArrayFIFOQueue<>();
-  private final PriorityQueue<QE> bidQueue = new ObjectHeapPriorityQueue<>(ORDER_BY_PRICE_DESC);
-  private final PriorityQueue<QE> askQueue = new ObjectHeapPriorityQueue<>(ORDER_BY_PRICE_ASC);
+  private final FifoQueue buyQueue = new FifoQueue();
+  private final FifoQueue sellQueue = new FifoQueue();
+  private final HeapQueue bidQueue = new HeapQueue(true);
+  private final HeapQueue askQueue = new HeapQueue(false);
+  private long sequence;
 
   @Override
   public void addOrderBuy(long orderId, int quantity) {
-    addOrderToQueue(orderId, Double.NaN, quantity, buyQueue);
+    addOrderToQueue(orderId, Prices.NO_PRICE, quantity, buyQueue);
   }
 
   @Override
   public void addOrderSell(long orderId, int quantity) {
-    addOrderToQueue(orderId, Double.NaN, quantity, sellQueue);
+    addOrderToQueue(orderId, Prices.NO_PRICE, quantity, sellQueue);
   }
 
   @Override
-  public void addOrderBid(long orderId, double price, int quantity) {
+  public void addOrderBid(long orderId, long price, int quantity) {
     addOrderToQueue(orderId, price, quantity, bidQueue);
   }
 
   @Override
-  public void addOrderAsk(long orderId, double price, int quantity) {
+  public void addOrderAsk(long orderId, long price, int quantity) {
     addOrderToQueue(orderId, price, quantity, askQueue);
   }
 
-  private void addOrderToQueue(long orderId, double price, int quantity, PriorityQueue<QE> queue) {
+  private void addOrderToQueue(long orderId, long price, int quantity, Queue queue) {
     if (index.containsKey(orderId)) {
       throw new DuplicateOrderException();
     }
@@ -81,6 +241,7 @@ public class StockMatcherImpl implements StockMatcher {
     e.quantity = quantity;
     e.volumeRemain = quantity;
     e.price = price;
+    e.sequence = sequence++;
     index.put(orderId, e);
     queue.enqueue(e);
   }
@@ -94,17 +255,23 @@ public class StockMatcherImpl implements StockMatcher {
     if (qe.volumeRemain != qe.quantity) {
       throw new OrderPartiallyFilledException();
     }
-    qeCache.release(index.remove(orderId));
+    release(qe);
     return true;
   }
 
+  private void release(QE qe) {
+    qe.queue.remove(qe);
+    index.remove(qe.orderId);
+    qeCache.release(qe);
+  }
+
   @Override
   public boolean match(
-      DoubleReference marketPrice,
+      LongReference marketPrice,
       OrderMatchedEventListener orderMatchedEventListener,
       OrderPartiallyFilledEventListener orderPartiallyFilledEventListener,
       OrderFulfilledEventListener orderFulfilledEventListener) {
-    ToDoubleFunction<QE> marketPriceFunction = x -> marketPrice.getAsDouble();
+    final long marketPriceTicks = marketPrice.getAsLong();
     // match orders bid <-> ask
     if (matchQueues(
         orderMatchedEventListener,
@@ -112,8 +279,7 @@ public class StockMatcherImpl implements StockMatcher {
         orderFulfilledEventListener,
         bidQueue,
         askQueue,
-        QE::price,
-        QE::price)) {
+        marketPriceTicks)) {
       return true;
     }
     // match orders bid <-> sell(marketPrice)
@@ -123,8 +289,7 @@ public class StockMatcherImpl implements StockMatcher {
         orderFulfilledEventListener,
         bidQueue,
         sellQueue,
-        QE::price,
-        marketPriceFunction)) {
+        marketPriceTicks)) {
       return true;
     }
     // match orders buy(marketPrice) <-> ask
@@ -134,8 +299,7 @@ public class StockMatcherImpl implements StockMatcher {
         orderFulfilledEventListener,
         buyQueue,
         askQueue,
-        marketPriceFunction,
-        QE::price)) {
+        marketPriceTicks)) {
       return true;
     }
     // match orders buy(marketPrice) <-> sell(marketPrice)
@@ -145,78 +309,182 @@ public class StockMatcherImpl implements StockMatcher {
         orderFulfilledEventListener,
         buyQueue,
         sellQueue,
-        marketPriceFunction,
-        marketPriceFunction)) {
+        marketPriceTicks)) {
       return true;
     }
     return false;
   }
 
+  @Override
+  public int matchAll(LongReference marketPrice, MatchBuffer buffer) {
+    buffer.clear();
+    final long marketPriceTicks = marketPrice.getAsLong();
+    // the queue pairs are swept in the priority order of the match method. The
+    // fills of a pair never make the pairs swept before it cross again, as they
+    // only remove the best orders, so a single pass finds all the fills
+    if (sweepQueues(buffer, bidQueue, askQueue, marketPriceTicks)
+        && sweepQueues(buffer, bidQueue, sellQueue, marketPriceTicks)
+        && sweepQueues(buffer, buyQueue, askQueue, marketPriceTicks)) {
+      sweepQueues(buffer, buyQueue, sellQueue, marketPriceTicks);
+    }
+    return buffer.size();
+  }
+
+  /**
+   * Market orders have no price and are matched at the market price
+   */
+  private static long priceOf(QE e, long marketPrice) {
+    return e.price == Prices.NO_PRICE ? marketPrice : e.price;
+  }
+
   private boolean matchQueues(
       OrderMatchedEventListener orderMatchedEventListener,
       OrderPartiallyFilledEventListener orderPartiallyFilledEventListener,
       OrderFulfilledEventListener orderFulfilledEventListener,
-      PriorityQueue<QE> buyerQueue,
-      PriorityQueue<QE> sellerQueue,
-      ToDoubleFunction<QE> buyerPriceFunction,
-      ToDoubleFunction<QE> sellerPriceFunction) {
+      Queue buyerQueue,
+      Queue sellerQueue,
+      long marketPrice) {
 
     QE buyer, seller;
-    double buyerPrice, sellerPrice;
+    long buyerPrice, sellerPrice;
 
-    buyer = firstDequeueRemoved(buyerQueue);
+    buyer = buyerQueue.first();
     if (buyer == null) {
       return false;
     }
 
-    seller = firstDequeueRemoved(sellerQueue);
+    seller = sellerQueue.first();
     if (seller == null) {
       return false;
     }
 
-    buyerPrice = buyerPriceFunction.applyAsDouble(buyer);
-    sellerPrice = sellerPriceFunction.applyAsDouble(seller);
+    buyerPrice = priceOf(buyer, marketPrice);
+    sellerPrice = priceOf(seller, marketPrice);
 
     if (buyerPrice < sellerPrice) {
       return false;
     }
 
+    final long buyerOrderId = buyer.orderId;
+    final long sellerOrderId = seller.orderId;
     final int quantity = Math.min(buyer.volumeRemain, seller.volumeRemain);
-    orderMatchedEventListener.onOrderMatched(buyer.orderId, seller.orderId, quantity);
+    orderMatchedEventListener.onOrderMatched(buyerOrderId, sellerOrderId, quantity);
 
     if (buyer.volumeRemain == quantity) {
-      buyerQueue.dequeue();
-      qeCache.release(index.remove(buyer.orderId));
-      orderFulfilledEventListener.onOrderFulfilled(buyer.orderId);
+      release(buyer);
+      orderFulfilledEventListener.onOrderFulfilled(buyerOrderId);
     } else {
-      buyer.volumeRemain -= quantity;
-      orderPartiallyFilledEventListener.onOrderPartialyFilled(buyer.orderId, buyer.volumeRemain);
+      buyer.queue.fill(buyer, quantity);
+      orderPartiallyFilledEventListener.onOrderPartialyFilled(buyerOrderId, buyer.volumeRemain);
     }
 
     if (seller.volumeRemain == quantity) {
-      sellerQueue.dequeue();
-      qeCache.release(index.remove(seller.orderId));
-      orderFulfilledEventListener.onOrderFulfilled(seller.orderId);
+      release(seller);
+      orderFulfilledEventListener.onOrderFulfilled(sellerOrderId);
     } else {
-      seller.volumeRemain -= quantity;
-      orderPartiallyFilledEventListener.onOrderPartialyFilled(seller.orderId, seller.volumeRemain);
+      seller.queue.fill(seller, quantity);
+      orderPartiallyFilledEventListener.onOrderPartialyFilled(sellerOrderId, seller.volumeRemain);
     }
     return true;
   }
 
-  private QE firstDequeueRemoved(PriorityQueue<QE> queue) {
-    QE qe;
-    try {
-      for (;;) {
-        qe = queue.first();
-        if (index.containsKey(qe.orderId)) {
-          return qe;
-        }
-        queue.dequeue(); // the order had removed earlier, removing from queue
+  /**
+   * Fills the orders of the queues while they cross
+   * 
+   * @return <code>false</code> if the buffer got full before the queues stopped
+   *         crossing
+   */
+  private boolean sweepQueues(MatchBuffer buffer, Queue buyerQueue, Queue sellerQueue, long marketPrice) {
+    for (;;) {
+      QE buyer = buyerQueue.first();
+      QE seller = sellerQueue.first();
+      if (buyer == null || seller == null) {
+        return true;
+      }
+
+      long buyerPrice = priceOf(buyer, marketPrice);
+      long sellerPrice = priceOf(seller, marketPrice);
+      if (buyerPrice < sellerPrice) {
+        return true;
+      }
+
+      if (buffer.isFull()) {
+        return false;
+      }
+
+      fill(buyer, seller, Prices.NO_PRICE, buffer);
+    }
+  }
+
+  private void fill(QE buyer, QE seller, long price, MatchBuffer buffer) {
+    final int quantity = Math.min(buyer.volumeRemain, seller.volumeRemain);
+    buyer.queue.fill(buyer, quantity);
+    seller.queue.fill(seller, quantity);
+    buffer.add(buyer.orderId, seller.orderId, quantity, price, buyer.volumeRemain, seller.volumeRemain);
+
+    if (buyer.volumeRemain == 0) {
+      release(buyer);
+    }
+    if (seller.volumeRemain == 0) {
+      release(seller);
+    }
+  }
+
+  @Override
+  public void equilibrium(long referencePrice, AuctionEquilibrium equilibrium) {
+    equilibrium.find(bidQueue.levels, askQueue.levels, buyQueue.volume, sellQueue.volume, referencePrice);
+  }
+
+  @Override
+  public int uncross(long price, MatchBuffer buffer) {
+    buffer.clear();
+    for (;;) {
+      QE buyer = auctionBuyer(price);
+      QE seller = auctionSeller(price);
+      if (buyer == null || seller == null || buffer.isFull()) {
+        return buffer.size();
       }
-    } catch (NoSuchElementException e) {
-      return null;
+      fill(buyer, seller, price, buffer);
     }
   }
 
+  /**
+   * The market orders come first, then the bids priced at or above the auction
+   * price
+   */
+  private QE auctionBuyer(long price) {
+    QE e = buyQueue.first();
+    if (e == null) {
+      e = bidQueue.first();
+      if (e != null && e.price < price) {
+        e = null;
+      }
+    }
+    return e;
+  }
+
+  /**
+   * The market orders come first, then the asks priced at or below the auction
+   * price
+   */
+  private QE auctionSeller(long price) {
+    QE e = sellQueue.first();
+    if (e == null) {
+      e = askQueue.first();
+      if (e != null && e.price > price) {
+        e = null;
+      }
+    }
+    return e;
+  }
+
+  @Override
+  public int copyBidLevels(long[] prices, long[] volumes, int[] ordersCounts) {
+    return bidQueue.levels.copyTo(prices, volumes, ordersCounts);
+  }
+
+  @Override
+  public int copyAskLevels(long[] prices, long[] volumes, int[] ordersCounts) {
+    return askQueue.levels.copyTo(prices, volumes, ordersCounts);
+  }
 }
@@ -0,0 +1,424 @@
+package stock.exchange.publisher;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import stock.exchange.book.MarketDepth;
+import stock.exchange.domain.Prices;
+import stock.exchange.domain.SecurityRecord;
+import stock.exchange.domain.TradeRecord;
+import stock.exchange.instrument.InstrumentManager;
+import stock.exchange.instrument.NoSuchSecurityException;
+import stock.exchange.integration.Downstream;
+import util.concurrent.VirtualThreads;
+
+/**
+ * Publishes the latest market state of the securities traded to the
+ * subscribers at the bounded rate.
+ *
+ * The publisher is the downstream of the trades. A trade only overwrites the
+ * latest state of its security in the conflation map and marks it changed, so
+ * the thread executing the trades is never held up by the subscribers. The
+ * publication of the market depth of the book marks the security changed as
+ * well, so the changes of the best bid and ask are pushed without trades. The
+ * publisher thread takes the changed states once per interval, adds the best
+ * bid and ask of the book, and hands the ones differing from the previous
+ * publication to the subscribers of the securities. So every security is
+ * published once per interval at most, however many trades and quotes it has.
+ *
+ * Every subscriber has its own conflation map, where a newer update of the
+ * security replaces the one not delivered yet. The map is drained by a task of
+ * the delivery executor shared by all the subscribers, scheduled when the map
+ * gets an update and no task of the subscriber runs. So a slow subscriber
+ * skips the intermediate states rather than queues them, always gets the
+ * latest one, and never holds up the publisher or the other subscribers,
+ * while an idle subscriber holds no thread.
+ *
+ * The publisher thread is started by {@link #start()}.
+ */
+public class ConflatingPublisher implements Downstream<TradeRecord>, AutoCloseable {
+
+  private static final Slot[] NO_SLOTS = {};
+
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+  private final InstrumentManager instrumentManager;
+  private final Function<SecurityRecord, MarketDepth> quotes;
+  private final long intervalNanos;
+  private final Thread thread;
+  private final ExecutorService deliveries;
+  private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+  // serializes the creation of the slots only, the lookups take no lock
+  private final Lock writer = new ReentrantLock();
+  private volatile Int2ObjectMap<Slot> slotsById = new Int2ObjectOpenHashMap<>();
+  private volatile Slot[] slots = NO_SLOTS;
+  private volatile boolean closed;
+
+  /**
+   * The latest state of the security written by the thread executing its
+   * trades and read by the publisher thread
+   */
+  private static class Slot {
+
+    private final SecurityRecord security;
+    private final StampedLock lock = new StampedLock();
+    // the state below is written under the write lock
+    private long lastPrice;
+    private int lastQuantity;
+    private long volume;
+    private long trades;
+    private volatile boolean changed;
+    // the previous update, read and written by the publishing thread only
+    private MarketDataUpdate published;
+
+    private Slot(SecurityRecord security) {
+      this.security = security;
+      this.lastPrice = Prices.NO_PRICE;
+    }
+  }
+
+  public ConflatingPublisher(
+      InstrumentManager instrumentManager,
+      Function<SecurityRecord, MarketDepth> quotes,
+      Duration interval) {
+    this(instrumentManager, quotes, interval, false);
+  }
+
+  /**
+   * @param instrumentManager resolves the symbols subscribed
+   * @param quotes            the market depth of the book of the security the
+   *                          best bid and ask are published from, or
+   *                          <code>null</code> to publish no quotes
+   * @param interval          the period of the publications
+   * @param virtualThreads    the updates are delivered by the virtual threads
+   *                          rather than by the cached pool of the platform
+   *                          ones
+   */
+  public ConflatingPublisher(
+      InstrumentManager instrumentManager,
+      Function<SecurityRecord, MarketDepth> quotes,
+      Duration interval,
+      boolean virtualThreads) {
+    if (interval.isNegative() || interval.isZero()) {
+      throw new IllegalArgumentException("interval " + interval);
+    }
+    this.instrumentManager = instrumentManager;
+    this.quotes = quotes;
+    this.intervalNanos = interval.toNanos();
+    this.thread = new Thread(this::run, "market-data-publisher");
+    this.thread.setDaemon(true);
+    this.deliveries = VirtualThreads.newThreadPerTaskExecutor(virtualThreads);
+  }
+
+  /**
+   * Starts the publisher thread
+   */
+  public void start() {
+    thread.start();
+  }
+
+  @Override
+  public void accept(TradeRecord t) {
+    Slot slot = slotsById.get(t.security().id());
+    if (slot == null) {
+      slot = createSlot(t.security());
+    }
+    long stamp = slot.lock.writeLock();
+    try {
+      slot.lastPrice = t.price();
+      slot.lastQuantity = t.quantity();
+      slot.volume += t.quantity();
+      slot.trades++;
+    } finally {
+      slot.lock.unlockWrite(stamp);
+    }
+    slot.changed = true;
+  }
+
+  /**
+   * Called once per security on its first subscription or trade. The slot is
+   * marked changed by every publication of the market depth of the book from
+   * now on
+   */
+  private Slot createSlot(SecurityRecord security) {
+    writer.lock();
+    try {
+      Int2ObjectMap<Slot> current = slotsById;
+      Slot slot = current.get(security.id());
+      if (slot == null) {
+        slot = new Slot(security);
+        MarketDepth depth = quotes == null ? null : quotes.apply(security);
+        if (depth != null) {
+          Slot changed = slot;
+          depth.addListener(() -> changed.changed = true);
+        }
+        Int2ObjectMap<Slot> newSlotsById = new Int2ObjectOpenHashMap<>(current);
+        newSlotsById.put(security.id(), slot);
+        Slot[] newSlots = Arrays.copyOf(slots, slots.length + 1);
+        newSlots[newSlots.length - 1] = slot;
+        slots = newSlots;
+        slotsById = newSlotsById;
+      }
+      return slot;
+    } finally {
+      writer.unlock();
+    }
+  }
+
+  /**
+   * Subscribes the listener to the updates of the securities. The listener is
+   * called by a delivery thread, one update at a time
+   *
+   * @throws stock.exchange.instrument.NoSuchInstrumentException if a symbol is
+   *                                                             unknown
+   * @throws NoSuchSecurityException                             if an
+   *                                                             instrument is
+   *                                                             not a security
+   */
+  public Subscription subscribe(Collection<String> symbols, Consumer<MarketDataUpdate> listener) {
+    Subscription subscription = new Subscription(listener);
+    subscription.add(symbols);
+    subscriptions.add(subscription);
+    return subscription;
+  }
+
+  /**
+   * @return the number of the subscriptions open at the moment
+   */
+  public int activeSubscriptions() {
+    return subscriptions.size();
+  }
+
+  private SecurityRecord security(String symbol) {
+    if (instrumentManager.findInstrumentBySymbol(symbol) instanceof SecurityRecord security) {
+      return security;
+    }
+    throw new NoSuchSecurityException(symbol);
+  }
+
+  private void run() {
+    long next = System.nanoTime() + intervalNanos;
+    while (!closed) {
+      long now = System.nanoTime();
+      if (now - next < 0) {
+        LockSupport.parkNanos(this, next - now);
+        continue;
+      }
+      next += intervalNanos;
+      if (now - next > 0) {
+        // the publications missed by the late wake-up are not caught up
+        next = now;
+      }
+      try {
+        publish();
+      } catch (RuntimeException e) {
+        logger.error("Publication failed", e);
+      }
+    }
+  }
+
+  /**
+   * Publishes the states changed since the previous publication
+   */
+  void publish() {
+    for (Slot slot : slots) {
+      if (!slot.changed) {
+        continue;
+      }
+      // cleared before the read, so the trade after the read is published next
+      slot.changed = false;
+      long lastPrice, volume, trades;
+      int lastQuantity;
+      for (;;) {
+        long stamp = slot.lock.tryOptimisticRead();
+        lastPrice = slot.lastPrice;
+        lastQuantity = slot.lastQuantity;
+        volume = slot.volume;
+        trades = slot.trades;
+        if (slot.lock.validate(stamp)) {
+          break;
+        }
+        Thread.onSpinWait();
+      }
+      MarketDepth depth = quotes == null ? null : quotes.apply(slot.security);
+      MarketDataUpdate update = new MarketDataUpdate(
+          slot.security,
+          lastPrice,
+          lastQuantity,
+          volume,
+          trades,
+          depth == null ? null : depth.bestBid(),
+          depth == null ? null : depth.bestAsk());
+      // the depth published beyond the best levels changes nothing
+      if (update.equals(slot.published)) {
+        continue;
+      }
+      slot.published = update;
+      int id = slot.security.id();
+      for (Subscription subscription : subscriptions) {
+        if (subscription.contains(id)) {
+          subscription.offer(id, update);
+        }
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    closed = true;
+    LockSupport.unpark(thread);
+    for (Subscription subscription : subscriptions) {
+      subscription.close();
+    }
+    deliveries.shutdown();
+  }
+
+  /**
+   * The subscription of the listener to the updates of the number of the
+   * securities
+   */
+  public class Subscription implements AutoCloseable {
+
+    private final Consumer<MarketDataUpdate> listener;
+    private final ConcurrentHashMap<Integer, MarketDataUpdate> pending = new ConcurrentHashMap<>();
+    // set while the delivery task of the subscription is scheduled or runs
+    private final AtomicBoolean delivering = new AtomicBoolean();
+    // the ids of the securities subscribed, sorted, replaced as a whole
+    private volatile int[] securityIds = new int[0];
+    private volatile boolean closed;
+
+    private Subscription(Consumer<MarketDataUpdate> listener) {
+      this.listener = listener;
+    }
+
+    /**
+     * Adds the securities to the subscription
+     *
+     * @throws stock.exchange.instrument.NoSuchInstrumentException
+     * @throws NoSuchSecurityException
+     */
+    public synchronized void add(Collection<String> symbols) {
+      int[] ids = securityIds;
+      for (String symbol : symbols) {
+        SecurityRecord security = security(symbol);
+        if (slotsById.get(security.id()) == null) {
+          createSlot(security);
+        }
+        int id = security.id();
+        if (Arrays.binarySearch(ids, id) < 0) {
+          ids = Arrays.copyOf(ids, ids.length + 1);
+          ids[ids.length - 1] = id;
+          Arrays.sort(ids);
+        }
+      }
+      securityIds = ids;
+    }
+
+    /**
+     * Removes the securities from the subscription, the updates not delivered
+     * yet are dropped
+     */
+    public synchronized void remove(Collection<String> symbols) {
+      int[] ids = securityIds;
+      for (String symbol : symbols) {
+        int id = security(symbol).id();
+        int i = Arrays.binarySearch(ids, id);
+        if (i >= 0) {
+          int[] newIds = new int[ids.length - 1];
+          System.arraycopy(ids, 0, newIds, 0, i);
+          System.arraycopy(ids, i + 1, newIds, i, newIds.length - i);
+          ids = newIds;
+          pending.remove(id);
+        }
+      }
+      securityIds = ids;
+    }
+
+    /**
+     * @return <code>true</code> if the subscription is closed by its owner, by
+     *         the failure of its listener or by the publisher
+     */
+    public boolean isClosed() {
+      return closed;
+    }
+
+    /**
+     * @return <code>true</code> if no securities are subscribed
+     */
+    public boolean isEmpty() {
+      return securityIds.length == 0;
+    }
+
+    private boolean contains(int securityId) {
+      return Arrays.binarySearch(securityIds, securityId) >= 0;
+    }
+
+    /**
+     * Replaces the update of the security not delivered yet, if any
+     */
+    private void offer(int securityId, MarketDataUpdate update) {
+      pending.put(securityId, update);
+      schedule();
+    }
+
+    /**
+     * Schedules the delivery unless it is scheduled already, so the updates of
+     * the subscription are delivered by one thread at a time
+     */
+    private void schedule() {
+      if (closed || !delivering.compareAndSet(false, true)) {
+        return;
+      }
+      try {
+        deliveries.execute(this::deliver);
+      } catch (RejectedExecutionException e) {
+        // the publisher is closed
+        delivering.set(false);
+      }
+    }
+
+    private void deliver() {
+      for (Integer id : pending.keySet()) {
+        MarketDataUpdate update = pending.remove(id);
+        if (update == null || closed) {
+          continue;
+        }
+        try {
+          listener.accept(update);
+        } catch (RuntimeException e) {
+          logger.debug("Subscription closed by the listener failure", e);
+          close();
+        }
+      }
+      delivering.set(false);
+      // the update offered after the drain and before the flag got cleared
+      if (!pending.isEmpty()) {
+        schedule();
+      }
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+      subscriptions.remove(this);
+      pending.clear();
+    }
+  }
+}
@@ -0,0 +1,30 @@
+package stock.exchange.publisher;
+
+import stock.exchange.book.MarketDepth;
+import stock.exchange.domain.SecurityRecord;
+
+/**
+ * The latest market state of the security as of the publication, the prices
+ * in ticks of the security. The intermediate trades since the previous
+ * publication are conflated into it, only their number and volume are kept
+ *
+ * @param lastPrice    the price of the latest trade, or
+ *                     {@link stock.exchange.domain.Prices#NO_PRICE} if there
+ *                     were no trades since the publisher started
+ * @param lastQuantity the quantity of the latest trade
+ * @param volume       the total quantity traded since the publisher started
+ * @param trades       the number of the trades since the publisher started
+ * @param bestBid      the best bid level or <code>null</code> if there are no
+ *                     bids or no quotes are published
+ * @param bestAsk      the best ask level or <code>null</code> if there are no
+ *                     asks or no quotes are published
+ */
+public record MarketDataUpdate(
+    SecurityRecord security,
+    long lastPrice,
+    int lastQuantity,
+    long volume,
+    long trades,
+    MarketDepth.Level bestBid,
+    MarketDepth.Level bestAsk) {
+}
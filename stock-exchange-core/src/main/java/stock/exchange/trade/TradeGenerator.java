@@ -2,6 +2,7 @@ package stock.exchange.trade;
 
 import stock.exchange.domain.OrderMatchRecord;
 import stock.exchange.domain.OrderRecord;
+import stock.exchange.domain.Prices;
 import stock.exchange.domain.SecurityRecord;
 import stock.exchange.integration.Downstream;
 
@@ -13,10 +14,28 @@ public interface TradeGenerator extends Downstream<OrderMatchRecord> {
   /**
    * Calling the method leads to validation and execution of the trade
    * 
+   * All the prices are in ticks of the security
+   * 
    * @throws TradeValidationException
    */
   void generateTrade(
-      double marketPrice,
+      long marketPrice,
+      SecurityRecord instrument,
+      OrderRecord buyerOrder,
+      OrderRecord sellerOrder,
+      int quantity);
+
+  /**
+   * Calling the method leads to validation and execution of the trade of the
+   * call auction uncross, at the auction price regardless of the time priority
+   * of the orders
+   * 
+   * All the prices are in ticks of the security
+   * 
+   * @throws TradeValidationException
+   */
+  void generateUncrossTrade(
+      long uncrossPrice,
       SecurityRecord instrument,
       OrderRecord buyerOrder,
       OrderRecord sellerOrder,
@@ -24,6 +43,15 @@ public interface TradeGenerator extends Downstream<OrderMatchRecord> {
 
   @Override
   default void accept(OrderMatchRecord t) {
+    if (t.uncrossPrice() != Prices.NO_PRICE) {
+      generateUncrossTrade(
+          t.uncrossPrice(),
+          t.security(),
+          t.buyerOrder(),
+          t.sellerOrder(),
+          t.quantity());
+      return;
+    }
     generateTrade(
         t.marketPrice(),
         t.security(),
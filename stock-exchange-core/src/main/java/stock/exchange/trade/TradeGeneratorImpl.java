@@ -1,15 +1,18 @@
 package stock.exchange.trade;
 
-import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import stock.exchange.domain.OrderRecord;
+import stock.exchange.domain.Prices;
 import stock.exchange.domain.SecurityRecord;
 import stock.exchange.domain.TradeRecord;
 import stock.exchange.integration.Downstream;
 import stock.exchange.integration.RejectedDownstream;
+import stock.exchange.jfr.TradeEvent;
+import stock.exchange.latency.LatencyTrace;
 
 public class TradeGeneratorImpl implements TradeGenerator {
   private final Logger logger = LoggerFactory.getLogger(getClass());
@@ -24,25 +27,74 @@ public class TradeGeneratorImpl implements TradeGenerator {
     this.tradeDownstreamRejected = tradeDownstreamRejected;
   }
 
-  private record Trade(
-      long id,
-      SecurityRecord security,
-      OrderRecord buyingOrder,
-      OrderRecord sellingOrder,
-      double price,
-      int quantity) implements TradeRecord {
+  /**
+   * Mutable trade event. The generator is shared by the order books running in
+   * different threads, so a single instance per thread is reused for every
+   * trade and downstreams should not keep the reference after the
+   * <code>accept</code> call returns.
+   */
+  private static final class Trade implements TradeRecord {
+
+    private long id;
+    private SecurityRecord security;
+    private OrderRecord buyingOrder;
+    private OrderRecord sellingOrder;
+    private long price;
+    private int quantity;
+
+    @Override
+    public long id() {
+      return id;
+    }
+
+    @Override
+    public SecurityRecord security() {
+      return security;
+    }
+
+    @Override
+    public OrderRecord buyingOrder() {
+      return buyingOrder;
+    }
+
+    @Override
+    public OrderRecord sellingOrder() {
+      return sellingOrder;
+    }
+
+    @Override
+    public long price() {
+      return price;
+    }
+
+    @Override
+    public int quantity() {
+      return quantity;
+    }
+
+    @Override
+    public String toString() {
+      return "Trade[id=" + id
+          + ", security=" + security
+          + ", buyingOrder=" + buyingOrder
+          + ", sellingOrder=" + sellingOrder
+          + ", price=" + Prices.toString(price, security.scale())
+          + ", quantity=" + quantity + "]";
+    }
   }
 
+  private final ThreadLocal<Trade> trades = ThreadLocal.withInitial(Trade::new);
+
   @Override
   public void generateTrade(
-      double marketPrice,
+      long marketPrice,
       SecurityRecord security,
       OrderRecord buyerOrder,
       OrderRecord sellerOrder,
       int quantity) {
 
-    double buyerPrice = Double.isNaN(buyerOrder.price()) ? marketPrice : buyerOrder.price();
-    double sellerPrice = Double.isNaN(sellerOrder.price()) ? marketPrice : sellerOrder.price();
+    long buyerPrice = buyerOrder.price() == Prices.NO_PRICE ? marketPrice : buyerOrder.price();
+    long sellerPrice = sellerOrder.price() == Prices.NO_PRICE ? marketPrice : sellerOrder.price();
 
     if (buyerPrice <= 0) {
       throw new TradeInvalidPriceException(buyerPrice);
@@ -56,15 +108,9 @@ public class TradeGeneratorImpl implements TradeGenerator {
       throw new TradePriceMistmachValidationException(buyerPrice, sellerPrice);
     }
 
-    if (quantity > buyerOrder.quantity()) {
-      throw new TradeAndOrderQuantityMismatchException(quantity, "greater", buyerOrder.quantity());
-    }
+    validateQuantity(buyerOrder, sellerOrder, quantity);
 
-    if (quantity > sellerOrder.quantity()) {
-      throw new TradeAndOrderQuantityMismatchException(quantity, "greater", sellerOrder.quantity());
-    }
-
-    final double tradePrice;
+    final long tradePrice;
     if (buyerPrice == sellerPrice) {
       tradePrice = buyerPrice;
     } else if (sellerOrder.timestamp().isAfter(buyerOrder.timestamp())) {
@@ -75,16 +121,66 @@ public class TradeGeneratorImpl implements TradeGenerator {
       tradePrice = buyerPrice;
     }
 
-    long tradeId = Math.abs(UUID.randomUUID().getMostSignificantBits());
+    execute(security, buyerOrder, sellerOrder, tradePrice, quantity);
+  }
+
+  @Override
+  public void generateUncrossTrade(
+      long uncrossPrice,
+      SecurityRecord security,
+      OrderRecord buyerOrder,
+      OrderRecord sellerOrder,
+      int quantity) {
+
+    if (uncrossPrice <= 0) {
+      throw new TradeInvalidPriceException(uncrossPrice);
+    }
+
+    // market orders are executable at any auction price
+    if (buyerOrder.price() != Prices.NO_PRICE && buyerOrder.price() < uncrossPrice) {
+      throw new TradePriceMistmachValidationException(buyerOrder.price(), uncrossPrice);
+    }
+
+    if (sellerOrder.price() != Prices.NO_PRICE && sellerOrder.price() > uncrossPrice) {
+      throw new TradePriceMistmachValidationException(uncrossPrice, sellerOrder.price());
+    }
+
+    validateQuantity(buyerOrder, sellerOrder, quantity);
+
+    execute(security, buyerOrder, sellerOrder, uncrossPrice, quantity);
+  }
 
-    var trade = new Trade(
-        tradeId,
-        security,
-        buyerOrder,
-        sellerOrder,
-        tradePrice,
-        quantity);
+  private static void validateQuantity(OrderRecord buyerOrder, OrderRecord sellerOrder, int quantity) {
+    if (quantity > buyerOrder.quantity()) {
+      throw new TradeAndOrderQuantityMismatchException(quantity, "greater", buyerOrder.quantity());
+    }
 
+    if (quantity > sellerOrder.quantity()) {
+      throw new TradeAndOrderQuantityMismatchException(quantity, "greater", sellerOrder.quantity());
+    }
+  }
+
+  private void execute(
+      SecurityRecord security,
+      OrderRecord buyerOrder,
+      OrderRecord sellerOrder,
+      long tradePrice,
+      int quantity) {
+
+    var trade = trades.get();
+    trade.id = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+    trade.security = security;
+    trade.buyingOrder = buyerOrder;
+    trade.sellingOrder = sellerOrder;
+    trade.price = tradePrice;
+    trade.quantity = quantity;
+
+    LatencyTrace trace = LatencyTrace.current();
+    if (trace != null) {
+      trace.traded();
+    }
+
+    TradeEvent event = TradeEvent.beginIfEnabled();
     try {
       tradeDownstream.accept(trade);
     } catch (RuntimeException e) {
@@ -94,6 +190,16 @@ public class TradeGeneratorImpl implements TradeGenerator {
         logger.error("Rejected downstream exception", e1);
         logger.error("Downstream exception", e);
       }
+    } finally {
+      if (event != null) {
+        event.tradeId = trade.id;
+        event.symbol = security.symbol();
+        event.buyerOrderId = buyerOrder.id();
+        event.sellerOrderId = sellerOrder.id();
+        event.quantity = quantity;
+        event.price = tradePrice;
+        event.commit();
+      }
     }
   }
 }
@@ -3,7 +3,7 @@ package stock.exchange.trade;
 @SuppressWarnings("serial")
 public class TradeInvalidPriceException extends TradeValidationException {
 
-  public TradeInvalidPriceException(double price) {
+  public TradeInvalidPriceException(long price) {
     super(String.valueOf(price));
   }
 }
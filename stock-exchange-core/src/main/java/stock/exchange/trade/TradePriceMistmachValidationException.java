@@ -6,7 +6,7 @@ public class TradePriceMistmachValidationException extends TradeValidationExcept
   public TradePriceMistmachValidationException() {
   }
 
-  public TradePriceMistmachValidationException(double buyPrice, double sellPrice) {
+  public TradePriceMistmachValidationException(long buyPrice, long sellPrice) {
     super("buy price " + String.valueOf(buyPrice) + " is higher than sell price " + String.valueOf(sellPrice));
   }
 }
@@ -0,0 +1,67 @@
+package util.concurrent;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Access to the virtual threads of JDK 21+ while the code is compiled for JDK
+ * 17. The executor is looked up once, so the absence of virtual threads is
+ * reported by {@link #isSupported()} instead of the linkage error
+ */
+public final class VirtualThreads {
+
+  private static final MethodHandle NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = lookupExecutorFactory();
+
+  private VirtualThreads() {
+  }
+
+  private static MethodHandle lookupExecutorFactory() {
+    try {
+      return MethodHandles.publicLookup().findStatic(
+          Executors.class,
+          "newVirtualThreadPerTaskExecutor",
+          MethodType.methodType(ExecutorService.class));
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      return null;
+    }
+  }
+
+  /**
+   * @return <code>true</code> if the running JDK provides virtual threads
+   */
+  public static boolean isSupported() {
+    return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+  }
+
+  /**
+   * Creates the executor starting a new virtual thread for each task
+   * 
+   * @throws UnsupportedOperationException if the running JDK does not provide
+   *                                       virtual threads
+   */
+  public static ExecutorService newVirtualThreadPerTaskExecutor() {
+    if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR == null) {
+      throw new UnsupportedOperationException("Virtual threads require JDK 21 or later");
+    }
+    try {
+      return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invokeExact();
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Creates the executor running each task in its own thread, either virtual or
+   * a platform one from the cached pool
+   */
+  public static ExecutorService newThreadPerTaskExecutor(boolean virtual) {
+    return virtual
+        ? newVirtualThreadPerTaskExecutor()
+        : Executors.newCachedThreadPool();
+  }
+}
@@ -0,0 +1,49 @@
+package util.metrics;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * The counter written by a single thread at a time and read by any thread.
+ *
+ * The update is a plain read and an opaque write with no atomic
+ * read-modify-write operation, so it costs the writer no more than a field
+ * increment and never contends with the readers. Unlike
+ * {@link java.util.concurrent.atomic.LongAdder} it does not need the striping
+ * as there is a single writer. The readers see every value written eventually,
+ * never a torn one.
+ *
+ * The updates must be serialized, e.g. made by the thread owning the counter
+ * or under a lock.
+ */
+public final class Counter {
+
+  private static final VarHandle VALUE;
+
+  static {
+    try {
+      VALUE = MethodHandles.lookup().findVarHandle(Counter.class, "value", long.class);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  @SuppressWarnings("unused") // accessed through VALUE
+  private long value;
+
+  public void increment() {
+    add(1L);
+  }
+
+  public void add(long delta) {
+    VALUE.setOpaque(this, (long) VALUE.getOpaque(this) + delta);
+  }
+
+  public void set(long value) {
+    VALUE.setOpaque(this, value);
+  }
+
+  public long get() {
+    return (long) VALUE.getOpaque(this);
+  }
+}
@@ -0,0 +1,158 @@
+package util.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of the latencies in nanoseconds with the log-linear
+ * buckets, in the manner of the HDR histogram: the values below 64 are counted
+ * exactly, and every power of two above is split into 32 equal buckets, so a
+ * value is reported with the relative error below 1/32 (3%). The values above
+ * 2^40 ns (about 18 minutes) are counted as this maximum.
+ *
+ * Any number of threads record the values concurrently without a lock and
+ * without allocation, a record costs one atomic increment. A snapshot taken
+ * while the values are recorded may miss some of them.
+ */
+public final class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int MAX_VALUE_BITS = 40;
+
+  /**
+   * The maximal value distinguished by the histogram
+   */
+  public static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+
+  private static final int BUCKETS = index(MAX_VALUE) + 1;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * Counts the value, the negative values are counted as 0
+   */
+  public void record(long nanos) {
+    long value = Math.min(Math.max(nanos, 0L), MAX_VALUE);
+    counts.getAndIncrement(index(value));
+    long m = max.get();
+    while (value > m && !max.compareAndSet(m, value)) {
+      m = max.get();
+    }
+  }
+
+  /**
+   * Forgets all the values recorded
+   */
+  public void reset() {
+    for (int i = 0; i < BUCKETS; i++) {
+      counts.set(i, 0L);
+    }
+    max.set(0L);
+  }
+
+  public Snapshot snapshot() {
+    long[] copy = new long[BUCKETS];
+    long total = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      copy[i] = counts.get(i);
+      total += copy[i];
+    }
+    return new Snapshot(copy, total, max.get());
+  }
+
+  static int index(long value) {
+    int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+    return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+  }
+
+  /**
+   * @return the highest value counted in the bucket
+   */
+  static long highestValue(int index) {
+    int shift = Math.max(0, (index >>> SUB_BUCKET_BITS) - 1);
+    return ((long) (index - (shift << SUB_BUCKET_BITS) + 1) << shift) - 1;
+  }
+
+  /**
+   * The immutable copy of the histogram
+   */
+  public static final class Snapshot {
+
+    private final long[] counts;
+    private final long count;
+    private final long max;
+
+    private Snapshot(long[] counts, long count, long max) {
+      this.counts = counts;
+      this.count = count;
+      this.max = max;
+    }
+
+    /**
+     * @return the number of the values recorded
+     */
+    public long count() {
+      return count;
+    }
+
+    /**
+     * @return the maximal value recorded, 0 if there are no values
+     */
+    public long max() {
+      return max;
+    }
+
+    /**
+     * @return the mean of the values up to the precision of the buckets, 0 if
+     *         there are no values
+     */
+    public double mean() {
+      if (count == 0) {
+        return 0d;
+      }
+      double sum = 0d;
+      for (int i = 0; i < counts.length; i++) {
+        if (counts[i] != 0) {
+          sum += (double) counts[i] * Math.min(highestValue(i), max);
+        }
+      }
+      return sum / count;
+    }
+
+    /**
+     * @param percentile from 0 to 100
+     * @return the value the given percentage of the values are less or equal
+     *         to, up to the precision of the buckets, 0 if there are no values
+     */
+    public long percentile(double percentile) {
+      if (percentile < 0d || percentile > 100d) {
+        throw new IllegalArgumentException("percentile");
+      }
+      if (count == 0) {
+        return 0L;
+      }
+      long rank = Math.max(1L, (long) Math.ceil(percentile / 100d * count));
+      long seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= rank) {
+          return Math.min(highestValue(i), max);
+        }
+      }
+      return max;
+    }
+
+    @Override
+    public String toString() {
+      return "count=" + count
+          + ", mean=" + Math.round(mean())
+          + ", p50=" + percentile(50d)
+          + ", p90=" + percentile(90d)
+          + ", p99=" + percentile(99d)
+          + ", p99.9=" + percentile(99.9d)
+          + ", max=" + max;
+    }
+  }
+}
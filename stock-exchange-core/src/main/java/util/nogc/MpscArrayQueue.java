@@ -0,0 +1,122 @@
+package util.nogc;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Objects;
+
+/**
+ * Bounded lock-free multi-producer single-consumer queue backed by a ring
+ * array.
+ *
+ * Producers claim a slot by a CAS on the tail counter and publish the element
+ * into the slot afterwards. The consumer takes elements without any atomic
+ * read-modify-write operation, and frees the slot by advancing the head
+ * counter. Neither side allocates.
+ *
+ * An element whose slot is claimed but not yet published is not visible to the
+ * consumer, so {@link #poll()} may return <code>null</code> for a moment while
+ * a concurrent {@link #offer(Object)} is in progress.
+ *
+ * The methods {@link #poll()} and {@link #isEmpty()} must be called by a single
+ * consumer thread at a time.
+ */
+public class MpscArrayQueue<E> {
+
+  private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(Object[].class);
+  private static final VarHandle TAIL;
+  private static final VarHandle HEAD;
+
+  static {
+    try {
+      MethodHandles.Lookup lookup = MethodHandles.lookup();
+      TAIL = lookup.findVarHandle(MpscArrayQueue.class, "tail", long.class);
+      HEAD = lookup.findVarHandle(MpscArrayQueue.class, "head", long.class);
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private final Object[] slots;
+  private final int mask;
+
+  @SuppressWarnings("unused") // accessed through TAIL
+  private volatile long tail;
+  @SuppressWarnings("unused") // accessed through HEAD
+  private volatile long head;
+
+  /**
+   * @param capacity the maximal number of elements in the queue, rounded up to
+   *                 the next power of two
+   */
+  public MpscArrayQueue(int capacity) {
+    if (capacity <= 0 || capacity > (1 << 30)) {
+      throw new IllegalArgumentException("capacity");
+    }
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) {
+      size = size << 1;
+    }
+    this.slots = new Object[size];
+    this.mask = size - 1;
+  }
+
+  public int capacity() {
+    return slots.length;
+  }
+
+  /**
+   * Adds the element to the tail of the queue, can be called by any thread
+   *
+   * @return <code>false</code> if the queue is full
+   */
+  public boolean offer(E e) {
+    Objects.requireNonNull(e);
+    long t;
+    do {
+      t = (long) TAIL.getVolatile(this);
+      if (t - (long) HEAD.getAcquire(this) >= slots.length) {
+        return false;
+      }
+    } while (!TAIL.compareAndSet(this, t, t + 1));
+    SLOTS.setRelease(slots, (int) (t & mask), e);
+    return true;
+  }
+
+  /**
+   * Takes the element from the head of the queue, must be called by the
+   * consumer thread only
+   *
+   * @return the element or <code>null</code> if there is no published element
+   */
+  @SuppressWarnings("unchecked")
+  public E poll() {
+    long h = (long) HEAD.getOpaque(this);
+    int i = (int) (h & mask);
+    E e = (E) SLOTS.getAcquire(slots, i);
+    if (e == null) {
+      return null;
+    }
+    SLOTS.setOpaque(slots, i, null);
+    HEAD.setRelease(this, h + 1);
+    return e;
+  }
+
+  /**
+   * Can be called by any thread. The size is approximate as it counts the
+   * elements claimed but not published yet and may be stale by the time it is
+   * returned
+   */
+  public int size() {
+    long h = (long) HEAD.getAcquire(this);
+    long t = (long) TAIL.getAcquire(this);
+    return (int) Math.max(0L, Math.min(t - h, slots.length));
+  }
+
+  /**
+   * Must be called by the consumer thread only
+   */
+  public boolean isEmpty() {
+    long h = (long) HEAD.getOpaque(this);
+    return SLOTS.getAcquire(slots, (int) (h & mask)) == null;
+  }
+}
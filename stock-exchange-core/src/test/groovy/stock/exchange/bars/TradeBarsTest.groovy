@@ -0,0 +1,164 @@
+package stock.exchange.bars
+
+import java.time.Duration
+import java.time.Instant
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+
+import spock.lang.Specification
+import spock.lang.Subject
+import spock.lang.Timeout
+
+class TradeBarsTest extends Specification {
+
+  static final Duration SECOND = Duration.ofSeconds(1)
+  static final Duration MINUTE = Duration.ofMinutes(1)
+
+  @Subject
+  def subject = new TradeBars([SECOND, MINUTE], 3)
+
+  def 'the trades are aggregated into the bars of every interval'() {
+    when:
+    subject.accept(60_000L, 1000L, 10)
+    subject.accept(60_500L, 1010L, 20)
+    subject.accept(60_900L, 990L, 10)
+    subject.accept(61_000L, 1005L, 5)
+
+    then:
+    subject.last(SECOND, 10) == [
+      new Bar(Instant.ofEpochMilli(60_000L), 1000L, 1010L, 990L, 990L, 40L, 40_100L),
+      new Bar(Instant.ofEpochMilli(61_000L), 1005L, 1005L, 1005L, 1005L, 5L, 5025L)]
+    subject.last(MINUTE, 10) == [
+      new Bar(Instant.ofEpochMilli(60_000L), 1000L, 1010L, 990L, 1005L, 45L, 45_125L)]
+
+    and:
+    subject.last(MINUTE, 1)[0].vwap() == 45_125d / 45
+    subject.last(SECOND, 1)*.start() == [Instant.ofEpochMilli(61_000L)]
+    subject.last(SECOND, 0) == []
+  }
+
+  def 'the oldest bars are overwritten when the ring is full'() {
+    when:
+    for (int i = 0; i < 5; i++) {
+      subject.accept(i * 1000L + 1, 1000L + i, 1)
+    }
+
+    then:
+    subject.last(SECOND, 10)*.open() == [1002L, 1003L, 1004L]
+    subject.last(SECOND, 2)*.open() == [1003L, 1004L]
+  }
+
+  def 'the trade older than the latest bar is accounted to it'() {
+    when:
+    subject.accept(2_000L, 1000L, 1)
+    subject.accept(1_000L, 1001L, 1)
+
+    then:
+    subject.last(SECOND, 10) == [
+      new Bar(Instant.ofEpochMilli(2_000L), 1000L, 1001L, 1000L, 1001L, 2L, 2001L)]
+  }
+
+  def 'the turnover overflowing long is not summed wrong'() {
+    given:
+    long price = Long.MAX_VALUE.intdiv(10)
+
+    when: 'the turnover fits'
+    subject.accept(1_000L, price, 9)
+
+    then:
+    subject.last(SECOND, 1)[0].turnover() == price * 9
+
+    when: 'the sum overflows'
+    subject.accept(1_100L, price, 1)
+    subject.accept(1_200L, price, 1)
+
+    then:
+    subject.last(SECOND, 1)[0].turnover() == Bar.NO_TURNOVER
+    subject.last(SECOND, 1)[0].vwap().isNaN()
+    subject.last(SECOND, 1)[0].volume() == 11L
+
+    when: 'the product of the trade overflows'
+    subject.accept(2_000L, price, 11)
+
+    then:
+    subject.last(SECOND, 1)[0].turnover() == Bar.NO_TURNOVER
+
+    when: 'the next bar starts clean'
+    subject.accept(3_000L, 1000L, 2)
+
+    then:
+    subject.last(SECOND, 1)[0].turnover() == 2000L
+  }
+
+  def 'the bars are read only at the intervals aggregated'() {
+    when:
+    subject.last(Duration.ofMinutes(5), 1)
+
+    then:
+    thrown(NoSuchBarIntervalException)
+
+    expect:
+    subject.intervals() == [SECOND, MINUTE]
+  }
+
+  def 'the intervals are parsed and formatted: #text'() {
+    expect:
+    TradeBars.parseInterval(text) == interval
+    TradeBars.toString(interval) == text
+
+    where:
+    text  | interval
+    '1s'  | SECOND
+    '90s' | Duration.ofSeconds(90)
+    '5m'  | Duration.ofMinutes(5)
+    '1h'  | Duration.ofHours(1)
+  }
+
+  def 'the invalid interval is rejected: #text'() {
+    when:
+    TradeBars.parseInterval(text)
+
+    then:
+    thrown(IllegalArgumentException)
+
+    where:
+    text << ['', 's', '0s', '-1m', '1x', 'xm']
+  }
+
+  @Timeout(30)
+  def 'readers never see the bar of a trade updated partially'() {
+    given:
+    def stop = new AtomicBoolean()
+    def executor = Executors.newSingleThreadExecutor()
+    def writer = executor.submit {
+      long time = 0L
+      while (!stop.get()) {
+        // every bar has the same open, high, low and close
+        subject.accept(time, time, 1)
+        time += 1000L
+      }
+    }
+
+    when:
+    def mixed = 0
+    for (int i = 0; i < 100_000; i++) {
+      for (bar in subject.last(SECOND, 3)) {
+        if ([bar.open(), bar.high(), bar.low(), bar.close(), bar.start().toEpochMilli()].unique(false).size() > 1
+            || bar.volume() != 1L) {
+          mixed++
+        }
+      }
+    }
+    stop.set(true)
+    writer.get()
+
+    then:
+    mixed == 0
+
+    cleanup:
+    stop.set(true)
+    executor.shutdownNow()
+    executor.awaitTermination(5, TimeUnit.SECONDS)
+  }
+}
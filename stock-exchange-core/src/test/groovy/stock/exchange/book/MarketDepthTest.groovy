@@ -0,0 +1,99 @@
+package stock.exchange.book
+
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+
+import spock.lang.Specification
+import spock.lang.Subject
+import spock.lang.Timeout
+import stock.exchange.matcher.StockMatcher
+
+class MarketDepthTest extends Specification {
+
+  @Subject
+  def subject = new MarketDepth(3)
+
+  def 'the snapshot holds the best levels of both sides up to the number requested and published'() {
+    given:
+    def stockMatcher = Stub(StockMatcher) {
+      copyBidLevels(_, _, _) >> { long[] prices, long[] volumes, int[] ordersCounts ->
+        levels(prices, volumes, ordersCounts, [1000L, 999L, 998L])
+      }
+      copyAskLevels(_, _, _) >> { long[] prices, long[] volumes, int[] ordersCounts ->
+        levels(prices, volumes, ordersCounts, [1001L])
+      }
+    }
+
+    when:
+    subject.publish(stockMatcher)
+
+    then:
+    subject.bestBid() == new MarketDepth.Level(1000L, 10L, 1)
+    subject.bestAsk() == new MarketDepth.Level(1001L, 10L, 1)
+
+    and:
+    subject.snapshot(2).bids()*.price() == [1000L, 999L]
+    subject.snapshot(2).asks()*.price() == [1001L]
+    subject.snapshot(10).bids().size() == 3
+    subject.snapshot(0).isEmpty()
+
+    when:
+    subject.snapshot(-1)
+
+    then:
+    thrown(IllegalArgumentException)
+  }
+
+  @Timeout(30)
+  def 'readers never see the levels of two different publications mixed up'() {
+    given:
+    def version = 0L
+    def stockMatcher = Stub(StockMatcher) {
+      copyBidLevels(_, _, _) >> { long[] prices, long[] volumes, int[] ordersCounts ->
+        levels(prices, volumes, ordersCounts, [version, version, version])
+      }
+      copyAskLevels(_, _, _) >> { long[] prices, long[] volumes, int[] ordersCounts ->
+        levels(prices, volumes, ordersCounts, [version, version, version])
+      }
+    }
+    def stop = new AtomicBoolean()
+    def executor = Executors.newSingleThreadExecutor()
+    def publisher = executor.submit {
+      while (!stop.get()) {
+        version++
+        subject.publish(stockMatcher)
+      }
+    }
+
+    when:
+    def mixed = 0
+    for (int i = 0; i < 100_000; i++) {
+      def snapshot = subject.snapshot(3)
+      def prices = (snapshot.bids() + snapshot.asks())*.price()
+      if (prices.unique(false).size() > 1) {
+        mixed++
+      }
+    }
+    stop.set(true)
+    publisher.get()
+
+    then:
+    mixed == 0
+
+    cleanup:
+    stop.set(true)
+    executor.shutdownNow()
+    executor.awaitTermination(5, TimeUnit.SECONDS)
+  }
+
+  private static int levels(long[] prices, long[] volumes, int[] ordersCounts, List<Long> levelPrices) {
+    int n = Math.min(prices.length, levelPrices.size())
+    for (int i = 0; i < n; i++) {
+      prices[i] = levelPrices[i]
+      volumes[i] = 10L
+      ordersCounts[i] = 1
+    }
+    n
+  }
+}
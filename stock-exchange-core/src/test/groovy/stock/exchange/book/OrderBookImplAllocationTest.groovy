@@ -0,0 +1,68 @@
+package stock.exchange.book
+
+import java.lang.management.ManagementFactory
+
+import groovy.transform.CompileStatic
+import spock.lang.Specification
+import stock.exchange.domain.TraderRecord
+import stock.exchange.instrument.MarketDataWorld
+import stock.exchange.integration.FanOutDownstream
+import stock.exchange.integration.FanOutRejectedDownstream
+import stock.exchange.matcher.ArrayStockMatcher
+import stock.exchange.matcher.PriceLadderStockMatcher
+import stock.exchange.matcher.StockMatcherImpl
+import stock.exchange.trade.TradeGeneratorImpl
+
+class OrderBookImplAllocationTest extends Specification {
+
+  static final int WARMUP_ROUNDS = 20_000
+  static final int MEASURED_ROUNDS = 20_000
+
+  def trader1 = Stub(TraderRecord)
+  def trader2 = Stub(TraderRecord)
+
+  def 'steady-state tick does not allocate per order and per match with #matcherName'() {
+    given:
+    def world = new MarketDataWorld()
+    def security = world.createSecurity(1, 'SEC', 2, 1000L)
+    def subject = new OrderBookImpl(
+        stockMatcher,
+        security,
+        new TradeGeneratorImpl(new FanOutDownstream(world), new FanOutRejectedDownstream()),
+        new FanOutRejectedDownstream(),
+        new FanOutDownstream(),
+        new FanOutRejectedDownstream())
+
+    when:
+    def allocated = 0L
+    for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++) {
+      subject.addBid(trader1, 10, 1000L + round % 7)
+      subject.addSell(trader2, 5)
+      subject.addAsk(trader2, 5, 1000L)
+      def bytes = allocatedBytesOnTick(subject) // 3 orders added, 2 matches, 3 orders filled
+      if (round >= WARMUP_ROUNDS) {
+        allocated += bytes
+      }
+    }
+
+    then: 'JIT may allocate a few bytes once, but nothing that grows with the number of orders and matches'
+    allocated < MEASURED_ROUNDS
+
+    and:
+    !subject.activeOrders.iterator().hasNext()
+
+    where:
+    stockMatcher                  | matcherName
+    new StockMatcherImpl()        | 'heap matcher'
+    new PriceLadderStockMatcher() | 'price ladder matcher'
+    new ArrayStockMatcher()       | 'array matcher'
+  }
+
+  @CompileStatic
+  private static long allocatedBytesOnTick(OrderBook book) {
+    def threads = (com.sun.management.ThreadMXBean) ManagementFactory.threadMXBean
+    long before = threads.currentThreadAllocatedBytes
+    book.tick()
+    return threads.currentThreadAllocatedBytes - before
+  }
+}
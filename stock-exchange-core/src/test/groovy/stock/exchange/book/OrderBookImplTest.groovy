@@ -8,17 +8,19 @@ import spock.lang.Shared
 import spock.lang.Specification
 import spock.lang.Timeout
 import spock.lang.Unroll
-import stock.exchange.domain.DoubleReference
+import stock.exchange.domain.LongReference
 import stock.exchange.domain.OrderMatchRecord
 import stock.exchange.domain.OrderRecord
 import stock.exchange.domain.OrderType
+import stock.exchange.domain.Prices
 import stock.exchange.domain.SecurityRecord
 import stock.exchange.domain.TraderRecord
 import stock.exchange.integration.Downstream
 import stock.exchange.integration.RejectedDownstream
+import stock.exchange.latency.LatencyTrace
+import stock.exchange.matcher.MatchBuffer
 import stock.exchange.matcher.StockMatcher
-import stock.exchange.matcher.StockMatcher.OrderFulfilledEventListener
-import stock.exchange.matcher.StockMatcher.OrderMatchedEventListener
+import stock.exchange.matcher.StockMatcherImpl
 
 class OrderBookImplTest extends Specification {
 
@@ -33,8 +35,8 @@ class OrderBookImplTest extends Specification {
 
   def stockMatcher = Mock(StockMatcher)
   def security = Stub(SecurityRecord) {
-    marketPrice() >> Stub(DoubleReference) {
-      getAsDouble() >> 666.00d
+    marketPriceTicks() >> Stub(LongReference) {
+      getAsLong() >> 66600L
     }
   }
   def orderMatchDownstream = Mock(Downstream)
@@ -67,10 +69,10 @@ class OrderBookImplTest extends Specification {
 
     where:
     type   | addClosure                       | typeExpected   | priceEpxected
-    'buy'  | { it.addBuy(trader1, 100) }      | OrderType.BUY  | Double.NaN
-    'sell' | { it.addSell(trader1, 100) }     | OrderType.SELL | Double.NaN
-    'bid'  | { it.addBid(trader1, 100, 10d) } | OrderType.BID  | 10d
-    'ask'  | { it.addAsk(trader1, 100, 10d) } | OrderType.ASK  | 10d
+    'buy'  | { it.addBuy(trader1, 100) }      | OrderType.BUY  | Prices.NO_PRICE
+    'sell' | { it.addSell(trader1, 100) }     | OrderType.SELL | Prices.NO_PRICE
+    'bid'  | { it.addBid(trader1, 100, 1000L) } | OrderType.BID  | 1000L
+    'ask'  | { it.addAsk(trader1, 100, 1000L) } | OrderType.ASK  | 1000L
   }
 
   @Unroll
@@ -88,28 +90,79 @@ class OrderBookImplTest extends Specification {
     type   | addClosure                        | cause                 | expectException
     'buy'  | { it.addBuy(trader1, 0) }         | 'zero quantity'       | OrderQuantityValidationException
     'sell' | { it.addSell(trader1, 0) }        | 'zero quantity'       | OrderQuantityValidationException
-    'bid'  | { it.addBid(trader1, 0, 10d) }    | 'zero quantity'       | OrderQuantityValidationException
-    'ask'  | { it.addAsk(trader1, 0, 10d) }    | 'zero quantity'       | OrderQuantityValidationException
+    'bid'  | { it.addBid(trader1, 0, 1000L) }    | 'zero quantity'       | OrderQuantityValidationException
+    'ask'  | { it.addAsk(trader1, 0, 1000L) }    | 'zero quantity'       | OrderQuantityValidationException
     'buy'  | { it.addBuy(trader1, -10) }       | 'below zero quantity' | OrderQuantityValidationException
     'sell' | { it.addSell(trader1, -10) }      | 'below zero quantity' | OrderQuantityValidationException
-    'bid'  | { it.addBid(trader1, -10, 10d) }  | 'below zero quantity' | OrderQuantityValidationException
-    'ask'  | { it.addAsk(trader1, -10, 10d) }  | 'below zero quantity' | OrderQuantityValidationException
-    'bid'  | { it.addBid(trader1, 100, 0d) }   | 'zero price'          | OrderPriceValidationException
-    'ask'  | { it.addAsk(trader1, 100, 0d) }   | 'zero price'          | OrderPriceValidationException
-    'bid'  | { it.addBid(trader1, 100, -10d) } | 'below zero price'    | OrderPriceValidationException
-    'ask'  | { it.addAsk(trader1, 100, -10d) } | 'below zero price'    | OrderPriceValidationException
+    'bid'  | { it.addBid(trader1, -10, 1000L) }  | 'below zero quantity' | OrderQuantityValidationException
+    'ask'  | { it.addAsk(trader1, -10, 1000L) }  | 'below zero quantity' | OrderQuantityValidationException
+    'bid'  | { it.addBid(trader1, 100, 0L) }   | 'zero price'          | OrderPriceValidationException
+    'ask'  | { it.addAsk(trader1, 100, 0L) }   | 'zero price'          | OrderPriceValidationException
+    'bid'  | { it.addBid(trader1, 100, -1000L) } | 'below zero price'    | OrderPriceValidationException
+    'ask'  | { it.addAsk(trader1, 100, -1000L) } | 'below zero price'    | OrderPriceValidationException
     'buy'  | { it.addBuy(null, 100) }          | 'trader is null'      | OrderTraderValidationException
     'sell' | { it.addSell(null, 100) }         | 'trader is null'      | OrderTraderValidationException
-    'bid'  | { it.addBid(null, 100, 10d) }     | 'trader is null'      | OrderTraderValidationException
-    'ask'  | { it.addAsk(null, 100, 10d) }     | 'trader is null'      | OrderTraderValidationException
+    'bid'  | { it.addBid(null, 100, 1000L) }     | 'trader is null'      | OrderTraderValidationException
+    'ask'  | { it.addAsk(null, 100, 1000L) }     | 'trader is null'      | OrderTraderValidationException
+  }
+
+  def 'order placed while the ingress is full is rejected until the tick takes the orders waiting'() {
+    given:
+    def book = new OrderBookImpl(stockMatcher, security, 2,
+        orderMatchDownstream, orderMatchRejectedDownstream, filledOrderDownstream, filledOrderDownstreamRejected)
+    book.addBid(trader1, 100, 1000L)
+    book.addBid(trader1, 100, 1000L)
+
+    when:
+    book.addAsk(trader1, 100, 2000L)
+
+    then:
+    thrown(OrderBookOverloadedException)
+
+    when:
+    book.tick()
+    def order = book.addAsk(trader1, 100, 2000L)
+
+    then:
+    order.price() == 2000L
+    book.getStats().queuedOrders() == 1
+  }
+
+  def 'order arrival listener is notified on every placed order'() {
+    given:
+    def listener = Mock(OrderBook.OrderArrivalListener)
+    subject.setOrderArrivalListener(listener)
+
+    when:
+    subject.addBuy(trader1, 100)
+    subject.addSell(trader1, 200)
+    subject.addBid(trader1, 300, 1000L)
+    subject.addAsk(trader1, 400, 2000L)
+
+    then:
+    4 * listener.onOrderArrival()
+
+    when:
+    subject.addBid(trader1, 0, 1000L)
+
+    then:
+    thrown(OrderQuantityValidationException)
+    0 * listener._
+
+    when:
+    subject.setOrderArrivalListener(null)
+    subject.addBuy(trader1, 100)
+
+    then:
+    0 * listener._
   }
 
   def 'added orders are passed to the underlying trade matcher in the order of submission'() {
     given:
     def order1 = subject.addBuy(trader1, 100)
     def order2 = subject.addSell(trader1, 200)
-    def order3 = subject.addBid(trader1, 300, 10d)
-    def order4 = subject.addAsk(trader1, 400, 20d)
+    def order3 = subject.addBid(trader1, 300, 1000L)
+    def order4 = subject.addAsk(trader1, 400, 2000L)
 
     when:
     subject.tick()
@@ -121,30 +174,74 @@ class OrderBookImplTest extends Specification {
     1 * stockMatcher.addOrderSell(order2.id(), 200)
 
     then:
-    1 * stockMatcher.addOrderBid(order3.id(), 10d, 300)
+    1 * stockMatcher.addOrderBid(order3.id(), 1000L, 300)
 
     then:
-    1 * stockMatcher.addOrderAsk(order4.id(), 20d, 400)
+    1 * stockMatcher.addOrderAsk(order4.id(), 2000L, 400)
 
     then:
-    1 * stockMatcher.match(_, _, _, _)
+    1 * stockMatcher.matchAll(_, _)
 
     when:
     subject.tick()
 
     then:
-    3 * stockMatcher.match(_, _, _, _) >>> [true, true, false]
+    1 * stockMatcher.matchAll(_, _) >> 0
 
     then:
     0 * stockMatcher._
   }
 
+  def 'tick reports whether new orders were taken or matched'() {
+    expect: 'no work'
+    !subject.tick()
+
+    when: 'new orders are taken'
+    def order1 = subject.addBid(trader1, 100, 1000L)
+    def order2 = subject.addAsk(trader2, 100, 1000L)
+
+    then:
+    subject.tick()
+
+    when: 'orders are matched'
+    def worked = subject.tick()
+
+    then:
+    1 * stockMatcher.matchAll(_, _) >> { fills(it[1], [order1, order2, 100, 0, 0]) }
+    worked
+
+    when:
+    worked = subject.tick()
+
+    then:
+    1 * stockMatcher.matchAll(_, _) >> 0
+    !worked
+  }
+
+  def 'order rejected by the underlying trade matcher is not kept in the book and goes to the rejected downstream'() {
+    given:
+    def order1 = subject.addBid(trader1, 100, 1000L)
+    def order2 = subject.addBid(trader1, 200, 2000L)
+
+    when:
+    subject.tick()
+
+    then:
+    1 * stockMatcher.addOrderBid(order1.id(), 1000L, 100) >> { throw new OrderPriceValidationException() }
+    1 * stockMatcher.addOrderBid(order2.id(), 2000L, 200)
+    1 * filledOrderDownstreamRejected.accept(order1, _ as OrderPriceValidationException)
+    subject.getStats().rejections() == 1
+
+    expect:
+    subject.getActiveOrders().collect() == [order2]
+  }
+
   def 'succesful remove order'() {
     given:
     def order1 = subject.addBuy(trader1, 100)
     def order2 = subject.addSell(trader1, 200)
-    def order3 = subject.addBid(trader1, 300, 10d)
-    def order4 = subject.addAsk(trader1, 400, 20d)
+    def order3 = subject.addBid(trader1, 300, 1000L)
+    def order4 = subject.addAsk(trader1, 400, 2000L)
 
     when:
     def removed3 = subject.removeOrder(order3.id())
@@ -171,22 +268,30 @@ class OrderBookImplTest extends Specification {
     subject.getActiveOrders().collect().sort() == [order1, order4].sort()
   }
 
-  def 'removed order is not passed to the underlying trade matcher on next tick'() {
+  def 'order removed before the tick is passed to the underlying trade matcher and removed from it'() {
     given:
     def order1 = subject.addBuy(trader1, 100)
     def order2 = subject.addSell(trader1, 200)
-    def order3 = subject.addBid(trader1, 300, 10d)
-    def order4 = subject.addAsk(trader1, 400, 20d)
-    subject.removeOrder(order3.id())
+    def order3 = subject.addBid(trader1, 300, 1000L)
+    def order4 = subject.addAsk(trader1, 400, 2000L)
 
     when:
-    subject.tick()
+    subject.removeOrder(order3.id())
 
     then:
     1 * stockMatcher.addOrderBuy(order1.id(), _)
     1 * stockMatcher.addOrderSell(order2.id(), _)
+    1 * stockMatcher.addOrderBid(order3.id(), _, _)
     1 * stockMatcher.addOrderAsk(order4.id(), _, _)
-    1 * stockMatcher.match(_, _, _, _)
+
+    then:
+    1 * stockMatcher.removeOrder(order3.id())
+
+    when:
+    subject.tick()
+
+    then:
+    1 * stockMatcher.matchAll(_, _)
     
     then:
     0 * stockMatcher._
@@ -197,15 +302,14 @@ class OrderBookImplTest extends Specification {
 
   def 'order match event is passed to the listener'() {
     given:
-    def order1 = subject.addBuy(trader1, 100)
+    def order1 = subject.addBuy(trader1, 300)
     def order2 = subject.addSell(trader1, 200)
-    def order3 = subject.addBuy(trader1, 100)
-    def order4 = subject.addSell(trader1, 200)
-    stockMatcher.match(_, _, _, _) >> {
-      with (it[1] as OrderMatchedEventListener) {
-        onOrderMatched(order1.id(), order2.id(), 100)
-        onOrderMatched(order3.id(), order4.id(), 200)
-      }
+    def order3 = subject.addBuy(trader1, 300)
+    def order4 = subject.addSell(trader1, 300)
+    stockMatcher.matchAll(_, _) >> {
+      fills(it[1],
+          [order1, order2, 100, 200, 100],
+          [order3, order4, 200, 100, 100])
     }
 
     when:
@@ -214,7 +318,7 @@ class OrderBookImplTest extends Specification {
     then:
     1 * orderMatchDownstream.accept({
       with (it as OrderMatchRecord) {
-        marketPrice() == 666.00d
+        marketPrice() == 66600L
         buyerOrder() == order1
         sellerOrder() == order2
         quantity() == 100
@@ -222,7 +326,7 @@ class OrderBookImplTest extends Specification {
     })
     1 * orderMatchDownstream.accept({
       with (it as OrderMatchRecord) {
-        marketPrice() == 666.00d
+        marketPrice() == 66600L
         buyerOrder() == order3
         sellerOrder() == order4
         quantity() == 200
@@ -236,22 +340,68 @@ class OrderBookImplTest extends Specification {
     0 * filledOrderDownstreamRejected._
   }
 
+  def 'the latency of the order lifecycle stages is traced while the tracing is enabled'() {
+    given:
+    subject.setLatencyTracing(true)
+    def order1 = subject.addBuy(trader1, 300)
+    def order2 = subject.addSell(trader1, 200)
+    stockMatcher.matchAll(_, _) >> { fills(it[1], [order1, order2, 200, 100, 0]) }
+    def traced = null
+
+    when:
+    subject.tick()
+    def stages = subject.getLatencyTrace().stages()
+
+    then:
+    1 * orderMatchDownstream.accept(_) >> {
+      traced = LatencyTrace.current()
+      traced.traded()
+    }
+    stages*.stage() == ['queued', 'matched', 'traded']
+    stages*.latency()*.count() == [2L, 1L, 1L]
+    traced.is(subject.getLatencyTrace())
+    LatencyTrace.current() == null
+
+    when:
+    subject.setLatencyTracing(false)
+
+    then:
+    subject.getLatencyTrace() == null
+  }
+
+  def 'the counters of the book account the orders taken, matched, filled and rejected by the downstreams'() {
+    given:
+    def order1 = subject.addBuy(trader1, 300)
+    def order2 = subject.addSell(trader1, 200)
+    def order3 = subject.addBid(trader1, 300, 66600L)
+
+    expect:
+    subject.getStats() == new OrderBookStats(3, 0, 0L, 0L, 0L, 0L)
+
+    when:
+    subject.tick()
+
+    then:
+    1 * stockMatcher.matchAll(_, _) >> { fills(it[1], [order1, order2, 200, 100, 0]) }
+    1 * orderMatchDownstream.accept(_) >> { throw new RuntimeException() }
+    subject.getStats() == new OrderBookStats(0, 2, 3L, 1L, 1L, 1L)
+  }
+
   def 'order match event event is passed to reject event listener'() {
     given:
-    def order1 = subject.addBuy(trader1, 100)
+    def order1 = subject.addBuy(trader1, 300)
     def order2 = subject.addSell(trader1, 200)
-    def order3 = subject.addBuy(trader1, 100)
-    def order4 = subject.addSell(trader1, 200)
+    def order3 = subject.addBuy(trader1, 300)
+    def order4 = subject.addSell(trader1, 300)
 
     def e1 = new RuntimeException('e1')
     def e2 = new RuntimeException('e2')
     def e3 = new RuntimeException('e3')
 
-    stockMatcher.match(_, _, _, _) >> {
-      with (it[1] as OrderMatchedEventListener) {
-        onOrderMatched(order1.id(), order2.id(), 100)
-        onOrderMatched(order3.id(), order4.id(), 200)
-      }
+    stockMatcher.matchAll(_, _) >> {
+      fills(it[1],
+          [order1, order2, 100, 200, 100],
+          [order3, order4, 200, 100, 100])
     }
 
     when:
@@ -279,29 +429,32 @@ class OrderBookImplTest extends Specification {
     def order3 = subject.addBuy(trader1, 100)
     def order4 = subject.addSell(trader1, 200)
 
-    stockMatcher.match(_, _, _, _) >> {
-      with (it[3] as OrderFulfilledEventListener) {
-        onOrderFulfilled(order1.id())
-        onOrderFulfilled(order2.id())
-        onOrderFulfilled(order3.id())
-        onOrderFulfilled(order4.id())
-      }
+    stockMatcher.matchAll(_, _) >> {
+      fills(it[1],
+          [order1, order2, 100, 0, 100],
+          [order3, order2, 100, 0, 0])
     }
 
     when:
     subject.tick()
 
     then:
+    1 * orderMatchDownstream.accept({ it.buyerOrder() == order1 })
     1 * filledOrderDownstream.accept(order1)
-    1 * filledOrderDownstream.accept(order2)
+
+    then:
+    1 * orderMatchDownstream.accept({ it.buyerOrder() == order3 })
     1 * filledOrderDownstream.accept(order3)
-    1 * filledOrderDownstream.accept(order4)
+    1 * filledOrderDownstream.accept(order2)
 
     then:
     0 * orderMatchDownstream._
     0 * orderMatchRejectedDownstream._
     0 * filledOrderDownstream._
     0 * filledOrderDownstreamRejected._
+
+    expect:
+    subject.getActiveOrders().collect() == [order4]
   }
 
 
@@ -309,34 +462,34 @@ class OrderBookImplTest extends Specification {
     given:
     def order1 = subject.addBuy(trader1, 100)
     def order2 = subject.addSell(trader1, 200)
-    def order3 = subject.addBuy(trader1, 300)
+    def order3 = subject.addBuy(trader1, 100)
 
     def e1 = new RuntimeException('e1')
     def e2 = new RuntimeException('e2')
     def e3 = new RuntimeException('e3')
 
-    stockMatcher.match(_, _, _, _) >> {
-      with (it[3] as OrderFulfilledEventListener) {
-        onOrderFulfilled(order1.id())
-        onOrderFulfilled(order2.id())
-        onOrderFulfilled(order3.id())
-      }
+    stockMatcher.matchAll(_, _) >> {
+      fills(it[1],
+          [order1, order2, 100, 0, 100],
+          [order3, order2, 100, 0, 0])
     }
 
     when:
     subject.tick()
 
     then:
+    1 * orderMatchDownstream.accept({ it.buyerOrder() == order1 })
     1 * filledOrderDownstream.accept(order1) >> { throw e1 }
     1 * filledOrderDownstreamRejected.accept(order1, e1)
 
     then:
-    1 * filledOrderDownstream.accept(order2) >> { throw e2 }
-    1 * filledOrderDownstreamRejected.accept(order2, e2)
+    1 * orderMatchDownstream.accept({ it.buyerOrder() == order3 })
+    1 * filledOrderDownstream.accept(order3) >> { throw e2 }
+    1 * filledOrderDownstreamRejected.accept(order3, e2)
 
     then:
-    1 * filledOrderDownstream.accept(order3) >> { throw e3 }
-    1 * filledOrderDownstreamRejected.accept(order3, e3)
+    1 * filledOrderDownstream.accept(order2) >> { throw e3 }
+    1 * filledOrderDownstreamRejected.accept(order2, e3)
 
     then:
     0 * orderMatchDownstream._
@@ -345,6 +498,87 @@ class OrderBookImplTest extends Specification {
     0 * filledOrderDownstreamRejected._
   }
 
+  def 'market depth is published by the tick changing the book and by the order removal'() {
+    given:
+    def bidLevels = 0
+    stockMatcher.copyBidLevels(_, _, _) >> { long[] prices, long[] volumes, int[] ordersCounts ->
+      prices[0] = 1000L
+      volumes[0] = 300L
+      ordersCounts[0] = 2
+      bidLevels
+    }
+    stockMatcher.copyAskLevels(_, _, _) >> 0
+
+    when: 'the orders are placed, but not taken by the tick yet'
+    def order1 = subject.addBid(trader1, 100, 1000L)
+    subject.addBid(trader2, 200, 1000L)
+    bidLevels = 1
+
+    then:
+    subject.marketDepth.bestBid() == null
+    subject.marketDepth.snapshot(5).isEmpty()
+
+    when:
+    subject.tick()
+
+    then:
+    subject.marketDepth.bestBid() == new MarketDepth.Level(1000L, 300L, 2)
+    subject.marketDepth.bestAsk() == null
+    subject.marketDepth.snapshot(5) == new MarketDepth.Snapshot([new MarketDepth.Level(1000L, 300L, 2)], [])
+
+    when:
+    bidLevels = 0
+    subject.removeOrder(order1.id())
+
+    then:
+    subject.marketDepth.bestBid() == null
+  }
+
+  def 'the orders are collected without matching during the auction and executed at the equilibrium price by the uncross'() {
+    given:
+    def auctionBook = new OrderBookImpl(
+        new StockMatcherImpl(),
+        security,
+        orderMatchDownstream,
+        orderMatchRejectedDownstream,
+        filledOrderDownstream,
+        filledOrderDownstreamRejected)
+
+    when:
+    auctionBook.startAuction()
+    def order1 = auctionBook.addBid(trader1, 100, 1000L)
+    def order2 = auctionBook.addAsk(trader2, 60, 990L)
+    auctionBook.tick()
+
+    then: 'the crossing orders rest, the price closest to the market one is indicated'
+    0 * orderMatchDownstream._
+    auctionBook.getAuctionIndication() == new AuctionIndication(1000L, 60L, 40L)
+
+    when:
+    def result = auctionBook.uncross()
+
+    then:
+    1 * orderMatchDownstream.accept({
+      with (it as OrderMatchRecord) {
+        buyerOrder() == order1
+        sellerOrder() == order2
+        quantity() == 60
+        uncrossPrice() == 1000L
+      }
+    })
+    0 * orderMatchRejectedDownstream._
+
+    and:
+    result == new AuctionIndication(1000L, 60L, 40L)
+    auctionBook.getAuctionIndication() == null
+
+    when:
+    auctionBook.uncross()
+
+    then:
+    thrown(NoAuctionException)
+  }
+
   @Timeout(5)
   def 'new order submission is not blocked by the running tick'() {
     given:
@@ -353,9 +587,10 @@ class OrderBookImplTest extends Specification {
     def tickPoisonPillEvent = new SynchronousQueue()
 
     def stockMatcher = Stub(StockMatcher) {
-      match(_, _, _, _) >> {
+      matchAll(_, _) >> {
         tickStartedEvent.put(true) // notify the tick has started
         tickPoisonPillEvent.take() // wait for complete event
+        0
       }
     }
 
@@ -373,7 +608,7 @@ class OrderBookImplTest extends Specification {
 
     when:
     tickStartedEvent.take() // wait the tick is started
-    def order3 = subject.addBid(trader3, 300, 10.0)
+    def order3 = subject.addBid(trader3, 300, 1000L)
     tickPoisonPillEvent.put(true) // notify the tick to complete
 
     then:
@@ -386,4 +621,16 @@ class OrderBookImplTest extends Specification {
     executor.shutdownNow()
     executor.awaitTermination(1000 * 5, TimeUnit.MILLISECONDS)
   }
-}
\ No newline at end of file
+
+  /**
+   * Puts the fills [buyerOrder, sellerOrder, quantity, buyerVolumeRemain,
+   * sellerVolumeRemain] to the buffer the way the matcher does
+   */
+  private static int fills(MatchBuffer buffer, List... fills) {
+    buffer.clear()
+    fills.each { buyer, seller, quantity, buyerVolumeRemain, sellerVolumeRemain ->
+      buffer.add(buyer.id(), seller.id(), quantity, 66600L, buyerVolumeRemain, sellerVolumeRemain)
+    }
+    buffer.size()
+  }
+}
@@ -0,0 +1,93 @@
+package stock.exchange.engine
+
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+
+import spock.lang.Specification
+import spock.lang.Timeout
+
+class IdleStrategyTest extends Specification {
+
+  @Timeout(10)
+  def '#name strategy waits until the deadline without work'() {
+    given:
+    def start = System.nanoTime()
+
+    when:
+    strategy.idle({ false }, start + TimeUnit.MILLISECONDS.toNanos(50))
+
+    then:
+    System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50)
+    strategy.idleNanos() >= TimeUnit.MILLISECONDS.toNanos(50)
+    strategy.workNanos() == 0
+
+    where:
+    strategy                    | name
+    new BusySpinIdleStrategy()  | 'busy-spin'
+    new SpinYieldIdleStrategy() | 'spin-yield'
+    new BackoffIdleStrategy()   | 'backoff'
+    new BlockingIdleStrategy()  | 'blocking'
+  }
+
+  @Timeout(10)
+  def '#name strategy returns as soon as the work is signalled'() {
+    given:
+    def signalled = new AtomicBoolean()
+    def producer = Thread.start {
+      Thread.sleep(20)
+      signalled.set(true)
+      strategy.wakeUp()
+    }
+
+    when:
+    def start = System.nanoTime()
+    strategy.idle({ signalled.get() }, start + TimeUnit.SECONDS.toNanos(5))
+
+    then:
+    signalled.get()
+    System.nanoTime() - start < TimeUnit.SECONDS.toNanos(4)
+
+    cleanup:
+    producer.join()
+
+    where:
+    strategy                    | name
+    new BusySpinIdleStrategy()  | 'busy-spin'
+    new SpinYieldIdleStrategy() | 'spin-yield'
+    new BackoffIdleStrategy()   | 'backoff'
+    new BlockingIdleStrategy()  | 'blocking'
+  }
+
+  def 'the time between the waits is accounted as working'() {
+    given:
+    def subject = new BlockingIdleStrategy()
+
+    when:
+    subject.idle({ true }, System.nanoTime())
+    Thread.sleep(50)
+    subject.idle({ true }, System.nanoTime())
+
+    then:
+    subject.workNanos() >= TimeUnit.MILLISECONDS.toNanos(50)
+    subject.idleNanos() < subject.workNanos()
+  }
+
+  @Timeout(10)
+  def 'interrupted runner stops waiting'() {
+    given:
+    Thread.currentThread().interrupt()
+
+    when:
+    strategy.idle({ false }, System.nanoTime() + TimeUnit.SECONDS.toNanos(30))
+
+    then:
+    Thread.interrupted()
+
+    where:
+    strategy << [
+      new BusySpinIdleStrategy(),
+      new SpinYieldIdleStrategy(),
+      new BackoffIdleStrategy(),
+      new BlockingIdleStrategy()]
+  }
+}
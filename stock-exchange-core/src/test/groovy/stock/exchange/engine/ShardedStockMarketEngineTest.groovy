@@ -0,0 +1,224 @@
+package stock.exchange.engine
+
+import java.time.Duration
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Semaphore
+import java.util.concurrent.TimeUnit
+
+import spock.lang.Specification
+import spock.lang.Subject
+import spock.lang.Timeout
+import stock.exchange.book.DuplicateOrderBookException
+import stock.exchange.book.OrderBook
+import stock.exchange.book.OrderBook.OrderArrivalListener
+import stock.exchange.book.OrderBookUnavailableException
+import stock.exchange.domain.SecurityRecord
+
+class ShardedStockMarketEngineTest extends Specification {
+
+  def ticks = new Semaphore(0)
+  def flushes = new Semaphore(0)
+  def tickingThreads = ConcurrentHashMap.newKeySet()
+  def arrivalListeners = [:]
+
+  @Subject
+  def subject = new ShardedStockMarketEngine(2)
+
+  def cleanup() {
+    subject.shutdown()
+  }
+
+  def book(int id) {
+    Stub(OrderBook) {
+      instrument() >> Stub(SecurityRecord) {
+        id() >> id
+        symbol() >> "SEC$id"
+      }
+      setOrderArrivalListener(_) >> { arrivalListeners[id] = it[0] }
+      tick() >> {
+        tickingThreads << Thread.currentThread()
+        ticks.release()
+        false
+      }
+      flush() >> { flushes.release() }
+    }
+  }
+
+  @Timeout(10)
+  def 'order arrival causes the tick without waiting for the ticker interval'() {
+    given:
+    subject.runOrderBook(book(1), Duration.ofHours(1))
+    ticks.tryAcquire(5, TimeUnit.SECONDS) // the initial tick
+
+    expect:
+    arrivalListeners[1] != null
+
+    when:
+    ((OrderArrivalListener) arrivalListeners[1]).onOrderArrival()
+
+    then:
+    ticks.tryAcquire(5, TimeUnit.SECONDS)
+
+    when:
+    ((OrderArrivalListener) arrivalListeners[1]).onOrderArrival()
+
+    then:
+    ticks.tryAcquire(5, TimeUnit.SECONDS)
+  }
+
+  @Timeout(10)
+  def 'the book is ticked periodically when no orders arrive'() {
+    when:
+    subject.runOrderBook(book(1), Duration.ofMillis(10))
+
+    then:
+    ticks.tryAcquire(5, 5, TimeUnit.SECONDS)
+  }
+
+  @Timeout(10)
+  def 'many books are ticked by the fixed number of workers'() {
+    when:
+    (1..100).each { subject.runOrderBook(book(it), Duration.ofHours(1)) }
+
+    then:
+    ticks.tryAcquire(100, 5, TimeUnit.SECONDS)
+    tickingThreads.size() <= subject.workersCount()
+  }
+
+  @Timeout(10)
+  def 'books placed to the same worker are ticked by the same thread'() {
+    when:
+    (1..10).each { subject.runOrderBook(book(it), TickerInterval.fixed(Duration.ofHours(1)), 1) }
+
+    then:
+    ticks.tryAcquire(10, 5, TimeUnit.SECONDS)
+    tickingThreads.size() == 1
+  }
+
+  def 'the book can not be placed to the worker that does not exist'() {
+    when:
+    subject.runOrderBook(book(1), TickerInterval.fixed(Duration.ofHours(1)), worker)
+
+    then:
+    thrown(IllegalArgumentException)
+
+    where:
+    worker << [-1, 2]
+  }
+
+  @Timeout(10)
+  def 'the ticker interval of the idle book backs off up to the maximal one'() {
+    when:
+    subject.runOrderBook(book(1), TickerInterval.adaptive(Duration.ofMillis(10), Duration.ofMillis(80)))
+    Thread.sleep(1000)
+
+    then: 'about 10, 20, 40 ms and then 80 ms apart, 100 ticks with the fixed 10 ms interval'
+    ticks.availablePermits() >= 5
+    ticks.availablePermits() <= 30
+  }
+
+  @Timeout(10)
+  def 'the metrics of every book are pulled from the engine'() {
+    given:
+    subject.runOrderBook(book(1), Duration.ofHours(1), 0)
+    subject.runOrderBook(book(2), Duration.ofHours(1), 1)
+    ticks.tryAcquire(2, 5, TimeUnit.SECONDS) // the initial ticks
+
+    expect:
+    subject.getMetrics()*.symbol().sort() == ['SEC1', 'SEC2']
+    subject.getMetrics(3) == null
+
+    when:
+    arrivalListeners[1].onOrderArrival()
+    ticks.tryAcquire(5, TimeUnit.SECONDS)
+    def metrics = subject.getMetrics(1)
+    while (metrics.ticks() < 2) {
+      Thread.sleep(10)
+      metrics = subject.getMetrics(1)
+    }
+
+    then:
+    metrics.symbol() == 'SEC1'
+    metrics.ticks() == 2
+    metrics.workingTicks() == 0
+    metrics.exceptions() == 0
+    metrics.tickDuration().count() == 2
+  }
+
+  def 'the book can not be run twice'() {
+    given:
+    subject.runOrderBook(book(1), Duration.ofHours(1))
+
+    when:
+    subject.runOrderBook(book(1), Duration.ofHours(1))
+
+    then:
+    thrown(DuplicateOrderBookException)
+  }
+
+  @Timeout(10)
+  def 'all the books are flushed on shutdown'() {
+    given:
+    (1..10).each { subject.runOrderBook(book(it), Duration.ofHours(1)) }
+    ticks.tryAcquire(10, 5, TimeUnit.SECONDS)
+
+    when:
+    subject.shutdown()
+
+    then:
+    flushes.tryAcquire(10, 5, TimeUnit.SECONDS)
+
+    when:
+    subject.runOrderBook(book(11), Duration.ofHours(1))
+
+    then:
+    thrown(StockMarketIsShutdownException)
+  }
+
+  @Timeout(10)
+  def 'the shutdown stops the worker whose tick swallows the interrupt'() {
+    given: 'the tick waits for the interrupt and turns it into the exception, as the book waiting for its lock does'
+    def blocked = new Semaphore(0)
+    def blockingBook = Stub(OrderBook) {
+      instrument() >> Stub(SecurityRecord) {
+        id() >> 1
+        symbol() >> 'SEC1'
+      }
+      tick() >> {
+        blocked.release()
+        try {
+          Thread.sleep(60_000)
+        } catch (InterruptedException e) {
+          throw new OrderBookUnavailableException(e)
+        }
+        false
+      }
+      flush() >> { flushes.release() }
+    }
+    subject.runOrderBook(blockingBook, Duration.ofHours(1))
+    blocked.tryAcquire(5, TimeUnit.SECONDS)
+
+    when:
+    subject.shutdown()
+
+    then:
+    flushes.tryAcquire(5, TimeUnit.SECONDS)
+  }
+
+  def 'the book is rejected by the worker running the maximal number of books already'() {
+    given:
+    def engine = new ShardedStockMarketEngine(1, 2)
+    engine.runOrderBook(book(1), Duration.ofHours(1))
+    engine.runOrderBook(book(2), Duration.ofHours(1))
+
+    when:
+    engine.runOrderBook(book(3), Duration.ofHours(1))
+
+    then:
+    thrown(StockMarketException)
+    engine.getMetrics(3) == null
+
+    cleanup:
+    engine.shutdown()
+  }
+}
@@ -0,0 +1,205 @@
+package stock.exchange.engine
+
+import java.time.Duration
+import java.util.concurrent.Semaphore
+import java.util.concurrent.TimeUnit
+
+import spock.lang.Requires
+import spock.lang.Specification
+import spock.lang.Subject
+import spock.lang.Timeout
+import stock.exchange.book.DuplicateOrderBookException
+import stock.exchange.book.OrderBook
+import stock.exchange.book.OrderBook.OrderArrivalListener
+import stock.exchange.book.OrderBookStats
+import stock.exchange.domain.SecurityRecord
+import util.concurrent.VirtualThreads
+
+class StockMarketEngineTest extends Specification {
+
+  def ticks = new Semaphore(0)
+  OrderArrivalListener arrivalListener
+  Thread tickingThread
+
+  def book = Stub(OrderBook) {
+    instrument() >> Stub(SecurityRecord) {
+      id() >> 1
+      symbol() >> 'SEC'
+    }
+    setOrderArrivalListener(_) >> { arrivalListener = it[0] }
+    tick() >> {
+      tickingThread = Thread.currentThread()
+      ticks.release()
+      false
+    }
+  }
+
+  @Subject
+  def subject = new StockMarketEngine()
+
+  def cleanup() {
+    subject.shutdown()
+  }
+
+  @Timeout(10)
+  def 'order arrival causes the tick without waiting for the ticker interval'() {
+    given:
+    subject.runOrderBook(book, Duration.ofHours(1))
+    ticks.tryAcquire(5, TimeUnit.SECONDS) // the initial tick
+
+    expect:
+    arrivalListener != null
+
+    when:
+    arrivalListener.onOrderArrival()
+
+    then:
+    ticks.tryAcquire(5, TimeUnit.SECONDS)
+
+    when:
+    arrivalListener.onOrderArrival()
+
+    then:
+    ticks.tryAcquire(5, TimeUnit.SECONDS)
+  }
+
+  @Timeout(10)
+  def 'order arrival wakes up the runner with #name idle strategy'() {
+    given:
+    subject.runOrderBook(book, TickerInterval.fixed(Duration.ofHours(1)), idleStrategy)
+    ticks.tryAcquire(5, TimeUnit.SECONDS) // the initial tick
+
+    expect:
+    subject.idleStrategy(1).is(idleStrategy)
+
+    when:
+    arrivalListener.onOrderArrival()
+
+    then:
+    ticks.tryAcquire(5, TimeUnit.SECONDS)
+
+    where:
+    idleStrategy                | name
+    new BusySpinIdleStrategy()  | 'busy-spin'
+    new SpinYieldIdleStrategy() | 'spin-yield'
+    new BackoffIdleStrategy()   | 'backoff'
+    new BlockingIdleStrategy()  | 'blocking'
+  }
+
+  @Timeout(10)
+  @Requires({ VirtualThreads.isSupported() })
+  def 'the book is run in a virtual thread'() {
+    given:
+    def virtualEngine = new StockMarketEngine({ new BlockingIdleStrategy() }, true)
+
+    when:
+    virtualEngine.runOrderBook(book, Duration.ofHours(1))
+    ticks.tryAcquire(5, TimeUnit.SECONDS) // the initial tick
+    arrivalListener.onOrderArrival()
+
+    then:
+    ticks.tryAcquire(5, TimeUnit.SECONDS)
+    tickingThread.isVirtual()
+
+    cleanup:
+    virtualEngine.shutdown()
+  }
+
+  @Timeout(10)
+  def 'the book is ticked periodically when no orders arrive'() {
+    when:
+    subject.runOrderBook(book, Duration.ofMillis(10))
+
+    then:
+    ticks.tryAcquire(5, 5, TimeUnit.SECONDS)
+  }
+
+  @Timeout(10)
+  def 'the book is ticked again right away while it finds work'() {
+    given:
+    def worked = 3
+    def busyBook = Stub(OrderBook) {
+      instrument() >> Stub(SecurityRecord) {
+        id() >> 2
+        symbol() >> 'BUSY'
+      }
+      tick() >> {
+        ticks.release()
+        worked-- > 0
+      }
+    }
+
+    when:
+    subject.runOrderBook(busyBook, Duration.ofHours(1))
+
+    then: 'the initial tick and the ticks after those finding work'
+    ticks.tryAcquire(4, 5, TimeUnit.SECONDS)
+    !ticks.tryAcquire(200, TimeUnit.MILLISECONDS)
+  }
+
+  @Timeout(10)
+  def 'the ticker interval of the idle book backs off up to the maximal one'() {
+    when:
+    subject.runOrderBook(book, TickerInterval.adaptive(Duration.ofMillis(10), Duration.ofMillis(80)))
+    Thread.sleep(1000)
+
+    then: 'about 10, 20, 40 ms and then 80 ms apart, 100 ticks with the fixed 10 ms interval'
+    ticks.availablePermits() >= 5
+    ticks.availablePermits() <= 30
+  }
+
+  @Timeout(10)
+  def 'the metrics count the ticks, the ones which found work and the failed one'() {
+    given:
+    def results = [true, true]
+    def stats = new OrderBookStats(1, 2, 10L, 6L, 4L, 0L)
+    def busyBook = Stub(OrderBook) {
+      instrument() >> Stub(SecurityRecord) {
+        id() >> 2
+        symbol() >> 'BUSY'
+      }
+      tick() >> {
+        if (results.isEmpty()) {
+          ticks.release()
+          throw new IllegalStateException()
+        }
+        results.pop()
+      }
+      getStats() >> stats
+    }
+
+    when:
+    subject.runOrderBook(busyBook, Duration.ofHours(1))
+    ticks.tryAcquire(5, TimeUnit.SECONDS)
+    def metrics = subject.getMetrics(2)
+    while (metrics.exceptions() == 0) {
+      Thread.sleep(10)
+      metrics = subject.getMetrics(2)
+    }
+
+    then:
+    metrics.symbol() == 'BUSY'
+    metrics.ticks() == 3
+    metrics.workingTicks() == 2
+    metrics.exceptions() == 1
+    metrics.tickDuration().count() == 3
+    metrics.book() == stats
+    metrics.matchesPerTick() == 3d
+    metrics.fillsPerTick() == 2d
+
+    and:
+    subject.getMetrics()*.symbol() == ['BUSY']
+    subject.getMetrics(1) == null
+  }
+
+  def 'the book can not be run twice'() {
+    given:
+    subject.runOrderBook(book, Duration.ofHours(1))
+
+    when:
+    subject.runOrderBook(book, Duration.ofHours(1))
+
+    then:
+    thrown(DuplicateOrderBookException)
+  }
+}
@@ -0,0 +1,41 @@
+package stock.exchange.engine
+
+import java.time.Duration
+
+import spock.lang.Specification
+
+class TickerIntervalTest extends Specification {
+
+  def 'idle interval doubles up to the maximal one'() {
+    given:
+    def subject = TickerInterval.adaptive(Duration.ofNanos(10), Duration.ofNanos(50))
+
+    expect:
+    subject.backOffNanos(10) == 20
+    subject.backOffNanos(20) == 40
+    subject.backOffNanos(40) == 50
+    subject.backOffNanos(50) == 50
+  }
+
+  def 'fixed interval does not back off'() {
+    given:
+    def subject = TickerInterval.fixed(Duration.ofHours(1))
+
+    expect:
+    subject.backOffNanos(Duration.ofHours(1).toNanos()) == Duration.ofHours(1).toNanos()
+  }
+
+  def 'invalid bounds are rejected'() {
+    when:
+    TickerInterval.adaptive(min, max)
+
+    then:
+    thrown(IllegalArgumentException)
+
+    where:
+    min                   | max
+    Duration.ZERO         | Duration.ofMillis(1)
+    Duration.ofMillis(-1) | Duration.ofMillis(1)
+    Duration.ofMillis(2)  | Duration.ofMillis(1)
+  }
+}
@@ -0,0 +1,98 @@
+package stock.exchange.jfr
+
+import java.nio.file.Files
+import java.time.Duration
+
+import jdk.jfr.Recording
+import jdk.jfr.consumer.RecordingFile
+import spock.lang.Specification
+import stock.exchange.book.OrderBookImpl
+import stock.exchange.domain.TraderRecord
+import stock.exchange.instrument.MarketDataWorld
+import stock.exchange.integration.FanOutDownstream
+import stock.exchange.integration.FanOutRejectedDownstream
+import stock.exchange.matcher.PriceLadderStockMatcher
+import stock.exchange.trade.TradeGeneratorImpl
+
+class StockExchangeEventsTest extends Specification {
+
+  def trader1 = Stub(TraderRecord)
+  def world = new MarketDataWorld()
+  def security = world.createSecurity(1, 'SEC', 2, 1000L)
+  def book = new OrderBookImpl(
+      new PriceLadderStockMatcher(),
+      security,
+      new TradeGeneratorImpl(new FanOutDownstream(world), new FanOutRejectedDownstream()),
+      new FanOutRejectedDownstream(),
+      new FanOutDownstream(),
+      new FanOutRejectedDownstream())
+
+  def 'the tick, the match, the trade and the downstream call are recorded while enabled'() {
+    given:
+    def file = Files.createTempFile('stock-exchange', '.jfr')
+    def recording = new Recording()
+    recording.enable('stock.exchange.Tick').withThreshold(Duration.ZERO)
+    recording.enable('stock.exchange.Match')
+    recording.enable('stock.exchange.Trade')
+    recording.enable('stock.exchange.Downstream').withThreshold(Duration.ZERO)
+
+    when:
+    recording.start()
+    def bid = book.addBid(trader1, 10, 1000L)
+    def ask = book.addAsk(trader1, 10, 1000L)
+    book.tick()
+    recording.stop()
+    recording.dump(file)
+    def events = RecordingFile.readAllEvents(file)
+        .findAll { it.eventType.name.startsWith('stock.exchange.') }
+        .groupBy { it.eventType.name }
+
+    then:
+    with(events['stock.exchange.Tick'].first()) {
+      getString('symbol') == 'SEC'
+      getInt('ordersTaken') == 2
+      getInt('matches') == 1
+      !getBoolean('auction')
+    }
+    with(events['stock.exchange.Match'].first()) {
+      getLong('buyerOrderId') == bid.id()
+      getLong('sellerOrderId') == ask.id()
+      getInt('quantity') == 10
+    }
+    with(events['stock.exchange.Trade'].first()) {
+      getString('symbol') == 'SEC'
+      getLong('price') == 1000L
+      getInt('quantity') == 10
+    }
+    with(events['stock.exchange.Downstream'].first()) {
+      getClass('downstream').name == MarketDataWorld.name
+      getInt('index') == 0
+      !getBoolean('failed')
+    }
+
+    cleanup:
+    recording.close()
+    Files.deleteIfExists(file)
+  }
+
+  def 'the tick faster than the threshold is not recorded'() {
+    given:
+    def file = Files.createTempFile('stock-exchange', '.jfr')
+    def recording = new Recording()
+    recording.enable('stock.exchange.Tick').withThreshold(Duration.ofHours(1))
+
+    when:
+    recording.start()
+    book.addBid(trader1, 10, 1000L)
+    book.tick()
+    recording.stop()
+    recording.dump(file)
+
+    then:
+    RecordingFile.readAllEvents(file).every { it.eventType.name != 'stock.exchange.Tick' }
+
+    cleanup:
+    recording.close()
+    Files.deleteIfExists(file)
+  }
+}
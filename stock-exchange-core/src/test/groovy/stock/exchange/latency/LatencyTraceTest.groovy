@@ -0,0 +1,66 @@
+package stock.exchange.latency
+
+import spock.lang.Specification
+import spock.lang.Subject
+
+class LatencyTraceTest extends Specification {
+
+  @Subject
+  def subject = new LatencyTrace()
+
+  def cleanup() {
+    subject.close()
+  }
+
+  def 'the trace is current for the thread between begin and end only'() {
+    expect:
+    LatencyTrace.current() == null
+
+    when:
+    subject.begin(System.nanoTime())
+
+    then:
+    LatencyTrace.current().is(subject)
+
+    when:
+    subject.end()
+
+    then:
+    LatencyTrace.current() == null
+  }
+
+  def 'every stage is recorded from the order accepted and the downstreams not published to are skipped'() {
+    given:
+    def accepted = System.nanoTime() - 1_000_000L
+
+    when:
+    subject.queued(accepted, accepted + 1_000L)
+    subject.queued(accepted, accepted + 2_000L)
+    subject.matched(accepted, accepted + 10_000L)
+    subject.begin(accepted)
+    subject.traded()
+    subject.published(1)
+    subject.published(LatencyTrace.MAX_DOWNSTREAMS)
+    subject.end()
+    def stages = subject.stages()
+
+    then:
+    stages*.stage() == ['queued', 'matched', 'traded', 'published #2']
+    stages*.latency()*.count() == [2L, 1L, 1L, 1L]
+    stages[1].latency().max() == 10_000L
+    stages[2].latency().max() >= 1_000_000L
+    stages[3].latency().max() >= stages[2].latency().max()
+  }
+
+  def 'reset clears all the stages'() {
+    given:
+    subject.queued(0L, 1_000L)
+    subject.matched(0L, 2_000L)
+
+    when:
+    subject.reset()
+
+    then:
+    subject.stages()*.latency()*.count() == [0L, 0L, 0L]
+  }
+}
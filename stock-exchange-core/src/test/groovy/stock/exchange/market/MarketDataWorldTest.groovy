@@ -1,9 +1,18 @@
 package stock.exchange.market
 
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+
 import spock.lang.Ignore
 import spock.lang.Specification
 import spock.lang.Subject
+import spock.lang.Timeout
+import stock.exchange.instrument.CompositeOverflowException
 import stock.exchange.instrument.DuplicateInstrumentException
+import stock.exchange.instrument.InvalidCompositeException
+import stock.exchange.instrument.InvalidScaleException
 import stock.exchange.instrument.MarketDataWorld
 import stock.exchange.instrument.NoSuchInstrumentException
 import stock.exchange.instrument.NoSuchSecurityException
@@ -15,12 +24,14 @@ class MarketDataWorldTest extends Specification {
 
   def 'create secuiry : successful'() {
     when:
-    def secur1 = subject.createSecurity(1, 'secur1', 10.0d)
+    def secur1 = subject.createSecurity(1, 'secur1', 2, 1000L)
 
     then:
     secur1.id() == 1
     secur1.symbol() == 'secur1'
+    secur1.scale() == 2
     secur1.marketPrice().asDouble == 10.0d
+    secur1.marketPriceTicks().asLong == 1000L
 
     expect:
     subject.getAllInstruments().collect() == [secur1]
@@ -28,16 +39,16 @@ class MarketDataWorldTest extends Specification {
 
   def 'create secuiry : failed duplicate'() {
     given:
-    def secur1 = subject.createSecurity(1, 'secur1', 10.0d)
+    def secur1 = subject.createSecurity(1, 'secur1', 2, 1000L)
 
     when:
-    subject.createSecurity(1, 'secur2', 20.0d)
+    subject.createSecurity(1, 'secur2', 2, 2000L)
 
     then:
     thrown(DuplicateInstrumentException)
 
     when:
-    subject.createSecurity(2, 'secur1', 30.0d)
+    subject.createSecurity(2, 'secur1', 2, 3000L)
 
     then:
     thrown(DuplicateInstrumentException)
@@ -46,10 +57,24 @@ class MarketDataWorldTest extends Specification {
     subject.getAllInstruments().collect() == [secur1]
   }
 
+  def 'create secuiry : failed invalid scale #scale'() {
+    when:
+    subject.createSecurity(1, 'secur1', scale, 1000L)
+
+    then:
+    thrown(InvalidScaleException)
+
+    expect:
+    subject.getAllInstruments().collect() == []
+
+    where:
+    scale << [-1, 19]
+  }
+
   def 'create composite : succesful'() {
     given:
-    def secur1 = subject.createSecurity(1, 'secur1', 10.0d)
-    def secur2 = subject.createSecurity(2, 'secur2', 20.0d)
+    def secur1 = subject.createSecurity(1, 'secur1', 2, 1000L)
+    def secur2 = subject.createSecurity(2, 'secur2', 2, 2000L)
 
     when:
     def comp1 = subject.createComposite(3, 'comp1', 'secur1', 'secur2')
@@ -66,8 +91,8 @@ class MarketDataWorldTest extends Specification {
 
   def 'creat composite : failed duplicate'() {
     given:
-    def secur1 = subject.createSecurity(1, 'secur1', 10.0d)
-    def secur2 = subject.createSecurity(2, 'secur2', 20.0d)
+    def secur1 = subject.createSecurity(1, 'secur1', 2, 1000L)
+    def secur2 = subject.createSecurity(2, 'secur2', 2, 2000L)
     
     when:
     subject.createComposite(1, 'comp1', 'secur1', 'secur2')
@@ -87,8 +112,8 @@ class MarketDataWorldTest extends Specification {
 
   def 'creat composite : component not found'() {
     given:
-    def secur1 = subject.createSecurity(1, 'secur1', 10.0d)
-    def secur2 = subject.createSecurity(2, 'secur2', 20.0d)
+    def secur1 = subject.createSecurity(1, 'secur1', 2, 1000L)
+    def secur2 = subject.createSecurity(2, 'secur2', 2, 2000L)
     
     when:
     subject.createComposite(3, 'comp1', 'secur1', 'securN')
@@ -100,10 +125,105 @@ class MarketDataWorldTest extends Specification {
     subject.getAllInstruments().collect().sort({it.id}) == [secur1, secur2]
   }
 
+  def 'create weighted composite : successful'() {
+    given:
+    def secur1 = subject.createSecurity(1, 'secur1', 2, 1000L)
+    def secur2 = subject.createSecurity(2, 'secur2', 3, 20_005L)
+
+    when:
+    def comp1 = subject.createComposite(3, 'comp1', ['secur1', 'secur2'] as String[], [300L, 120L] as long[], 12.5d)
+
+    then:
+    comp1.componenents.collect() == [secur1, secur2]
+    comp1.weights == [300L, 120L]
+    comp1.divisor == 12.5d
+    comp1.marketPrice.asDouble == 5400.6d / 12.5d
+
+    when:
+    subject.acceptLastTradePrice(1, 1100L, 10)
+    subject.acceptLastTradePrice(2, 19_995L, 10)
+
+    then:
+    comp1.marketPrice.asDouble == 5699.4d / 12.5d
+  }
+
+  def 'create weighted composite : failed #reason'() {
+    given:
+    subject.createSecurity(1, 'secur1', 2, 1000L)
+    subject.createSecurity(2, 'secur2', 2, 2000L)
+    subject.createSecurity(3, 'secur3', 0, 10L)
+
+    when:
+    subject.createComposite(4, 'comp1', symbols as String[], weights as long[], divisor)
+
+    then:
+    thrown(InvalidCompositeException)
+
+    expect:
+    subject.getAllInstruments().collect().size() == 3
+
+    where:
+    reason                | symbols                        | weights                   | divisor
+    'no components'       | []                             | []                        | 1d
+    'weights mismatch'    | ['secur1', 'secur2']           | [1L]                      | 1d
+    'zero weight'         | ['secur1', 'secur2']           | [1L, 0L]                  | 1d
+    'negative weight'     | ['secur1', 'secur2']           | [1L, -1L]                 | 1d
+    'zero divisor'        | ['secur1', 'secur2']           | [1L, 1L]                  | 0d
+    'NaN divisor'         | ['secur1', 'secur2']           | [1L, 1L]                  | Double.NaN
+    'duplicate component' | ['secur1', 'secur2', 'secur1'] | [1L, 1L, 1L]              | 1d
+    'weight overflow'     | ['secur1', 'secur3']           | [1L, Long.MAX_VALUE / 10] | 1d
+  }
+
+  def 'create weighted composite : failed by the sum of the current prices too large'() {
+    given:
+    def secur1 = subject.createSecurity(1, 'secur1', 0, Long.MAX_VALUE.intdiv(2) + 1)
+    def secur2 = subject.createSecurity(2, 'secur2', 0, Long.MAX_VALUE.intdiv(2) + 1)
+
+    when:
+    subject.createComposite(3, 'comp1', ['secur1', 'secur2'] as String[], [1L, 1L] as long[], 1d)
+
+    then:
+    thrown(InvalidCompositeException)
+
+    when: 'the components are not held by the failed composite'
+    subject.acceptLastTradePrice(1, Long.MAX_VALUE, 10)
+
+    then:
+    secur1.marketPriceTicks().asLong == Long.MAX_VALUE
+    subject.getAllInstruments().collect().size() == 2
+  }
+
+  def 'accept last trade price : rejected by the composite sum overflow'() {
+    given:
+    def secur1 = subject.createSecurity(1, 'secur1', 0, 10L)
+    def secur2 = subject.createSecurity(2, 'secur2', 0, 10L)
+    def comp1 = subject.createComposite(3, 'comp1', ['secur1', 'secur2'] as String[], [1L, 1L] as long[], 1d)
+    def comp2 = subject.createComposite(4, 'comp2', ['secur1'] as String[], [1000L] as long[], 1d)
+
+    when: 'the sum of the first composite fits, of the second one does not'
+    subject.acceptLastTradePrice(1, Long.MAX_VALUE.intdiv(100), 10)
+
+    then:
+    thrown(CompositeOverflowException)
+
+    and: 'neither the price nor the sums are changed'
+    secur1.marketPriceTicks().asLong == 10L
+    comp1.marketPrice.asDouble == 20d
+    comp2.marketPrice.asDouble == 10_000d
+
+    when:
+    subject.acceptLastTradePrice(1, 20L, 10)
+
+    then:
+    secur1.marketPriceTicks().asLong == 20L
+    comp1.marketPrice.asDouble == 30d
+    comp2.marketPrice.asDouble == 20_000d
+  }
+
   def 'get market price : returns correct values'() {
     given:
-    def secur1 = subject.createSecurity(1, 'secur1', 10.0d)
-    def secur2 = subject.createSecurity(2, 'secur2', 20.0d)
+    def secur1 = subject.createSecurity(1, 'secur1', 2, 1000L)
+    def secur2 = subject.createSecurity(2, 'secur2', 2, 2000L)
     def comp1 = subject.createComposite(3, 'comp1', 'secur1', 'secur2')
     
     expect:
@@ -117,8 +237,8 @@ class MarketDataWorldTest extends Specification {
 
   def 'get market price : failures on wrong id'() {
     given:
-    def secur1 = subject.createSecurity(1, 'secur1', 10.0d)
-    def secur2 = subject.createSecurity(2, 'secur2', 20.0d)
+    def secur1 = subject.createSecurity(1, 'secur1', 2, 1000L)
+    def secur2 = subject.createSecurity(2, 'secur2', 2, 2000L)
     def comp1 = subject.createComposite(3, 'comp1', 'secur1', 'secur2')
     
     when:
@@ -136,15 +256,16 @@ class MarketDataWorldTest extends Specification {
 
   def 'accept last trade price : updates prices accordingly'() {
     given:
-    def secur1 = subject.createSecurity(1, 'secur1', 10.0d)
-    def secur2 = subject.createSecurity(2, 'secur2', 20.0d)
+    def secur1 = subject.createSecurity(1, 'secur1', 2, 1000L)
+    def secur2 = subject.createSecurity(2, 'secur2', 2, 2000L)
     def comp1 = subject.createComposite(3, 'comp1', 'secur1', 'secur2')
 
     when:
-    subject.acceptLastTradePrice(1, 30, 1000)
+    subject.acceptLastTradePrice(1, 3000L, 1000)
 
     then:
     secur1.marketPrice().asDouble == 30d
+    secur1.marketPriceTicks().asLong == 3000L
     secur2.marketPrice().asDouble == 20d
     comp1.marketPrice.asDouble == 25d
 
@@ -157,14 +278,63 @@ class MarketDataWorldTest extends Specification {
     subject.getMarketPriceRef(3).asDouble == 25d
   }
 
+  def 'accept last trade price : updates every composite containing the security, the components of different scales'() {
+    given:
+    subject.createSecurity(1, 'secur1', 2, 1001L)
+    subject.createSecurity(2, 'secur2', 4, 200_005L)
+    subject.createSecurity(3, 'secur3', 0, 30L)
+    def comp1 = subject.createComposite(4, 'comp1', 'secur1', 'secur2')
+    def comp2 = subject.createComposite(5, 'comp2', 'secur1', 'secur2', 'secur3')
+
+    expect:
+    comp1.marketPrice.asDouble == 15.00525d
+    comp2.marketPrice.asDouble == 20.0035d
+
+    when:
+    subject.acceptLastTradePrice(1, 1011L, 10)
+    subject.acceptLastTradePrice(3, 40L, 10)
+    subject.acceptLastTradePrice(1, 999L, 10)
+
+    then:
+    comp1.marketPrice.asDouble == 14.99525d
+    comp2.marketPrice.asDouble == 69.9905d / 3
+  }
+
+  @Timeout(30)
+  def 'accept last trade price : the composite price is exact after the concurrent trades of its components'() {
+    given:
+    def symbols = (1..8).collect { "secur$it" as String }
+    symbols.eachWithIndex { symbol, i -> subject.createSecurity(i + 1, symbol, 2, 1000L) }
+    def comp1 = subject.createComposite(9, 'comp1', symbols as String[])
+    def executor = Executors.newFixedThreadPool(symbols.size())
+
+    when:
+    def futures = (1..symbols.size()).collect { id ->
+      executor.submit {
+        for (int i = 0; i < 100_000; i++) {
+          subject.acceptLastTradePrice(id, 1000L + (i % 100), 10)
+        }
+        subject.acceptLastTradePrice(id, 1000L + id, 10)
+      }
+    }
+    futures*.get()
+
+    then:
+    comp1.marketPrice.asDouble == 80.36d / 8
+
+    cleanup:
+    executor.shutdownNow()
+    executor.awaitTermination(5, TimeUnit.SECONDS)
+  }
+
   def 'accept last trade price : fails on wrong instrument id'() {
     given:
-    def secur1 = subject.createSecurity(1, 'secur1', 10.0d)
-    def secur2 = subject.createSecurity(2, 'secur2', 20.0d)
+    def secur1 = subject.createSecurity(1, 'secur1', 2, 1000L)
+    def secur2 = subject.createSecurity(2, 'secur2', 2, 2000L)
     def comp1 = subject.createComposite(3, 'comp1', 'secur1', 'secur2')
 
     when:
-    subject.acceptLastTradePrice(4, 30, 1000)
+    subject.acceptLastTradePrice(4, 3000L, 1000)
 
     then:
     thrown(NoSuchInstrumentException)
@@ -172,14 +342,63 @@ class MarketDataWorldTest extends Specification {
 
   def 'accept last trade price : fails unable to update composite instrument directly'() {
     given:
-    def secur1 = subject.createSecurity(1, 'secur1', 10.0d)
-    def secur2 = subject.createSecurity(2, 'secur2', 20.0d)
+    def secur1 = subject.createSecurity(1, 'secur1', 2, 1000L)
+    def secur2 = subject.createSecurity(2, 'secur2', 2, 2000L)
     def comp1 = subject.createComposite(3, 'comp1', 'secur1', 'secur2')
 
     when:
-    subject.acceptLastTradePrice(3, 30, 1000)
+    subject.acceptLastTradePrice(3, 3000L, 1000)
 
     then:
     thrown(NoSuchSecurityException)
   }
-}
\ No newline at end of file
+
+  def 'get all instruments : the instruments created later do not show up in the result taken before'() {
+    given:
+    def secur1 = subject.createSecurity(1, 'secur1', 2, 1000L)
+    def all = subject.getAllInstruments()
+
+    when:
+    def secur2 = subject.createSecurity(2, 'secur2', 2, 2000L)
+
+    then:
+    all.collect() == [secur1]
+    subject.getAllInstruments().toSet() == [secur1, secur2] as Set
+  }
+
+  @Timeout(30)
+  def 'find instrument : readers find every instrument created before while the others are being created'() {
+    given:
+    def stop = new AtomicBoolean()
+    def executor = Executors.newSingleThreadExecutor()
+    def created = new AtomicInteger()
+    def creator = executor.submit {
+      for (int i = 1; i <= 2_000 && !stop.get(); i++) {
+        subject.createSecurity(i, "secur$i", 2, 1000L)
+        created.set(i)
+      }
+    }
+
+    when:
+    def missing = 0
+    while (!creator.done) {
+      int last = created.get()
+      for (int i = 1; i <= last; i += 17) {
+        if (subject.findInstrumentById(i).symbol() != "secur$i"
+            || subject.findInstrumentBySymbol("secur$i").id() != i) {
+          missing++
+        }
+      }
+    }
+    creator.get()
+
+    then:
+    missing == 0
+    subject.getAllInstruments().size() == 2_000
+
+    cleanup:
+    stop.set(true)
+    executor.shutdownNow()
+    executor.awaitTermination(5, TimeUnit.SECONDS)
+  }
+}
@@ -0,0 +1,60 @@
+package stock.exchange.matcher
+
+import stock.exchange.matcher.StockMatcher.OrderMatchedEventListener
+
+class ArrayStockMatcherTest extends StockMatcherSpec {
+
+  @Override
+  StockMatcher createSubject() {
+    new ArrayStockMatcher(2)
+  }
+
+  def 'limit orders only : released slots are reused and canceled orders are never matched'() {
+    given:
+    def matchedBuyers = []
+    def listener = { long buyerOrderId, long sellerOrderId, int quantity ->
+      matchedBuyers << buyerOrderId
+    } as OrderMatchedEventListener
+    (1..1000).each {
+      subject.addOrderBid(100000L + it, 2000L + it % 50, 1)
+      if (it % 10 != 0) {
+        subject.removeOrder(100000L + it)
+      }
+    }
+    subject.addOrderAsk(200001, 2000, 1000)
+
+    when:
+    while (subject.match(marketPriceRef, listener, orderPartiallyFilledEventListener, orderFulfilledEventListener)) {
+    }
+
+    then:
+    matchedBuyers == (1..1000).findAll { it % 10 == 0 }
+        .sort { a, b -> (b % 50 <=> a % 50) ?: (a <=> b) }
+        .collect { 100000L + it }
+
+    and:
+    !subject.removeOrder(100010)
+  }
+
+  def 'remove order : market order removed from the middle of the queue is not matched'() {
+    given:
+    subject.addOrderBuy(100001, 10)
+    subject.addOrderBuy(100002, 10) // <-- canceled
+    subject.addOrderBuy(100003, 10)
+    subject.addOrderSell(200001, 30)
+
+    when:
+    subject.removeOrder(100002)
+    while (subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)) {
+    }
+
+    then:
+    1 * orderMatchListener.onOrderMatched(100001, 200001, 10)
+
+    then:
+    1 * orderMatchListener.onOrderMatched(100003, 200001, 10)
+
+    then:
+    0 * orderMatchListener._
+  }
+}
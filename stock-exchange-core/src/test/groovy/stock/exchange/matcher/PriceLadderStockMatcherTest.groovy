@@ -0,0 +1,100 @@
+package stock.exchange.matcher
+
+class PriceLadderStockMatcherTest extends StockMatcherSpec {
+
+  @Override
+  StockMatcher createSubject() {
+    new PriceLadderStockMatcher(64)
+  }
+
+  def 'limit orders only : canceled order in the middle of the price level is skipped and the best price moves on'() {
+    given:
+    subject.addOrderBid(100001, 3100, 10)
+    subject.addOrderBid(100002, 3100, 10) // <-- canceled
+    subject.addOrderBid(100003, 3100, 10)
+    subject.addOrderBid(100004, 3200, 10) // <-- canceled, best price level gets empty
+    subject.addOrderAsk(200001, 3000, 100)
+
+    when:
+    def removed2 = subject.removeOrder(100002)
+    def removed4 = subject.removeOrder(100004)
+    def removedAgain = subject.removeOrder(100004)
+    while (subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)) {
+    }
+
+    then:
+    1 * orderMatchListener.onOrderMatched(100001, 200001, 10)
+
+    then:
+    1 * orderMatchListener.onOrderMatched(100003, 200001, 10)
+
+    then:
+    0 * orderMatchListener._
+
+    and:
+    removed2
+    removed4
+    !removedAgain
+  }
+
+  def 'limit orders only : the orders priced on the different pages of the ladder are matched in the order of price'() {
+    given:
+    subject.addOrderAsk(200001, 3000, 10)
+    subject.addOrderAsk(200002, 3100, 10) // <-- beyond the page of 64 levels
+    subject.addOrderAsk(200003, 2900, 10) // <-- beyond the page of 64 levels
+    subject.addOrderBid(100001, 3100, 30)
+
+    when:
+    while (subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)) {
+    }
+
+    then:
+    1 * orderMatchListener.onOrderMatched(100001, 200003, 10)
+
+    then:
+    1 * orderMatchListener.onOrderMatched(100001, 200001, 10)
+
+    then:
+    1 * orderMatchListener.onOrderMatched(100001, 200002, 10)
+
+    then:
+    0 * orderMatchListener._
+  }
+
+  def 'limit orders only : the orders priced any number of ticks apart are accepted and the best price skips the empty pages'() {
+    given: 'the prices of 10 and 200 at the scale of 4, far beyond a page'
+    subject.addOrderBid(100001, 100_000, 10)
+    subject.addOrderBid(100002, 2_000_000, 10) // <-- canceled
+    subject.addOrderBid(100003, 100_063, 10)
+    subject.addOrderBid(100004, 100_064, 10)
+    subject.addOrderAsk(200001, 50_000, 100)
+
+    when:
+    subject.removeOrder(100002)
+    while (subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)) {
+    }
+
+    then:
+    1 * orderMatchListener.onOrderMatched(100004, 200001, 10)
+
+    then:
+    1 * orderMatchListener.onOrderMatched(100003, 200001, 10)
+
+    then:
+    1 * orderMatchListener.onOrderMatched(100001, 200001, 10)
+
+    then:
+    0 * orderMatchListener._
+  }
+
+  def 'limit orders only : the page size is the power of two from 64 to 4096'() {
+    when:
+    new PriceLadderStockMatcher(pageLevels)
+
+    then:
+    thrown(IllegalArgumentException)
+
+    where:
+    pageLevels << [32, 100, 8192]
+  }
+}
@@ -1,22 +1,14 @@
 package stock.exchange.matcher
 
-import spock.lang.Specification
-import spock.lang.Subject
 import stock.exchange.book.OrderPartiallyFilledException
-import stock.exchange.domain.DoubleReference
-import stock.exchange.matcher.StockMatcher.OrderFulfilledEventListener
 import stock.exchange.matcher.StockMatcher.OrderMatchedEventListener
-import stock.exchange.matcher.StockMatcher.OrderPartiallyFilledEventListener
 
-class StockMatcherImplTest extends Specification {
+class StockMatcherImplTest extends StockMatcherSpec {
 
-  def maretPriceRef = {30.00d} as DoubleReference
-  def orderMatchListener = Mock(OrderMatchedEventListener)
-  def orderPartiallyFilledEventListener = Mock(OrderPartiallyFilledEventListener)
-  def orderFulfilledEventListener = Mock(OrderFulfilledEventListener)
-
-  @Subject
-  def subject = new StockMatcherImpl()
+  @Override
+  StockMatcher createSubject() {
+    new StockMatcherImpl()
+  }
 
   def 'market orders only : two orders quantity1 = quantity2 are matched and fulfilled'() {
     given:
@@ -25,7 +17,7 @@ class StockMatcherImplTest extends Specification {
     subject.addOrderSell(200001, 100)
 
     when:
-    matched = subject.match(maretPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+    matched = subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
 
     then:
     1 * orderMatchListener.onOrderMatched(100001, 200001, 100)
@@ -36,36 +28,7 @@ class StockMatcherImplTest extends Specification {
     matched
 
     when:
-    matched = subject.match(maretPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
-
-    then:
-    0 * orderMatchListener._
-    0 * orderFulfilledEventListener._
-    0 * orderPartiallyFilledEventListener._
-
-    and:
-    !matched
-  }
-
-  def 'market orders only : two orders quantity1 != quantity2 are matched and partial filled'() {
-    given:
-    def matched
-    subject.addOrderBuy(100001, 100)
-    subject.addOrderSell(200001, 70)
-
-    when:
-    matched = subject.match(maretPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
-
-    then:
-    1 * orderMatchListener.onOrderMatched(100001, 200001, 70)
-    1 * orderFulfilledEventListener.onOrderFulfilled(200001)
-    1 * orderPartiallyFilledEventListener.onOrderPartialyFilled(100001, 30)
-
-    and:
-    matched
-
-    when:
-    matched = subject.match(maretPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+    matched = subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
 
     then:
     0 * orderMatchListener._
@@ -84,7 +47,7 @@ class StockMatcherImplTest extends Specification {
     subject.addOrderSell(200002, 30)
 
     when:
-    matched = subject.match(maretPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+    matched = subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
 
     then:
     1 * orderMatchListener.onOrderMatched(100001, 200001, 70)
@@ -95,7 +58,7 @@ class StockMatcherImplTest extends Specification {
     matched
 
     when:
-    matched = subject.match(maretPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+    matched = subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
 
     then:
     1 * orderMatchListener.onOrderMatched(100001, 200002, 30)
@@ -106,7 +69,7 @@ class StockMatcherImplTest extends Specification {
     matched
 
     when:
-    matched = subject.match(maretPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+    matched = subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
 
     then:
     0 * orderMatchListener._
@@ -126,7 +89,7 @@ class StockMatcherImplTest extends Specification {
     subject.addOrderBuy(100002, 10)
 
     when:
-    matched = subject.match(maretPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+    matched = subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
 
     then:
     1 * orderMatchListener.onOrderMatched(100001, 200001, 70)
@@ -137,7 +100,7 @@ class StockMatcherImplTest extends Specification {
     matched
 
     when:
-    matched = subject.match(maretPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+    matched = subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
 
     then:
     1 * orderMatchListener.onOrderMatched(100001, 200002, 30)
@@ -148,7 +111,7 @@ class StockMatcherImplTest extends Specification {
     matched
 
     when:
-    matched = subject.match(maretPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+    matched = subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
 
     then:
     1 * orderMatchListener.onOrderMatched(100002, 200002, 10)
@@ -159,7 +122,7 @@ class StockMatcherImplTest extends Specification {
     matched
 
     when:
-    matched = subject.match(maretPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+    matched = subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
 
     then:
     0 * orderMatchListener._
@@ -177,7 +140,7 @@ class StockMatcherImplTest extends Specification {
     subject.addOrderSell(200001, 70)
 
     when:
-    matched = subject.match(maretPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+    matched = subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
 
     then:
     1 * orderMatchListener.onOrderMatched(100001, 200001, 70)
@@ -188,7 +151,7 @@ class StockMatcherImplTest extends Specification {
     matched
 
     when:
-    matched = subject.match(maretPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+    matched = subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
 
     then:
     0 * orderMatchListener._
@@ -200,7 +163,7 @@ class StockMatcherImplTest extends Specification {
 
     when:
     subject.addOrderSell(200002, 40)
-    matched = subject.match(maretPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+    matched = subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
 
     then:
     1 * orderMatchListener.onOrderMatched(100001, 200002, 30)
@@ -211,7 +174,7 @@ class StockMatcherImplTest extends Specification {
     matched
 
     when:
-    matched = subject.match(maretPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+    matched = subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
 
     then:
     0 * orderMatchListener._
@@ -223,7 +186,7 @@ class StockMatcherImplTest extends Specification {
 
     when:
     subject.addOrderBuy(100002, 10)
-    matched = subject.match(maretPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+    matched = subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
 
     then:
     1 * orderMatchListener.onOrderMatched(100002, 200002, 10)
@@ -231,7 +194,7 @@ class StockMatcherImplTest extends Specification {
     1 * orderFulfilledEventListener.onOrderFulfilled(200002)
 
     when:
-    matched = subject.match(maretPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+    matched = subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
 
     and:
     matched
@@ -248,16 +211,16 @@ class StockMatcherImplTest extends Specification {
   def 'limit orders only : two orders with bid = ask and quantity1 = quantity2 are matched and fulfilled'() {
     given:
     def matched
-    subject.addOrderBid(100001, 20.00, 100)
-    subject.addOrderBid(100002, 30.00, 100) // <-- only match
-    subject.addOrderBid(100003, 10.00, 100)
+    subject.addOrderBid(100001, 2000, 100)
+    subject.addOrderBid(100002, 3000, 100) // <-- only match
+    subject.addOrderBid(100003, 1000, 100)
 
-    subject.addOrderAsk(200001, 40.00, 100)
-    subject.addOrderAsk(200002, 30.00, 100) // <-- only match
-    subject.addOrderAsk(200003, 50.00, 100)
+    subject.addOrderAsk(200001, 4000, 100)
+    subject.addOrderAsk(200002, 3000, 100) // <-- only match
+    subject.addOrderAsk(200003, 5000, 100)
 
     when:
-    matched = subject.match(maretPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+    matched = subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
 
     then:
     1 * orderMatchListener.onOrderMatched(100002, 200002, 100)
@@ -268,7 +231,7 @@ class StockMatcherImplTest extends Specification {
     matched
 
     when:
-    matched = subject.match(maretPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+    matched = subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
 
     then:
     0 * orderMatchListener._
@@ -282,17 +245,17 @@ class StockMatcherImplTest extends Specification {
   def 'limit orders only : one of two orders with bid = ask and quantity1 = quantity2 is canceled and wil not fulfiled'() {
     given:
     def matched
-    subject.addOrderBid(100001, 20.00, 100)
-    subject.addOrderBid(100002, 30.00, 100) // <-- the only match, but is going to canceled
-    subject.addOrderBid(100003, 10.00, 100)
+    subject.addOrderBid(100001, 2000, 100)
+    subject.addOrderBid(100002, 3000, 100) // <-- the only match, but is going to canceled
+    subject.addOrderBid(100003, 1000, 100)
 
-    subject.addOrderAsk(200001, 40.00, 100)
-    subject.addOrderAsk(200002, 30.00, 100) // <-- only match
-    subject.addOrderAsk(200003, 50.00, 100)
+    subject.addOrderAsk(200001, 4000, 100)
+    subject.addOrderAsk(200002, 3000, 100) // <-- only match
+    subject.addOrderAsk(200003, 5000, 100)
 
     when:
     subject.removeOrder(100002)
-    matched = subject.match(maretPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+    matched = subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
 
     then:
     0 * orderMatchListener._
@@ -306,16 +269,16 @@ class StockMatcherImplTest extends Specification {
   def 'limit orders only : two orders with bid > ask and quantity1 = quantity2 are matched and fulfilled'() {
     given:
     def matched
-    subject.addOrderBid(100001, 25.00, 100)
-    subject.addOrderBid(100002, 35.00, 100) // <-- only match
-    subject.addOrderBid(100003, 15.00, 100)
+    subject.addOrderBid(100001, 2500, 100)
+    subject.addOrderBid(100002, 3500, 100) // <-- only match
+    subject.addOrderBid(100003, 1500, 100)
 
-    subject.addOrderAsk(200001, 40.00, 100)
-    subject.addOrderAsk(200002, 30.00, 100) // <-- only match
-    subject.addOrderAsk(200003, 50.00, 100)
+    subject.addOrderAsk(200001, 4000, 100)
+    subject.addOrderAsk(200002, 3000, 100) // <-- only match
+    subject.addOrderAsk(200003, 5000, 100)
 
     when:
-    matched = subject.match(maretPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+    matched = subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
 
     then:
     1 * orderMatchListener.onOrderMatched(100002, 200002, 100)
@@ -326,7 +289,7 @@ class StockMatcherImplTest extends Specification {
     matched
 
     when:
-    matched = subject.match(maretPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+    matched = subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
 
     then:
     0 * orderMatchListener._
@@ -340,17 +303,17 @@ class StockMatcherImplTest extends Specification {
   def 'limit orders only : one of two orders with bid > ask and quantity1 = quantity2 is canceled and wil not fulfiled'() {
     given:
     def matched
-    subject.addOrderBid(100001, 25.00, 100)
-    subject.addOrderBid(100002, 35.00, 100) // <-- the only match, but is going to canceled
-    subject.addOrderBid(100003, 15.00, 100)
+    subject.addOrderBid(100001, 2500, 100)
+    subject.addOrderBid(100002, 3500, 100) // <-- the only match, but is going to canceled
+    subject.addOrderBid(100003, 1500, 100)
 
-    subject.addOrderAsk(200001, 40.00, 100)
-    subject.addOrderAsk(200002, 30.00, 100) // <-- only match
-    subject.addOrderAsk(200003, 50.00, 100)
+    subject.addOrderAsk(200001, 4000, 100)
+    subject.addOrderAsk(200002, 3000, 100) // <-- only match
+    subject.addOrderAsk(200003, 5000, 100)
 
     when:
     subject.removeOrder(100002)
-    matched = subject.match(maretPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+    matched = subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
 
     then:
     0 * orderMatchListener._
@@ -364,16 +327,16 @@ class StockMatcherImplTest extends Specification {
   def 'limit orders only : two orders with bid = ask and quantity1 != quantity2 are matched and partial filled'() {
     given:
     def matched
-    subject.addOrderBid(100001, 20.00, 70)
-    subject.addOrderBid(100002, 30.00, 70) // <-- match
-    subject.addOrderBid(100003, 10.00, 70)
+    subject.addOrderBid(100001, 2000, 70)
+    subject.addOrderBid(100002, 3000, 70) // <-- match
+    subject.addOrderBid(100003, 1000, 70)
 
-    subject.addOrderAsk(200001, 40.00, 100)
-    subject.addOrderAsk(200002, 30.00, 100) // <-- match
-    subject.addOrderAsk(200003, 50.00, 100)
+    subject.addOrderAsk(200001, 4000, 100)
+    subject.addOrderAsk(200002, 3000, 100) // <-- match
+    subject.addOrderAsk(200003, 5000, 100)
 
     when:
-    matched = subject.match(maretPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+    matched = subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
 
     then:
     1 * orderMatchListener.onOrderMatched(100002, 200002, 70)
@@ -384,7 +347,7 @@ class StockMatcherImplTest extends Specification {
     matched
 
     when:
-    matched = subject.match(maretPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+    matched = subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
 
     then:
     0 * orderMatchListener._
@@ -397,15 +360,15 @@ class StockMatcherImplTest extends Specification {
 
   def 'limit orders only : one of two orders with bid = ask and quantity1 != quantity2 can not be canceled'() {
     given:
-    subject.addOrderBid(100001, 20.00, 70)
-    subject.addOrderBid(100002, 30.00, 70) // <-- match
-    subject.addOrderBid(100003, 10.00, 70)
+    subject.addOrderBid(100001, 2000, 70)
+    subject.addOrderBid(100002, 3000, 70) // <-- match
+    subject.addOrderBid(100003, 1000, 70)
 
-    subject.addOrderAsk(200001, 40.00, 100)
-    subject.addOrderAsk(200002, 30.00, 100) // <-- match, cancel attempt to fail
-    subject.addOrderAsk(200003, 50.00, 100)
+    subject.addOrderAsk(200001, 4000, 100)
+    subject.addOrderAsk(200002, 3000, 100) // <-- match, cancel attempt to fail
+    subject.addOrderAsk(200003, 5000, 100)
 
-    subject.match(maretPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+    subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
 
     when:
     subject.removeOrder(200002)
@@ -422,16 +385,16 @@ class StockMatcherImplTest extends Specification {
   def 'limit orders only : two orders with bid > ask and quantity1 != quantity2 are matched and partial filled'() {
     given:
     def matched
-    subject.addOrderBid(100001, 25.00, 70)
-    subject.addOrderBid(100002, 35.00, 70) // <-- only match
-    subject.addOrderBid(100003, 15.00, 70)
+    subject.addOrderBid(100001, 2500, 70)
+    subject.addOrderBid(100002, 3500, 70) // <-- only match
+    subject.addOrderBid(100003, 1500, 70)
 
-    subject.addOrderAsk(200001, 40.00, 100)
-    subject.addOrderAsk(200002, 30.00, 100) // <-- only match
-    subject.addOrderAsk(200003, 50.00, 100)
+    subject.addOrderAsk(200001, 4000, 100)
+    subject.addOrderAsk(200002, 3000, 100) // <-- only match
+    subject.addOrderAsk(200003, 5000, 100)
 
     when:
-    matched = subject.match(maretPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+    matched = subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
 
     then:
     1 * orderMatchListener.onOrderMatched(100002, 200002, 70)
@@ -442,7 +405,7 @@ class StockMatcherImplTest extends Specification {
     matched
 
     when:
-    matched = subject.match(maretPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+    matched = subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
 
     then:
     0 * orderMatchListener._
@@ -453,107 +416,22 @@ class StockMatcherImplTest extends Specification {
     !matched
   }
 
-  def 'limit orders only : orders with bid < ask are NOT matched'() {
-    given:
-    def matched
-    subject.addOrderBid(100001, 20.00, 70)
-    subject.addOrderBid(100002, 30.00, 70)
-    subject.addOrderBid(100003, 10.00, 70)
-    subject.addOrderBid(100004, 20.00, 100)
-    subject.addOrderBid(100005, 30.00, 100)
-    subject.addOrderBid(100006, 10.00, 100)
-
-    subject.addOrderAsk(200001, 40.50, 100)
-    subject.addOrderAsk(200002, 30.50, 100)
-    subject.addOrderAsk(200003, 50.50, 100)
-
-    when:
-    matched = subject.match(maretPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
-
-    then:
-    0 * orderMatchListener._
-    0 * orderFulfilledEventListener._
-    0 * orderPartiallyFilledEventListener._
-
-    and:
-    !matched
-  }
-
-  def 'limit orders only : multiple bid orders with various price are matched to a single ask order in the order of price from highest to lowest'() {
-    given:
-    def matched
-    subject.addOrderBid(100001, 29.00, 1)
-    subject.addOrderBid(100002, 30.00, 30) // <-- 3rd highest bid price match
-    subject.addOrderBid(100003, 28.00, 1)
-    subject.addOrderBid(100004, 31.00, 40) // <-- 2nd highest bid price match
-    subject.addOrderBid(100005, 27.00, 1)
-    subject.addOrderBid(100006, 32.00, 60) // <-- 1st highest bid price match
-
-    subject.addOrderAsk(200001, 40.00, 400)
-    subject.addOrderAsk(200002, 30.00, 300) // <-- match 1st, 2nd, 3rd
-    subject.addOrderAsk(200003, 50.00, 500)
-
-    when:
-    matched = subject.match(maretPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
-
-    then: '1st'
-    1 * orderMatchListener.onOrderMatched(100006, 200002, 60)
-    1 * orderFulfilledEventListener.onOrderFulfilled(100006)
-    1 * orderPartiallyFilledEventListener.onOrderPartialyFilled(200002, 240)
-
-    and:
-    matched
-
-    when:
-    matched = subject.match(maretPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
-
-    then: '2nd'
-    1 * orderMatchListener.onOrderMatched(100004, 200002, 40)
-    1 * orderFulfilledEventListener.onOrderFulfilled(100004)
-    1 * orderPartiallyFilledEventListener.onOrderPartialyFilled(200002, 200)
-    
-    and:
-    matched
-
-    when:
-    matched = subject.match(maretPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
-
-    then: '3rd'
-    1 * orderMatchListener.onOrderMatched(100002, 200002, 30)
-    1 * orderFulfilledEventListener.onOrderFulfilled(100002)
-    1 * orderPartiallyFilledEventListener.onOrderPartialyFilled(200002, 170)
-    
-    and:
-    matched
-
-    when:
-    matched = subject.match(maretPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
-
-    then: 'none'
-    0 * orderMatchListener._
-    0 * orderFulfilledEventListener._
-    0 * orderPartiallyFilledEventListener._
-
-    and:
-    !matched
-  }
-
   def 'limit orders only : multiple bid orders with same price are matched to a single ask order in the order of adding'() {
     given:
     def matched
-    subject.addOrderBid(100001, 28.00, 1)
-    subject.addOrderBid(100002, 30.00, 10) // <-- 1st earliest added
-    subject.addOrderBid(100003, 28.00, 1)
-    subject.addOrderBid(100004, 30.00, 40) // <-- 2nd earliest added
-    subject.addOrderBid(100005, 27.00, 1)
-    subject.addOrderBid(100006, 30.00, 60) // <-- 3rd earliest added
+    subject.addOrderBid(100001, 2800, 1)
+    subject.addOrderBid(100002, 3000, 10) // <-- 1st earliest added
+    subject.addOrderBid(100003, 2800, 1)
+    subject.addOrderBid(100004, 3000, 40) // <-- 2nd earliest added
+    subject.addOrderBid(100005, 2700, 1)
+    subject.addOrderBid(100006, 3000, 60) // <-- 3rd earliest added
 
-    subject.addOrderAsk(200001, 40.00, 400)
-    subject.addOrderAsk(200002, 30.00, 300) // <-- match 1st, 2nd
-    subject.addOrderAsk(200003, 50.00, 500)
+    subject.addOrderAsk(200001, 4000, 400)
+    subject.addOrderAsk(200002, 3000, 300) // <-- match 1st, 2nd
+    subject.addOrderAsk(200003, 5000, 500)
 
     when:
-    matched = subject.match(maretPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+    matched = subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
 
     then: '1st'
     1 * orderMatchListener.onOrderMatched(100002, 200002, 10)
@@ -561,7 +439,7 @@ class StockMatcherImplTest extends Specification {
     1 * orderPartiallyFilledEventListener.onOrderPartialyFilled(200002, 290)
 
     when:
-    matched = subject.match(maretPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+    matched = subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
 
     then: '2nd'
     1 * orderMatchListener.onOrderMatched(100004, 200002, 40)
@@ -572,7 +450,7 @@ class StockMatcherImplTest extends Specification {
     matched
 
     when:
-    matched = subject.match(maretPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+    matched = subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
 
     then: '3rd'
     1 * orderMatchListener.onOrderMatched(100006, 200002, 60)
@@ -583,7 +461,7 @@ class StockMatcherImplTest extends Specification {
     matched
 
     when:
-    matched = subject.match(maretPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+    matched = subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
 
     then: 'none'
     0 * orderMatchListener._
@@ -594,43 +472,59 @@ class StockMatcherImplTest extends Specification {
     !matched
   }
 
-  def 'mixed orders : limit order with bid price > market price is matched and fulfiled with market sell order'() {
+  def 'limit orders only : canceled orders are removed from the queue and the cached entry is not matched twice'() {
     given:
     def matched
-    subject.addOrderBid(100001, 30.00, 100)
-    subject.addOrderSell(200001, 100)
+    subject.addOrderBid(100001, 3000, 100) // <-- canceled, the entry goes back to the cache
+    subject.removeOrder(100001)
+    subject.addOrderBid(100002, 2000, 100) // <-- reuses the cached entry
+    subject.addOrderAsk(200001, 2000, 300)
 
     when:
-    matched = subject.match({20.00d}, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+    while (subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)) {
+    }
 
     then:
-    1 * orderMatchListener.onOrderMatched(100001, 200001, 100)
-    1 * orderFulfilledEventListener.onOrderFulfilled(100001)
-    1 * orderFulfilledEventListener.onOrderFulfilled(200001)
-
-    and:
-    matched
-
-    when:
-    matched = subject.match({20.00d}, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+    1 * orderMatchListener.onOrderMatched(100002, 200001, 100)
+    1 * orderFulfilledEventListener.onOrderFulfilled(100002)
+    1 * orderPartiallyFilledEventListener.onOrderPartialyFilled(200001, 200)
 
-    then: 'none'
+    then:
     0 * orderMatchListener._
-    0 * orderFulfilledEventListener._
-    0 * orderPartiallyFilledEventListener._
+  }
 
-    and:
-    !matched
+  def 'limit orders only : most of the orders are canceled, the remaining orders are matched in the price-time order'() {
+    given:
+    def matchedBuyers = []
+    def listener = { long buyerOrderId, long sellerOrderId, int quantity ->
+      matchedBuyers << buyerOrderId
+    } as OrderMatchedEventListener
+    (1..1000).each {
+      subject.addOrderBid(100000L + it, 2000L + it % 50, 1)
+    }
+    (1..1000).findAll { it % 10 != 0 }.each {
+      subject.removeOrder(100000L + it)
+    }
+    subject.addOrderAsk(200001, 2000, 1000)
+
+    when:
+    while (subject.match(marketPriceRef, listener, orderPartiallyFilledEventListener, orderFulfilledEventListener)) {
+    }
+
+    then:
+    matchedBuyers == (1..1000).findAll { it % 10 == 0 }
+        .sort { a, b -> (b % 50 <=> a % 50) ?: (a <=> b) }
+        .collect { 100000L + it }
   }
 
   def 'mixed orders : limit order with ask price < market price is matched and fulfiled with market buy order'() {
     given:
     def matched
     subject.addOrderBuy(100001, 100)
-    subject.addOrderAsk(200001, 10.00, 100)
+    subject.addOrderAsk(200001, 1000, 100)
 
     when:
-    matched = subject.match({20.00d}, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+    matched = subject.match({2000L}, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
 
     then:
     1 * orderMatchListener.onOrderMatched(100001, 200001, 100)
@@ -641,7 +535,7 @@ class StockMatcherImplTest extends Specification {
     matched
 
     when:
-    matched = subject.match({20.00d}, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+    matched = subject.match({2000L}, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
 
     then: 'none'
     0 * orderMatchListener._
@@ -655,29 +549,11 @@ class StockMatcherImplTest extends Specification {
   def 'mixed orders : limit order with bid price < market price is not matched'() {
     given:
     def matched
-    subject.addOrderBid(100001, 20.00, 100)
+    subject.addOrderBid(100001, 2000, 100)
     subject.addOrderSell(200001, 100)
 
     when:
-    matched = subject.match({30.00d}, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
-
-    then:
-    0 * orderMatchListener._
-    0 * orderFulfilledEventListener._
-    0 * orderPartiallyFilledEventListener._
-
-    and:
-    !matched
-  }
-
-  def 'mixed orders : limit order with ask price > market price is not matched'() {
-    given:
-    def matched
-    subject.addOrderBuy(100001, 100)
-    subject.addOrderAsk(200001, 20.00, 100)
-
-    when:
-    matched = subject.match({10.00d}, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+    matched = subject.match({3000L}, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
 
     then:
     0 * orderMatchListener._
@@ -696,7 +572,7 @@ class StockMatcherImplTest extends Specification {
 
     when:
     subject.removeOrder(200001)
-    matched = subject.match(maretPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+    matched = subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
 
     then:
     0 * orderMatchListener._
@@ -706,41 +582,4 @@ class StockMatcherImplTest extends Specification {
     and:
     !matched
   }
-
-  def 'remove order : attempt to remove partially filled order causes to exception, still match'() {
-    given:
-    def matched
-    subject.addOrderBuy(100001, 100)
-    subject.addOrderSell(200001, 60)
-    subject.match(maretPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
-
-    when:
-    subject.removeOrder(100001)
-
-    then:
-    thrown(OrderPartiallyFilledException)
-
-    when:
-    subject.addOrderSell(200002, 40)
-    matched = subject.match(maretPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
-
-    then:
-    1 * orderMatchListener.onOrderMatched(100001, 200002, 40)
-    1 * orderFulfilledEventListener.onOrderFulfilled(100001)
-    1 * orderFulfilledEventListener.onOrderFulfilled(200002)
-
-    and:
-    matched
-
-    when:
-    matched = subject.match(maretPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
-
-    then: 'none'
-    0 * orderMatchListener._
-    0 * orderFulfilledEventListener._
-    0 * orderPartiallyFilledEventListener._
-    
-    and:
-    !matched
-  }
-}
\ No newline at end of file
+}
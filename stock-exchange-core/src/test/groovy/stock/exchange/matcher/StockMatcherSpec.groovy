@@ -0,0 +1,422 @@
+package stock.exchange.matcher
+
+import static stock.exchange.domain.Prices.NO_PRICE
+
+import spock.lang.Specification
+import spock.lang.Subject
+import stock.exchange.book.DuplicateOrderException
+import stock.exchange.book.OrderPartiallyFilledException
+import stock.exchange.domain.LongReference
+import stock.exchange.matcher.StockMatcher.OrderFulfilledEventListener
+import stock.exchange.matcher.StockMatcher.OrderMatchedEventListener
+import stock.exchange.matcher.StockMatcher.OrderPartiallyFilledEventListener
+
+/**
+ * The behaviour shared by every {@link StockMatcher}, run against the subject
+ * of each matcher spec
+ */
+abstract class StockMatcherSpec extends Specification {
+
+  def marketPriceRef = {3000L} as LongReference
+  def orderMatchListener = Mock(OrderMatchedEventListener)
+  def orderPartiallyFilledEventListener = Mock(OrderPartiallyFilledEventListener)
+  def orderFulfilledEventListener = Mock(OrderFulfilledEventListener)
+
+  @Subject
+  def subject = createSubject()
+
+  abstract StockMatcher createSubject()
+
+  def 'market orders only : two orders quantity1 != quantity2 are matched and partial filled'() {
+    given:
+    def matched
+    subject.addOrderBuy(100001, 100)
+    subject.addOrderSell(200001, 70)
+
+    when:
+    matched = subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+
+    then:
+    1 * orderMatchListener.onOrderMatched(100001, 200001, 70)
+    1 * orderFulfilledEventListener.onOrderFulfilled(200001)
+    1 * orderPartiallyFilledEventListener.onOrderPartialyFilled(100001, 30)
+
+    and:
+    matched
+
+    when:
+    matched = subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+
+    then:
+    0 * orderMatchListener._
+    0 * orderFulfilledEventListener._
+    0 * orderPartiallyFilledEventListener._
+
+    and:
+    !matched
+  }
+
+  def 'limit orders only : orders with bid < ask are NOT matched'() {
+    given:
+    def matched
+    subject.addOrderBid(100001, 2000, 70)
+    subject.addOrderBid(100002, 3000, 70)
+    subject.addOrderBid(100003, 1000, 70)
+    subject.addOrderBid(100004, 2000, 100)
+    subject.addOrderBid(100005, 3000, 100)
+    subject.addOrderBid(100006, 1000, 100)
+
+    subject.addOrderAsk(200001, 4050, 100)
+    subject.addOrderAsk(200002, 3050, 100)
+    subject.addOrderAsk(200003, 5050, 100)
+
+    when:
+    matched = subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+
+    then:
+    0 * orderMatchListener._
+    0 * orderFulfilledEventListener._
+    0 * orderPartiallyFilledEventListener._
+
+    and:
+    !matched
+  }
+
+  def 'limit orders only : multiple bid orders with various price are matched to a single ask order in the order of price from highest to lowest'() {
+    given:
+    def matched
+    subject.addOrderBid(100001, 2900, 1)
+    subject.addOrderBid(100002, 3000, 30) // <-- 3rd highest bid price match
+    subject.addOrderBid(100003, 2800, 1)
+    subject.addOrderBid(100004, 3100, 40) // <-- 2nd highest bid price match
+    subject.addOrderBid(100005, 2700, 1)
+    subject.addOrderBid(100006, 3200, 60) // <-- 1st highest bid price match
+
+    subject.addOrderAsk(200001, 4000, 400)
+    subject.addOrderAsk(200002, 3000, 300) // <-- match 1st, 2nd, 3rd
+    subject.addOrderAsk(200003, 5000, 500)
+
+    when:
+    matched = subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+
+    then: '1st'
+    1 * orderMatchListener.onOrderMatched(100006, 200002, 60)
+    1 * orderFulfilledEventListener.onOrderFulfilled(100006)
+    1 * orderPartiallyFilledEventListener.onOrderPartialyFilled(200002, 240)
+
+    and:
+    matched
+
+    when:
+    matched = subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+
+    then: '2nd'
+    1 * orderMatchListener.onOrderMatched(100004, 200002, 40)
+    1 * orderFulfilledEventListener.onOrderFulfilled(100004)
+    1 * orderPartiallyFilledEventListener.onOrderPartialyFilled(200002, 200)
+    
+    and:
+    matched
+
+    when:
+    matched = subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+
+    then: '3rd'
+    1 * orderMatchListener.onOrderMatched(100002, 200002, 30)
+    1 * orderFulfilledEventListener.onOrderFulfilled(100002)
+    1 * orderPartiallyFilledEventListener.onOrderPartialyFilled(200002, 170)
+    
+    and:
+    matched
+
+    when:
+    matched = subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+
+    then: 'none'
+    0 * orderMatchListener._
+    0 * orderFulfilledEventListener._
+    0 * orderPartiallyFilledEventListener._
+
+    and:
+    !matched
+  }
+
+  def 'limit orders only : orders with the same price are matched strictly in the order of adding'() {
+    given:
+    def matchedSellers = []
+    def listener = { long buyerOrderId, long sellerOrderId, int quantity ->
+      matchedSellers << sellerOrderId
+    } as OrderMatchedEventListener
+    (1..50).each {
+      subject.addOrderAsk(200000L + it, 3000, 1)
+    }
+    subject.addOrderBid(100001, 3000, 50)
+
+    when:
+    while (subject.match(marketPriceRef, listener, orderPartiallyFilledEventListener, orderFulfilledEventListener)) {
+    }
+
+    then:
+    matchedSellers == (1..50).collect { 200000L + it }
+  }
+
+  def 'mixed orders : limit order with bid price > market price is matched and fulfiled with market sell order'() {
+    given:
+    def matched
+    subject.addOrderBid(100001, 3000, 100)
+    subject.addOrderSell(200001, 100)
+
+    when:
+    matched = subject.match({2000L}, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+
+    then:
+    1 * orderMatchListener.onOrderMatched(100001, 200001, 100)
+    1 * orderFulfilledEventListener.onOrderFulfilled(100001)
+    1 * orderFulfilledEventListener.onOrderFulfilled(200001)
+
+    and:
+    matched
+
+    when:
+    matched = subject.match({2000L}, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+
+    then: 'none'
+    0 * orderMatchListener._
+    0 * orderFulfilledEventListener._
+    0 * orderPartiallyFilledEventListener._
+
+    and:
+    !matched
+  }
+
+  def 'mixed orders : limit order with ask price > market price is not matched'() {
+    given:
+    def matched
+    subject.addOrderBuy(100001, 100)
+    subject.addOrderAsk(200001, 2000, 100)
+
+    when:
+    matched = subject.match({1000L}, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+
+    then:
+    0 * orderMatchListener._
+    0 * orderFulfilledEventListener._
+    0 * orderPartiallyFilledEventListener._
+
+    and:
+    !matched
+  }
+
+  def 'remove order : attempt to remove partially filled order causes to exception'() {
+    given:
+    subject.addOrderBid(100001, 3000, 100)
+    subject.addOrderAsk(200001, 3000, 60)
+    subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+
+    when:
+    subject.removeOrder(100001)
+
+    then:
+    thrown(OrderPartiallyFilledException)
+  }
+
+  def 'remove order : attempt to remove partially filled order causes to exception, still match'() {
+    given:
+    def matched
+    subject.addOrderBuy(100001, 100)
+    subject.addOrderSell(200001, 60)
+    subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+
+    when:
+    subject.removeOrder(100001)
+
+    then:
+    thrown(OrderPartiallyFilledException)
+
+    when:
+    subject.addOrderSell(200002, 40)
+    matched = subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+
+    then:
+    1 * orderMatchListener.onOrderMatched(100001, 200002, 40)
+    1 * orderFulfilledEventListener.onOrderFulfilled(100001)
+    1 * orderFulfilledEventListener.onOrderFulfilled(200002)
+
+    and:
+    matched
+
+    when:
+    matched = subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+
+    then: 'none'
+    0 * orderMatchListener._
+    0 * orderFulfilledEventListener._
+    0 * orderPartiallyFilledEventListener._
+    
+    and:
+    !matched
+  }
+
+  def 'add order : duplicate order id is rejected'() {
+    given:
+    subject.addOrderBid(100001, 3000, 100)
+
+    when:
+    subject.addOrderAsk(100001, 3100, 100)
+
+    then:
+    thrown(DuplicateOrderException)
+  }
+
+  def 'batch match : aggressive ask sweeping several bid levels is filled in a single call'() {
+    given:
+    def buffer = new MatchBuffer(16)
+    subject.addOrderBid(100001, 3000, 30)
+    subject.addOrderBid(100002, 3100, 40)
+    subject.addOrderBid(100003, 3200, 60)
+    subject.addOrderBid(100004, 2900, 10)
+    subject.addOrderAsk(200001, 3000, 120)
+
+    when:
+    def count = subject.matchAll(marketPriceRef, buffer)
+
+    then: 'the resting bids are filled from the best one, the trade generator prices the fills'
+    count == 3
+    (0..<count).collect {
+      [buffer.buyerOrderId(it), buffer.sellerOrderId(it), buffer.quantity(it), buffer.price(it),
+        buffer.buyerVolumeRemain(it), buffer.sellerVolumeRemain(it)]
+    } == [
+      [100003, 200001, 60, NO_PRICE, 0, 60],
+      [100002, 200001, 40, NO_PRICE, 0, 20],
+      [100001, 200001, 20, NO_PRICE, 10, 0]]
+
+    and:
+    subject.matchAll(marketPriceRef, buffer) == 0
+    buffer.size() == 0
+  }
+
+  def 'batch match : the sweep stops when the buffer is full and goes on with the next call'() {
+    given:
+    def buffer = new MatchBuffer(2)
+    subject.addOrderAsk(200001, 3000, 10)
+    subject.addOrderAsk(200002, 3000, 10)
+    subject.addOrderAsk(200003, 3000, 10)
+    subject.addOrderBid(100001, 3100, 100)
+
+    expect:
+    subject.matchAll(marketPriceRef, buffer) == 2
+    buffer.sellerOrderId(0) == 200001
+    buffer.sellerOrderId(1) == 200002
+    buffer.price(0) == NO_PRICE
+
+    and:
+    subject.matchAll(marketPriceRef, buffer) == 1
+    buffer.sellerOrderId(0) == 200003
+    buffer.buyerVolumeRemain(0) == 70
+
+    and:
+    subject.matchAll(marketPriceRef, buffer) == 0
+  }
+
+  def 'batch match : limit and market orders are swept in the priority order of the single match'() {
+    given:
+    def buffer = new MatchBuffer(16)
+    subject.addOrderSell(200001, 10)
+    subject.addOrderBid(100001, 3100, 10)
+    subject.addOrderAsk(200002, 3050, 5)
+    subject.addOrderBuy(100002, 5)
+
+    when:
+    def count = subject.matchAll(marketPriceRef, buffer)
+
+    then: 'bid <-> ask first, then bid <-> sell, then buy <-> sell'
+    count == 3
+    (0..<count).collect { [buffer.buyerOrderId(it), buffer.sellerOrderId(it), buffer.quantity(it), buffer.price(it)] } == [
+      [100001, 200002, 5, NO_PRICE],
+      [100001, 200001, 5, NO_PRICE],
+      [100002, 200001, 5, NO_PRICE]]
+  }
+
+  def 'depth : price levels aggregate the volume remaining and the number of resting limit orders'() {
+    given:
+    def prices = new long[2]
+    def volumes = new long[2]
+    def ordersCounts = new int[2]
+    subject.addOrderBid(100001, 3000, 10)
+    subject.addOrderBid(100002, 3100, 20)
+    subject.addOrderBid(100003, 3000, 30)
+    subject.addOrderBid(100004, 2900, 40)
+    subject.addOrderAsk(200001, 3200, 5)
+    subject.addOrderBuy(100005, 50) // market orders are not a part of the depth
+
+    when:
+    def count = subject.copyBidLevels(prices, volumes, ordersCounts)
+
+    then: 'the best levels first, as many as the arrays fit'
+    count == 2
+    prices == [3100, 3000] as long[]
+    volumes == [20, 40] as long[]
+    ordersCounts == [1, 2] as int[]
+
+    when:
+    subject.addOrderAsk(200002, 3000, 25)
+    subject.match(marketPriceRef, orderMatchListener, orderPartiallyFilledEventListener, orderFulfilledEventListener)
+    subject.matchAll(marketPriceRef, new MatchBuffer(16))
+    subject.removeOrder(100004)
+    count = subject.copyBidLevels(prices, volumes, ordersCounts)
+
+    then: 'the filled and the removed orders leave their levels, the partially filled ones keep the volume remaining'
+    count == 1
+    prices[0] == 3000
+    volumes[0] == 35
+    ordersCounts[0] == 2
+
+    when:
+    count = subject.copyAskLevels(prices, volumes, ordersCounts)
+
+    then:
+    count == 1
+    prices[0] == 3200
+    volumes[0] == 5
+    ordersCounts[0] == 1
+  }
+
+  def 'auction : the equilibrium executes the maximal volume and the uncross fills at its price, market orders first'() {
+    given:
+    def equilibrium = new AuctionEquilibrium()
+    def buffer = new MatchBuffer(16)
+    subject.addOrderBid(100001, 3100, 10)
+    subject.addOrderBid(100002, 3000, 20)
+    subject.addOrderBuy(100003, 5)
+    subject.addOrderAsk(200001, 2900, 15)
+    subject.addOrderAsk(200002, 3000, 10)
+    subject.addOrderAsk(200003, 3200, 50)
+
+    when:
+    subject.equilibrium(2950, equilibrium)
+
+    then: 'demand 35 against supply 25 at 3000, no more than 15 executable at any other price'
+    equilibrium.isCrossing()
+    equilibrium.price() == 3000
+    equilibrium.volume() == 25
+    equilibrium.imbalance() == 10
+
+    when:
+    def count = subject.uncross(equilibrium.price(), buffer)
+
+    then:
+    count == 3
+    (0..<count).collect { [buffer.buyerOrderId(it), buffer.sellerOrderId(it), buffer.quantity(it), buffer.price(it)] } == [
+      [100003, 200001, 5, 3000],
+      [100001, 200001, 10, 3000],
+      [100002, 200002, 10, 3000]]
+
+    when:
+    subject.equilibrium(2950, equilibrium)
+
+    then: 'the orders not executable at the auction price keep resting'
+    !equilibrium.isCrossing()
+    equilibrium.volume() == 0
+    subject.removeOrder(200003)
+  }
+}
@@ -0,0 +1,286 @@
+package stock.exchange.publisher
+
+import java.time.Duration
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.TimeUnit
+
+import spock.lang.Specification
+import spock.lang.Subject
+import spock.lang.Timeout
+import stock.exchange.book.MarketDepth
+import stock.exchange.book.OrderBookImpl
+import stock.exchange.domain.Prices
+import stock.exchange.domain.TradeRecord
+import stock.exchange.domain.TraderRecord
+import stock.exchange.instrument.MarketDataWorld
+import stock.exchange.instrument.NoSuchInstrumentException
+import stock.exchange.instrument.NoSuchSecurityException
+import stock.exchange.integration.FanOutDownstream
+import stock.exchange.integration.FanOutRejectedDownstream
+import stock.exchange.matcher.PriceLadderStockMatcher
+import stock.exchange.trade.TradeGeneratorImpl
+
+@Timeout(30)
+class ConflatingPublisherTest extends Specification {
+
+  def world = new MarketDataWorld()
+  def security1 = world.createSecurity(1, 'SEC1', 2, 1000L)
+  def security2 = world.createSecurity(2, 'SEC2', 2, 2000L)
+  def composite = world.createComposite(3, 'COMP', 'SEC1', 'SEC2')
+
+  // the publications are driven by the test, the publisher is not started
+  @Subject
+  def subject = new ConflatingPublisher(world, null, Duration.ofHours(1))
+
+  def updates = new LinkedBlockingQueue<MarketDataUpdate>()
+
+  def cleanup() {
+    subject.close()
+  }
+
+  def 'the trades between the publications are conflated into the single update of the latest state'() {
+    given:
+    subject.subscribe(['SEC1'], updates.&put)
+
+    when:
+    subject.accept(trade(security1, 1001L, 10))
+    subject.accept(trade(security1, 1003L, 20))
+    subject.accept(trade(security1, 1002L, 5))
+    subject.publish()
+
+    then:
+    updates.poll(5, TimeUnit.SECONDS) == new MarketDataUpdate(security1, 1002L, 5, 35L, 3L, null, null)
+
+    when:
+    subject.publish()
+
+    then: 'nothing has changed since'
+    updates.poll(100, TimeUnit.MILLISECONDS) == null
+
+    when:
+    subject.accept(trade(security1, 1004L, 1))
+    subject.publish()
+
+    then:
+    updates.poll(5, TimeUnit.SECONDS) == new MarketDataUpdate(security1, 1004L, 1, 36L, 4L, null, null)
+  }
+
+  def 'the subscriber gets the updates of the securities subscribed only'() {
+    given:
+    def subscription = subject.subscribe(['SEC2'], updates.&put)
+
+    when:
+    subject.accept(trade(security1, 1001L, 10))
+    subject.accept(trade(security2, 2001L, 10))
+    subject.publish()
+
+    then:
+    updates.poll(5, TimeUnit.SECONDS).security() == security2
+    updates.poll(100, TimeUnit.MILLISECONDS) == null
+
+    when:
+    subscription.add(['SEC1'])
+    subscription.remove(['SEC2'])
+    subject.accept(trade(security1, 1002L, 10))
+    subject.accept(trade(security2, 2002L, 10))
+    subject.publish()
+
+    then:
+    updates.poll(5, TimeUnit.SECONDS).security() == security1
+    updates.poll(100, TimeUnit.MILLISECONDS) == null
+  }
+
+  def 'the slow subscriber skips the intermediate updates and gets the latest one'() {
+    given:
+    def blocked = new CountDownLatch(1)
+    def release = new CountDownLatch(1)
+    subject.subscribe(['SEC1'], { update ->
+      blocked.countDown()
+      release.await()
+      updates.put(update)
+    })
+    def fast = new LinkedBlockingQueue<MarketDataUpdate>()
+    subject.subscribe(['SEC1'], fast.&put)
+
+    when: 'the subscriber is stuck with the first update'
+    subject.accept(trade(security1, 1001L, 1))
+    subject.publish()
+    blocked.await()
+
+    and: 'every update is taken by the other subscriber before the next one'
+    def delivered = [fast.poll(5, TimeUnit.SECONDS)?.lastPrice()]
+    for (long price = 1002L; price <= 1010L; price++) {
+      subject.accept(trade(security1, price, 1))
+      subject.publish()
+      delivered << fast.poll(5, TimeUnit.SECONDS)?.lastPrice()
+    }
+
+    then: 'the other subscriber is not held up'
+    delivered == (1001L..1010L).toList()
+
+    when:
+    release.countDown()
+
+    then:
+    updates.poll(5, TimeUnit.SECONDS).lastPrice() == 1001L
+    updates.poll(5, TimeUnit.SECONDS) == new MarketDataUpdate(security1, 1010L, 1, 10L, 10L, null, null)
+    updates.poll(100, TimeUnit.MILLISECONDS) == null
+  }
+
+  def 'the update carries the best bid and ask of the book'() {
+    given:
+    def trader = Stub(TraderRecord)
+    OrderBookImpl book
+    def publisher = new ConflatingPublisher(world, { book.getMarketDepth() }, Duration.ofHours(1))
+    book = new OrderBookImpl(
+        new PriceLadderStockMatcher(),
+        security1,
+        new TradeGeneratorImpl(new FanOutDownstream(world, publisher), new FanOutRejectedDownstream()),
+        new FanOutRejectedDownstream(),
+        new FanOutDownstream(),
+        new FanOutRejectedDownstream())
+    publisher.subscribe(['SEC1'], updates.&put)
+
+    when:
+    book.addBid(trader, 30, 1000L)
+    book.addAsk(trader, 10, 1000L)
+    book.addAsk(trader, 5, 1005L)
+    book.tick()
+    publisher.publish()
+
+    then:
+    updates.poll(5, TimeUnit.SECONDS) == new MarketDataUpdate(security1, 1000L, 10, 10L, 1L,
+        new MarketDepth.Level(1000L, 20L, 1), new MarketDepth.Level(1005L, 5L, 1))
+
+    cleanup:
+    publisher.close()
+  }
+
+  def 'the change of the best bid or ask alone is published'() {
+    given:
+    def trader = Stub(TraderRecord)
+    OrderBookImpl book
+    def publisher = new ConflatingPublisher(world, { book.getMarketDepth() }, Duration.ofHours(1))
+    book = new OrderBookImpl(
+        new PriceLadderStockMatcher(),
+        security1,
+        new TradeGeneratorImpl(new FanOutDownstream(world, publisher), new FanOutRejectedDownstream()),
+        new FanOutRejectedDownstream(),
+        new FanOutDownstream(),
+        new FanOutRejectedDownstream())
+    publisher.subscribe(['SEC1'], updates.&put)
+
+    when:
+    book.addBid(trader, 30, 1000L)
+    book.tick()
+    publisher.publish()
+
+    then:
+    updates.poll(5, TimeUnit.SECONDS) == new MarketDataUpdate(security1, Prices.NO_PRICE, 0, 0L, 0L,
+        new MarketDepth.Level(1000L, 30L, 1), null)
+
+    when: 'the level below the best one changes'
+    book.addBid(trader, 10, 999L)
+    book.tick()
+    publisher.publish()
+
+    then:
+    updates.poll(100, TimeUnit.MILLISECONDS) == null
+
+    when:
+    book.addAsk(trader, 5, 1005L)
+    book.tick()
+    publisher.publish()
+
+    then:
+    updates.poll(5, TimeUnit.SECONDS) == new MarketDataUpdate(security1, Prices.NO_PRICE, 0, 0L, 0L,
+        new MarketDepth.Level(1000L, 30L, 1), new MarketDepth.Level(1005L, 5L, 1))
+
+    cleanup:
+    publisher.close()
+  }
+
+  def 'the started publisher publishes by itself'() {
+    given:
+    def publisher = new ConflatingPublisher(world, null, Duration.ofMillis(10))
+    publisher.subscribe(['SEC1'], updates.&put)
+
+    when:
+    publisher.accept(trade(security1, 1001L, 10))
+
+    then: 'not until started'
+    updates.poll(200, TimeUnit.MILLISECONDS) == null
+
+    when:
+    publisher.start()
+
+    then:
+    updates.poll(5, TimeUnit.SECONDS).lastPrice() == 1001L
+
+    cleanup:
+    publisher.close()
+  }
+
+  def 'the subscription to an unknown symbol or to a composite is rejected'() {
+    when:
+    subject.subscribe(['SEC1', 'NONE'], updates.&put)
+
+    then:
+    thrown(NoSuchInstrumentException)
+
+    when:
+    subject.subscribe(['COMP'], updates.&put)
+
+    then:
+    thrown(NoSuchSecurityException)
+
+    and:
+    subject.activeSubscriptions() == 0
+  }
+
+  def 'the closed subscription gets no more updates'() {
+    given:
+    def subscription = subject.subscribe(['SEC1'], updates.&put)
+
+    when:
+    subscription.close()
+    subject.accept(trade(security1, 1001L, 10))
+    subject.publish()
+
+    then:
+    subject.activeSubscriptions() == 0
+    updates.poll(100, TimeUnit.MILLISECONDS) == null
+  }
+
+  def 'the subscription is closed by the failure of its listener'() {
+    given:
+    def failing = subject.subscribe(['SEC1'], { throw new IllegalStateException() })
+    def subscription = subject.subscribe(['SEC1'], updates.&put)
+
+    when:
+    subject.accept(trade(security1, 1001L, 10))
+    subject.publish()
+
+    then:
+    updates.poll(5, TimeUnit.SECONDS).lastPrice() == 1001L
+
+    when:
+    while (subject.activeSubscriptions() > 1) {
+      Thread.sleep(10)
+    }
+
+    then:
+    subject.activeSubscriptions() == 1
+    failing.isClosed()
+    !subscription.isClosed()
+  }
+
+  private TradeRecord trade(security, long price, int quantity) {
+    Stub(TradeRecord) {
+      security() >> security
+      price() >> price
+      quantity() >> quantity
+    }
+  }
+}
@@ -1,6 +1,6 @@
 package stock.exchange.trade
 
-import static java.lang.Double.NaN
+import static stock.exchange.domain.Prices.NO_PRICE
 
 import java.time.Instant
 
@@ -71,19 +71,19 @@ class TradeGeneratorImplTest extends Specification {
 
     where:
     scenario                                                                                    | marketPrice | buyPrice | buyQuantity | buyTs    | sellPrice | sellQuantity | sellTs   | tradeQuantity | expectTradePrice
-    'prices are set and equal and buyer was first'                                              |     150.00d |  100.00d |          10 | firstTs  |   100.00d |           10 | secondTs |            10 |          100.00d
-    'prices are set are equal and seller was first'                                             |     150.00d |  100.00d |          10 | secondTs |   100.00d |           10 | firstTs  |            10 |          100.00d
+    'prices are set and equal and buyer was first'                                              |      15000L |   10000L |          10 | firstTs  |    10000L |           10 | secondTs |            10 |           10000L
+    'prices are set are equal and seller was first'                                             |      15000L |   10000L |          10 | secondTs |    10000L |           10 | firstTs  |            10 |           10000L
 
-    'prices are set buy > sell and buyer first -> seller\'s price priority'                     |     150.00d |  200.00d |          10 | firstTs  |   100.00d |           10 | secondTs |            10 |          100.00d
-    'prices are set buy > sell and seller first -> buyer\'s price priority'                     |     150.00d |  200.00d |          10 | secondTs |   100.00d |           10 | firstTs  |            10 |          200.00d
+    'prices are set buy > sell and buyer first -> seller\'s price priority'                     |      15000L |   20000L |          10 | firstTs  |    10000L |           10 | secondTs |            10 |           10000L
+    'prices are set buy > sell and seller first -> buyer\'s price priority'                     |      15000L |   20000L |          10 | secondTs |    10000L |           10 | firstTs  |            10 |           20000L
 
-    'buy price not set and sell price not set -> market price'                                  |     150.00d |      NaN |          10 | firstTs  |       NaN |           10 | secondTs |            10 |          150.00d
+    'buy price not set and sell price not set -> market price'                                  |      15000L | NO_PRICE |          10 | firstTs  |  NO_PRICE |           10 | secondTs |            10 |           15000L
 
-    'buy price not set and sell price set and buyer first -> seller\'s price priority'          |     150.00d |      NaN |          10 | firstTs  |   100.00d |           10 | secondTs |            10 |          100.00d
-    'buy price not set and sell price set and seller first -> buyer\'s (market) price priority' |     150.00d |      NaN |          10 | secondTs |   100.00d |           10 | firstTs  |            10 |          150.00d
+    'buy price not set and sell price set and buyer first -> seller\'s price priority'          |      15000L | NO_PRICE |          10 | firstTs  |    10000L |           10 | secondTs |            10 |           10000L
+    'buy price not set and sell price set and seller first -> buyer\'s (market) price priority' |      15000L | NO_PRICE |          10 | secondTs |    10000L |           10 | firstTs  |            10 |           15000L
 
-    'buy price set and sell not price set and buyer first -> seller\'s price priority'          |     150.00d |  200.00d |          10 | firstTs  |       NaN |           10 | secondTs |            10 |          150.00d
-    'buy price set and sell not price set and seller first -> buyer\'s (market) price priority' |     150.00d |  200.00d |          10 | secondTs |       NaN |           10 | firstTs  |            10 |          200.00d
+    'buy price set and sell not price set and buyer first -> seller\'s price priority'          |      15000L |   20000L |          10 | firstTs  |  NO_PRICE |           10 | secondTs |            10 |           15000L
+    'buy price set and sell not price set and seller first -> buyer\'s (market) price priority' |      15000L |   20000L |          10 | secondTs |  NO_PRICE |           10 | firstTs  |            10 |           20000L
   }
 
   def '#scenario causes to exception' (
@@ -123,10 +123,71 @@ class TradeGeneratorImplTest extends Specification {
 
     where:
     scenario                                      | marketPrice | buyPrice | buyQuantity | sellPrice | sellQuantity | quantity | expectException
-    'buying price below zero'                     |     150.00d | -100.00d |          75 |   100.00d |           75 |       75 | TradeInvalidPriceException
-    'sell price below zero'                       |     150.00d |  100.00d |          75 |  -100.00d |           75 |       75 | TradeInvalidPriceException
-    'buying price lower than selling price'       |     150.00d |   90.00d |          75 |   100.00d |           75 |       75 | TradePriceMistmachValidationException
-    'quntity greater than buying order quantity'  |     150.00d |  100.00d |          50 |   100.00d |           75 |       75 | TradeAndOrderQuantityMismatchException
-    'quntity greater than selling order quantity' |     150.00d |  100.00d |          75 |   100.00d |           50 |       75 | TradeAndOrderQuantityMismatchException
+    'buying price below zero'                     |      15000L |  -10000L |          75 |    10000L |           75 |       75 | TradeInvalidPriceException
+    'sell price below zero'                       |      15000L |   10000L |          75 |   -10000L |           75 |       75 | TradeInvalidPriceException
+    'buying price lower than selling price'       |      15000L |    9000L |          75 |    10000L |           75 |       75 | TradePriceMistmachValidationException
+    'quntity greater than buying order quantity'  |      15000L |   10000L |          50 |    10000L |           75 |       75 | TradeAndOrderQuantityMismatchException
+    'quntity greater than selling order quantity' |      15000L |   10000L |          75 |    10000L |           50 |       75 | TradeAndOrderQuantityMismatchException
    }
+
+  def 'uncross trade is executed at the auction price when #scenario'(
+    def scenario,
+    def buyPrice,
+    def sellPrice) {
+    given:
+    def secur1 = Stub(SecurityRecord)
+    def buyingOrder = Stub(OrderRecord) {
+      price() >> buyPrice
+      quantity() >> 10
+      timestamp() >> firstTs
+    }
+    def sellingOrder = Stub(OrderRecord) {
+      price() >> sellPrice
+      quantity() >> 10
+      timestamp() >> secondTs
+    }
+    def subject = new TradeGeneratorImpl(tradeDownstream, tradeDownstreamRejected)
+
+    when:
+    subject.generateUncrossTrade(12000L, secur1, buyingOrder, sellingOrder, 10)
+
+    then:
+    1 * tradeDownstream.accept({
+      def tr = it as TradeRecord
+      tr.price() == 12000L
+      tr.quantity() == 10
+    })
+    0 * tradeDownstreamRejected._
+
+    where:
+    scenario                               | buyPrice | sellPrice
+    'limit prices are on both sides of it' |   20000L |    10000L
+    'limit prices are equal to it'         |   12000L |    12000L
+    'orders are market ones'               | NO_PRICE |  NO_PRICE
+  }
+
+  def 'uncross trade is rejected when #scenario'(def scenario, def buyPrice, def sellPrice) {
+    given:
+    def buyingOrder = Stub(OrderRecord) {
+      price() >> buyPrice
+      quantity() >> 10
+    }
+    def sellingOrder = Stub(OrderRecord) {
+      price() >> sellPrice
+      quantity() >> 10
+    }
+    def subject = new TradeGeneratorImpl(tradeDownstream, tradeDownstreamRejected)
+
+    when:
+    subject.generateUncrossTrade(12000L, Stub(SecurityRecord), buyingOrder, sellingOrder, 10)
+
+    then:
+    thrown(TradePriceMistmachValidationException)
+    0 * tradeDownstream._
+
+    where:
+    scenario                          | buyPrice | sellPrice
+    'buying price is lower than it'   |   11000L |    10000L
+    'selling price is higher than it' |   20000L |    13000L
+  }
 }
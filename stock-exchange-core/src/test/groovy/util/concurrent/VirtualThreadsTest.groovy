@@ -0,0 +1,53 @@
+package util.concurrent
+
+import java.util.concurrent.Callable
+import java.util.concurrent.TimeUnit
+
+import spock.lang.Requires
+import spock.lang.Specification
+
+class VirtualThreadsTest extends Specification {
+
+  def 'virtual threads are supported since JDK 21'() {
+    expect:
+    VirtualThreads.isSupported() == (Runtime.version().feature() >= 21)
+  }
+
+  @Requires({ VirtualThreads.isSupported() })
+  def 'tasks are run in virtual threads'() {
+    given:
+    def executor = VirtualThreads.newThreadPerTaskExecutor(true)
+
+    when:
+    def virtual = executor.submit({ Thread.currentThread().isVirtual() } as Callable).get(5, TimeUnit.SECONDS)
+
+    then:
+    virtual
+
+    cleanup:
+    executor.shutdownNow()
+  }
+
+  @Requires({ !VirtualThreads.isSupported() })
+  def 'virtual thread executor can not be created before JDK 21'() {
+    when:
+    VirtualThreads.newVirtualThreadPerTaskExecutor()
+
+    then:
+    thrown(UnsupportedOperationException)
+  }
+
+  def 'tasks are run in platform threads when virtual threads are not requested'() {
+    given:
+    def executor = VirtualThreads.newThreadPerTaskExecutor(false)
+
+    when:
+    def name = executor.submit({ Thread.currentThread().name } as Callable).get(5, TimeUnit.SECONDS)
+
+    then:
+    name.startsWith('pool-')
+
+    cleanup:
+    executor.shutdownNow()
+  }
+}
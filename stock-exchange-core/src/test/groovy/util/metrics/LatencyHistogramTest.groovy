@@ -0,0 +1,94 @@
+package util.metrics
+
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+import spock.lang.Specification
+import spock.lang.Subject
+import spock.lang.Timeout
+
+class LatencyHistogramTest extends Specification {
+
+  @Subject
+  def subject = new LatencyHistogram()
+
+  def 'small values are counted exactly'() {
+    given:
+    (0..63).each { subject.record(it) }
+
+    when:
+    def snapshot = subject.snapshot()
+
+    then:
+    snapshot.count() == 64
+    snapshot.max() == 63
+    snapshot.percentile(0) == 0
+    snapshot.percentile(50) == 31
+    snapshot.percentile(100) == 63
+    snapshot.mean() == 31.5d
+  }
+
+  def 'value #value is reported within 1/32 of it'() {
+    given:
+    subject.record(value)
+    subject.record(LatencyHistogram.MAX_VALUE)
+
+    when:
+    def reported = subject.snapshot().percentile(50)
+
+    then:
+    reported >= value
+    reported - value <= value / 32
+
+    where:
+    value << [64L, 100L, 1_000L, 12_345L, 1_000_000L, 987_654_321L, LatencyHistogram.MAX_VALUE - 1]
+  }
+
+  def 'percentiles follow the distribution, out of range values are clamped'() {
+    given:
+    (1..1000).each { subject.record(it * 1000L) }
+    subject.record(-5)
+    subject.record(Long.MAX_VALUE)
+
+    when:
+    def snapshot = subject.snapshot()
+
+    then:
+    snapshot.count() == 1002
+    snapshot.percentile(0) == 0
+    Math.abs(snapshot.percentile(50) - 500_000) <= 500_000 / 32
+    Math.abs(snapshot.percentile(99) - 990_000) <= 990_000 / 32
+    snapshot.max() == LatencyHistogram.MAX_VALUE
+
+    when:
+    subject.reset()
+
+    then:
+    subject.snapshot().count() == 0
+    subject.snapshot().percentile(99) == 0
+  }
+
+  @Timeout(10)
+  def 'values recorded concurrently are all counted'() {
+    given:
+    def executor = Executors.newFixedThreadPool(4)
+
+    when:
+    def futures = (1..4).collect { t ->
+      executor.submit {
+        for (int i = 0; i < 100_000; i++) {
+          subject.record(i)
+        }
+      }
+    }
+    futures*.get()
+
+    then:
+    subject.snapshot().count() == 400_000
+    subject.snapshot().max() == 99_999
+
+    cleanup:
+    executor.shutdownNow()
+    executor.awaitTermination(5, TimeUnit.SECONDS)
+  }
+}
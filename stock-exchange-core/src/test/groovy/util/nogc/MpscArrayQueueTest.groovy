@@ -0,0 +1,98 @@
+package util.nogc
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+import spock.lang.Specification
+import spock.lang.Timeout
+
+class MpscArrayQueueTest extends Specification {
+
+  def 'capacity is rounded up to the power of two'() {
+    expect:
+    new MpscArrayQueue(requested).capacity() == expected
+
+    where:
+    requested | expected
+    1         | 1
+    3         | 4
+    16        | 16
+    1000      | 1024
+  }
+
+  def 'elements are polled in the order of offering, offer fails when the queue is full'() {
+    given:
+    def subject = new MpscArrayQueue(4)
+
+    expect:
+    subject.isEmpty()
+    subject.poll() == null
+
+    and:
+    subject.size() == 0
+    (1..4).every { subject.offer(it) }
+    !subject.offer(5)
+    !subject.isEmpty()
+    subject.size() == 4
+
+    and:
+    subject.poll() == 1
+    subject.offer(5)
+    (2..5).collect { subject.poll() } == (2..5).collect()
+
+    and:
+    subject.isEmpty()
+    subject.poll() == null
+    subject.size() == 0
+  }
+
+  @Timeout(30)
+  def 'elements offered by concurrent producers are all polled once in the per-producer order'() {
+    given:
+    def producers = 4
+    def perProducer = 50_000
+    def subject = new MpscArrayQueue<long[]>(64)
+    def start = new CountDownLatch(1)
+    def executor = Executors.newFixedThreadPool(producers)
+    (0..<producers).each { p ->
+      executor.submit {
+        start.await()
+        for (int i = 0; i < perProducer; i++) {
+          long[] e = [p, i] as long[]
+          while (!subject.offer(e)) {
+            Thread.onSpinWait()
+          }
+        }
+      }
+    }
+
+    when:
+    def lastSeen = new long[producers]
+    Arrays.fill(lastSeen, -1L)
+    def outOfOrder = 0
+    def polled = 0
+    start.countDown()
+    while (polled < producers * perProducer) {
+      long[] e = subject.poll()
+      if (e == null) {
+        Thread.onSpinWait()
+        continue
+      }
+      if (e[1] != lastSeen[(int) e[0]] + 1) {
+        outOfOrder++
+      }
+      lastSeen[(int) e[0]] = e[1]
+      polled++
+    }
+
+    then:
+    outOfOrder == 0
+    lastSeen.every { it == perProducer - 1 }
+    subject.isEmpty()
+
+    cleanup:
+    executor.shutdownNow()
+    executor.awaitTermination(5, TimeUnit.SECONDS)
+  }
+}